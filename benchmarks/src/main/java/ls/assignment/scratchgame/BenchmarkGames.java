@@ -0,0 +1,144 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.Gson;
+
+/**
+ * BenchmarkGames class generating square game configurations and fixed boards for the benchmarks.
+ * A configuration of size n has max(6, ceil(n * n / 2)) standard symbols so that a losing
+ * board exists, four bonus symbols, and the requested number of win combinations: first
+ * same_symbols combinations from 3 times upwards, then the horizontal, vertical and two
+ * diagonal linear_symbols combinations.
+ * @author LOTHFY ( LS )
+ */
+final class BenchmarkGames {
+  /** The largest number of win combinations a generated configuration can have. */
+  static final int MAX_WIN_COMBINATIONS = 12;
+
+  private static final String[] BONUS_SYMBOLS = {"10x", "5x", "+1000", "MISS"};
+
+  private BenchmarkGames() {
+  }
+
+  /**
+   * Generates a square game configuration.
+   * @param size The number of rows and columns
+   * @param winCombinations The number of win combinations, between 2 and MAX_WIN_COMBINATIONS
+   * @return The parsed configuration
+   * @throws IllegalArgumentException if the size or the number of win combinations is out of range
+   */
+  static GameConfiguration configuration(int size, int winCombinations) {
+    if (size < 3) {
+      throw new IllegalArgumentException("Board size must be at least 3: " + size);
+    }
+    if (winCombinations < 2 || winCombinations > MAX_WIN_COMBINATIONS) {
+      throw new IllegalArgumentException("Number of win combinations out of range: " + winCombinations);
+    }
+    int symbolCount = standardSymbolCount(size);
+
+    StringBuilder json = new StringBuilder();
+    json.append("{\"columns\": ").append(size).append(", \"rows\": ").append(size).append(", \"symbols\": {");
+    for (int symbol = 0; symbol < symbolCount; symbol++) {
+      json.append('"').append(standardSymbol(symbol)).append("\": {\"reward_multiplier\": ")
+              .append(1 + symbol % 10).append(", \"type\": \"standard\"}, ");
+    }
+    json.append("\"10x\": {\"reward_multiplier\": 10, \"type\": \"bonus\", \"impact\": \"multiply_reward\"}, ")
+            .append("\"5x\": {\"reward_multiplier\": 5, \"type\": \"bonus\", \"impact\": \"multiply_reward\"}, ")
+            .append("\"+1000\": {\"extra\": 1000, \"type\": \"bonus\", \"impact\": \"extra_bonus\"}, ")
+            .append("\"MISS\": {\"type\": \"bonus\", \"impact\": \"miss\"}}, ");
+
+    json.append("\"probabilities\": {\"standard_symbols\": [");
+    for (int cell = 0; cell < size * size; cell++) {
+      json.append(cell == 0 ? "" : ", ").append("{\"column\": ").append(cell % size)
+              .append(", \"row\": ").append(cell / size).append(", \"symbols\": {");
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        json.append(symbol == 0 ? "" : ", ").append('"').append(standardSymbol(symbol)).append("\": ")
+                .append(1 + (symbol + cell) % 6);
+      }
+      json.append("}}");
+    }
+    json.append("], \"bonus_symbols\": {\"symbols\": {\"10x\": 1, \"5x\": 2, \"+1000\": 3, \"MISS\": 5}}}, ");
+
+    json.append("\"win_combinations\": {");
+    int sameCombinations = Math.max(1, winCombinations - 4);
+    for (int i = 0; i < sameCombinations; i++) {
+      json.append('"').append("same_symbol_").append(3 + i).append("_times\": {\"reward_multiplier\": ")
+              .append(1 + i).append(", \"when\": \"same_symbols\", \"count\": ").append(3 + i).append("}, ");
+    }
+    String[] lines = {"horizontally", "vertically", "diagonally_left_to_right", "diagonally_right_to_left"};
+    for (int i = 0; i < winCombinations - sameCombinations; i++) {
+      json.append(i == 0 ? "" : ", ").append("\"same_symbols_").append(lines[i])
+              .append("\": {\"reward_multiplier\": ").append(2 + i)
+              .append(", \"when\": \"linear_symbols\", \"covered_areas\": ").append(coveredAreas(size, i)).append('}');
+    }
+    json.append("}}");
+
+    return new Gson().fromJson(json.toString(), GameConfiguration.class);
+  }
+
+  /**
+   * Builds a board that wins every combination: a 10x bonus in the first cell and the first
+   * standard symbol everywhere else.
+   * @param size The number of rows and columns
+   * @return The winning board as a matrix of symbol names
+   */
+  static String[][] winningMatrix(int size) {
+    String[][] matrix = new String[size][size];
+    for (int cell = 0; cell < size * size; cell++) {
+      matrix[cell / size][cell % size] = cell == 0 ? BONUS_SYMBOLS[0] : standardSymbol(0);
+    }
+    return matrix;
+  }
+
+  /**
+   * Builds a board that wins nothing: every standard symbol appears on two horizontally
+   * adjacent cells at most, so no same_symbols count of 3 and no line is reached.
+   * @param size The number of rows and columns
+   * @return The losing board as a matrix of symbol names
+   */
+  static String[][] losingMatrix(int size) {
+    String[][] matrix = new String[size][size];
+    for (int cell = 0; cell < size * size; cell++) {
+      matrix[cell / size][cell % size] = standardSymbol(cell / 2);
+    }
+    return matrix;
+  }
+
+  /**
+   * Gets the number of standard symbols of a configuration.
+   * @param size The number of rows and columns
+   * @return The number of standard symbols
+   */
+  private static int standardSymbolCount(int size) {
+    return Math.max(6, (size * size + 1) / 2);
+  }
+
+  /**
+   * Gets the name of a standard symbol.
+   * @param symbol The index of the symbol
+   * @return The symbol name
+   */
+  private static String standardSymbol(int symbol) {
+    return "S" + symbol;
+  }
+
+  /**
+   * Builds the covered areas of one kind of line as a JSON array.
+   * @param size The number of rows and columns
+   * @param line 0 for rows, 1 for columns, 2 and 3 for the two diagonals
+   * @return The covered areas
+   */
+  private static String coveredAreas(int size, int line) {
+    int areaCount = line < 2 ? size : 1;
+    StringBuilder json = new StringBuilder("[");
+    for (int area = 0; area < areaCount; area++) {
+      json.append(area == 0 ? "[" : ", [");
+      for (int i = 0; i < size; i++) {
+        int row = line == 0 ? area : i;
+        int column = line == 0 ? i : line == 1 ? area : line == 2 ? i : size - 1 - i;
+        json.append(i == 0 ? "" : ", ").append('"').append(row).append(':').append(column).append('"');
+      }
+      json.append(']');
+    }
+    return json.append(']').toString();
+  }
+}
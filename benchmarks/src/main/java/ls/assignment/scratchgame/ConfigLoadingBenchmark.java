@@ -0,0 +1,77 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ConfigLoadingBenchmark class measuring the parsing of a configuration file into a
+ * GameConfiguration and its compilation. The file is read into memory once, so disk access
+ * is not measured.
+ * @author LOTHFY ( LS )
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConfigLoadingBenchmark {
+  /** Path of the configuration file, relative to the working directory. */
+  @Param({"config.json"})
+  public String configPath;
+
+  private final Gson gson = new Gson();
+  private String json;
+  private GameConfiguration config;
+
+  /**
+   * Reads the configuration file.
+   * @throws IOException if the file cannot be read
+   */
+  @Setup
+  public void setup() throws IOException {
+    json = Files.readString(Path.of(configPath));
+    config = gson.fromJson(json, GameConfiguration.class);
+  }
+
+  /**
+   * Parses the configuration with Gson.
+   * @return The parsed configuration
+   */
+  @Benchmark
+  public GameConfiguration parse() {
+    return gson.fromJson(json, GameConfiguration.class);
+  }
+
+  /**
+   * Compiles an already parsed configuration.
+   * @return The compiled game
+   */
+  @Benchmark
+  public CompiledGame compile() {
+    return CompiledGame.compile(config);
+  }
+
+  /**
+   * Parses and compiles the configuration, the full cost of loading a game.
+   * @return The compiled game
+   */
+  @Benchmark
+  public CompiledGame parseAndCompile() {
+    return CompiledGame.compile(gson.fromJson(json, GameConfiguration.class));
+  }
+}
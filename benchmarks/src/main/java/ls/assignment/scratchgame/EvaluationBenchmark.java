@@ -0,0 +1,164 @@
+package ls.assignment.scratchgame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EvaluationBenchmark class measuring rule evaluation of a fixed winning or losing board
+ * with the reference implementation, with both evaluation engines and into a reused
+ * {@link MutableEvaluationResult}, and the re-evaluation of the board after a respin of its centre
+ * cell, from scratch and incrementally. Run with -prof gc to see that the reused result allocates
+ * nothing per evaluation while the name-based results allocate maps and lists.
+ * @author LOTHFY ( LS )
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EvaluationBenchmark {
+  private static final int BETTING_AMOUNT = 100;
+
+  @Param({"3", "5", "8"})
+  public int size;
+
+  @Param({"2", "8", "12"})
+  public int winCombinations;
+
+  @Param({"winning", "losing"})
+  public String board;
+
+  private GameConfiguration config;
+  private CompiledGame game;
+  private Matrix matrix;
+  private Board ids;
+  private Outcome outcome;
+  private RuleEvaluator arrayEngine;
+  private RuleEvaluator bitboardEngine;
+  private MutableEvaluationResult result;
+  private IncrementalEvaluator incremental;
+  private int respinCell;
+  private int[] respinSymbols;
+  private int respinIndex;
+
+  /**
+   * Compiles the generated configuration and builds the board to evaluate.
+   */
+  @Setup
+  public void setup() {
+    config = BenchmarkGames.configuration(size, winCombinations);
+    game = CompiledGame.compile(config);
+    String[][] names = "winning".equals(board) ? BenchmarkGames.winningMatrix(size) : BenchmarkGames.losingMatrix(size);
+    matrix = new Matrix(names, size, size);
+    ids = Board.of(names, game.getSymbols());
+    outcome = game.newOutcome();
+    arrayEngine = new BoardEvaluator(game.getSymbols(), game.getCombinations());
+    bitboardEngine = new BitboardEvaluator(game.getSymbols(), game.getCombinations());
+    result = new MutableEvaluationResult(game);
+    incremental = new IncrementalEvaluator(game);
+    incremental.reset(ids);
+    // The centre cell alternates between its symbol and another one, so every respin changes it
+    respinCell = ids.size() / 2;
+    respinSymbols = new int[] {ids.get(respinCell), ids.get(respinCell) == 0 ? 1 : 0};
+  }
+
+  /**
+   * Reference evaluation working on symbol names and the raw configuration.
+   * @return The evaluation result
+   */
+  @Benchmark
+  public Matrix.EvaluationResult referenceEvaluateRules() {
+    return matrix.evaluateRules(config, BETTING_AMOUNT);
+  }
+
+  /**
+   * Public evaluation of a matrix of names against the compiled game.
+   * @return The evaluation result
+   */
+  @Benchmark
+  public Matrix.EvaluationResult compiledEvaluateRules() {
+    return matrix.evaluateRules(game, BETTING_AMOUNT);
+  }
+
+  /**
+   * Public evaluation of a board of ids into a new name-based result.
+   * @return The evaluation result
+   */
+  @Benchmark
+  public Matrix.EvaluationResult compiledEvaluate() {
+    return game.evaluate(ids, BETTING_AMOUNT);
+  }
+
+  /**
+   * Public evaluation of a board of ids into a reused result.
+   * @return The reward
+   */
+  @Benchmark
+  public double reusableResult() {
+    game.evaluate(ids, BETTING_AMOUNT, result);
+    return result.getReward();
+  }
+
+  /**
+   * Public evaluation of a matrix of names into a reused result.
+   * @return The reward
+   */
+  @Benchmark
+  public double matrixReusableResult() {
+    matrix.evaluateRules(game, BETTING_AMOUNT, result);
+    return result.getReward();
+  }
+
+  /**
+   * Evaluation of a board of ids into a reused outcome with the array engine.
+   * @return The reward
+   */
+  @Benchmark
+  public double arrayEngine() {
+    arrayEngine.evaluate(ids, outcome);
+    return outcome.applyBonus(outcome.baseReward(BETTING_AMOUNT));
+  }
+
+  /**
+   * Evaluation of a board of ids into a reused outcome with the bitboard engine.
+   * @return The reward
+   */
+  @Benchmark
+  public double bitboardEngine() {
+    bitboardEngine.evaluate(ids, outcome);
+    return outcome.applyBonus(outcome.baseReward(BETTING_AMOUNT));
+  }
+
+  /**
+   * Respin of the centre cell followed by a full evaluation with the bitboard engine.
+   * @return The reward
+   */
+  @Benchmark
+  public double respinFullEvaluation() {
+    ids.set(respinCell, respinSymbols[respinIndex ^= 1]);
+    bitboardEngine.evaluate(ids, outcome);
+    return outcome.applyBonus(outcome.baseReward(BETTING_AMOUNT));
+  }
+
+  /**
+   * Respin of the centre cell followed by an incremental re-evaluation.
+   * @return The reward
+   */
+  @Benchmark
+  public double respinIncremental() {
+    incremental.set(respinCell, respinSymbols[respinIndex ^= 1]);
+    Outcome current = incremental.outcome();
+    return current.applyBonus(current.baseReward(BETTING_AMOUNT));
+  }
+}
@@ -0,0 +1,108 @@
+package ls.assignment.scratchgame;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GenerationBenchmark class measuring board generation and weighted symbol selection.
+ * @author LOTHFY ( LS )
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GenerationBenchmark {
+  @Param({"3", "5", "8"})
+  public int size;
+
+  private GameConfiguration config;
+  private CompiledGame game;
+  private RandomGenerator random;
+  private RoundRandom roundRandom;
+  private long round;
+  private Board board;
+  private AliasSampler sampler;
+
+  /**
+   * Compiles the generated configuration and builds the sampler of the first cell.
+   */
+  @Setup
+  public void setup() {
+    config = BenchmarkGames.configuration(size, 2);
+    game = CompiledGame.compile(config);
+    random = RandomGeneratorFactory.of(RoundRandom.DEFAULT_ALGORITHM).create(42);
+    roundRandom = new RoundRandom();
+    board = game.newBoard();
+
+    Map<String, Integer> weights = config.getProbabilities().getStandardSymbols().get(0).getSymbols();
+    int[] outcomes = new int[weights.size()];
+    int[] values = new int[weights.size()];
+    int i = 0;
+    for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+      outcomes[i] = game.getSymbols().idOf(entry.getKey());
+      values[i++] = entry.getValue();
+    }
+    sampler = new AliasSampler(outcomes, values);
+  }
+
+  /**
+   * Public entry point: compiles the configuration and generates a matrix of names.
+   * @return The generated matrix
+   */
+  @Benchmark
+  public Matrix generateMatrixFromConfiguration() {
+    return Matrix.generateMatrix(config);
+  }
+
+  /**
+   * Generates a matrix of names from the compiled game.
+   * @return The generated matrix
+   */
+  @Benchmark
+  public Matrix generateMatrix() {
+    return game.generateMatrix(random);
+  }
+
+  /**
+   * Fills a reused board with symbol ids.
+   * @return The filled board
+   */
+  @Benchmark
+  public Board generateBoard() {
+    return game.generateBoard(random, board);
+  }
+
+  /**
+   * Fills a reused board from the replayable stream of the next round, as the simulator does.
+   * @return The filled board
+   */
+  @Benchmark
+  public Board generateReplayableBoard() {
+    roundRandom.reset(42, round++);
+    return game.generateBoard(roundRandom, board);
+  }
+
+  /**
+   * Selects one symbol of a cell, the work the old selectSymbol did per cell.
+   * @return The selected symbol id
+   */
+  @Benchmark
+  public int selectSymbol() {
+    return sampler.sample(random);
+  }
+}
@@ -0,0 +1,154 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PlayBenchmark class measuring complete rounds (generation and evaluation) of a configuration file,
+ * played one Matrix at a time or in batches, with or without an {@link EvaluationCache}, and of
+ * rounds printed with Matrix.toString and Gson or written by a {@link RoundWriter}, both to a
+ * discarding stream. Scores are per round; run with -prof gc to compare the allocation rates.
+ * @author LOTHFY ( LS )
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PlayBenchmark {
+  private static final int BATCH_SIZE = 1024;
+
+  /** Path of the configuration file, relative to the working directory. */
+  @Param({"config.json"})
+  public String configPath;
+
+  /** Number of distinct rounds the cached benchmark cycles through, so that boards repeat. */
+  @Param({"65536"})
+  public int replayRounds;
+
+  private CompiledGame game;
+  private RoundRandom random;
+  private BatchPlayer player;
+  private EvaluationCache cache;
+  private BatchPlayer cachedPlayer;
+  private int[] bets;
+  private double[] rewards;
+  private long[] combinations;
+  private int[] bonusSymbols;
+  private Gson gson;
+  private PrintStream printer;
+  private RoundWriter writer;
+  private long round;
+
+  /**
+   * Loads the configuration and allocates the batch arrays.
+   * @throws IOException if the file cannot be read
+   */
+  @Setup
+  public void setup() throws IOException {
+    try (Reader reader = Files.newBufferedReader(Path.of(configPath))) {
+      game = CompiledGame.compile(new Gson().fromJson(reader, GameConfiguration.class));
+    }
+    random = new RoundRandom();
+    player = new BatchPlayer(game);
+    cache = new EvaluationCache(game, 16 << 20);
+    cachedPlayer = new BatchPlayer(game, cache);
+    bets = new int[BATCH_SIZE];
+    Arrays.fill(bets, 100);
+    rewards = new double[BATCH_SIZE];
+    combinations = new long[BATCH_SIZE];
+    bonusSymbols = new int[BATCH_SIZE];
+    gson = new Gson();
+    printer = new PrintStream(OutputStream.nullOutputStream());
+    writer = new RoundWriter(game, OutputStream.nullOutputStream(), RoundWriter.Format.NDJSON);
+  }
+
+  /**
+   * Plays rounds one at a time through the public Matrix API.
+   * @return The rewards of the rounds
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public double matrixRounds() {
+    double total = 0.0;
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      random.reset(42, round++);
+      total += game.generateMatrix(random).evaluateRules(game, 100).reward;
+    }
+    return total;
+  }
+
+  /**
+   * Plays the same number of rounds as one batch.
+   * @return The rewards of the batch
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public double[] batchRounds() {
+    player.play(42, round, bets, rewards, combinations, bonusSymbols);
+    round += BATCH_SIZE;
+    return rewards;
+  }
+
+  /**
+   * Plays a batch through an evaluation cache, cycling through replayRounds rounds.
+   * @return The rewards of the batch
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public double[] cachedBatchRounds() {
+    cachedPlayer.play(42, round, bets, rewards, combinations, bonusSymbols);
+    round = (round + BATCH_SIZE) % replayRounds;
+    return rewards;
+  }
+
+  /**
+   * Plays rounds one at a time and prints each matrix and its result, the way the command line
+   * prints a single round, with the result serialized by Gson.
+   * @return The number of rounds printed
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int printedRounds() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      random.reset(42, round++);
+      Matrix matrix = game.generateMatrix(random);
+      printer.println(matrix);
+      printer.println(gson.toJson(matrix.evaluateRules(game, 100)));
+    }
+    return BATCH_SIZE;
+  }
+
+  /**
+   * Plays rounds one at a time and writes them as NDJSON lines.
+   * @return The number of bytes written so far
+   * @throws IOException never, the stream discards its input
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public long writtenRounds() throws IOException {
+    writer.writeRounds(42, round, BATCH_SIZE, 100);
+    round += BATCH_SIZE;
+    return writer.getBytes();
+  }
+}
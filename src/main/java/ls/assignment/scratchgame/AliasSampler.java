@@ -0,0 +1,154 @@
+package ls.assignment.scratchgame;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.random.RandomGenerator;
+
+/**
+ * AliasSampler class implementing Vose's alias method over integer weights.
+ * Draws one outcome in constant time using a single bounded random draw and two array reads.
+ * The table is built with exact integer arithmetic, so the sampled distribution matches the
+ * configured weights exactly.
+ * @author LOTHFY ( LS )
+ */
+final class AliasSampler {
+  private final int[] outcomes;
+  private final int[] aliases;
+  private final long[] thresholds;
+  private final long totalWeight;
+  private final long span;
+
+  /**
+   * Builds an alias table for the given outcomes and weights.
+   * @param outcomes The outcome returned for each weight (e.g. interned symbol ids)
+   * @param weights The non-negative weight of each outcome
+   * @throws IllegalArgumentException if a weight is negative or the total probability weight is zero
+   */
+  AliasSampler(int[] outcomes, int[] weights) {
+    if (outcomes.length != weights.length) {
+      throw new IllegalArgumentException("Outcomes and weights must have the same length");
+    }
+    int n = weights.length;
+    long total = 0;
+    for (int weight : weights) {
+      if (weight < 0) {
+        throw new IllegalArgumentException("Probability weight must not be negative: " + weight);
+      }
+      total += weight;
+    }
+    if (total == 0) {
+      throw new IllegalArgumentException("Total probability weight is zero");
+    }
+
+    this.outcomes = outcomes.clone();
+    this.aliases = new int[n];
+    this.thresholds = new long[n];
+    this.totalWeight = total;
+    this.span = Math.multiplyExact(total, n);
+
+    // Scale every weight by n so that the average column holds exactly totalWeight
+    long[] scaled = new long[n];
+    Deque<Integer> small = new ArrayDeque<>();
+    Deque<Integer> large = new ArrayDeque<>();
+    for (int i = 0; i < n; i++) {
+      scaled[i] = (long) weights[i] * n;
+      if (scaled[i] < total) {
+        small.push(i);
+      } else {
+        large.push(i);
+      }
+    }
+
+    while (!small.isEmpty() && !large.isEmpty()) {
+      int less = small.pop();
+      int more = large.pop();
+      thresholds[less] = scaled[less];
+      aliases[less] = this.outcomes[more];
+      scaled[more] -= total - scaled[less];
+      if (scaled[more] < total) {
+        small.push(more);
+      } else {
+        large.push(more);
+      }
+    }
+    while (!large.isEmpty()) {
+      int column = large.pop();
+      thresholds[column] = total;
+      aliases[column] = this.outcomes[column];
+    }
+    while (!small.isEmpty()) {
+      int column = small.pop();
+      thresholds[column] = total;
+      aliases[column] = this.outcomes[column];
+    }
+  }
+
+  /**
+   * Restores an alias table built earlier, as stored in a {@link ConfigSnapshot}.
+   * @param outcomes The outcome of every column
+   * @param aliases The alias outcome of every column
+   * @param thresholds The threshold of every column
+   * @param totalWeight The sum of all weights
+   * @throws IllegalArgumentException if the arrays differ in length or the table is inconsistent
+   */
+  AliasSampler(int[] outcomes, int[] aliases, long[] thresholds, long totalWeight) {
+    if (outcomes.length == 0 || aliases.length != outcomes.length || thresholds.length != outcomes.length
+            || totalWeight <= 0) {
+      throw new IllegalArgumentException("Inconsistent alias table");
+    }
+    for (long threshold : thresholds) {
+      if (threshold < 0 || threshold > totalWeight) {
+        throw new IllegalArgumentException("Inconsistent alias table");
+      }
+    }
+    this.outcomes = outcomes;
+    this.aliases = aliases;
+    this.thresholds = thresholds;
+    this.totalWeight = totalWeight;
+    this.span = Math.multiplyExact(totalWeight, outcomes.length);
+  }
+
+  /**
+   * Draws one outcome from the table.
+   * @param random The random generator to draw from
+   * @return The selected outcome
+   */
+  int sample(RandomGenerator random) {
+    long draw = random.nextLong(span);
+    int column = (int) (draw / totalWeight);
+    long position = draw - column * totalWeight;
+    return position < thresholds[column] ? outcomes[column] : aliases[column];
+  }
+
+  /**
+   * Returns the sum of all weights in the table.
+   * @return The total weight
+   */
+  long getTotalWeight() {
+    return totalWeight;
+  }
+
+  /**
+   * Returns the outcome of every column.
+   * @return The outcomes, not to be modified
+   */
+  int[] outcomes() {
+    return outcomes;
+  }
+
+  /**
+   * Returns the alias outcome of every column.
+   * @return The aliases, not to be modified
+   */
+  int[] aliases() {
+    return aliases;
+  }
+
+  /**
+   * Returns the threshold below which a column yields its own outcome.
+   * @return The thresholds, not to be modified
+   */
+  long[] thresholds() {
+    return thresholds;
+  }
+}
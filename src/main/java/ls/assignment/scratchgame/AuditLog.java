@@ -0,0 +1,302 @@
+package ls.assignment.scratchgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * AuditLog class recording every played round in an append-only binary log.
+ * The log is a directory of segment files, each a fixed-size memory-mapped region holding a
+ * header and up to a fixed number of fixed-width records. A record is written with a few
+ * absolute puts into the mapped segment, so appending costs neither a system call nor any
+ * text formatting; when a segment is full, or a round of a game with other board dimensions is
+ * appended, the log rolls over to a new one. Opening a log never touches existing segments: it
+ * starts a new segment after the last one.
+ *
+ * <p>Segment header ({@value #HEADER_SIZE} bytes, big-endian like every value of the log):
+ * magic, version, record size, rows, columns, record capacity (ints), record count (long, updated
+ * after every record), segment index (long).
+ * Record: round, seed, configuration hash (longs), betting amount, applied bonus symbol id or -1
+ * (ints), reward (double), applied combinations bitmask (long), then one byte per cell holding the
+ * symbol id, padded to 8 bytes. See {@link AuditLogReader} to scan and verify a log.
+ *
+ * <p>Appending is thread-safe; the lock is a ReentrantLock so virtual threads do not pin their carrier.
+ * @author LOTHFY ( LS )
+ */
+public final class AuditLog implements Closeable {
+  static final int MAGIC = 0x5347414c;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int COUNT_OFFSET = 24;
+  static final int BOARD_OFFSET = 48;
+  static final String SEGMENT_PREFIX = "audit-";
+  static final String SEGMENT_SUFFIX = ".log";
+
+  /** Default number of records per segment. */
+  public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+  private final Path directory;
+  private final CompiledGame game;
+  private final int segmentRecords;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private long segmentIndex;
+  private int segmentRows;
+  private int segmentColumns;
+  private int recordSize;
+  private FileChannel channel;
+  private MappedByteBuffer segment;
+  private int segmentCount;
+
+  /**
+   * Private constructor used by {@link #open(Path, CompiledGame, int)}.
+   * @param directory The log directory
+   * @param game The compiled game whose rounds are logged
+   * @param segmentRecords The number of records per segment
+   * @param segmentIndex The index of the first segment to write
+   */
+  private AuditLog(Path directory, CompiledGame game, int segmentRecords, long segmentIndex) {
+    this.directory = directory;
+    this.game = game;
+    this.segmentRecords = segmentRecords;
+    this.segmentIndex = segmentIndex;
+  }
+
+  /**
+   * Opens a log for appending, creating the directory if needed. The first record goes into a
+   * new segment after the last existing one.
+   * @param directory The log directory
+   * @param game The compiled game whose rounds are logged by default
+   * @param segmentRecords The number of records per segment
+   * @return The opened log
+   * @throws IOException if the directory or the first segment cannot be created
+   * @throws IllegalArgumentException if segmentRecords is not positive or a segment would exceed 2 GiB,
+   *         or if the game has more than 64 win combinations
+   */
+  public static AuditLog open(Path directory, CompiledGame game, int segmentRecords) throws IOException {
+    if (segmentRecords <= 0) {
+      throw new IllegalArgumentException("Records per segment must be positive");
+    }
+    checkGame(game, segmentRecords);
+    Files.createDirectories(directory);
+    long next;
+    try (Stream<Path> files = Files.list(directory)) {
+      next = files.mapToLong(AuditLog::segmentIndexOf).max().orElse(-1) + 1;
+    }
+    AuditLog log = new AuditLog(directory, game, segmentRecords, next);
+    log.openSegment(game.getRows(), game.getColumns());
+    return log;
+  }
+
+  /**
+   * Checks that the rounds of a game can be logged.
+   * @param game The compiled game
+   * @param segmentRecords The number of records per segment
+   * @throws IllegalArgumentException if a segment would exceed 2 GiB or the game has more than 64 win combinations
+   */
+  private static void checkGame(CompiledGame game, int segmentRecords) {
+    if ((long) segmentRecords * recordSize(game.getRows() * game.getColumns()) + HEADER_SIZE > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Audit log segment too large: " + segmentRecords + " records");
+    }
+    if (game.getCombinations().size() > Long.SIZE) {
+      throw new IllegalArgumentException("Audit log supports at most " + Long.SIZE + " win combinations");
+    }
+  }
+
+  /**
+   * Appends one round of the game the log was opened with.
+   * @param seed The seed the board was drawn with
+   * @param round The round index the board was drawn with
+   * @param bettingAmount The amount bet
+   * @param board The played board
+   * @param reward The reward paid
+   * @param appliedCombinations The applied combinations bitmask (bit i for combination id i)
+   * @param appliedBonusSymbol The applied bonus symbol id, or -1
+   * @throws IOException if a new segment cannot be created
+   * @throws IllegalArgumentException if the board does not have the dimensions of the game
+   */
+  public void append(long seed, long round, int bettingAmount, Board board, double reward,
+                     long appliedCombinations, int appliedBonusSymbol) throws IOException {
+    append(game, seed, round, bettingAmount, board, reward, appliedCombinations, appliedBonusSymbol);
+  }
+
+  /**
+   * Appends one round of a given game, for instance a reloaded version of the configuration.
+   * @param game The compiled game the round was played on
+   * @param seed The seed the board was drawn with
+   * @param round The round index the board was drawn with
+   * @param bettingAmount The amount bet
+   * @param board The played board
+   * @param reward The reward paid
+   * @param appliedCombinations The applied combinations bitmask (bit i for combination id i)
+   * @param appliedBonusSymbol The applied bonus symbol id, or -1
+   * @throws IOException if a new segment cannot be created
+   * @throws IllegalArgumentException if the board does not have the dimensions of the game, or the
+   *         rounds of the game cannot be logged
+   */
+  public void append(CompiledGame game, long seed, long round, int bettingAmount, Board board, double reward,
+                     long appliedCombinations, int appliedBonusSymbol) throws IOException {
+    if (board.getRows() != game.getRows() || board.getColumns() != game.getColumns()) {
+      throw new IllegalArgumentException("Board dimensions do not match the game");
+    }
+    lock.lock();
+    try {
+      if (segment == null) {
+        throw new IllegalStateException("Audit log closed");
+      }
+      if (segmentCount == segmentRecords || game.getRows() != segmentRows || game.getColumns() != segmentColumns) {
+        checkGame(game, segmentRecords);
+        closeSegment();
+        segmentIndex++;
+        openSegment(game.getRows(), game.getColumns());
+      }
+      int position = HEADER_SIZE + segmentCount * recordSize;
+      segment.putLong(position, round);
+      segment.putLong(position + 8, seed);
+      segment.putLong(position + 16, game.getConfigurationHash());
+      segment.putInt(position + 24, bettingAmount);
+      segment.putInt(position + 28, appliedBonusSymbol);
+      segment.putDouble(position + 32, reward);
+      segment.putLong(position + 40, appliedCombinations);
+      segment.put(position + BOARD_OFFSET, board.cells());
+      // Publish the record only once it is complete
+      segment.putLong(COUNT_OFFSET, ++segmentCount);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Appends one round from its evaluated outcome.
+   * @param game The compiled game the round was played on
+   * @param seed The seed the board was drawn with
+   * @param round The round index the board was drawn with
+   * @param bettingAmount The amount bet
+   * @param board The played board
+   * @param outcome The outcome of evaluating the board
+   * @return The reward of the round
+   * @throws IOException if a new segment cannot be created
+   */
+  double append(CompiledGame game, long seed, long round, int bettingAmount, Board board, Outcome outcome)
+          throws IOException {
+    double baseReward = outcome.baseReward(bettingAmount);
+    double reward = outcome.applyBonus(baseReward);
+    append(game, seed, round, bettingAmount, board, reward, outcome.appliedCombinationMask(),
+            outcome.appliedBonusSymbol(baseReward));
+    return reward;
+  }
+
+  /**
+   * Forces the records written so far to the storage device.
+   */
+  public void flush() {
+    lock.lock();
+    try {
+      if (segment != null) {
+        segment.force();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flushes and closes the log.
+   * @throws IOException if the current segment cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (segment != null) {
+        closeSegment();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the directory of the log.
+   * @return The log directory
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Creates and maps the segment at segmentIndex and writes its header.
+   * @param rows The number of board rows of the records of the segment
+   * @param columns The number of board columns of the records of the segment
+   * @throws IOException if the segment cannot be created
+   */
+  private void openSegment(int rows, int columns) throws IOException {
+    segmentRows = rows;
+    segmentColumns = columns;
+    recordSize = recordSize(rows * columns);
+    Path path = directory.resolve(segmentName(segmentIndex));
+    channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) segmentRecords * recordSize);
+    segment.putInt(0, MAGIC);
+    segment.putInt(4, VERSION);
+    segment.putInt(8, recordSize);
+    segment.putInt(12, rows);
+    segment.putInt(16, columns);
+    segment.putInt(20, segmentRecords);
+    segment.putLong(COUNT_OFFSET, 0);
+    segment.putLong(32, segmentIndex);
+    segmentCount = 0;
+  }
+
+  /**
+   * Forces and closes the current segment.
+   * @throws IOException if the channel cannot be closed
+   */
+  private void closeSegment() throws IOException {
+    segment.force();
+    segment = null;
+    channel.close();
+    channel = null;
+  }
+
+  /**
+   * Computes the size of a record.
+   * @param cells The number of cells of a board
+   * @return The record size, a multiple of 8
+   */
+  static int recordSize(int cells) {
+    return BOARD_OFFSET + ((cells + 7) & ~7);
+  }
+
+  /**
+   * Builds the file name of a segment.
+   * @param index The segment index
+   * @return The file name
+   */
+  static String segmentName(long index) {
+    return String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+  }
+
+  /**
+   * Parses the index of a segment file.
+   * @param path The file path
+   * @return The segment index, or -1 if the file is not a segment
+   */
+  static long segmentIndexOf(Path path) {
+    String name = path.getFileName().toString();
+    if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
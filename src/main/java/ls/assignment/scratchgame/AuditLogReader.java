@@ -0,0 +1,257 @@
+package ls.assignment.scratchgame;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * AuditLogReader class scanning the segments of an {@link AuditLog} in order and re-verifying
+ * the recorded rounds against a compiled game.
+ * Segments are mapped read-only and every record is exposed through one reused {@link Record},
+ * so scanning allocates nothing per record.
+ * @author LOTHFY ( LS )
+ */
+public final class AuditLogReader {
+  private final Path directory;
+
+  /**
+   * Constructs a reader for a log directory.
+   * @param directory The log directory
+   */
+  public AuditLogReader(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * One record of the log. The instance passed to a visitor is reused for the next record;
+   * copy what must be kept.
+   */
+  public static final class Record {
+    long segment;
+    long round;
+    long seed;
+    long configurationHash;
+    int bettingAmount;
+    int appliedBonusSymbol;
+    double reward;
+    long appliedCombinations;
+    Board board;
+
+    /**
+     * Gets the index of the segment holding the record.
+     * @return The segment index
+     */
+    public long getSegment() {
+      return segment;
+    }
+
+    /**
+     * Gets the round index the board was drawn with.
+     * @return The round index
+     */
+    public long getRound() {
+      return round;
+    }
+
+    /**
+     * Gets the seed the board was drawn with.
+     * @return The seed
+     */
+    public long getSeed() {
+      return seed;
+    }
+
+    /**
+     * Gets the hash of the configuration the round was played with.
+     * @return The configuration hash, see {@link CompiledGame#getConfigurationHash()}
+     */
+    public long getConfigurationHash() {
+      return configurationHash;
+    }
+
+    /**
+     * Gets the amount bet.
+     * @return The betting amount
+     */
+    public int getBettingAmount() {
+      return bettingAmount;
+    }
+
+    /**
+     * Gets the applied bonus symbol.
+     * @return The bonus symbol id, or -1
+     */
+    public int getAppliedBonusSymbol() {
+      return appliedBonusSymbol;
+    }
+
+    /**
+     * Gets the reward paid.
+     * @return The reward
+     */
+    public double getReward() {
+      return reward;
+    }
+
+    /**
+     * Gets the applied combinations.
+     * @return The bitmask in which bit i stands for combination id i
+     */
+    public long getAppliedCombinations() {
+      return appliedCombinations;
+    }
+
+    /**
+     * Gets the played board.
+     * @return The board, reused for the next record
+     */
+    public Board getBoard() {
+      return board;
+    }
+  }
+
+  /**
+   * Result of verifying a log against a compiled game.
+   */
+  public static final class Verification {
+    /** Number of records scanned. */
+    public long records;
+    /** Number of records played with another configuration, which are not verified. */
+    public long otherConfiguration;
+    /** Number of records whose board is not the board drawn from their seed and round. */
+    public long boardMismatches;
+    /** Number of records whose reward, combinations or bonus differ from evaluating their board. */
+    public long resultMismatches;
+    /** Round index of the first mismatching record, or -1. */
+    public long firstMismatchRound = -1;
+
+    /**
+     * Checks whether every verified record matched.
+     * @return true if no mismatch was found
+     */
+    public boolean isValid() {
+      return boardMismatches == 0 && resultMismatches == 0;
+    }
+
+    /**
+     * Prints a report of the verification.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+      out.println(String.format(Locale.ROOT, "Records         : %d", records));
+      out.println(String.format(Locale.ROOT, "Verified        : %d", records - otherConfiguration));
+      out.println(String.format(Locale.ROOT, "Other config    : %d", otherConfiguration));
+      out.println(String.format(Locale.ROOT, "Board mismatch  : %d", boardMismatches));
+      out.println(String.format(Locale.ROOT, "Result mismatch : %d", resultMismatches));
+      if (firstMismatchRound >= 0) {
+        out.println(String.format(Locale.ROOT, "First mismatch  : round %d", firstMismatchRound));
+      }
+    }
+  }
+
+  /**
+   * Visits every record of the log in segment order.
+   * @param visitor The visitor called with every record
+   * @return The number of records visited
+   * @throws IOException if a segment cannot be read
+   * @throws IllegalStateException if a segment is corrupt
+   */
+  public long scan(Consumer<Record> visitor) throws IOException {
+    List<Path> segments;
+    try (Stream<Path> files = Files.list(directory)) {
+      segments = files.filter(path -> AuditLog.segmentIndexOf(path) >= 0)
+              .sorted((a, b) -> Long.compare(AuditLog.segmentIndexOf(a), AuditLog.segmentIndexOf(b)))
+              .toList();
+    }
+
+    Record record = new Record();
+    long total = 0;
+    for (Path path : segments) {
+      try (FileChannel channel = FileChannel.open(path)) {
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (segment.capacity() < AuditLog.HEADER_SIZE || segment.getInt(0) != AuditLog.MAGIC) {
+          throw new IllegalStateException("Not an audit log segment: " + path);
+        }
+        if (segment.getInt(4) != AuditLog.VERSION) {
+          throw new IllegalStateException("Unsupported audit log version " + segment.getInt(4) + " in " + path);
+        }
+        int recordSize = segment.getInt(8);
+        int rows = segment.getInt(12);
+        int columns = segment.getInt(16);
+        long count = segment.getLong(AuditLog.COUNT_OFFSET);
+        if (recordSize != AuditLog.recordSize(rows * columns) || count < 0 || count > segment.getInt(20)
+                || AuditLog.HEADER_SIZE + count * recordSize > segment.capacity()) {
+          throw new IllegalStateException("Corrupt audit log segment header: " + path);
+        }
+        record.segment = segment.getLong(32);
+        if (record.board == null || record.board.getRows() != rows || record.board.getColumns() != columns) {
+          record.board = new Board(rows, columns);
+        }
+
+        byte[] cells = record.board.cells();
+        for (int i = 0; i < count; i++) {
+          int position = AuditLog.HEADER_SIZE + i * recordSize;
+          record.round = segment.getLong(position);
+          record.seed = segment.getLong(position + 8);
+          record.configurationHash = segment.getLong(position + 16);
+          record.bettingAmount = segment.getInt(position + 24);
+          record.appliedBonusSymbol = segment.getInt(position + 28);
+          record.reward = segment.getDouble(position + 32);
+          record.appliedCombinations = segment.getLong(position + 40);
+          segment.get(position + AuditLog.BOARD_OFFSET, cells);
+          visitor.accept(record);
+        }
+        total += count;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Re-verifies every record played with the given game: the board must be the board drawn from
+   * the record's seed and round, and evaluating it must give the recorded reward, combinations
+   * and bonus symbol.
+   * @param game The compiled game the rounds were played with
+   * @return The verification result
+   * @throws IOException if a segment cannot be read
+   */
+  public Verification verify(CompiledGame game) throws IOException {
+    Verification verification = new Verification();
+    RoundRandom random = new RoundRandom();
+    Board replayed = game.newBoard();
+    Outcome outcome = game.newOutcome();
+    scan(record -> {
+      verification.records++;
+      if (record.configurationHash != game.getConfigurationHash()
+              || record.board.getRows() != game.getRows() || record.board.getColumns() != game.getColumns()) {
+        verification.otherConfiguration++;
+        return;
+      }
+      random.reset(record.seed, record.round);
+      boolean mismatch = false;
+      if (!game.generateBoard(random, replayed).equals(record.board)) {
+        verification.boardMismatches++;
+        mismatch = true;
+      }
+      game.evaluate(record.board, outcome);
+      double baseReward = outcome.baseReward(record.bettingAmount);
+      if (outcome.applyBonus(baseReward) != record.reward
+              || outcome.appliedCombinationMask() != record.appliedCombinations
+              || outcome.appliedBonusSymbol(baseReward) != record.appliedBonusSymbol) {
+        verification.resultMismatches++;
+        mismatch = true;
+      }
+      if (mismatch && verification.firstMismatchRound < 0) {
+        verification.firstMismatchRound = record.round;
+      }
+    });
+    return verification;
+  }
+}
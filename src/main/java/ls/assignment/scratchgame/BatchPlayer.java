@@ -0,0 +1,97 @@
+package ls.assignment.scratchgame;
+
+/**
+ * BatchPlayer class playing many rounds of a compiled game in one call and writing the results
+ * into caller-provided primitive arrays, one slot per round (struct of arrays).
+ * Unlike {@link Matrix#evaluateRules(GameConfiguration, int)}, playing a batch allocates nothing:
+ * the player reuses one board, one outcome and one random stream for all rounds.
+ * Round i of a batch is drawn from the stream of (seed, firstRound + i), so every round can be
+ * replayed with {@link RoundRandom}. Given an {@link EvaluationCache}, boards played before are
+ * looked up in it instead of being evaluated again.
+ * A BatchPlayer is not thread-safe; use one per thread. The compiled game itself can be shared.
+ * @author LOTHFY ( LS )
+ */
+public final class BatchPlayer {
+  private final CompiledGame game;
+  private final RoundRandom random;
+  private final Board board;
+  private final Outcome outcome;
+  private final EvaluationCache cache;
+
+  /**
+   * Constructs a batch player.
+   * @param game The compiled game to play
+   * @throws IllegalArgumentException if the game has more than 64 win combinations
+   */
+  public BatchPlayer(CompiledGame game) {
+    this(game, null);
+  }
+
+  /**
+   * Constructs a batch player evaluating through a cache.
+   * @param game The compiled game to play
+   * @param cache The cache of evaluated boards of the game, or null; not shared with other threads
+   * @throws IllegalArgumentException if the game has more than 64 win combinations or the cache
+   *         belongs to another game
+   */
+  public BatchPlayer(CompiledGame game, EvaluationCache cache) {
+    if (game.getCombinations().size() > Long.SIZE) {
+      throw new IllegalArgumentException("Batch play supports at most " + Long.SIZE + " win combinations");
+    }
+    if (cache != null && cache.getGame() != game) {
+      throw new IllegalArgumentException("Cache belongs to another game");
+    }
+    this.game = game;
+    this.random = new RoundRandom();
+    this.board = game.newBoard();
+    this.outcome = game.newOutcome();
+    this.cache = cache;
+  }
+
+  /**
+   * Plays one round per betting amount.
+   * @param seed The master seed
+   * @param firstRound The index of the first round of the batch
+   * @param bettingAmounts The amount bet in every round; its length is the number of rounds
+   * @param rewards Receives the reward of every round
+   * @param appliedCombinations Receives the applied combinations of every round as a bitmask in which
+   *                            bit i stands for combination id i of {@link CompiledGame#getCombinations()};
+   *                            may be null
+   * @param appliedBonusSymbols Receives the id in {@link CompiledGame#getSymbols()} of the bonus symbol
+   *                            applied in every round, or -1; may be null
+   * @throws IllegalArgumentException if an output array is shorter than bettingAmounts
+   */
+  public void play(long seed, long firstRound, int[] bettingAmounts, double[] rewards,
+                   long[] appliedCombinations, int[] appliedBonusSymbols) {
+    int rounds = bettingAmounts.length;
+    if (rewards.length < rounds
+            || (appliedCombinations != null && appliedCombinations.length < rounds)
+            || (appliedBonusSymbols != null && appliedBonusSymbols.length < rounds)) {
+      throw new IllegalArgumentException("Output arrays must hold " + rounds + " rounds");
+    }
+    for (int i = 0; i < rounds; i++) {
+      random.reset(seed, firstRound + i);
+      game.generateBoard(random, board);
+      if (cache != null) {
+        rewards[i] = cache.reward(board, bettingAmounts[i]);
+        if (appliedCombinations != null) {
+          appliedCombinations[i] = cache.appliedCombinations();
+        }
+        if (appliedBonusSymbols != null) {
+          appliedBonusSymbols[i] = cache.appliedBonusSymbol();
+        }
+        continue;
+      }
+      game.evaluate(board, outcome);
+
+      double baseReward = outcome.baseReward(bettingAmounts[i]);
+      rewards[i] = outcome.applyBonus(baseReward);
+      if (appliedCombinations != null) {
+        appliedCombinations[i] = outcome.appliedCombinationMask();
+      }
+      if (appliedBonusSymbols != null) {
+        appliedBonusSymbols[i] = outcome.appliedBonusSymbol(baseReward);
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package ls.assignment.scratchgame;
+
+/**
+ * BitboardEvaluator class applying the game rules to boards of up to 64 cells.
+ * Keeps one {@code long} occupancy mask per symbol, so same_symbols counts are a
+ * {@link Long#bitCount(long)}, every covered area is a single {@code (mask & area) == area}
+ * test and the first bonus symbol is the lowest set bit of the bonus mask.
+ * Gives the same results as {@link BoardEvaluator} and performs no allocation.
+ * @author LOTHFY ( LS )
+ */
+final class BitboardEvaluator implements RuleEvaluator {
+  private final CompiledCombinations combinations;
+  private final boolean[] standard;
+  private final boolean[] bonus;
+  private final long[] standardFilter;
+  private final long[] areaMasks;
+  private final int[] areaFirstCells;
+
+  /**
+   * Constructs an evaluator for a compiled game.
+   * @param symbols The interned symbols of the game
+   * @param combinations The compiled winning combinations of the game
+   * @throws IllegalStateException if the board has more than 64 cells
+   */
+  BitboardEvaluator(SymbolTable symbols, CompiledCombinations combinations) {
+    if (!combinations.hasAreaMasks()) {
+      throw new IllegalStateException("Bitboard evaluation needs a board of at most 64 cells");
+    }
+    this.combinations = combinations;
+    this.standard = new boolean[symbols.size()];
+    this.bonus = new boolean[symbols.size()];
+    this.standardFilter = new long[symbols.size()];
+    for (int symbol = 0; symbol < symbols.size(); symbol++) {
+      standard[symbol] = symbols.isStandard(symbol);
+      bonus[symbol] = symbols.isBonus(symbol);
+      // Non-standard symbols never complete an area: their filter clears every bit
+      standardFilter[symbol] = standard[symbol] ? -1L : 0L;
+    }
+    int areaCount = combinations.areaCount();
+    this.areaMasks = new long[areaCount];
+    this.areaFirstCells = new int[areaCount];
+    for (int area = 0; area < areaCount; area++) {
+      areaMasks[area] = combinations.areaMask(area);
+      areaFirstCells[area] = combinations.areaCells()[combinations.areaOffset(area)];
+    }
+  }
+
+  /**
+   * Evaluates a board into a reusable outcome.
+   * @param board The board to evaluate
+   * @param outcome The outcome to overwrite
+   */
+  @Override
+  public void evaluate(Board board, Outcome outcome) {
+    byte[] cells = board.cells();
+    long[] masks = outcome.symbolMasks;
+    int symbolCount = masks.length;
+    for (int symbol = 0; symbol < symbolCount; symbol++) {
+      masks[symbol] = 0L;
+    }
+    for (int i = 0; i < cells.length; i++) {
+      masks[cells[i]] |= 1L << i;
+    }
+
+    long bonusMask = 0L;
+    int[] sameCombos = outcome.sameCombos;
+    for (int symbol = 0; symbol < symbolCount; symbol++) {
+      long mask = masks[symbol];
+      sameCombos[symbol] = standard[symbol] ? combinations.sameComboForCount(Long.bitCount(mask)) : -1;
+      if (bonus[symbol]) {
+        bonusMask |= mask;
+      }
+    }
+    outcome.bonusSymbol = bonusMask == 0L ? -1 : cells[Long.numberOfTrailingZeros(bonusMask)];
+
+    int matched = 0;
+    int[] matchedAreas = outcome.matchedAreas;
+    int[] matchedAreaSymbols = outcome.matchedAreaSymbols;
+    for (int area = 0; area < areaMasks.length; area++) {
+      long areaMask = areaMasks[area];
+      int symbol = cells[areaFirstCells[area]];
+      if ((masks[symbol] & standardFilter[symbol] & areaMask) == areaMask) {
+        matchedAreas[matched] = area;
+        matchedAreaSymbols[matched++] = symbol;
+      }
+    }
+    outcome.matchedAreaCount = matched;
+  }
+}
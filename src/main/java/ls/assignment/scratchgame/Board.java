@@ -0,0 +1,167 @@
+package ls.assignment.scratchgame;
+
+import java.util.Arrays;
+
+/**
+ * Board class representing a game board as interned symbol ids in a single flat array.
+ * The cell at (row, column) is stored at index row * columns + column.
+ * Boards are mutable so that hot loops can regenerate one instance instead of allocating.
+ * @author LOTHFY ( LS )
+ */
+public final class Board {
+  private final int rows;
+  private final int columns;
+  private final byte[] cells;
+
+  /**
+   * Constructs an empty board of the given size.
+   * @param rows The number of rows
+   * @param columns The number of columns
+   */
+  public Board(int rows, int columns) {
+    this.rows = rows;
+    this.columns = columns;
+    this.cells = new byte[rows * columns];
+  }
+
+  /**
+   * Converts a symbol matrix to a board.
+   * @param matrix The 2D array of symbol names
+   * @param symbols The symbol table used to intern the names
+   * @return A new board holding the ids of the matrix symbols
+   * @throws IllegalArgumentException if the matrix contains an unknown symbol
+   */
+  public static Board of(String[][] matrix, SymbolTable symbols) {
+    int rows = matrix.length;
+    int columns = rows == 0 ? 0 : matrix[0].length;
+    Board board = new Board(rows, columns);
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < columns; col++) {
+        int id = symbols.idOf(matrix[row][col]);
+        if (id < 0) {
+          throw new IllegalArgumentException("Unknown symbol " + matrix[row][col] + " at (" + row + "," + col + ")");
+        }
+        board.cells[row * columns + col] = (byte) id;
+      }
+    }
+    return board;
+  }
+
+  /**
+   * Converts this board to a matrix of symbol names.
+   * @param symbols The symbol table the ids were interned with
+   * @return A new Matrix instance with the same symbols
+   */
+  public Matrix toMatrix(SymbolTable symbols) {
+    String[][] matrix = new String[rows][columns];
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < columns; col++) {
+        matrix[row][col] = symbols.nameOf(cells[row * columns + col]);
+      }
+    }
+    return new Matrix(matrix, rows, columns);
+  }
+
+  /**
+   * Gets the number of rows of the board.
+   * @return The number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Gets the number of columns of the board.
+   * @return The number of columns
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+  /**
+   * Gets the number of cells of the board.
+   * @return rows * columns
+   */
+  public int size() {
+    return cells.length;
+  }
+
+  /**
+   * Gets the symbol id at a position.
+   * @param row The row
+   * @param col The column
+   * @return The symbol id
+   */
+  public int get(int row, int col) {
+    return cells[row * columns + col];
+  }
+
+  /**
+   * Gets the symbol id at a flat index.
+   * @param index The cell index (row * columns + column)
+   * @return The symbol id
+   */
+  public int get(int index) {
+    return cells[index];
+  }
+
+  /**
+   * Sets the symbol id at a flat index.
+   * @param index The cell index (row * columns + column)
+   * @param id The symbol id
+   */
+  public void set(int index, int id) {
+    cells[index] = (byte) id;
+  }
+
+  /**
+   * Copies the cells of another board of the same size into this one.
+   * @param other The board to copy
+   */
+  public void copyFrom(Board other) {
+    System.arraycopy(other.cells, 0, cells, 0, cells.length);
+  }
+
+  /**
+   * Gives direct access to the backing array.
+   * @return The cells in row-major order
+   */
+  byte[] cells() {
+    return cells;
+  }
+
+  /**
+   * Compares two boards cell by cell.
+   * @param o The other object
+   * @return true if both boards have the same size and symbols
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Board)) return false;
+    Board other = (Board) o;
+    return rows == other.rows && columns == other.columns && Arrays.equals(cells, other.cells);
+  }
+
+  /**
+   * Computes a hash code over the board cells.
+   * @return The hash code
+   */
+  @Override
+  public int hashCode() {
+    return 31 * (31 * rows + columns) + Arrays.hashCode(cells);
+  }
+
+  /**
+   * Returns a string representation of the board ids.
+   * @return A string showing the ids row by row
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int row = 0; row < rows; row++) {
+      sb.append(Arrays.toString(Arrays.copyOfRange(cells, row * columns, (row + 1) * columns))).append("\n");
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,76 @@
+package ls.assignment.scratchgame;
+
+import java.util.Arrays;
+
+/**
+ * BoardEvaluator class applying the game rules to a {@link Board} of any size.
+ * Produces exactly the same results as {@link Matrix#evaluateRules(GameConfiguration, int)},
+ * but counts symbols in a primitive array indexed by id, reads symbol types from the
+ * {@link SymbolTable} and checks covered areas through the precompiled cell indexes of
+ * {@link CompiledCombinations} instead of parsing coordinates on every call.
+ * @author LOTHFY ( LS )
+ */
+final class BoardEvaluator implements RuleEvaluator {
+  private final SymbolTable symbols;
+  private final CompiledCombinations combinations;
+
+  /**
+   * Constructs an evaluator for a compiled game.
+   * @param symbols The interned symbols of the game
+   * @param combinations The compiled winning combinations of the game
+   */
+  BoardEvaluator(SymbolTable symbols, CompiledCombinations combinations) {
+    this.symbols = symbols;
+    this.combinations = combinations;
+  }
+
+  /**
+   * Evaluates a board into a reusable outcome.
+   * @param board The board to evaluate
+   * @param outcome The outcome to overwrite
+   */
+  @Override
+  public void evaluate(Board board, Outcome outcome) {
+    byte[] cells = board.cells();
+    int[] symbolCounts = outcome.symbolCounts;
+    outcome.reset();
+
+    // Count symbols and find the first bonus symbol in row-major order
+    Arrays.fill(symbolCounts, 0);
+    for (byte cell : cells) {
+      symbolCounts[cell]++;
+      if (outcome.bonusSymbol < 0 && symbols.isBonus(cell)) {
+        outcome.bonusSymbol = cell;
+      }
+    }
+
+    // Keep the same_symbols combination with the highest count per standard symbol
+    for (int symbol = 0; symbol < symbolCounts.length; symbol++) {
+      if (symbols.isStandard(symbol)) {
+        outcome.sameCombos[symbol] = combinations.sameComboForCount(symbolCounts[symbol]);
+      }
+    }
+
+    // Check every covered area; the areas are stored in combination order
+    int[] areaCells = combinations.areaCells();
+    for (int area = 0, areaCount = combinations.areaCount(); area < areaCount; area++) {
+      int start = combinations.areaOffset(area);
+      int end = combinations.areaOffset(area + 1);
+      int firstSymbol = cells[areaCells[start]];
+      if (!symbols.isStandard(firstSymbol)) {
+        continue;
+      }
+      boolean allSame = true;
+      for (int i = start + 1; i < end; i++) {
+        if (cells[areaCells[i]] != firstSymbol) {
+          allSame = false;
+          break;
+        }
+      }
+      if (allSame) {
+        outcome.matchedAreas[outcome.matchedAreaCount] = area;
+        outcome.matchedAreaSymbols[outcome.matchedAreaCount++] = firstSymbol;
+      }
+    }
+  }
+}
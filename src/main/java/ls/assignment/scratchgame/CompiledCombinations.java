@@ -0,0 +1,339 @@
+package ls.assignment.scratchgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompiledCombinations class holding the winning combinations of a {@link GameConfiguration}
+ * in a form that needs no parsing at evaluation time.
+ * Combinations are numbered in configuration order. The best same_symbols combination is
+ * precomputed for every possible symbol count, and every linear_symbols covered area is
+ * turned into a flat array of cell indexes (row * columns + column) plus, for boards of up
+ * to 64 cells, a bitmask of those cells.
+ * @author LOTHFY ( LS )
+ */
+public final class CompiledCombinations {
+  /** Combination kind "same_symbols". */
+  public static final byte KIND_SAME_SYMBOLS = 0;
+  /** Combination kind "linear_symbols". */
+  public static final byte KIND_LINEAR_SYMBOLS = 1;
+
+  private final String[] names;
+  private final byte[] kinds;
+  private final double[] rewardMultipliers;
+  private final long[] rewardMultiplierMillis;
+  private final int[] counts;
+  private final int[] sameComboByCount;
+  private final int[] areaCombos;
+  private final int[] areaOffsets;
+  private final int[] areaCells;
+  private final long[] areaMasks;
+
+  /**
+   * Constructor used by {@link #of(GameConfiguration)} and {@link ConfigSnapshot}.
+   * @param names The combination names in id order
+   * @param kinds The kind of every combination
+   * @param rewardMultipliers The reward multiplier of every combination
+   * @param counts The required count of every same_symbols combination (0 for linear ones)
+   * @param sameComboByCount The best same_symbols combination for every symbol count, or -1
+   * @param areaCombos The linear combination of every covered area
+   * @param areaOffsets The start of every area in areaCells, plus the end of the last one
+   * @param areaCells The cell indexes of all areas, concatenated
+   * @param areaMasks The cell bitmask of every area, or null if the board has more than 64 cells
+   * @throws IllegalStateException if a reward multiplier is not finite or too large
+   */
+  CompiledCombinations(String[] names, byte[] kinds, double[] rewardMultipliers, int[] counts,
+                               int[] sameComboByCount, int[] areaCombos, int[] areaOffsets, int[] areaCells,
+                               long[] areaMasks) {
+    this.names = names;
+    this.kinds = kinds;
+    this.rewardMultipliers = rewardMultipliers;
+    this.rewardMultiplierMillis = new long[rewardMultipliers.length];
+    for (int id = 0; id < rewardMultipliers.length; id++) {
+      rewardMultiplierMillis[id] = Payout.toMillis(rewardMultipliers[id]);
+    }
+    this.counts = counts;
+    this.sameComboByCount = sameComboByCount;
+    this.areaCombos = areaCombos;
+    this.areaOffsets = areaOffsets;
+    this.areaCells = areaCells;
+    this.areaMasks = areaMasks;
+  }
+
+  /**
+   * Copies the combinations with other reward multipliers, sharing everything else. The best
+   * same_symbols combination of a count only depends on the counts, so it stays valid.
+   * @param rewardMultipliers The reward multiplier of every combination
+   * @return The combinations with the given multipliers
+   * @throws IllegalStateException if a reward multiplier is not finite or too large
+   */
+  CompiledCombinations withRewardMultipliers(double[] rewardMultipliers) {
+    return new CompiledCombinations(names, kinds, rewardMultipliers.clone(), counts, sameComboByCount, areaCombos,
+            areaOffsets, areaCells, areaMasks);
+  }
+
+  /**
+   * Compiles the winning combinations of a configuration.
+   * Areas reaching outside the board can never match and are dropped.
+   * @param config The game configuration
+   * @return The compiled combinations
+   * @throws IllegalStateException if a combination lacks a required value or a covered area
+   *         contains a malformed or negative coordinate
+   */
+  public static CompiledCombinations of(GameConfiguration config) {
+    int rows = config.getRows();
+    int columns = config.getColumns();
+    int cellCount = rows * columns;
+
+    List<String> names = new ArrayList<>();
+    List<WinCombination> combos = new ArrayList<>();
+    if (config.getWinCombinations() != null) {
+      for (Map.Entry<String, WinCombination> entry : config.getWinCombinations().entrySet()) {
+        String when = entry.getValue().getWhen();
+        if ("same_symbols".equals(when) || "linear_symbols".equals(when)) {
+          names.add(entry.getKey());
+          combos.add(entry.getValue());
+        }
+      }
+    }
+
+    int comboCount = combos.size();
+    byte[] kinds = new byte[comboCount];
+    double[] rewardMultipliers = new double[comboCount];
+    int[] counts = new int[comboCount];
+    int[] sameComboByCount = new int[cellCount + 1];
+    Arrays.fill(sameComboByCount, -1);
+    List<Integer> areaCombos = new ArrayList<>();
+    List<int[]> areas = new ArrayList<>();
+
+    for (int id = 0; id < comboCount; id++) {
+      String name = names.get(id);
+      WinCombination combo = combos.get(id);
+      if (combo.getRewardMultiplier() == null) {
+        throw new IllegalStateException("Win combination " + name + " has no reward_multiplier");
+      }
+      rewardMultipliers[id] = combo.getRewardMultiplier();
+
+      if ("same_symbols".equals(combo.getWhen())) {
+        kinds[id] = KIND_SAME_SYMBOLS;
+        if (combo.getCount() == null) {
+          throw new IllegalStateException("Win combination " + name + " has no count");
+        }
+        counts[id] = combo.getCount();
+        // A higher count replaces the current best; on a tie the first combination wins
+        for (int count = Math.max(1, counts[id]); count <= cellCount; count++) {
+          int best = sameComboByCount[count];
+          if (best < 0 || counts[id] > counts[best]) {
+            sameComboByCount[count] = id;
+          }
+        }
+      } else {
+        kinds[id] = KIND_LINEAR_SYMBOLS;
+        if (combo.getCoveredAreas() == null) {
+          continue;
+        }
+        for (List<String> area : combo.getCoveredAreas()) {
+          int[] cells = compileArea(name, area, rows, columns);
+          if (cells != null) {
+            areaCombos.add(id);
+            areas.add(cells);
+          }
+        }
+      }
+    }
+
+    int[] areaOffsets = new int[areas.size() + 1];
+    for (int a = 0; a < areas.size(); a++) {
+      areaOffsets[a + 1] = areaOffsets[a] + areas.get(a).length;
+    }
+    int[] areaCells = new int[areaOffsets[areas.size()]];
+    long[] areaMasks = cellCount <= Long.SIZE ? new long[areas.size()] : null;
+    for (int a = 0; a < areas.size(); a++) {
+      int[] cells = areas.get(a);
+      System.arraycopy(cells, 0, areaCells, areaOffsets[a], cells.length);
+      if (areaMasks != null) {
+        for (int cell : cells) {
+          areaMasks[a] |= 1L << cell;
+        }
+      }
+    }
+
+    return new CompiledCombinations(names.toArray(new String[0]), kinds, rewardMultipliers, counts,
+            sameComboByCount, areaCombos.stream().mapToInt(Integer::intValue).toArray(), areaOffsets, areaCells,
+            areaMasks);
+  }
+
+  /**
+   * Parses the "row:column" coordinates of one covered area.
+   * @param name The combination name, for error messages
+   * @param area The coordinates
+   * @param rows The number of rows of the board
+   * @param columns The number of columns of the board
+   * @return The cell indexes, or null if the area is empty or reaches outside the board
+   * @throws IllegalStateException if a coordinate is malformed or negative
+   */
+  private static int[] compileArea(String name, List<String> area, int rows, int columns) {
+    if (area == null || area.isEmpty()) {
+      return null;
+    }
+    int[] cells = new int[area.size()];
+    boolean inside = true;
+    for (int i = 0; i < cells.length; i++) {
+      String coord = area.get(i);
+      String[] parts = coord == null ? new String[0] : coord.split(":");
+      int row;
+      int col;
+      try {
+        if (parts.length != 2) {
+          throw new NumberFormatException(coord);
+        }
+        row = Integer.parseInt(parts[0].trim());
+        col = Integer.parseInt(parts[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalStateException("Malformed covered area coordinate '" + coord + "' in " + name);
+      }
+      if (row < 0 || col < 0) {
+        throw new IllegalStateException("Negative covered area coordinate '" + coord + "' in " + name);
+      }
+      if (row >= rows || col >= columns) {
+        inside = false;
+      }
+      cells[i] = row * columns + col;
+    }
+    return inside ? cells : null;
+  }
+
+  /**
+   * Gets the number of compiled combinations.
+   * @return The number of combinations
+   */
+  public int size() {
+    return names.length;
+  }
+
+  /**
+   * Gets the name of a combination.
+   * @param id The combination id
+   * @return The combination name
+   */
+  public String nameOf(int id) {
+    return names[id];
+  }
+
+  /**
+   * Gets the id of a combination.
+   * @param name The combination name
+   * @return The combination id, or -1 if there is no such combination
+   */
+  public int idOf(String name) {
+    for (int id = 0; id < names.length; id++) {
+      if (names[id].equals(name)) {
+        return id;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the kind of a combination.
+   * @param id The combination id
+   * @return One of the KIND_ constants
+   */
+  public byte kindOf(int id) {
+    return kinds[id];
+  }
+
+  /**
+   * Gets the reward multiplier of a combination.
+   * @param id The combination id
+   * @return The reward multiplier
+   */
+  public double rewardMultiplierOf(int id) {
+    return rewardMultipliers[id];
+  }
+
+  /**
+   * Gets the reward multiplier of a combination in fixed point, see {@link Payout}.
+   * @param id The combination id
+   * @return The reward multiplier in thousandths
+   */
+  public long rewardMultiplierMillisOf(int id) {
+    return rewardMultiplierMillis[id];
+  }
+
+  /**
+   * Gets the required count of a same_symbols combination.
+   * @param id The combination id
+   * @return The required count, or 0 for linear_symbols combinations
+   */
+  public int countOf(int id) {
+    return counts[id];
+  }
+
+  /**
+   * Gets the same_symbols combination that applies to a symbol appearing the given number of times.
+   * @param count The number of cells holding the symbol
+   * @return The combination id, or -1 if no same_symbols combination applies
+   */
+  public int sameComboForCount(int count) {
+    return sameComboByCount[count];
+  }
+
+  /**
+   * Gets the number of compiled covered areas over all linear_symbols combinations.
+   * @return The number of areas
+   */
+  public int areaCount() {
+    return areaCombos.length;
+  }
+
+  /**
+   * Gets the linear_symbols combination a covered area belongs to.
+   * @param area The area index
+   * @return The combination id
+   */
+  public int areaCombo(int area) {
+    return areaCombos[area];
+  }
+
+  /**
+   * Gets the offset of an area in {@link #areaCells()}.
+   * @param area The area index, or areaCount() for the end of the last area
+   * @return The offset
+   */
+  public int areaOffset(int area) {
+    return areaOffsets[area];
+  }
+
+  /**
+   * Gives direct access to the cell indexes of all areas; area a spans
+   * [areaOffset(a), areaOffset(a + 1)).
+   * @return The concatenated cell indexes
+   */
+  int[] areaCells() {
+    return areaCells;
+  }
+
+  /**
+   * Gets the cell bitmask of an area.
+   * @param area The area index
+   * @return The bitmask with bit (row * columns + column) set for every covered cell
+   * @throws IllegalStateException if the board has more than 64 cells
+   */
+  public long areaMask(int area) {
+    if (areaMasks == null) {
+      throw new IllegalStateException("Area masks are only available for boards of up to 64 cells");
+    }
+    return areaMasks[area];
+  }
+
+  /**
+   * Checks whether cell bitmasks are available.
+   * @return true if the board has at most 64 cells
+   */
+  public boolean hasAreaMasks() {
+    return areaMasks != null;
+  }
+}
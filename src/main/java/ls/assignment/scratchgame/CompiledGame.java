@@ -0,0 +1,401 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * CompiledGame class holding an immutable, precomputed form of a {@link GameConfiguration}.
+ * Symbols are interned to small integer ids (see {@link SymbolTable}) and every cell of the
+ * board gets its own alias-method sampler, so generating a board costs one random draw per cell.
+ * Winning combinations are compiled once as well (see {@link CompiledCombinations}), and boards
+ * of up to 64 cells are evaluated with the bitboard engine ({@link BitboardEvaluator}).
+ * Compile once per configuration and share the instance between threads.
+ * @author LOTHFY ( LS )
+ */
+public final class CompiledGame {
+  private volatile GameConfiguration configuration;
+  private final byte[] configurationSource;
+  private final int rows;
+  private final int columns;
+  private final SymbolTable symbols;
+  private final CompiledCombinations combinations;
+  private final int[][] cellWeights;
+  private final AliasSampler[] cellSamplers;
+  private final RuleEvaluator evaluator;
+  /** The hash of the configuration, valid once configurationHashed is set. */
+  private long configurationHash;
+  private volatile boolean configurationHashed;
+
+  /**
+   * Private constructor used by {@link #compile(GameConfiguration)}, {@link #restore} and {@link #derive}.
+   * @param configuration The source configuration, or null if it is only available as JSON
+   * @param configurationSource The source configuration as JSON, or null if configuration is given
+   * @param configurationHash The hash of the source configuration, or null to hash it when first asked for
+   * @param rows The number of rows
+   * @param columns The number of columns
+   * @param symbols The interned symbols
+   * @param combinations The compiled winning combinations
+   * @param cellWeights The weight of every symbol id in every cell, indexed by row * columns + column
+   * @param cellSamplers The symbol sampler of every cell
+   */
+  private CompiledGame(GameConfiguration configuration, byte[] configurationSource, Long configurationHash,
+                       int rows, int columns, SymbolTable symbols, CompiledCombinations combinations,
+                       int[][] cellWeights, AliasSampler[] cellSamplers) {
+    this.configuration = configuration;
+    this.configurationSource = configurationSource;
+    if (configurationHash != null) {
+      this.configurationHash = configurationHash;
+      this.configurationHashed = true;
+    }
+    this.rows = rows;
+    this.columns = columns;
+    this.symbols = symbols;
+    this.combinations = combinations;
+    this.cellWeights = cellWeights;
+    this.cellSamplers = cellSamplers;
+    this.evaluator = combinations.hasAreaMasks()
+            ? new BitboardEvaluator(symbols, combinations)
+            : new BoardEvaluator(symbols, combinations);
+  }
+
+  /**
+   * Restores a game from its precompiled parts, as stored in a {@link ConfigSnapshot}.
+   * The configuration is parsed from its JSON source only when {@link #getConfiguration()} is called.
+   * @param configurationSource The source configuration as JSON
+   * @param configurationHash The hash of the source configuration
+   * @param rows The number of rows
+   * @param columns The number of columns
+   * @param symbols The interned symbols
+   * @param combinations The compiled winning combinations
+   * @param cellWeights The weight of every symbol id in every cell
+   * @param cellSamplers The symbol sampler of every cell
+   * @return The restored game
+   */
+  static CompiledGame restore(byte[] configurationSource, long configurationHash, int rows, int columns,
+                              SymbolTable symbols, CompiledCombinations combinations, int[][] cellWeights,
+                              AliasSampler[] cellSamplers) {
+    return new CompiledGame(null, configurationSource, configurationHash, rows, columns, symbols, combinations,
+            cellWeights, cellSamplers);
+  }
+
+  /**
+   * Derives a game with other cell weights and combination multipliers, to score a candidate
+   * paytable without compiling a configuration. The samplers of the cells whose weights did not
+   * change, the symbols and, if no multiplier changed, the combinations are shared with this game.
+   * The derived game has no source configuration and a configuration hash of 0.
+   * @param weights The weight of every symbol id in every cell
+   * @param rewardMultipliers The reward multiplier of every combination
+   * @return The derived game
+   * @throws IllegalArgumentException if a weight is negative or the total weight of a cell is zero
+   * @throws IllegalStateException if a reward multiplier is not finite or too large
+   */
+  CompiledGame derive(int[][] weights, double[] rewardMultipliers) {
+    int[] ids = new int[symbols.size()];
+    for (int id = 0; id < ids.length; id++) {
+      ids[id] = id;
+    }
+    AliasSampler[] samplers = new AliasSampler[weights.length];
+    for (int cell = 0; cell < weights.length; cell++) {
+      samplers[cell] = Arrays.equals(weights[cell], cellWeights[cell]) ? cellSamplers[cell] : new AliasSampler(ids, weights[cell]);
+    }
+    boolean sameMultipliers = true;
+    for (int combo = 0; combo < rewardMultipliers.length; combo++) {
+      sameMultipliers &= rewardMultipliers[combo] == combinations.rewardMultiplierOf(combo);
+    }
+    CompiledCombinations derived = sameMultipliers ? combinations : combinations.withRewardMultipliers(rewardMultipliers);
+    return new CompiledGame(null, null, 0L, rows, columns, symbols, derived, weights, samplers);
+  }
+
+  /**
+   * Hashes a configuration with 64-bit FNV-1a over its JSON form, so that records of played
+   * rounds can be tied to the configuration they were played with.
+   * @param configuration The configuration
+   * @return The hash
+   */
+  private static long hash(GameConfiguration configuration) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : new Gson().toJson(configuration).getBytes(StandardCharsets.UTF_8)) {
+      hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Compiles the given configuration.
+   * @param config The game configuration to compile
+   * @return The compiled game
+   * @throws IllegalStateException if the board size is invalid, a cell has no probabilities,
+   *         the probabilities reference an unknown symbol or a win combination is invalid
+   * @throws IllegalArgumentException if the total probability weight of a cell is zero
+   */
+  public static CompiledGame compile(GameConfiguration config) {
+    int rows = config.getRows();
+    int columns = config.getColumns();
+    if (rows <= 0 || columns <= 0) {
+      throw new IllegalStateException("Invalid matrix size " + rows + "x" + columns);
+    }
+
+    SymbolTable symbols = SymbolTable.of(config);
+    CompiledCombinations combinations = CompiledCombinations.of(config);
+
+    Probabilities probabilities = config.getProbabilities();
+    List<StandardSymbol> standardSymbols = probabilities.getStandardSymbols();
+    BonusSymbols bonusSymbols = probabilities.getBonusSymbols();
+
+    // Index the first probability entry of every cell, as the original lookup did
+    StandardSymbol[] cellProbabilities = new StandardSymbol[rows * columns];
+    for (StandardSymbol standardSymbol : standardSymbols) {
+      int row = standardSymbol.getRow();
+      int col = standardSymbol.getColumn();
+      if (row >= 0 && row < rows && col >= 0 && col < columns && cellProbabilities[row * columns + col] == null) {
+        cellProbabilities[row * columns + col] = standardSymbol;
+      }
+    }
+
+    int[][] cellWeights = new int[rows * columns][];
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < columns; col++) {
+        StandardSymbol cellProb = cellProbabilities[row * columns + col];
+        if (cellProb == null) {
+          throw new IllegalStateException("No probabilities defined for cell (" + row + "," + col + ")");
+        }
+
+        Map<String, Integer> combinedProbs = new LinkedHashMap<>();
+        if (cellProb.getSymbols() != null) {
+          combinedProbs.putAll(cellProb.getSymbols());
+        }
+        if (bonusSymbols != null && bonusSymbols.getSymbols() != null) {
+          combinedProbs.putAll(bonusSymbols.getSymbols());
+        }
+
+        int[] weights = new int[symbols.size()];
+        for (Map.Entry<String, Integer> entry : combinedProbs.entrySet()) {
+          int id = symbols.idOf(entry.getKey());
+          if (id < 0) {
+            throw new IllegalStateException("Unknown symbol " + entry.getKey() + " in probabilities of cell (" + row + "," + col + ")");
+          }
+          weights[id] = entry.getValue();
+        }
+        cellWeights[row * columns + col] = weights;
+      }
+    }
+
+    int[] ids = new int[symbols.size()];
+    for (int id = 0; id < ids.length; id++) {
+      ids[id] = id;
+    }
+    AliasSampler[] cellSamplers = new AliasSampler[cellWeights.length];
+    for (int cell = 0; cell < cellWeights.length; cell++) {
+      cellSamplers[cell] = new AliasSampler(ids, cellWeights[cell]);
+    }
+
+    return new CompiledGame(config, null, null, rows, columns, symbols, combinations, cellWeights,
+            cellSamplers);
+  }
+
+  /**
+   * Generates a new matrix by drawing one symbol per cell.
+   * @param random The random generator to draw from
+   * @return A new Matrix instance populated with symbols according to the configuration
+   */
+  public Matrix generateMatrix(RandomGenerator random) {
+    return generateBoard(random, newBoard()).toMatrix(symbols);
+  }
+
+  /**
+   * Fills a board by drawing one symbol id per cell.
+   * @param random The random generator to draw from
+   * @param board The board to overwrite, as returned by {@link #newBoard()}
+   * @return The given board
+   */
+  public Board generateBoard(RandomGenerator random, Board board) {
+    GameEvents.BoardGeneration event = new GameEvents.BoardGeneration();
+    event.begin();
+    byte[] cells = board.cells();
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = (byte) cellSamplers[i].sample(random);
+    }
+    if (event.shouldCommit()) {
+      event.rows = rows;
+      event.columns = columns;
+      event.commit();
+    }
+    return board;
+  }
+
+  /**
+   * Creates an empty board with the dimensions of this game.
+   * @return A new board
+   */
+  public Board newBoard() {
+    return new Board(rows, columns);
+  }
+
+  /**
+   * Evaluates a board according to the game rules.
+   * @param board The board to evaluate
+   * @param bettingAmount The amount bet by the player
+   * @return An EvaluationResult containing the calculated reward and applied combinations
+   */
+  public Matrix.EvaluationResult evaluate(Board board, int bettingAmount) {
+    GameEvents.Evaluation event = new GameEvents.Evaluation();
+    event.begin();
+    Matrix.EvaluationResult result = evaluator.evaluate(board, newOutcome(), bettingAmount);
+    if (event.shouldCommit()) {
+      event.describe(this, bettingAmount, result);
+      event.commit();
+    }
+    return result;
+  }
+
+  /**
+   * Evaluates a board into a caller-owned result without allocating, for callers evaluating many
+   * boards. Unlike {@link #evaluate(Board, int)}, no flight recorder event is emitted.
+   * @param board The board to evaluate
+   * @param bettingAmount The amount bet by the player
+   * @param result The result to overwrite, made for this game
+   * @throws IllegalArgumentException if the result was made for another game
+   */
+  public void evaluate(Board board, int bettingAmount, MutableEvaluationResult result) {
+    result.checkGame(this);
+    evaluator.evaluate(board, result.outcome());
+    result.complete(bettingAmount);
+  }
+
+  /**
+   * Evaluates a board into its bet-independent fixed-point payout, from which the exact reward
+   * of any bet follows with integer arithmetic.
+   * @param board The board to evaluate
+   * @return The payout of the board
+   * @throws ArithmeticException if the payout overflows a long
+   */
+  public Payout payout(Board board) {
+    Outcome outcome = newOutcome();
+    evaluator.evaluate(board, outcome);
+    return outcome.payout();
+  }
+
+  /**
+   * Evaluates a board into a reusable outcome without allocating.
+   * @param board The board to evaluate
+   * @param outcome The outcome to overwrite, as returned by {@link #newOutcome()}
+   */
+  void evaluate(Board board, Outcome outcome) {
+    evaluator.evaluate(board, outcome);
+  }
+
+  /**
+   * Creates an empty outcome sized for this game.
+   * @return A new outcome
+   */
+  Outcome newOutcome() {
+    return new Outcome(symbols, combinations);
+  }
+
+  /**
+   * Gets the configured weight of a symbol in a cell, after merging in the bonus symbol weights.
+   * @param cell The cell index (row * columns + column)
+   * @param symbol The symbol id
+   * @return The weight, 0 if the symbol cannot appear in the cell
+   */
+  public int cellWeight(int cell, int symbol) {
+    return cellWeights[cell][symbol];
+  }
+
+  /**
+   * Gets the probability of a symbol appearing in a cell.
+   * @param cell The cell index (row * columns + column)
+   * @param symbol The symbol id
+   * @return The probability
+   */
+  public double cellProbability(int cell, int symbol) {
+    return (double) cellWeights[cell][symbol] / cellSamplers[cell].getTotalWeight();
+  }
+
+  /**
+   * Gets the hash identifying the configuration this game was compiled from. A compiled game
+   * hashes its configuration on the first call, so that compiling stays cheap for callers that
+   * never ask for it; the configuration must not be changed after compiling.
+   * @return The 64-bit FNV-1a hash of the configuration's JSON form
+   */
+  public long getConfigurationHash() {
+    if (!configurationHashed) {
+      // Racing threads compute the same value; the volatile flag publishes it
+      configurationHash = hash(getConfiguration());
+      configurationHashed = true;
+    }
+    return configurationHash;
+  }
+
+  /**
+   * Gets the configuration this game was compiled from. A game restored from a snapshot parses
+   * its configuration on the first call.
+   * @return The source configuration
+   * @throws IllegalStateException if the game was derived from another one
+   */
+  public GameConfiguration getConfiguration() {
+    GameConfiguration result = configuration;
+    if (result == null) {
+      if (configurationSource == null) {
+        throw new IllegalStateException("Derived game has no source configuration");
+      }
+      result = new Gson().fromJson(new String(configurationSource, StandardCharsets.UTF_8), GameConfiguration.class);
+      configuration = result;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the weights of every symbol id in every cell.
+   * @return The weights indexed by cell, then symbol id; not to be modified
+   */
+  int[][] cellWeights() {
+    return cellWeights;
+  }
+
+  /**
+   * Gets the symbol sampler of every cell.
+   * @return The samplers indexed by cell; not to be modified
+   */
+  AliasSampler[] cellSamplers() {
+    return cellSamplers;
+  }
+
+  /**
+   * Gets the interned symbols of this game.
+   * @return The symbol table
+   */
+  public SymbolTable getSymbols() {
+    return symbols;
+  }
+
+  /**
+   * Gets the compiled winning combinations of this game.
+   * @return The compiled combinations
+   */
+  public CompiledCombinations getCombinations() {
+    return combinations;
+  }
+
+  /**
+   * Gets the number of rows in the game matrix.
+   * @return The number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Gets the number of columns in the game matrix.
+   * @return The number of columns
+   */
+  public int getColumns() {
+    return columns;
+  }
+}
@@ -0,0 +1,338 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * ConfigSnapshot class storing a compiled game in a versioned, checksummed binary file, so that
+ * the game can be loaded without parsing the JSON configuration through Gson reflection.
+ * The snapshot holds the interned symbols, the compiled combinations with their covered areas and
+ * line masks, and the weights and alias tables of every cell. It also keeps the JSON source, which
+ * is parsed only if the configuration object itself is requested.
+ *
+ * <p>Layout (big-endian): magic, version, payload length and CRC-32C of the payload (ints), then the
+ * payload: CRC-32C of the JSON source the snapshot was compiled from, configuration hash (longs),
+ * the JSON source, rows, columns, symbols, combinations, areas and cells.
+ * A snapshot is stale when its JSON source checksum does not match the current configuration file;
+ * {@link #load(Path, Path)} then falls back to the JSON file.
+ * @author LOTHFY ( LS )
+ */
+public final class ConfigSnapshot {
+  /** Version of the snapshot format; snapshots of another version are stale. */
+  public static final int VERSION = 1;
+
+  private static final int MAGIC = 0x53474353;
+  private static final int HEADER_SIZE = 16;
+
+  private ConfigSnapshot() {
+  }
+
+  /**
+   * Compiles a JSON configuration file and writes its snapshot. The file is replaced atomically.
+   * @param config The JSON configuration file
+   * @param snapshot The snapshot file to write
+   * @return The compiled game
+   * @throws IOException if a file cannot be read or written
+   * @throws com.google.gson.JsonSyntaxException if the configuration is not valid JSON
+   */
+  public static CompiledGame write(Path config, Path snapshot) throws IOException {
+    byte[] source = Files.readAllBytes(config);
+    CompiledGame game = CompiledGame.compile(parse(source));
+    write(game, source, snapshot);
+    return game;
+  }
+
+  /**
+   * Writes the snapshot of a compiled game. The file is replaced atomically.
+   * @param game The compiled game
+   * @param source The JSON source the game was compiled from
+   * @param snapshot The snapshot file to write
+   * @throws IOException if the file cannot be written
+   */
+  static void write(CompiledGame game, byte[] source, Path snapshot) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(checksum(source));
+    out.writeLong(game.getConfigurationHash());
+    out.writeInt(source.length);
+    out.write(source);
+    out.writeInt(game.getRows());
+    out.writeInt(game.getColumns());
+
+    SymbolTable symbols = game.getSymbols();
+    out.writeInt(symbols.size());
+    for (int id = 0; id < symbols.size(); id++) {
+      writeString(out, symbols.nameOf(id));
+      out.writeByte(symbols.typeOf(id));
+      out.writeByte(symbols.impactOf(id));
+      out.writeDouble(symbols.rewardMultiplierOf(id));
+      out.writeInt(symbols.extraOf(id));
+    }
+
+    CompiledCombinations combinations = game.getCombinations();
+    out.writeInt(combinations.size());
+    for (int id = 0; id < combinations.size(); id++) {
+      writeString(out, combinations.nameOf(id));
+      out.writeByte(combinations.kindOf(id));
+      out.writeDouble(combinations.rewardMultiplierOf(id));
+      out.writeInt(combinations.countOf(id));
+    }
+    int cells = game.getRows() * game.getColumns();
+    for (int count = 0; count <= cells; count++) {
+      out.writeInt(combinations.sameComboForCount(count));
+    }
+    int areas = combinations.areaCount();
+    out.writeInt(areas);
+    for (int area = 0; area < areas; area++) {
+      out.writeInt(combinations.areaCombo(area));
+    }
+    for (int area = 0; area <= areas; area++) {
+      out.writeInt(combinations.areaOffset(area));
+    }
+    int[] areaCells = combinations.areaCells();
+    out.writeInt(areaCells.length);
+    for (int cell : areaCells) {
+      out.writeInt(cell);
+    }
+    out.writeBoolean(combinations.hasAreaMasks());
+    if (combinations.hasAreaMasks()) {
+      for (int area = 0; area < areas; area++) {
+        out.writeLong(combinations.areaMask(area));
+      }
+    }
+
+    int[][] cellWeights = game.cellWeights();
+    AliasSampler[] cellSamplers = game.cellSamplers();
+    for (int cell = 0; cell < cells; cell++) {
+      for (int weight : cellWeights[cell]) {
+        out.writeInt(weight);
+      }
+      AliasSampler sampler = cellSamplers[cell];
+      out.writeLong(sampler.getTotalWeight());
+      for (int i = 0; i < sampler.outcomes().length; i++) {
+        out.writeInt(sampler.outcomes()[i]);
+        out.writeInt(sampler.aliases()[i]);
+        out.writeLong(sampler.thresholds()[i]);
+      }
+    }
+    out.flush();
+
+    byte[] payload = bytes.toByteArray();
+    CRC32C crc = new CRC32C();
+    crc.update(payload);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putInt((int) crc.getValue());
+
+    Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      header.flip();
+      ByteBuffer body = ByteBuffer.wrap(payload);
+      while (header.hasRemaining() || body.hasRemaining()) {
+        channel.write(new ByteBuffer[] {header, body});
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Loads a game from its snapshot, or from the JSON configuration file if the snapshot is missing,
+   * stale or corrupt.
+   * @param config The JSON configuration file
+   * @param snapshot The snapshot file
+   * @return The compiled game
+   * @throws IOException if the configuration file cannot be read
+   * @throws com.google.gson.JsonSyntaxException if the snapshot is not usable and the configuration is not valid JSON
+   */
+  public static CompiledGame load(Path config, Path snapshot) throws IOException {
+    byte[] source = Files.readAllBytes(config);
+    CompiledGame game = read(snapshot, source);
+    return game != null ? game : CompiledGame.compile(parse(source));
+  }
+
+  /**
+   * Reads a game from its snapshot if the snapshot is current.
+   * @param snapshot The snapshot file
+   * @param source The current JSON source of the configuration
+   * @return The restored game, or null if the snapshot is missing, of another version, corrupt,
+   *         or was compiled from another source
+   * @throws IOException if the snapshot exists but cannot be read
+   */
+  public static CompiledGame read(Path snapshot, byte[] source) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshot)) {
+      if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+        return null;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+              || buffer.getInt(8) != buffer.capacity() - HEADER_SIZE) {
+        return null;
+      }
+      ByteBuffer payload = buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE);
+      CRC32C crc = new CRC32C();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != buffer.getInt(12) || payload.getLong(0) != checksum(source)) {
+        return null;
+      }
+      return decode(payload);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Decodes the payload of a snapshot whose checksums were verified.
+   * @param in The payload
+   * @return The restored game, or null if the payload is inconsistent
+   */
+  private static CompiledGame decode(ByteBuffer in) {
+    try {
+      in.getLong();
+      long configurationHash = in.getLong();
+      byte[] source = new byte[in.getInt()];
+      in.get(source);
+      int rows = in.getInt();
+      int columns = in.getInt();
+      int cells = Math.multiplyExact(rows, columns);
+
+      int symbolCount = in.getInt();
+      if (symbolCount <= 0 || symbolCount > SymbolTable.MAX_SYMBOLS) {
+        return null;
+      }
+      String[] symbolNames = new String[symbolCount];
+      byte[] types = new byte[symbolCount];
+      byte[] impacts = new byte[symbolCount];
+      double[] symbolMultipliers = new double[symbolCount];
+      int[] extras = new int[symbolCount];
+      for (int id = 0; id < symbolCount; id++) {
+        symbolNames[id] = readString(in);
+        types[id] = in.get();
+        impacts[id] = in.get();
+        symbolMultipliers[id] = in.getDouble();
+        extras[id] = in.getInt();
+      }
+      SymbolTable symbols = new SymbolTable(symbolNames, types, impacts, symbolMultipliers, extras);
+
+      int comboCount = in.getInt();
+      String[] comboNames = new String[comboCount];
+      byte[] kinds = new byte[comboCount];
+      double[] comboMultipliers = new double[comboCount];
+      int[] counts = new int[comboCount];
+      for (int id = 0; id < comboCount; id++) {
+        comboNames[id] = readString(in);
+        kinds[id] = in.get();
+        comboMultipliers[id] = in.getDouble();
+        counts[id] = in.getInt();
+      }
+      int[] sameComboByCount = readInts(in, cells + 1);
+      int areas = in.getInt();
+      int[] areaCombos = readInts(in, areas);
+      int[] areaOffsets = readInts(in, areas + 1);
+      int[] areaCells = readInts(in, in.getInt());
+      long[] areaMasks = null;
+      if (in.get() != 0) {
+        areaMasks = new long[areas];
+        for (int area = 0; area < areas; area++) {
+          areaMasks[area] = in.getLong();
+        }
+      }
+      CompiledCombinations combinations = new CompiledCombinations(comboNames, kinds, comboMultipliers, counts,
+              sameComboByCount, areaCombos, areaOffsets, areaCells, areaMasks);
+
+      int[][] cellWeights = new int[cells][];
+      AliasSampler[] cellSamplers = new AliasSampler[cells];
+      for (int cell = 0; cell < cells; cell++) {
+        cellWeights[cell] = readInts(in, symbolCount);
+        long totalWeight = in.getLong();
+        int[] outcomes = new int[symbolCount];
+        int[] aliases = new int[symbolCount];
+        long[] thresholds = new long[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+          outcomes[i] = in.getInt();
+          aliases[i] = in.getInt();
+          thresholds[i] = in.getLong();
+        }
+        cellSamplers[cell] = new AliasSampler(outcomes, aliases, thresholds, totalWeight);
+      }
+      if (in.hasRemaining()) {
+        return null;
+      }
+      return CompiledGame.restore(source, configurationHash, rows, columns, symbols, combinations, cellWeights,
+              cellSamplers);
+    } catch (BufferUnderflowException | IllegalArgumentException | ArithmeticException
+             | NegativeArraySizeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Computes the checksum identifying a JSON source.
+   * @param source The JSON source
+   * @return The CRC-32C of the source
+   */
+  private static long checksum(byte[] source) {
+    CRC32C crc = new CRC32C();
+    crc.update(source);
+    return crc.getValue();
+  }
+
+  /**
+   * Parses a JSON configuration.
+   * @param source The JSON source
+   * @return The configuration
+   */
+  private static GameConfiguration parse(byte[] source) {
+    return new Gson().fromJson(new String(source, StandardCharsets.UTF_8), GameConfiguration.class);
+  }
+
+  /**
+   * Writes a length-prefixed UTF-8 string.
+   * @param out The stream to write to
+   * @param value The string
+   * @throws IOException if the stream fails
+   */
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a length-prefixed UTF-8 string.
+   * @param in The buffer to read from
+   * @return The string
+   */
+  private static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads an array of ints.
+   * @param in The buffer to read from
+   * @param length The number of ints
+   * @return The ints
+   */
+  private static int[] readInts(ByteBuffer in, int length) {
+    int[] values = new int[length];
+    in.asIntBuffer().get(values);
+    in.position(in.position() + Math.multiplyExact(length, Integer.BYTES));
+    return values;
+  }
+}
@@ -0,0 +1,311 @@
+package ls.assignment.scratchgame;
+
+import java.util.Arrays;
+
+/**
+ * EvaluationCache class remembering the bet-independent result of evaluating recently played
+ * boards, so that a board seen before is not evaluated again.
+ * A board is packed into a single long key, a few bits per cell holding the symbol id, which
+ * limits the cache to small boards (see {@link #supports(CompiledGame)}). An entry holds the
+ * winning symbols with their combinations in the order the evaluation multiplies them, the applied
+ * combinations, the matched covered areas and the bonus symbol. The reward of a bet is rebuilt from
+ * them with the same floating-point operations as an evaluation, so a cached reward equals the
+ * evaluated one exactly and one entry serves every bet. An entry also restores the whole outcome of
+ * its board, see {@link #evaluate(Board, Outcome)}.
+ *
+ * <p>The entries live in flat arrays sized once from a memory budget and are grouped in sets of
+ * {@value #WAYS}. A board can only go into its own set; when the set is full, an entry is evicted
+ * with the CLOCK algorithm: the hand of the set skips and clears entries used since it last
+ * passed them and evicts the first entry that was not.
+ *
+ * <p>An EvaluationCache is not thread-safe; use one per thread.
+ * @author LOTHFY ( LS )
+ */
+public final class EvaluationCache {
+  /** Number of entries per set. */
+  static final int WAYS = 8;
+  /** Memory used by one entry besides its reward terms: key, combinations, areas, bonus symbol, term count, reference bit. */
+  static final int FIXED_ENTRY_BYTES = Long.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + 1;
+  /** Key of an empty entry; packed boards use at most 63 bits and are never negative. */
+  private static final long EMPTY = -1L;
+
+  private final CompiledGame game;
+  private final SymbolTable symbols;
+  private final CompiledCombinations combos;
+  private final Outcome outcome;
+  private final int termStride;
+  private final int bitsPerCell;
+  private final int setMask;
+
+  private final long[] keys;
+  /** The reward terms of every entry, termStride bytes per entry, see {@link Outcome#writeRewardTerms(byte[], int)}. */
+  private final byte[] terms;
+  private final int[] termCounts;
+  private final long[] combinations;
+  /** The matched covered areas of every entry as a bitmask in which bit i stands for area i. */
+  private final long[] areas;
+  private final int[] bonusSymbols;
+  private final boolean[] referenced;
+  private final byte[] hands;
+
+  private long lastCombinations;
+  private int lastBonusSymbol = -1;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Constructs a cache holding as many entries as fit in a memory budget.
+   * @param game The compiled game whose boards are cached
+   * @param maxBytes The memory budget of the entries in bytes
+   * @throws IllegalArgumentException if the boards of the game cannot be cached
+   *         or the budget does not hold one set of entries
+   */
+  public EvaluationCache(CompiledGame game, long maxBytes) {
+    if (!supports(game)) {
+      throw new IllegalArgumentException("Boards of " + game.getRows() + "x" + game.getColumns() + " with "
+              + game.getSymbols().size() + " symbols and " + game.getCombinations().size()
+              + " win combinations cannot be cached");
+    }
+    int entryBytes = entryBytes(game);
+    long entries = maxBytes / entryBytes;
+    if (entries < WAYS) {
+      throw new IllegalArgumentException("Cache budget too small: " + maxBytes + " bytes");
+    }
+    int maxSets = Math.min(1 << 24, Integer.MAX_VALUE / (WAYS * (entryBytes - FIXED_ENTRY_BYTES)));
+    int sets = Integer.highestOneBit((int) Math.min(entries / WAYS, maxSets));
+    this.game = game;
+    this.symbols = game.getSymbols();
+    this.combos = game.getCombinations();
+    this.outcome = game.newOutcome();
+    this.termStride = entryBytes - FIXED_ENTRY_BYTES;
+    this.bitsPerCell = bitsPerCell(symbols.size());
+    this.setMask = sets - 1;
+    this.keys = new long[sets * WAYS];
+    this.terms = new byte[sets * WAYS * termStride];
+    this.termCounts = new int[sets * WAYS];
+    this.combinations = new long[sets * WAYS];
+    this.areas = new long[sets * WAYS];
+    this.bonusSymbols = new int[sets * WAYS];
+    this.referenced = new boolean[sets * WAYS];
+    this.hands = new byte[sets];
+    Arrays.fill(keys, EMPTY);
+  }
+
+  /**
+   * Checks whether the boards of a game can be cached: a board must pack into 63 bits, the
+   * applied combinations and the covered areas must fit 64-bit masks and the symbol ids must fit
+   * the reward terms.
+   * @param game The compiled game
+   * @return true if the boards of the game can be cached
+   */
+  public static boolean supports(CompiledGame game) {
+    return (long) game.getRows() * game.getColumns() * bitsPerCell(game.getSymbols().size()) < Long.SIZE
+            && game.getCombinations().size() <= Long.SIZE && game.getCombinations().areaCount() <= Long.SIZE
+            && game.getSymbols().size() <= 0x80;
+  }
+
+  /**
+   * Gets the memory one entry of a cache of a game takes, which grows with the number of covered
+   * areas and symbols that can win at once.
+   * @param game The compiled game, whose boards can be cached
+   * @return The size of an entry in bytes
+   */
+  public static int entryBytes(CompiledGame game) {
+    return FIXED_ENTRY_BYTES + Outcome.maxRewardTerms(game.getRows() * game.getColumns(), game.getSymbols().size(),
+            game.getCombinations().areaCount());
+  }
+
+  /**
+   * Computes the number of bits needed to store a symbol id.
+   * @param symbolCount The number of symbols
+   * @return The number of bits per cell, at least 1
+   */
+  private static int bitsPerCell(int symbolCount) {
+    return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(symbolCount - 1));
+  }
+
+  /**
+   * Computes the reward of a board, evaluating it only if it is not cached. The applied
+   * combinations and bonus symbol of the board are then available from
+   * {@link #appliedCombinations()} and {@link #appliedBonusSymbol()}.
+   * @param board The board, which must have the dimensions of the game
+   * @param bettingAmount The amount bet by the player
+   * @return The reward
+   */
+  public double reward(Board board, int bettingAmount) {
+    int entry = lookup(board);
+    double baseReward = Outcome.baseReward(symbols, combos, terms, entry * termStride, termCounts[entry], bettingAmount);
+    lastCombinations = combinations[entry];
+    lastBonusSymbol = baseReward > 0 ? bonusSymbols[entry] : -1;
+    return Outcome.applyBonus(symbols, bonusSymbols[entry], baseReward);
+  }
+
+  /**
+   * Evaluates a board into an outcome, restoring the outcome from the cache if the board was
+   * evaluated before. The restored outcome equals the evaluated one, apart from the scratch space.
+   * @param board The board, which must have the dimensions of the game
+   * @param target The outcome of the game to fill
+   */
+  void evaluate(Board board, Outcome target) {
+    int entry = lookup(board);
+    target.reset();
+    int symbol = -1;
+    for (int i = entry * termStride, end = i + termCounts[entry]; i < end; i++) {
+      int term = terms[i];
+      if (term < 0) {
+        symbol = term & 0x7f;
+      } else if (combos.kindOf(term) == CompiledCombinations.KIND_SAME_SYMBOLS) {
+        target.sameCombos[symbol] = term;
+      }
+    }
+    // Every cell of a matched area holds the symbol of the area
+    byte[] cells = board.cells();
+    int[] areaCells = combos.areaCells();
+    for (long mask = areas[entry]; mask != 0; mask &= mask - 1) {
+      int area = Long.numberOfTrailingZeros(mask);
+      target.matchedAreas[target.matchedAreaCount] = area;
+      target.matchedAreaSymbols[target.matchedAreaCount++] = cells[areaCells[combos.areaOffset(area)]];
+    }
+    target.bonusSymbol = bonusSymbols[entry];
+  }
+
+  /**
+   * Finds the entry of a board, evaluating the board into a new entry if it is not cached.
+   * @param board The board
+   * @return The entry index
+   */
+  private int lookup(Board board) {
+    long key = pack(board);
+    int set = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & setMask;
+    int first = set * WAYS;
+    int entry = -1;
+    for (int i = first; i < first + WAYS; i++) {
+      if (keys[i] == key) {
+        entry = i;
+        break;
+      }
+    }
+    if (entry >= 0) {
+      hits++;
+      referenced[entry] = true;
+    } else {
+      misses++;
+      entry = victim(set);
+      game.evaluate(board, outcome);
+      keys[entry] = key;
+      termCounts[entry] = outcome.writeRewardTerms(terms, entry * termStride);
+      combinations[entry] = outcome.appliedCombinationMask();
+      long matched = 0L;
+      for (int i = 0; i < outcome.matchedAreaCount; i++) {
+        matched |= 1L << outcome.matchedAreas[i];
+      }
+      areas[entry] = matched;
+      bonusSymbols[entry] = outcome.bonusSymbol;
+      referenced[entry] = false;
+    }
+    return entry;
+  }
+
+  /**
+   * Packs a board into a key, bitsPerCell bits per cell in row-major order.
+   * @param board The board
+   * @return The key
+   */
+  private long pack(Board board) {
+    byte[] cells = board.cells();
+    long key = 0;
+    for (byte cell : cells) {
+      key = (key << bitsPerCell) | cell;
+    }
+    return key;
+  }
+
+  /**
+   * Chooses the entry of a set to fill with a new board: an empty entry if any, otherwise the
+   * first entry the CLOCK hand finds unused since it last passed.
+   * @param set The set index
+   * @return The entry index
+   */
+  private int victim(int set) {
+    int first = set * WAYS;
+    for (int i = first; i < first + WAYS; i++) {
+      if (keys[i] == EMPTY) {
+        return i;
+      }
+    }
+    evictions++;
+    int hand = hands[set];
+    while (referenced[first + hand]) {
+      referenced[first + hand] = false;
+      hand = (hand + 1) % WAYS;
+    }
+    hands[set] = (byte) ((hand + 1) % WAYS);
+    return first + hand;
+  }
+
+  /**
+   * Gets the applied combinations of the last board passed to {@link #reward(Board, int)}.
+   * @return The bitmask in which bit i stands for combination id i
+   */
+  public long appliedCombinations() {
+    return lastCombinations;
+  }
+
+  /**
+   * Gets the applied bonus symbol of the last board passed to {@link #reward(Board, int)}.
+   * @return The bonus symbol id, or -1
+   */
+  public int appliedBonusSymbol() {
+    return lastBonusSymbol;
+  }
+
+  /**
+   * Gets the compiled game whose boards are cached.
+   * @return The compiled game
+   */
+  public CompiledGame getGame() {
+    return game;
+  }
+
+  /**
+   * Gets the number of entries the cache holds.
+   * @return The capacity
+   */
+  public int getCapacity() {
+    return keys.length;
+  }
+
+  /**
+   * Gets the number of lookups answered from the cache.
+   * @return The number of hits
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of lookups that evaluated the board.
+   * @return The number of misses
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the number of entries replaced by another board.
+   * @return The number of evictions
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Gets the share of lookups answered from the cache.
+   * @return The hit rate between 0 and 1, or 0 before the first lookup
+   */
+  public double getHitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+}
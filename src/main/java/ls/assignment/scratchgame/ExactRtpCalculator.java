@@ -0,0 +1,715 @@
+package ls.assignment.scratchgame;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ExactRtpCalculator class computing the exact expected return of a compiled game
+ * without enumerating boards.
+ * <p>
+ * The calculation follows the semantics of {@link Matrix#evaluateRules(GameConfiguration, int)}:
+ * <ul>
+ *   <li>Cells are independent, so the first bonus cell in row-major order splits the boards into
+ *   strata "first bonus at cell k" (plus "no bonus") whose cells stay independent: cells before k
+ *   hold no bonus symbol, cell k holds one, cells after k are unconstrained.</li>
+ *   <li>Within a stratum the reward of one standard symbol only depends on which cells hold it.
+ *   The product of the linear combination multipliers is expanded by inclusion-exclusion over the
+ *   covered areas, and the same_symbols multiplier is taken from the Poisson-binomial distribution
+ *   of the symbol count in the remaining cells.</li>
+ *   <li>extra_bonus symbols need the probability that the board wins at all, which is computed with
+ *   a dynamic program over the per-symbol counts (capped below the smallest same_symbols count),
+ *   with inclusion-exclusion over the covered areas too short to imply a same_symbols win.</li>
+ *   <li>The probability that a combination applies in a round is one minus the probability that
+ *   it does not: by inclusion-exclusion over its covered areas for a linear_symbols combination,
+ *   and over the sets of symbols whose counts all fall in its count range for a same_symbols one.</li>
+ * </ul>
+ * Supports boards of up to 64 cells. All reward multipliers must be positive.
+ * @author LOTHFY ( LS )
+ */
+public final class ExactRtpCalculator {
+  /** Upper bound on the number of distinct covered-area unions kept during the expansion. */
+  static final int MAX_AREA_UNIONS = 1 << 20;
+  /** Upper bound on the number of states of the no-win dynamic program. */
+  static final int MAX_COUNT_STATES = 1 << 22;
+  /** Upper bound on the number of short covered areas expanded for the no-win probability. */
+  static final int MAX_SHORT_AREAS = 20;
+  /** Upper bound on the number of covered areas of one combination expanded for its hit rate. */
+  static final int MAX_HIT_AREAS = 20;
+
+  private final CompiledGame game;
+  private final SymbolTable symbols;
+  private final CompiledCombinations combinations;
+  private final int cells;
+  private final int[] standardSymbols;
+  private final int[] bonusSymbols;
+  private final double[][] probabilities;
+  private final int minSameCount;
+  private final double[] sameGain;
+  private final double[] noSameFlag;
+  private final long[] unionMasks;
+  private final double[] unionGains;
+  private final double[] unionSigns;
+  private final long[] shortAreaMasks;
+
+  /**
+   * Result class holding the exact figures of a game for one bet.
+   */
+  public static final class Result {
+    /** The betting amount the figures are computed for. */
+    public final int bettingAmount;
+    /** The expected reward divided by the bet. */
+    public final double rtp;
+    /** The expected reward before bonus symbols, divided by the bet. */
+    public final double baseRtp;
+    /** The probability that a round has a positive reward. */
+    public final double hitFrequency;
+    /** The expected number of applications of every combination per round. */
+    public final double[] comboApplications;
+    /**
+     * The probability that every combination applies at least once in a round, which is less than
+     * its expected applications when several symbols or areas apply it in one round; NaN where the
+     * expansion would exceed {@link #MAX_HIT_AREAS} areas or {@link #MAX_COUNT_STATES} count states.
+     */
+    public final double[] comboHitRates;
+    /** The RTP added by every bonus symbol, indexed by symbol id (0 for other symbols). */
+    public final double[] bonusRtp;
+    private final CompiledGame game;
+
+    /**
+     * Constructs a result.
+     * @param game The compiled game
+     * @param bettingAmount The betting amount
+     * @param rtp The RTP
+     * @param baseRtp The RTP before bonus symbols
+     * @param hitFrequency The hit frequency
+     * @param comboApplications The expected applications of every combination
+     * @param comboHitRates The probability that every combination applies in a round
+     * @param bonusRtp The RTP added by every bonus symbol
+     */
+    Result(CompiledGame game, int bettingAmount, double rtp, double baseRtp, double hitFrequency,
+           double[] comboApplications, double[] comboHitRates, double[] bonusRtp) {
+      this.game = game;
+      this.bettingAmount = bettingAmount;
+      this.rtp = rtp;
+      this.baseRtp = baseRtp;
+      this.hitFrequency = hitFrequency;
+      this.comboApplications = comboApplications;
+      this.comboHitRates = comboHitRates;
+      this.bonusRtp = bonusRtp;
+    }
+
+    /**
+     * Prints a report of the exact figures.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+      out.println(String.format(Locale.ROOT, "Betting amount  : %d", bettingAmount));
+      out.println(String.format(Locale.ROOT, "RTP             : %.6f %%", rtp * 100));
+      out.println(String.format(Locale.ROOT, "RTP before bonus: %.6f %%", baseRtp * 100));
+      out.println(String.format(Locale.ROOT, "Hit frequency   : %.6f %%", hitFrequency * 100));
+      out.println("Win combinations (expected applications per round, rounds hit):");
+      CompiledCombinations combinations = game.getCombinations();
+      for (int combo = 0; combo < comboApplications.length; combo++) {
+        out.println(String.format(Locale.ROOT, "  %-40s %.10f %s", combinations.nameOf(combo), comboApplications[combo],
+                Double.isNaN(comboHitRates[combo]) ? "-" : String.format(Locale.ROOT, "%.6f %%", comboHitRates[combo] * 100)));
+      }
+      out.println("Bonus symbols (RTP added):");
+      SymbolTable symbols = game.getSymbols();
+      for (int symbol = 0; symbol < bonusRtp.length; symbol++) {
+        if (symbols.isBonus(symbol)) {
+          out.println(String.format(Locale.ROOT, "  %-40s %.6f %%", symbols.nameOf(symbol), bonusRtp[symbol] * 100));
+        }
+      }
+    }
+  }
+
+  /**
+   * Prepares the calculation for a compiled game.
+   * @param game The compiled game
+   * @throws UnsupportedOperationException if the board has more than 64 cells, a reward multiplier
+   *         is not positive, or the covered areas are too many to expand
+   */
+  public ExactRtpCalculator(CompiledGame game) {
+    this.game = game;
+    this.symbols = game.getSymbols();
+    this.combinations = game.getCombinations();
+    this.cells = game.getRows() * game.getColumns();
+    if (!combinations.hasAreaMasks()) {
+      throw new UnsupportedOperationException("Exact RTP needs a board of at most 64 cells");
+    }
+
+    List<Integer> standard = new ArrayList<>();
+    List<Integer> bonus = new ArrayList<>();
+    for (int symbol = 0; symbol < symbols.size(); symbol++) {
+      if (symbols.isStandard(symbol)) {
+        standard.add(symbol);
+        requirePositive(symbols.rewardMultiplierOf(symbol), symbols.nameOf(symbol));
+      } else if (symbols.isBonus(symbol)) {
+        bonus.add(symbol);
+      }
+    }
+    this.standardSymbols = standard.stream().mapToInt(Integer::intValue).toArray();
+    this.bonusSymbols = bonus.stream().mapToInt(Integer::intValue).toArray();
+    for (int combo = 0; combo < combinations.size(); combo++) {
+      requirePositive(combinations.rewardMultiplierOf(combo), combinations.nameOf(combo));
+    }
+
+    this.probabilities = new double[cells][symbols.size()];
+    for (int cell = 0; cell < cells; cell++) {
+      for (int symbol = 0; symbol < symbols.size(); symbol++) {
+        probabilities[cell][symbol] = game.cellProbability(cell, symbol);
+      }
+    }
+
+    // Same_symbols gain per count; a combination applies from its count upwards
+    int minSame = cells + 1;
+    this.sameGain = new double[cells + 1];
+    this.noSameFlag = new double[cells + 1];
+    for (int count = 0; count <= cells; count++) {
+      int combo = combinations.sameComboForCount(count);
+      sameGain[count] = combo >= 0 ? combinations.rewardMultiplierOf(combo) : 1.0;
+      noSameFlag[count] = combo >= 0 ? 0.0 : 1.0;
+      if (combo >= 0 && count < minSame) {
+        minSame = count;
+      }
+    }
+    this.minSameCount = minSame;
+
+    // Expand prod_a (1 + (l_a - 1) [a covered]) and prod_a (1 - [a covered]) into sums over unions of areas
+    Map<Long, double[]> unions = new HashMap<>();
+    unions.put(0L, new double[] {1.0, 1.0});
+    for (int area = 0; area < combinations.areaCount(); area++) {
+      long mask = combinations.areaMask(area);
+      double gain = combinations.rewardMultiplierOf(combinations.areaCombo(area)) - 1.0;
+      Map<Long, double[]> next = new HashMap<>();
+      for (Map.Entry<Long, double[]> entry : unions.entrySet()) {
+        next.put(entry.getKey(), entry.getValue().clone());
+      }
+      for (Map.Entry<Long, double[]> entry : unions.entrySet()) {
+        double[] value = next.computeIfAbsent(entry.getKey() | mask, k -> new double[2]);
+        value[0] += entry.getValue()[0] * gain;
+        value[1] -= entry.getValue()[1];
+      }
+      if (next.size() > MAX_AREA_UNIONS) {
+        throw new UnsupportedOperationException("Too many covered areas for an exact calculation");
+      }
+      unions = next;
+    }
+    this.unionMasks = new long[unions.size()];
+    this.unionGains = new double[unions.size()];
+    this.unionSigns = new double[unions.size()];
+    int index = 0;
+    for (Map.Entry<Long, double[]> entry : unions.entrySet()) {
+      unionMasks[index] = entry.getKey();
+      unionGains[index] = entry.getValue()[0];
+      unionSigns[index] = entry.getValue()[1];
+      index++;
+    }
+
+    // Only areas with fewer cells than the smallest same_symbols count can win without a same_symbols win
+    Set<Long> shortAreas = new LinkedHashSet<>();
+    for (int area = 0; area < combinations.areaCount(); area++) {
+      long mask = combinations.areaMask(area);
+      if (Long.bitCount(mask) < minSameCount) {
+        shortAreas.add(mask);
+      }
+    }
+    if (shortAreas.size() > MAX_SHORT_AREAS) {
+      throw new UnsupportedOperationException("Too many short covered areas for an exact calculation");
+    }
+    this.shortAreaMasks = shortAreas.stream().mapToLong(Long::longValue).toArray();
+    long states = 1;
+    for (int i = 0; i < standardSymbols.length && minSameCount <= cells; i++) {
+      states *= minSameCount;
+      if (states > MAX_COUNT_STATES) {
+        throw new UnsupportedOperationException("Too many symbol count states for an exact calculation");
+      }
+    }
+  }
+
+  /**
+   * Checks that a reward multiplier is positive.
+   * @param multiplier The multiplier
+   * @param name The symbol or combination name
+   * @throws UnsupportedOperationException if the multiplier is not positive
+   */
+  private static void requirePositive(double multiplier, String name) {
+    if (!(multiplier > 0)) {
+      throw new UnsupportedOperationException("Exact RTP needs positive reward multipliers, " + name + " has " + multiplier);
+    }
+  }
+
+  /**
+   * Computes the exact figures for a bet. The bet matters because extra_bonus symbols add a fixed amount.
+   * @param bettingAmount The amount bet by the player
+   * @return The exact RTP, hit frequency, combination applications and hit rates, and bonus contributions
+   */
+  public Result calculate(int bettingAmount) {
+    double expectedReward = 0.0;
+    double expectedBase = 0.0;
+    double hitFrequency = 0.0;
+    double[] bonusRewards = new double[symbols.size()];
+
+    double[][] conditional = new double[cells][symbols.size()];
+    double noBonusBefore = 1.0;
+    for (int stratum = 0; stratum <= cells; stratum++) {
+      // stratum == cells means "no bonus symbol on the board"
+      double bonusMass = stratum < cells ? bonusMass(stratum) : 1.0;
+      double stratumProbability = noBonusBefore * bonusMass;
+      if (stratumProbability > 0) {
+        fillConditional(stratum, conditional);
+        double base = expectedBase(conditional);
+        double win = 1.0 - noWinProbability(conditional);
+        expectedBase += stratumProbability * base;
+        hitFrequency += stratumProbability * win;
+
+        double stratumReward = bettingAmount * base;
+        if (stratum < cells) {
+          stratumReward = 0.0;
+          for (int bonus : bonusSymbols) {
+            double share = probabilities[stratum][bonus] / bonusMass;
+            if (share == 0) {
+              continue;
+            }
+            double reward = bettingAmount * base;
+            byte impact = symbols.impactOf(bonus);
+            if (impact == SymbolTable.IMPACT_MULTIPLY_REWARD) {
+              reward *= symbols.rewardMultiplierOf(bonus);
+            } else if (impact == SymbolTable.IMPACT_EXTRA_BONUS) {
+              reward += symbols.extraOf(bonus) * win;
+            }
+            bonusRewards[bonus] += stratumProbability * share * (reward - bettingAmount * base);
+            stratumReward += share * reward;
+          }
+        }
+        expectedReward += stratumProbability * stratumReward;
+      }
+      if (stratum < cells) {
+        noBonusBefore *= 1.0 - bonusMass;
+      }
+    }
+
+    double[] bonusRtp = new double[symbols.size()];
+    for (int symbol = 0; symbol < bonusRtp.length; symbol++) {
+      bonusRtp[symbol] = bonusRewards[symbol] / bettingAmount;
+    }
+    return new Result(game, bettingAmount, expectedReward / bettingAmount, expectedBase, hitFrequency,
+            comboApplications(), comboHitRates(), bonusRtp);
+  }
+
+  /**
+   * Gets the total probability of the bonus symbols in a cell.
+   * @param cell The cell index
+   * @return The bonus probability mass
+   */
+  private double bonusMass(int cell) {
+    double mass = 0.0;
+    for (int bonus : bonusSymbols) {
+      mass += probabilities[cell][bonus];
+    }
+    return mass;
+  }
+
+  /**
+   * Computes the standard symbol probabilities of every cell within a stratum.
+   * @param stratum The first bonus cell, or cells for "no bonus"
+   * @param conditional The array to fill, indexed by cell and symbol id
+   */
+  private void fillConditional(int stratum, double[][] conditional) {
+    for (int cell = 0; cell < cells; cell++) {
+      double scale;
+      if (cell < stratum) {
+        double mass = 1.0 - bonusMass(cell);
+        scale = mass > 0 ? 1.0 / mass : 0.0;
+      } else if (cell == stratum) {
+        scale = 0.0;
+      } else {
+        scale = 1.0;
+      }
+      for (int symbol : standardSymbols) {
+        conditional[cell][symbol] = probabilities[cell][symbol] * scale;
+      }
+    }
+  }
+
+  /**
+   * Computes the expected reward per unit bet before bonus symbols.
+   * @param conditional The standard symbol probabilities of every cell
+   * @return The expected base reward divided by the bet
+   */
+  private double expectedBase(double[][] conditional) {
+    double total = 0.0;
+    double[] distribution = new double[cells + 1];
+    for (int symbol : standardSymbols) {
+      double symbolTotal = 0.0;
+      for (int u = 0; u < unionMasks.length; u++) {
+        long union = unionMasks[u];
+        double covered = 1.0;
+        for (long bits = union; bits != 0 && covered > 0; bits &= bits - 1) {
+          covered *= conditional[Long.numberOfTrailingZeros(bits)][symbol];
+        }
+        if (covered == 0) {
+          continue;
+        }
+        int size = countDistribution(conditional, symbol, union, distribution);
+        int offset = Long.bitCount(union);
+        double sum = 0.0;
+        for (int j = 0; j <= size; j++) {
+          sum += distribution[j] * (unionGains[u] * sameGain[offset + j] - unionSigns[u] * noSameFlag[offset + j]);
+        }
+        symbolTotal += covered * sum;
+      }
+      total += symbols.rewardMultiplierOf(symbol) * symbolTotal;
+    }
+    return total;
+  }
+
+  /**
+   * Computes the Poisson-binomial distribution of the count of a symbol over the cells outside a mask.
+   * @param conditional The standard symbol probabilities of every cell
+   * @param symbol The symbol id
+   * @param excluded The cells to leave out
+   * @param distribution The array to fill with P(count == j)
+   * @return The number of cells included
+   */
+  private int countDistribution(double[][] conditional, int symbol, long excluded, double[] distribution) {
+    distribution[0] = 1.0;
+    int size = 0;
+    for (int cell = 0; cell < cells; cell++) {
+      if ((excluded >>> cell & 1L) != 0) {
+        continue;
+      }
+      double p = conditional[cell][symbol];
+      distribution[size + 1] = distribution[size] * p;
+      for (int j = size; j > 0; j--) {
+        distribution[j] = distribution[j] * (1 - p) + distribution[j - 1] * p;
+      }
+      distribution[0] *= 1 - p;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Computes the probability that no symbol wins any combination.
+   * @param conditional The standard symbol probabilities of every cell
+   * @return The no-win probability
+   */
+  private double noWinProbability(double[][] conditional) {
+    double total = 0.0;
+    int subsets = 1 << shortAreaMasks.length;
+    for (int subset = 0; subset < subsets; subset++) {
+      double sign = (Integer.bitCount(subset) & 1) == 0 ? 1.0 : -1.0;
+      total += sign * cappedCountProbability(conditional, components(shortAreaMasks, subset));
+    }
+    return Math.min(1.0, Math.max(0.0, total));
+  }
+
+  /**
+   * Merges the overlapping areas of a subset into components: the cells of overlapping areas
+   * must all hold the same symbol for every area to be filled with one symbol.
+   * @param areaMasks The cell masks of the areas
+   * @param subset The areas of the subset, one bit per index into areaMasks
+   * @return The cell masks of the components
+   */
+  private static List<Long> components(long[] areaMasks, int subset) {
+    List<Long> components = new ArrayList<>();
+    for (int a = 0; a < areaMasks.length; a++) {
+      if ((subset >>> a & 1) != 0) {
+        long merged = areaMasks[a];
+        for (int c = components.size() - 1; c >= 0; c--) {
+          if ((components.get(c) & merged) != 0) {
+            merged |= components.remove(c);
+          }
+        }
+        components.add(merged);
+      }
+    }
+    return components;
+  }
+
+  /**
+   * Computes the probability that every listed component is filled with one standard symbol and
+   * no standard symbol reaches the smallest same_symbols count.
+   * @param conditional The standard symbol probabilities of every cell
+   * @param components The cell masks that must each hold a single symbol
+   * @return The probability
+   */
+  private double cappedCountProbability(double[][] conditional, List<Long> components) {
+    int cap = minSameCount;
+    int symbolCount = standardSymbols.length;
+    long componentCells = 0L;
+    for (long component : components) {
+      componentCells |= component;
+    }
+
+    if (cap > cells) {
+      // No same_symbols combination: only the components are constrained
+      double probability = 1.0;
+      for (long component : components) {
+        probability *= monochrome(conditional, component, -1);
+      }
+      return probability;
+    }
+
+    int states = 1;
+    int[] radix = new int[symbolCount];
+    for (int s = 0; s < symbolCount; s++) {
+      radix[s] = states;
+      states *= cap;
+    }
+    double[] current = new double[states];
+    double[] next = new double[states];
+    current[0] = 1.0;
+
+    List<Long> units = new ArrayList<>(components);
+    for (int cell = 0; cell < cells; cell++) {
+      if ((componentCells >>> cell & 1L) == 0) {
+        units.add(1L << cell);
+      }
+    }
+    for (long unit : units) {
+      boolean free = Long.bitCount(unit) == 1 && (componentCells & unit) == 0;
+      int size = Long.bitCount(unit);
+      double blank = 0.0;
+      if (free) {
+        blank = 1.0;
+        for (int symbol : standardSymbols) {
+          blank -= conditional[Long.numberOfTrailingZeros(unit)][symbol];
+        }
+        blank = Math.max(0.0, blank);
+      }
+      double[] symbolProbability = new double[symbolCount];
+      for (int s = 0; s < symbolCount; s++) {
+        symbolProbability[s] = monochrome(conditional, unit, standardSymbols[s]);
+      }
+
+      Arrays.fill(next, 0.0);
+      for (int state = 0; state < states; state++) {
+        double probability = current[state];
+        if (probability == 0) {
+          continue;
+        }
+        next[state] += probability * blank;
+        for (int s = 0; s < symbolCount; s++) {
+          int count = state / radix[s] % cap;
+          if (count + size < cap && symbolProbability[s] > 0) {
+            next[state + size * radix[s]] += probability * symbolProbability[s];
+          }
+        }
+      }
+      double[] swap = current;
+      current = next;
+      next = swap;
+    }
+
+    double total = 0.0;
+    for (double probability : current) {
+      total += probability;
+    }
+    return total;
+  }
+
+  /**
+   * Computes the probability that all cells of a mask hold the same standard symbol.
+   * @param conditional The standard symbol probabilities of every cell
+   * @param mask The cells
+   * @param symbol The required symbol, or -1 for any standard symbol
+   * @return The probability
+   */
+  private double monochrome(double[][] conditional, long mask, int symbol) {
+    double total = 0.0;
+    for (int candidate : standardSymbols) {
+      if (symbol >= 0 && candidate != symbol) {
+        continue;
+      }
+      double probability = 1.0;
+      for (long bits = mask; bits != 0; bits &= bits - 1) {
+        probability *= conditional[Long.numberOfTrailingZeros(bits)][candidate];
+      }
+      total += probability;
+    }
+    return total;
+  }
+
+  /**
+   * Computes the expected number of applications of every combination per round.
+   * @return The expected applications indexed by combination id
+   */
+  private double[] comboApplications() {
+    double[] applications = new double[combinations.size()];
+    double[] distribution = new double[cells + 1];
+    for (int symbol : standardSymbols) {
+      int size = countDistribution(probabilities, symbol, 0L, distribution);
+      for (int count = 0; count <= size; count++) {
+        int combo = combinations.sameComboForCount(count);
+        if (combo >= 0) {
+          applications[combo] += distribution[count];
+        }
+      }
+    }
+    for (int area = 0; area < combinations.areaCount(); area++) {
+      applications[combinations.areaCombo(area)] += monochrome(probabilities, combinations.areaMask(area), -1);
+    }
+    return applications;
+  }
+
+  /**
+   * Computes the probability that every combination applies at least once in a round.
+   * @return The hit rates indexed by combination id, NaN where the expansion is too large
+   */
+  private double[] comboHitRates() {
+    double[] hitRates = new double[combinations.size()];
+    for (int combo = 0; combo < hitRates.length; combo++) {
+      double miss = combinations.kindOf(combo) == CompiledCombinations.KIND_SAME_SYMBOLS
+              ? sameComboMissProbability(combo) : areaComboMissProbability(combo);
+      hitRates[combo] = Math.min(1.0, Math.max(0.0, 1.0 - miss));
+    }
+    return hitRates;
+  }
+
+  /**
+   * Computes the probability that none of the covered areas of a combination is filled with one
+   * standard symbol, by inclusion-exclusion over the areas.
+   * @param combo The combination id
+   * @return The probability, or NaN if the combination has more than {@link #MAX_HIT_AREAS} areas
+   */
+  private double areaComboMissProbability(int combo) {
+    Set<Long> areas = new LinkedHashSet<>();
+    for (int area = 0; area < combinations.areaCount(); area++) {
+      if (combinations.areaCombo(area) == combo) {
+        areas.add(combinations.areaMask(area));
+      }
+    }
+    if (areas.size() > MAX_HIT_AREAS) {
+      return Double.NaN;
+    }
+    long[] areaMasks = areas.stream().mapToLong(Long::longValue).toArray();
+    double total = 0.0;
+    for (int subset = 0; subset < 1 << areaMasks.length; subset++) {
+      double probability = (Integer.bitCount(subset) & 1) == 0 ? 1.0 : -1.0;
+      for (long component : components(areaMasks, subset)) {
+        probability *= monochrome(probabilities, component, -1);
+      }
+      total += probability;
+    }
+    return total;
+  }
+
+  /**
+   * Computes the probability that no standard symbol has a count for which a same_symbols
+   * combination is the one applied, by inclusion-exclusion over the sets of symbols whose counts
+   * all fall in that range. Only sets small enough to fit on the board contribute.
+   * @param combo The combination id
+   * @return The probability, or NaN if the count states exceed {@link #MAX_COUNT_STATES}
+   */
+  private double sameComboMissProbability(int combo) {
+    int low = -1;
+    int high = -1;
+    for (int count = 0; count <= cells; count++) {
+      if (combinations.sameComboForCount(count) == combo) {
+        low = low < 0 ? count : low;
+        high = count;
+      }
+    }
+    if (low < 0) {
+      return 1.0;
+    }
+    int maxSymbols = Math.min(standardSymbols.length, cells / low);
+    long states = 1;
+    for (int i = 0; i < maxSymbols; i++) {
+      states *= high + 1;
+      if (states > MAX_COUNT_STATES) {
+        return Double.NaN;
+      }
+    }
+    return inRangeSubsets(new int[maxSymbols], 0, 0, low, high);
+  }
+
+  /**
+   * Adds up the signed probabilities that the counts of a set of symbols and of every larger set
+   * built from the symbols after the last one all fall in a range.
+   * @param chosen The symbol ids of the set, in its first size entries
+   * @param size The size of the set
+   * @param next The index into standardSymbols of the first symbol that may be added
+   * @param low The smallest count of the range
+   * @param high The largest count of the range
+   * @return The signed sum over the set and its extensions
+   */
+  private double inRangeSubsets(int[] chosen, int size, int next, int low, int high) {
+    double probability = inRangeProbability(chosen, size, low, high);
+    if (probability == 0) {
+      // No larger set can have all its counts in range either
+      return 0.0;
+    }
+    double total = (size & 1) == 0 ? probability : -probability;
+    if (size < chosen.length) {
+      for (int i = next; i < standardSymbols.length; i++) {
+        chosen[size] = standardSymbols[i];
+        total += inRangeSubsets(chosen, size + 1, i + 1, low, high);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Computes the probability that the counts of a set of symbols all fall in a range, with a
+   * dynamic program over the cells whose state is the count of every symbol of the set.
+   * @param chosen The symbol ids of the set, in its first size entries
+   * @param size The size of the set
+   * @param low The smallest count of the range
+   * @param high The largest count of the range
+   * @return The probability
+   */
+  private double inRangeProbability(int[] chosen, int size, int low, int high) {
+    int radix = high + 1;
+    int states = 1;
+    for (int i = 0; i < size; i++) {
+      states *= radix;
+    }
+    double[] current = new double[states];
+    double[] next = new double[states];
+    current[0] = 1.0;
+    for (int cell = 0; cell < cells; cell++) {
+      double other = 1.0;
+      for (int i = 0; i < size; i++) {
+        other -= probabilities[cell][chosen[i]];
+      }
+      other = Math.max(0.0, other);
+      Arrays.fill(next, 0.0);
+      for (int state = 0; state < states; state++) {
+        double probability = current[state];
+        if (probability == 0) {
+          continue;
+        }
+        next[state] += probability * other;
+        // Counts above the range can never fall back into it, so those boards are dropped
+        for (int i = 0, unit = 1; i < size; i++, unit *= radix) {
+          if (state / unit % radix < high) {
+            next[state + unit] += probability * probabilities[cell][chosen[i]];
+          }
+        }
+      }
+      double[] swap = current;
+      current = next;
+      next = swap;
+    }
+
+    double total = 0.0;
+    for (int state = 0; state < states; state++) {
+      boolean inRange = true;
+      for (int i = 0, unit = 1; i < size && inRange; i++, unit *= radix) {
+        inRange = state / unit % radix >= low;
+      }
+      total += inRange ? current[state] : 0.0;
+    }
+    return total;
+  }
+}
@@ -16,6 +16,8 @@ public class GameConfiguration {
   private Probabilities probabilities;
   @SerializedName("win_combinations")
   private Map<String, WinCombination> winCombinations;
+  /** The game compiled by {@link #compiled()}, dropped by the setters; transient fields are not serialized. */
+  private transient volatile CompiledGame compiled;
 
   /**
    * Gets the number of columns in the game matrix.
@@ -31,6 +33,7 @@ public class GameConfiguration {
    */
   public void setColumns(int columns) {
     this.columns = columns;
+    this.compiled = null;
   }
 
   /**
@@ -47,6 +50,7 @@ public class GameConfiguration {
    */
   public void setRows(int rows) {
     this.rows = rows;
+    this.compiled = null;
   }
 
   /**
@@ -63,6 +67,7 @@ public class GameConfiguration {
    */
   public void setSymbols(Map<String, Symbol> symbols) {
     this.symbols = symbols;
+    this.compiled = null;
   }
 
   /**
@@ -79,6 +84,7 @@ public class GameConfiguration {
    */
   public void setProbabilities(Probabilities probabilities) {
     this.probabilities = probabilities;
+    this.compiled = null;
   }
 
   /**
@@ -95,6 +101,26 @@ public class GameConfiguration {
    */
   public void setWinCombinations(Map<String, WinCombination> winCombinations) {
     this.winCombinations = winCombinations;
+    this.compiled = null;
+  }
+
+  /**
+   * Gets the game compiled from this configuration, compiling it on the first call so that the
+   * uncompiled entry points such as {@link Matrix#generateMatrix(GameConfiguration)} do not
+   * compile it again for every board. Changes made through the setters compile it again; changes
+   * made inside the symbols, probabilities or win combinations are not seen.
+   * @return The compiled game
+   * @throws IllegalStateException if the configuration cannot be compiled
+   * @throws IllegalArgumentException if the total probability weight of a cell is zero
+   */
+  CompiledGame compiled() {
+    CompiledGame result = compiled;
+    if (result == null) {
+      // Racing threads may each compile; any of the equal results will do
+      result = CompiledGame.compile(this);
+      compiled = result;
+    }
+    return result;
   }
 
   /**
@@ -0,0 +1,184 @@
+package ls.assignment.scratchgame;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.List;
+
+/**
+ * GameEvents class holding the Java Flight Recorder events of the game, to profile a running
+ * process with standard tooling (JDK Mission Control, the jfr tool) at low overhead.
+ * The events of every round (board generation, evaluation and result serialization) are
+ * disabled by default and record no stack trace: while disabled, {@code begin()} and
+ * {@code shouldCommit()} reduce to a check the JIT compiler hoists out and the event object is
+ * never allocated, so the events stay in the hot paths permanently. Enable them in a recording,
+ * for instance with {@code -XX:StartFlightRecording:ls.assignment.scratchgame.Evaluation#enabled=true}.
+ * Configuration loads are rare and enabled by default.
+ * @author LOTHFY ( LS )
+ */
+public final class GameEvents {
+  /** Category of all events of the game. */
+  static final String CATEGORY = "Scratch Game";
+
+  private GameEvents() {
+  }
+
+  /**
+   * Loading and compiling a configuration, from reading the file to the compiled game.
+   */
+  @Name("ls.assignment.scratchgame.ConfigLoad")
+  @Label("Config Load")
+  @Category(CATEGORY)
+  @Description("Configuration read, parsed and compiled")
+  @StackTrace(false)
+  public static final class ConfigLoad extends Event {
+    @Label("Source")
+    @Description("Path of the configuration file")
+    String source;
+
+    @Label("From Snapshot")
+    @Description("Whether the compiled game was restored from a binary snapshot")
+    boolean snapshot;
+
+    @Label("Source Size")
+    @DataAmount
+    long sourceBytes;
+
+    @Label("Version")
+    @Description("Version of the configuration, counted from 1 by hot reloads")
+    long version;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Symbols")
+    int symbols;
+
+    @Label("Win Combinations")
+    int combinations;
+
+    /**
+     * Fills in the fields describing a loaded game.
+     * @param game The compiled game
+     */
+    void describe(CompiledGame game) {
+      rows = game.getRows();
+      columns = game.getColumns();
+      symbols = game.getSymbols().size();
+      combinations = game.getCombinations().size();
+    }
+  }
+
+  /**
+   * Generating one board.
+   */
+  @Name("ls.assignment.scratchgame.BoardGeneration")
+  @Label("Board Generation")
+  @Category(CATEGORY)
+  @Description("One board drawn from the cell probabilities")
+  @Enabled(false)
+  @StackTrace(false)
+  public static final class BoardGeneration extends Event {
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int columns;
+  }
+
+  /**
+   * Evaluating one board.
+   */
+  @Name("ls.assignment.scratchgame.Evaluation")
+  @Label("Evaluation")
+  @Category(CATEGORY)
+  @Description("One board evaluated against the win combinations")
+  @Enabled(false)
+  @StackTrace(false)
+  public static final class Evaluation extends Event {
+    @Label("Engine")
+    @Description("reference for Matrix.evaluateRules with a configuration, compiled for a compiled game")
+    String engine;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Combinations Checked")
+    @Description("Win combinations the board was checked against")
+    int combinationsChecked;
+
+    @Label("Covered Areas Checked")
+    @Description("Covered areas of linear combinations the board was checked against")
+    int areasChecked;
+
+    @Label("Combinations Applied")
+    @Description("Win combinations applied, summed over the winning symbols")
+    int combinationsApplied;
+
+    @Label("Betting Amount")
+    int bettingAmount;
+
+    @Label("Reward")
+    double reward;
+
+    /**
+     * Fills in the fields describing an evaluation by a compiled game.
+     * @param game The compiled game
+     * @param bettingAmount The amount bet
+     * @param result The evaluation result
+     */
+    void describe(CompiledGame game, int bettingAmount, Matrix.EvaluationResult result) {
+      engine = "compiled";
+      rows = game.getRows();
+      columns = game.getColumns();
+      combinationsChecked = game.getCombinations().size();
+      areasChecked = game.getCombinations().areaCount();
+      describe(bettingAmount, result);
+    }
+
+    /**
+     * Fills in the fields describing the result of an evaluation.
+     * @param bettingAmount The amount bet
+     * @param result The evaluation result
+     */
+    void describe(int bettingAmount, Matrix.EvaluationResult result) {
+      this.bettingAmount = bettingAmount;
+      this.reward = result.reward;
+      int applied = 0;
+      for (List<String> combos : result.appliedWinningCombinations.values()) {
+        applied += combos.size();
+      }
+      this.combinationsApplied = applied;
+    }
+  }
+
+  /**
+   * Serializing the result of one round.
+   */
+  @Name("ls.assignment.scratchgame.ResultSerialization")
+  @Label("Result Serialization")
+  @Category(CATEGORY)
+  @Description("The result of one round written as text")
+  @Enabled(false)
+  @StackTrace(false)
+  public static final class ResultSerialization extends Event {
+    @Label("Format")
+    String format;
+
+    @Label("Length")
+    @Description("Length of the written text in characters")
+    int length;
+  }
+}
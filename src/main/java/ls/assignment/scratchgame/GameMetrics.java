@@ -0,0 +1,398 @@
+package ls.assignment.scratchgame;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GameMetrics class counting played rounds and timing board generation, evaluation and
+ * configuration loading, to compare live hit rates with the configured probabilities and see
+ * where time goes.
+ * Every counter is a {@link LongAdder} and every timing goes into a {@link LatencyHistogram}, so
+ * recording takes no lock and threads do not contend. Win combinations and bonus symbols are
+ * counted by name; the counters of the symbols and combinations of a compiled game are resolved
+ * once per game, so a reloaded configuration keeps counting into the same names. While the rounds
+ * of two versions of a reloaded configuration interleave, every switch only looks up the counters
+ * resolved before.
+ * The metrics are exposed over JMX (see {@link GameMetricsMXBean}) and in the Prometheus text
+ * format, served by {@link PlayServer} under /metrics or written to a file.
+ * @author LOTHFY ( LS )
+ */
+public final class GameMetrics implements GameMetricsMXBean {
+  /** Name under which {@link #registerMBean()} registers the metrics. */
+  public static final String OBJECT_NAME = "ls.assignment.scratchgame:type=GameMetrics";
+
+  private final LongAdder rounds = new LongAdder();
+  private final LongAdder wins = new LongAdder();
+  private final DoubleAdder bets = new DoubleAdder();
+  private final DoubleAdder rewards = new DoubleAdder();
+  private final Map<String, LongAdder> combinationHits = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> bonusApplications = new ConcurrentHashMap<>();
+  private final LatencyHistogram generateLatency = new LatencyHistogram();
+  private final LatencyHistogram evaluateLatency = new LatencyHistogram();
+  private final LatencyHistogram configLoadLatency = new LatencyHistogram();
+  private volatile long configVersion;
+  /** The counters of every played game; weak, so that the versions replaced by a reload can be collected. */
+  private final Map<CompiledGame, Binding> bindings = Collections.synchronizedMap(new WeakHashMap<>());
+  /** The counters of the game played last, read without locking while the game does not change. */
+  private volatile Binding binding;
+
+  /**
+   * Counters of the combinations and bonus symbols of one compiled game, indexed by id.
+   */
+  private static final class Binding {
+    /** The game, held weakly so that the binding does not keep its key in {@link #bindings}. */
+    final WeakReference<CompiledGame> game;
+    final LongAdder[] combinations;
+    final LongAdder[] bonusSymbols;
+
+    /**
+     * Resolves the counters of a game.
+     * @param game The compiled game
+     * @param metrics The metrics holding the counters by name
+     */
+    Binding(CompiledGame game, GameMetrics metrics) {
+      this.game = new WeakReference<>(game);
+      CompiledCombinations combos = game.getCombinations();
+      this.combinations = new LongAdder[combos.size()];
+      for (int id = 0; id < combinations.length; id++) {
+        combinations[id] = counter(metrics.combinationHits, combos.nameOf(id));
+      }
+      SymbolTable symbols = game.getSymbols();
+      this.bonusSymbols = new LongAdder[symbols.size()];
+      for (int id = 0; id < bonusSymbols.length; id++) {
+        if (symbols.isBonus(id)) {
+          bonusSymbols[id] = counter(metrics.bonusApplications, symbols.nameOf(id));
+        }
+      }
+    }
+  }
+
+  /**
+   * Records the time taken to generate one board.
+   * @param nanos The duration in nanoseconds
+   */
+  public void recordGenerate(long nanos) {
+    generateLatency.record(nanos);
+  }
+
+  /**
+   * Records the time taken to evaluate one board.
+   * @param nanos The duration in nanoseconds
+   */
+  public void recordEvaluate(long nanos) {
+    evaluateLatency.record(nanos);
+  }
+
+  /**
+   * Records the loading of a configuration.
+   * @param nanos The time taken to read and compile it, in nanoseconds
+   * @param version The version of the loaded configuration
+   */
+  public void recordConfigLoad(long nanos, long version) {
+    configLoadLatency.record(nanos);
+    configVersion = version;
+  }
+
+  /**
+   * Records one round evaluated with {@link Matrix#evaluateRules(GameConfiguration, int)}.
+   * @param result The evaluation result
+   * @param bettingAmount The amount bet
+   */
+  public void recordRound(Matrix.EvaluationResult result, int bettingAmount) {
+    recordTotals(bettingAmount, result.reward);
+    result.appliedWinningCombinations.values().stream().flatMap(List::stream).distinct()
+            .forEach(name -> counter(combinationHits, name).increment());
+    if (result.appliedBonusSymbol != null) {
+      counter(bonusApplications, result.appliedBonusSymbol).increment();
+    }
+  }
+
+  /**
+   * Records one round of a compiled game from its outcome, without allocating.
+   * @param game The compiled game the round was played on
+   * @param outcome The outcome of evaluating the board
+   * @param bettingAmount The amount bet
+   */
+  void recordRound(CompiledGame game, Outcome outcome, int bettingAmount) {
+    Binding current = binding;
+    if (current == null || current.game.get() != game) {
+      current = bindings.computeIfAbsent(game, key -> new Binding(key, this));
+      binding = current;
+    }
+    double baseReward = outcome.baseReward(bettingAmount);
+    recordTotals(bettingAmount, outcome.applyBonus(baseReward));
+
+    if (current.combinations.length <= Long.SIZE) {
+      // A combination applied to several symbols counts once per round
+      for (long mask = outcome.appliedCombinationMask(); mask != 0; mask &= mask - 1) {
+        current.combinations[Long.numberOfTrailingZeros(mask)].increment();
+      }
+    } else {
+      for (int symbol = 0; symbol < outcome.sameCombos.length; symbol++) {
+        if (outcome.sameCombos[symbol] >= 0) {
+          current.combinations[outcome.sameCombos[symbol]].increment();
+        }
+      }
+      for (int i = 0; i < outcome.matchedAreaCount; i++) {
+        current.combinations[outcome.combinations.areaCombo(outcome.matchedAreas[i])].increment();
+      }
+    }
+    int bonusSymbol = outcome.appliedBonusSymbol(baseReward);
+    if (bonusSymbol >= 0) {
+      current.bonusSymbols[bonusSymbol].increment();
+    }
+  }
+
+  /**
+   * Records the round, win, bet and reward totals of one round.
+   * @param bettingAmount The amount bet
+   * @param reward The reward paid
+   */
+  private void recordTotals(int bettingAmount, double reward) {
+    rounds.increment();
+    if (reward > 0) {
+      wins.increment();
+    }
+    bets.add(bettingAmount);
+    rewards.add(reward);
+  }
+
+  /**
+   * Gets the counter of a name, creating it on first use.
+   * @param counters The counters by name
+   * @param name The name
+   * @return The counter
+   */
+  private static LongAdder counter(Map<String, LongAdder> counters, String name) {
+    return counters.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  /**
+   * Gets the number of rounds played.
+   * @return The number of rounds
+   */
+  @Override
+  public long getRounds() {
+    return rounds.sum();
+  }
+
+  /**
+   * Gets the number of rounds with a positive reward.
+   * @return The number of winning rounds
+   */
+  @Override
+  public long getWins() {
+    return wins.sum();
+  }
+
+  /**
+   * Gets the share of winning rounds.
+   * @return The hit rate between 0 and 1, or 0 before the first round
+   */
+  @Override
+  public double getHitRate() {
+    long played = rounds.sum();
+    return played == 0 ? 0 : (double) wins.sum() / played;
+  }
+
+  /**
+   * Gets the total reward divided by the total bet of all rounds.
+   * @return The return to player, or 0 before the first round
+   */
+  @Override
+  public double getReturnToPlayer() {
+    double bet = bets.sum();
+    return bet == 0 ? 0 : rewards.sum() / bet;
+  }
+
+  /**
+   * Gets the number of rounds in which every win combination was applied.
+   * @return A snapshot of the counts by combination name, sorted by name
+   */
+  @Override
+  public Map<String, Long> getCombinationHits() {
+    return snapshot(combinationHits);
+  }
+
+  /**
+   * Gets the number of rounds in which every bonus symbol was applied.
+   * @return A snapshot of the counts by bonus symbol name, sorted by name
+   */
+  @Override
+  public Map<String, Long> getBonusApplications() {
+    return snapshot(bonusApplications);
+  }
+
+  /**
+   * Gets the version of the configuration played now.
+   * @return The version of the last recorded configuration load, or 0
+   */
+  @Override
+  public long getConfigVersion() {
+    return configVersion;
+  }
+
+  /**
+   * Gets the mean time to generate a board.
+   * @return The mean in nanoseconds
+   */
+  @Override
+  public double getGenerateMeanNanos() {
+    return generateLatency.meanNanos();
+  }
+
+  /**
+   * Estimates the 99th percentile of the time to generate a board.
+   * @return The upper bound of the percentile's bucket in nanoseconds
+   */
+  @Override
+  public long getGenerateP99Nanos() {
+    return generateLatency.quantileNanos(0.99);
+  }
+
+  /**
+   * Gets the mean time to evaluate a board.
+   * @return The mean in nanoseconds
+   */
+  @Override
+  public double getEvaluateMeanNanos() {
+    return evaluateLatency.meanNanos();
+  }
+
+  /**
+   * Estimates the 99th percentile of the time to evaluate a board.
+   * @return The upper bound of the percentile's bucket in nanoseconds
+   */
+  @Override
+  public long getEvaluateP99Nanos() {
+    return evaluateLatency.quantileNanos(0.99);
+  }
+
+  /**
+   * Gets the mean time to load and compile a configuration.
+   * @return The mean in nanoseconds
+   */
+  @Override
+  public double getConfigLoadMeanNanos() {
+    return configLoadLatency.meanNanos();
+  }
+
+  /**
+   * Copies counters into a map sorted by name.
+   * @param counters The counters by name
+   * @return The current counts by name
+   */
+  private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+    Map<String, Long> snapshot = new TreeMap<>();
+    counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+    return snapshot;
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server under {@link #OBJECT_NAME}.
+   * @return The registered name
+   * @throws IllegalStateException if the metrics cannot be registered, for instance because
+   *         other metrics are registered under the name already
+   */
+  public ObjectName registerMBean() {
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      return name;
+    } catch (JMException e) {
+      throw new IllegalStateException("Failed to register " + OBJECT_NAME + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Writes the metrics in the Prometheus text exposition format.
+   * @return The metrics text
+   */
+  public String toPrometheus() {
+    StringBuilder text = new StringBuilder(4096);
+    appendCounter(text, "scratch_game_rounds_total", "Rounds played.", rounds.sum());
+    appendCounter(text, "scratch_game_wins_total", "Rounds with a positive reward.", wins.sum());
+    appendCounter(text, "scratch_game_bet_total", "Total amount bet.", bets.sum());
+    appendCounter(text, "scratch_game_reward_total", "Total reward paid.", rewards.sum());
+    appendLabeled(text, "scratch_game_combination_hits_total", "Rounds in which a win combination was applied.",
+            "combination", getCombinationHits());
+    appendLabeled(text, "scratch_game_bonus_applications_total", "Rounds in which a bonus symbol was applied.",
+            "symbol", getBonusApplications());
+    text.append("# HELP scratch_game_config_version Version of the configuration played now.\n")
+            .append("# TYPE scratch_game_config_version gauge\n")
+            .append("scratch_game_config_version ").append(configVersion).append('\n');
+    generateLatency.appendPrometheus(text, "scratch_game_generate_seconds", "Time to generate a board.");
+    evaluateLatency.appendPrometheus(text, "scratch_game_evaluate_seconds", "Time to evaluate a board.");
+    configLoadLatency.appendPrometheus(text, "scratch_game_config_load_seconds", "Time to load and compile a configuration.");
+    return text.toString();
+  }
+
+  /**
+   * Writes the metrics in the Prometheus text format to a file, replacing it atomically so that
+   * a collector never reads a partial file.
+   * @param file The file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void writePrometheus(Path file) throws IOException {
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.writeString(temporary, toPrometheus(), StandardCharsets.UTF_8);
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Appends an unlabeled counter.
+   * @param text The builder to append to
+   * @param name The metric name
+   * @param help The help text
+   * @param value The value
+   */
+  private static void appendCounter(StringBuilder text, String name, String help, double value) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(" counter\n");
+    text.append(name).append(' ');
+    RoundJson.appendNumber(text, value);
+    text.append('\n');
+  }
+
+  /**
+   * Appends a counter with one sample per label value.
+   * @param text The builder to append to
+   * @param name The metric name
+   * @param help The help text
+   * @param label The label name
+   * @param values The value of every label value
+   */
+  private static void appendLabeled(StringBuilder text, String name, String help, String label, Map<String, Long> values) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(" counter\n");
+    values.forEach((labelValue, value) -> {
+      text.append(name).append('{').append(label).append("=\"");
+      for (int i = 0; i < labelValue.length(); i++) {
+        char c = labelValue.charAt(i);
+        if (c == '\\' || c == '"') {
+          text.append('\\').append(c);
+        } else if (c == '\n') {
+          text.append("\\n");
+        } else {
+          text.append(c);
+        }
+      }
+      text.append("\"} ").append(value).append('\n');
+    });
+  }
+}
@@ -0,0 +1,82 @@
+package ls.assignment.scratchgame;
+
+import java.util.Map;
+
+/**
+ * GameMetricsMXBean interface exposing {@link GameMetrics} over JMX, for instance in JConsole
+ * or VisualVM under {@value GameMetrics#OBJECT_NAME}.
+ * @author LOTHFY ( LS )
+ */
+public interface GameMetricsMXBean {
+  /**
+   * Gets the number of rounds played.
+   * @return The number of rounds
+   */
+  long getRounds();
+
+  /**
+   * Gets the number of rounds with a positive reward.
+   * @return The number of winning rounds
+   */
+  long getWins();
+
+  /**
+   * Gets the share of winning rounds.
+   * @return The hit rate between 0 and 1, or 0 before the first round
+   */
+  double getHitRate();
+
+  /**
+   * Gets the total reward divided by the total bet of all rounds.
+   * @return The return to player, or 0 before the first round
+   */
+  double getReturnToPlayer();
+
+  /**
+   * Gets the number of rounds in which every win combination was applied.
+   * @return The number of rounds by combination name
+   */
+  Map<String, Long> getCombinationHits();
+
+  /**
+   * Gets the number of rounds in which every bonus symbol was applied.
+   * @return The number of rounds by bonus symbol name
+   */
+  Map<String, Long> getBonusApplications();
+
+  /**
+   * Gets the version of the configuration played now.
+   * @return The configuration version
+   */
+  long getConfigVersion();
+
+  /**
+   * Gets the mean time to generate a board.
+   * @return The mean in nanoseconds
+   */
+  double getGenerateMeanNanos();
+
+  /**
+   * Estimates the 99th percentile of the time to generate a board.
+   * @return The upper bound of the percentile's bucket in nanoseconds
+   */
+  long getGenerateP99Nanos();
+
+  /**
+   * Gets the mean time to evaluate a board.
+   * @return The mean in nanoseconds
+   */
+  double getEvaluateMeanNanos();
+
+  /**
+   * Estimates the 99th percentile of the time to evaluate a board.
+   * @return The upper bound of the percentile's bucket in nanoseconds
+   */
+  long getEvaluateP99Nanos();
+
+  /**
+   * Gets the mean time to load and compile a configuration.
+   * @return The mean in nanoseconds
+   */
+  double getConfigLoadMeanNanos();
+}
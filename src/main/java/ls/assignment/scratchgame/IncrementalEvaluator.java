@@ -0,0 +1,290 @@
+package ls.assignment.scratchgame;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * IncrementalEvaluator class keeping the evaluation of a board up to date while single cells
+ * change, for respin and hold features where only the cells that are not held are drawn again.
+ * <p>
+ * Instead of recounting every cell and re-checking every covered area like
+ * {@link BoardEvaluator}, it maintains the symbol counts, the count of every symbol within every
+ * covered area and a bitset of the bonus cells. A cell change touches only the counts of the
+ * old and the new symbol and the areas covering the cell, found through a cell-to-area index
+ * built once per game, so it costs O(areas covering the cell) plus a scan for the first bonus
+ * cell when the first one goes away. An area matches when one standard symbol fills it, which is
+ * the rule of {@link Matrix#evaluateRules(GameConfiguration, int)}; the matched areas are kept in
+ * ascending order like a fresh evaluation lists them, so the results are the same as evaluating
+ * the board from scratch, to the last bit of the reward.
+ * An IncrementalEvaluator is not thread-safe; use one per thread.
+ * @author LOTHFY ( LS )
+ */
+public final class IncrementalEvaluator {
+  private final CompiledGame game;
+  private final SymbolTable symbols;
+  private final CompiledCombinations combinations;
+  private final AliasSampler[] cellSamplers;
+  private final Board board;
+  private final Outcome outcome;
+
+  /** The areas covering every cell, once per occurrence of the cell in an area. */
+  private final int[] cellAreaOffsets;
+  private final int[] cellAreas;
+  /** The number of cells of every area, counting repeated cells once per occurrence. */
+  private final int[] areaLengths;
+
+  private final int[] symbolCounts;
+  /** The count of every symbol in every area, indexed area * symbols + symbol. */
+  private final int[] areaSymbolCounts;
+  /** The standard symbol filling every area, or -1. */
+  private final int[] areaMatches;
+  /** One bit per cell holding a bonus symbol. */
+  private final long[] bonusCells;
+  /** The first cell holding a bonus symbol in row-major order, or -1. */
+  private int firstBonusCell;
+
+  /**
+   * Constructs an evaluator for a compiled game, holding an empty board until {@link #reset(Board)}.
+   * @param game The compiled game
+   */
+  public IncrementalEvaluator(CompiledGame game) {
+    this.game = game;
+    this.symbols = game.getSymbols();
+    this.combinations = game.getCombinations();
+    this.cellSamplers = game.cellSamplers();
+    this.board = game.newBoard();
+    this.outcome = game.newOutcome();
+
+    int cellCount = board.size();
+    int areaCount = combinations.areaCount();
+    int[] areaCellIndexes = combinations.areaCells();
+    this.areaLengths = new int[areaCount];
+    this.cellAreaOffsets = new int[cellCount + 1];
+    for (int area = 0; area < areaCount; area++) {
+      areaLengths[area] = combinations.areaOffset(area + 1) - combinations.areaOffset(area);
+      for (int i = combinations.areaOffset(area); i < combinations.areaOffset(area + 1); i++) {
+        cellAreaOffsets[areaCellIndexes[i] + 1]++;
+      }
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      cellAreaOffsets[cell + 1] += cellAreaOffsets[cell];
+    }
+    this.cellAreas = new int[cellAreaOffsets[cellCount]];
+    int[] next = Arrays.copyOf(cellAreaOffsets, cellCount);
+    for (int area = 0; area < areaCount; area++) {
+      for (int i = combinations.areaOffset(area); i < combinations.areaOffset(area + 1); i++) {
+        cellAreas[next[areaCellIndexes[i]]++] = area;
+      }
+    }
+
+    this.symbolCounts = new int[symbols.size()];
+    this.areaSymbolCounts = new int[areaCount * symbols.size()];
+    this.areaMatches = new int[areaCount];
+    this.bonusCells = new long[(cellCount + Long.SIZE - 1) / Long.SIZE];
+    reset(board);
+  }
+
+  /**
+   * Replaces the whole board and evaluates it from scratch.
+   * @param board The board to copy, of the size of the game
+   */
+  public void reset(Board board) {
+    this.board.copyFrom(board);
+    byte[] cells = this.board.cells();
+    Arrays.fill(symbolCounts, 0);
+    Arrays.fill(areaSymbolCounts, 0);
+    Arrays.fill(bonusCells, 0L);
+    outcome.reset();
+    firstBonusCell = -1;
+    for (int cell = 0; cell < cells.length; cell++) {
+      symbolCounts[cells[cell]]++;
+      if (symbols.isBonus(cells[cell])) {
+        bonusCells[cell >>> 6] |= 1L << cell;
+        if (firstBonusCell < 0) {
+          firstBonusCell = cell;
+        }
+      }
+    }
+    outcome.bonusSymbol = firstBonusCell < 0 ? -1 : cells[firstBonusCell];
+    for (int symbol = 0; symbol < symbolCounts.length; symbol++) {
+      if (symbols.isStandard(symbol)) {
+        outcome.sameCombos[symbol] = combinations.sameComboForCount(symbolCounts[symbol]);
+      }
+    }
+    int[] areaCellIndexes = combinations.areaCells();
+    int symbolCount = symbols.size();
+    for (int area = 0; area < areaMatches.length; area++) {
+      areaMatches[area] = -1;
+      for (int i = combinations.areaOffset(area); i < combinations.areaOffset(area + 1); i++) {
+        int symbol = cells[areaCellIndexes[i]];
+        if (++areaSymbolCounts[area * symbolCount + symbol] == areaLengths[area] && symbols.isStandard(symbol)) {
+          areaMatches[area] = symbol;
+          outcome.matchedAreas[outcome.matchedAreaCount] = area;
+          outcome.matchedAreaSymbols[outcome.matchedAreaCount++] = symbol;
+        }
+      }
+    }
+  }
+
+  /**
+   * Changes the symbol of one cell and updates the evaluation.
+   * @param cell The cell index (row * columns + column)
+   * @param symbol The new symbol id
+   */
+  public void set(int cell, int symbol) {
+    int old = board.get(cell);
+    if (old == symbol) {
+      return;
+    }
+    board.set(cell, symbol);
+
+    symbolCounts[old]--;
+    symbolCounts[symbol]++;
+    if (symbols.isStandard(old)) {
+      outcome.sameCombos[old] = combinations.sameComboForCount(symbolCounts[old]);
+    }
+    if (symbols.isStandard(symbol)) {
+      outcome.sameCombos[symbol] = combinations.sameComboForCount(symbolCounts[symbol]);
+    }
+
+    int symbolCount = symbols.size();
+    for (int i = cellAreaOffsets[cell]; i < cellAreaOffsets[cell + 1]; i++) {
+      int area = cellAreas[i];
+      areaSymbolCounts[area * symbolCount + old]--;
+      if (areaMatches[area] == old) {
+        areaMatches[area] = -1;
+        removeMatchedArea(area);
+      }
+      if (++areaSymbolCounts[area * symbolCount + symbol] == areaLengths[area] && symbols.isStandard(symbol)) {
+        areaMatches[area] = symbol;
+        addMatchedArea(area, symbol);
+      }
+    }
+
+    boolean wasBonus = symbols.isBonus(old);
+    boolean isBonus = symbols.isBonus(symbol);
+    if (isBonus) {
+      bonusCells[cell >>> 6] |= 1L << cell;
+      if (firstBonusCell < 0 || cell <= firstBonusCell) {
+        firstBonusCell = cell;
+        outcome.bonusSymbol = symbol;
+      }
+    } else if (wasBonus) {
+      bonusCells[cell >>> 6] &= ~(1L << cell);
+      if (cell == firstBonusCell) {
+        firstBonusCell = nextBonusCell(cell + 1);
+        outcome.bonusSymbol = firstBonusCell < 0 ? -1 : board.get(firstBonusCell);
+      }
+    }
+  }
+
+  /**
+   * Draws every cell that is not held again from the probabilities of the game and updates the
+   * evaluation.
+   * @param random The random generator to draw from
+   * @param held Whether every cell is held, indexed by cell
+   */
+  public void respin(RandomGenerator random, boolean[] held) {
+    for (int cell = 0; cell < held.length; cell++) {
+      if (!held[cell]) {
+        set(cell, cellSamplers[cell].sample(random));
+      }
+    }
+  }
+
+  /**
+   * Finds the first bonus cell at or after a cell.
+   * @param from The cell to start from
+   * @return The cell index, or -1 if no later cell holds a bonus symbol
+   */
+  private int nextBonusCell(int from) {
+    int cellCount = board.size();
+    if (from >= cellCount) {
+      return -1;
+    }
+    int word = from >>> 6;
+    long bits = bonusCells[word] & (-1L << from);
+    while (bits == 0) {
+      if (++word == bonusCells.length) {
+        return -1;
+      }
+      bits = bonusCells[word];
+    }
+    return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+  }
+
+  /**
+   * Inserts a matched area into the matched areas of the outcome, keeping them in ascending order.
+   * @param area The area index
+   * @param symbol The symbol filling the area
+   */
+  private void addMatchedArea(int area, int symbol) {
+    int i = outcome.matchedAreaCount++;
+    while (i > 0 && outcome.matchedAreas[i - 1] > area) {
+      outcome.matchedAreas[i] = outcome.matchedAreas[i - 1];
+      outcome.matchedAreaSymbols[i] = outcome.matchedAreaSymbols[i - 1];
+      i--;
+    }
+    outcome.matchedAreas[i] = area;
+    outcome.matchedAreaSymbols[i] = symbol;
+  }
+
+  /**
+   * Removes a matched area from the matched areas of the outcome.
+   * @param area The area index, which must be matched
+   */
+  private void removeMatchedArea(int area) {
+    int i = 0;
+    while (outcome.matchedAreas[i] != area) {
+      i++;
+    }
+    int tail = --outcome.matchedAreaCount - i;
+    System.arraycopy(outcome.matchedAreas, i + 1, outcome.matchedAreas, i, tail);
+    System.arraycopy(outcome.matchedAreaSymbols, i + 1, outcome.matchedAreaSymbols, i, tail);
+  }
+
+  /**
+   * Builds the evaluation result of the current board.
+   * @param bettingAmount The amount bet by the player
+   * @return The same result as {@link CompiledGame#evaluate(Board, int)} on the current board
+   */
+  public Matrix.EvaluationResult evaluate(int bettingAmount) {
+    return outcome.toResult(bettingAmount);
+  }
+
+  /**
+   * Builds the bet-independent payout of the current board.
+   * @return The same payout as {@link CompiledGame#payout(Board)} on the current board
+   * @throws ArithmeticException if the payout overflows a long
+   */
+  public Payout payout() {
+    return outcome.payout();
+  }
+
+  /**
+   * Gets the outcome of the current board, for hot loops that read it without allocating.
+   * @return The outcome, updated in place by every change; not to be modified
+   */
+  Outcome outcome() {
+    return outcome;
+  }
+
+  /**
+   * Gets a copy of the current board.
+   * @return A new board holding the current symbols
+   */
+  public Board getBoard() {
+    Board copy = game.newBoard();
+    copy.copyFrom(board);
+    return copy;
+  }
+
+  /**
+   * Gets the symbol of one cell of the current board.
+   * @param cell The cell index (row * columns + column)
+   * @return The symbol id
+   */
+  public int get(int cell) {
+    return board.get(cell);
+  }
+}
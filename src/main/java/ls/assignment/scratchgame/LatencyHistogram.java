@@ -0,0 +1,107 @@
+package ls.assignment.scratchgame;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class counting durations in buckets whose upper bounds are powers of two
+ * nanoseconds, from {@value #MIN_SHIFT}-bit (128 ns) to {@value #MAX_SHIFT}-bit (about 1 s) durations,
+ * plus one bucket for anything longer.
+ * Every bucket and the sum are {@link LongAdder}s, so recording is lock-free and threads
+ * recording at the same time do not contend on one counter.
+ * @author LOTHFY ( LS )
+ */
+final class LatencyHistogram {
+  static final int MIN_SHIFT = 7;
+  static final int MAX_SHIFT = 30;
+
+  private final LongAdder[] buckets = new LongAdder[MAX_SHIFT - MIN_SHIFT + 2];
+  private final LongAdder sumNanos = new LongAdder();
+
+  /**
+   * Constructs an empty histogram.
+   */
+  LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records one duration.
+   * @param nanos The duration in nanoseconds
+   */
+  void record(long nanos) {
+    nanos = Math.max(nanos, 0);
+    // Smallest bucket whose bound 2^shift is at least nanos
+    int shift = nanos <= 1 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(nanos - 1);
+    buckets[Math.min(Math.max(shift, MIN_SHIFT), MAX_SHIFT + 1) - MIN_SHIFT].increment();
+    sumNanos.add(nanos);
+  }
+
+  /**
+   * Gets the number of recorded durations.
+   * @return The count
+   */
+  long count() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Gets the mean recorded duration.
+   * @return The mean in nanoseconds, or 0 if nothing was recorded
+   */
+  double meanNanos() {
+    long count = count();
+    return count == 0 ? 0 : (double) sumNanos.sum() / count;
+  }
+
+  /**
+   * Estimates a quantile as the upper bound of the bucket holding it.
+   * @param quantile The quantile between 0 and 1
+   * @return The bucket bound in nanoseconds, Long.MAX_VALUE past the last bound, or 0 if nothing was recorded
+   */
+  long quantileNanos(double quantile) {
+    long[] counts = new long[buckets.length];
+    long total = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int i = 0; i < counts.length - 1; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return 1L << (i + MIN_SHIFT);
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Appends the histogram in the Prometheus text format, in seconds.
+   * @param text The builder to append to
+   * @param name The metric name, without the _bucket, _sum and _count suffixes
+   * @param help The help text
+   */
+  void appendPrometheus(StringBuilder text, String name, String help) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(" histogram\n");
+    // Buckets are read one by one while rounds are recorded, so the count is taken from them
+    long cumulative = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      cumulative += buckets[i].sum();
+      String bound = i < buckets.length - 1 ? Double.toString((1L << (i + MIN_SHIFT)) / 1e9) : "+Inf";
+      text.append(name).append("_bucket{le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+    }
+    text.append(name).append("_sum ").append(sumNanos.sum() / 1e9).append('\n');
+    text.append(name).append("_count ").append(cumulative).append('\n');
+  }
+}
@@ -3,10 +3,19 @@ package ls.assignment.scratchgame;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 
-import java.io.FileReader;
 import java.io.IOException;
-
-import static ls.assignment.scratchgame.Matrix.generateMatrix;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Main class for the Scratch Game application.
@@ -14,18 +23,82 @@ import static ls.assignment.scratchgame.Matrix.generateMatrix;
  * @author LOTHFY ( LS )
  */
 public class Main {
+    /** Interval between two writes of the metrics file. */
+    private static final long METRICS_INTERVAL_SECONDS = 10;
+
     /**
      * Main method that serves as the entry point for the Scratch Game application.
      * It parses command line arguments, loads the game configuration, and executes the game.
-     * 
+     *
      * @param args Command line arguments:
      *             --config <path> : Path to the configuration file
      *             --betting-amount <amount> : Amount to bet in the game
+     *             --simulate <rounds> : Play the given number of rounds and print RTP statistics
+     *             --threads <count> : Number of simulation threads (defaults to all cores)
+     *             --store <directory> : With --simulate, record every round in a columnar result store
+     *             --cache-mb <MiB> : With --simulate, evaluate through a cache of evaluated boards of this size per thread
+     *             --ci-width <percent> : With --simulate, run a variance-reduced simulation that stops once the
+     *                                    95% confidence interval of the RTP is at most this wide; --simulate is the round limit
+     *             --query-store <directory> : Print the aggregates of a result store instead of playing
+     *             --shard <index>/<count> : With --simulate, play only this shard of the rounds and write its statistics to --shard-output
+     *             --shard-output <path> : File the statistics of the played shard are written to
+     *             --merge-shards <path> : Merge shard files, given as files or directories of .shard files (repeatable), and print the report
+     *             --tune <percent> : Search the free parameters of the config for a paytable with this RTP and print its JSON
+     *             --tune-tolerance <percent> : With --tune, the accepted RTP error in percentage points (defaults to 0.1)
+     *             --hit-frequency <min>:<max> : With --tune, the accepted hit frequency band in percent (defaults to any)
+     *             --tune-params <selectors> : With --tune, comma separated free parameters: cell-weights, bonus-weights
+     *                                         and multipliers, each optionally followed by :<symbol or combination> (defaults to multipliers)
+     *             --tune-candidates <count> : With --tune, the largest number of candidate paytables to score (defaults to 20000)
+     *             --tune-output <path> : With --tune, file the tuned config is written to instead of printing it
+     *             --seed <seed> : Master seed of the simulation or of the played round
+     *             --round <index> : Index of the round to play, to replay a round of a seed
+     *             --rounds <count> : Play the given number of rounds from --round on and write them to --output
+     *             --output <path> : File the rounds are written to, as CSV for a .csv file and NDJSON otherwise
+     *             --format <ndjson|csv> : Format of the --output file, overriding its extension
+     *             --exact : Compute the exact RTP and hit frequency instead of playing
+     *             --serve <port> : Serve POST /play over HTTP instead of playing one round
+     *             --watch : With --serve, reload the config file whenever it changes
+     *             --metrics-file <path> : With --serve, write the metrics in the Prometheus text format to a file every few seconds
+     *             --audit-log <directory> : With --serve or a single round, record every played round in a binary audit log
+     *             --verify-audit-log <directory> : Re-verify the rounds of an audit log instead of playing
+     *             --compile-snapshot <path> : Compile the config file into a binary snapshot and exit
+     *             --snapshot <path> : Load the game from a binary snapshot, or from the config file if it is stale
      */
     public static void main(String[] args) {
         // Initialize variables for the config and betting amount
         String configFilePath = null;
+        String auditLogPath = null;
+        String verifyAuditLogPath = null;
+        String compileSnapshotPath = null;
+        String snapshotPath = null;
+        String metricsFilePath = null;
+        String outputPath = null;
+        String storePath = null;
+        String queryStorePath = null;
+        String shardOutputPath = null;
+        String tuneOutputPath = null;
+        String tuneParams = "multipliers";
+        List<String> mergeShardPaths = new ArrayList<>();
+        int shardIndex = 0;
+        int shardCount = 1;
+        RoundWriter.Format outputFormat = null;
         int betAmount = 0;
+        long simulateRounds = 0;
+        double ciWidth = -1;
+        double tuneRtp = -1;
+        double tuneTolerance = 0.1;
+        double minHitFrequency = 0;
+        double maxHitFrequency = 100;
+        long tuneCandidates = 20000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        long round = 0;
+        long outputRounds = 0;
+        long cacheMegabytes = 0;
+        boolean serve = false;
+        int servePort = 0;
+        boolean exact = false;
+        boolean watch = false;
 
         // Parse the arguments
         for(int i = 0; i < args.length; i++) {
@@ -50,7 +123,180 @@ public class Main {
                     System.out.println("Error: Missing value for --betting-amount");
                     return;
                 }
+            } else if("--audit-log".equals(args[i]) || "--verify-audit-log".equals(args[i])
+                    || "--compile-snapshot".equals(args[i]) || "--snapshot".equals(args[i])
+                    || "--metrics-file".equals(args[i]) || "--output".equals(args[i])
+                    || "--store".equals(args[i]) || "--query-store".equals(args[i])
+                    || "--shard-output".equals(args[i]) || "--merge-shards".equals(args[i])
+                    || "--tune-output".equals(args[i]) || "--tune-params".equals(args[i])) {
+                if(i + 1 < args.length) {
+                    if("--audit-log".equals(args[i])) {
+                        auditLogPath = args[i + 1];
+                    } else if("--verify-audit-log".equals(args[i])) {
+                        verifyAuditLogPath = args[i + 1];
+                    } else if("--compile-snapshot".equals(args[i])) {
+                        compileSnapshotPath = args[i + 1];
+                    } else if("--metrics-file".equals(args[i])) {
+                        metricsFilePath = args[i + 1];
+                    } else if("--output".equals(args[i])) {
+                        outputPath = args[i + 1];
+                    } else if("--store".equals(args[i])) {
+                        storePath = args[i + 1];
+                    } else if("--query-store".equals(args[i])) {
+                        queryStorePath = args[i + 1];
+                    } else if("--shard-output".equals(args[i])) {
+                        shardOutputPath = args[i + 1];
+                    } else if("--merge-shards".equals(args[i])) {
+                        mergeShardPaths.add(args[i + 1]);
+                    } else if("--tune-output".equals(args[i])) {
+                        tuneOutputPath = args[i + 1];
+                    } else if("--tune-params".equals(args[i])) {
+                        tuneParams = args[i + 1];
+                    } else {
+                        snapshotPath = args[i + 1];
+                    }
+                    i++; // Skip the next argument, as it is the path
+                } else {
+                    System.out.println("Error: Missing value for " + args[i]);
+                    return;
+                }
+            } else if("--format".equals(args[i])) {
+                if(i + 1 >= args.length) {
+                    System.out.println("Error: Missing value for " + args[i]);
+                    return;
+                }
+                try {
+                    outputFormat = RoundWriter.Format.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                } catch(IllegalArgumentException e) {
+                    System.out.println("Error: Invalid value for " + args[i]);
+                    return;
+                }
+                i++; // Skip the next argument, as it is the value
+            } else if("--shard".equals(args[i])) {
+                if(i + 1 >= args.length) {
+                    System.out.println("Error: Missing value for " + args[i]);
+                    return;
+                }
+                String[] shard = args[i + 1].split("/", -1);
+                try {
+                    if(shard.length != 2) {
+                        throw new NumberFormatException(args[i + 1]);
+                    }
+                    shardIndex = Integer.parseInt(shard[0]);
+                    shardCount = Integer.parseInt(shard[1]);
+                } catch(NumberFormatException e) {
+                    System.out.println("Error: Invalid value for " + args[i] + ", expected <index>/<count>");
+                    return;
+                }
+                if(shardCount <= 0 || shardIndex < 0 || shardIndex >= shardCount) {
+                    System.out.println("Error: Shard index must be between 0 and the shard count - 1");
+                    return;
+                }
+                i++; // Skip the next argument, as it is the value
+            } else if("--hit-frequency".equals(args[i])) {
+                if(i + 1 >= args.length) {
+                    System.out.println("Error: Missing value for " + args[i]);
+                    return;
+                }
+                String[] band = args[i + 1].split(":", -1);
+                try {
+                    if(band.length != 2) {
+                        throw new NumberFormatException(args[i + 1]);
+                    }
+                    minHitFrequency = Double.parseDouble(band[0]);
+                    maxHitFrequency = Double.parseDouble(band[1]);
+                } catch(NumberFormatException e) {
+                    System.out.println("Error: Invalid value for " + args[i] + ", expected <min>:<max>");
+                    return;
+                }
+                if(!(minHitFrequency >= 0 && minHitFrequency <= maxHitFrequency && maxHitFrequency <= 100)) {
+                    System.out.println("Error: Hit frequency band must be within 0 and 100 percent");
+                    return;
+                }
+                i++; // Skip the next argument, as it is the value
+            } else if("--ci-width".equals(args[i]) || "--tune".equals(args[i]) || "--tune-tolerance".equals(args[i])) {
+                if(i + 1 >= args.length) {
+                    System.out.println("Error: Missing value for " + args[i]);
+                    return;
+                }
+                double value;
+                try {
+                    value = Double.parseDouble(args[i + 1]);
+                } catch(NumberFormatException e) {
+                    System.out.println("Error: Invalid value for " + args[i]);
+                    return;
+                }
+                if("--ci-width".equals(args[i]) ? !(value >= 0) : !(value > 0)) {
+                    System.out.println("Error: Invalid value for " + args[i]);
+                    return;
+                }
+                if("--ci-width".equals(args[i])) {
+                    ciWidth = value;
+                } else if("--tune".equals(args[i])) {
+                    tuneRtp = value;
+                } else {
+                    tuneTolerance = value;
+                }
+                i++; // Skip the next argument, as it is the value
+            } else if("--exact".equals(args[i])) {
+                exact = true;
+            } else if("--watch".equals(args[i])) {
+                watch = true;
+            } else if("--simulate".equals(args[i]) || "--threads".equals(args[i]) || "--seed".equals(args[i])
+                    || "--round".equals(args[i]) || "--rounds".equals(args[i]) || "--serve".equals(args[i])
+                    || "--tune-candidates".equals(args[i]) || "--cache-mb".equals(args[i])) {
+                if(i + 1 >= args.length) {
+                    System.out.println("Error: Missing value for " + args[i]);
+                    return;
+                }
+                try {
+                    long value = Long.parseLong(args[i + 1]);
+                    if("--simulate".equals(args[i])) {
+                        simulateRounds = value;
+                    } else if("--threads".equals(args[i])) {
+                        threads = Math.toIntExact(value);
+                    } else if("--round".equals(args[i])) {
+                        round = value;
+                    } else if("--rounds".equals(args[i])) {
+                        outputRounds = value;
+                    } else if("--tune-candidates".equals(args[i])) {
+                        tuneCandidates = value;
+                    } else if("--cache-mb".equals(args[i])) {
+                        cacheMegabytes = value;
+                    } else if("--serve".equals(args[i])) {
+                        serve = true;
+                        servePort = Math.toIntExact(value);
+                    } else {
+                        seed = value;
+                    }
+                    i++; // Skip the next argument, as it is the value
+                } catch(NumberFormatException | ArithmeticException e) {
+                    System.out.println("Error: Invalid value for " + args[i]);
+                    return;
+                }
+            }
+        }
+
+        // These commands run instead of playing, whatever else is asked for
+        boolean command = queryStorePath != null || compileSnapshotPath != null || verifyAuditLogPath != null
+                || !mergeShardPaths.isEmpty();
+        if(watch && (!serve || command)) {
+            System.out.println("Error: --watch requires --serve");
+            return;
+        }
+        if(auditLogPath != null && (command || (!serve && (simulateRounds > 0 || outputRounds > 0 || exact || tuneRtp > 0)))) {
+            System.out.println("Error: --audit-log requires --serve or a single round and cannot be combined with --simulate, --rounds, --exact or --tune");
+            return;
+        }
+
+        // A result store is queried without the configuration
+        if(queryStorePath != null) {
+            if(betAmount <= 0) {
+                System.out.println("Error: Invalid or missing bet amount");
+                return;
             }
+            queryStore(Path.of(queryStorePath), betAmount);
+            return;
         }
 
         // Check if config file and bet amount are provided
@@ -58,32 +304,515 @@ public class Main {
             System.out.println("Error: Config file is required");
             return;
         }
-        if(betAmount <= 0) {
+        if(betAmount <= 0 && !serve && verifyAuditLogPath == null && compileSnapshotPath == null && mergeShardPaths.isEmpty()) {
             System.out.println("Error: Invalid or missing bet amount");
             return;
         }
+        if(servePort < 0 || servePort > 65535) {
+            System.out.println("Error: Invalid port for --serve");
+            return;
+        }
+        if(simulateRounds < 0 || threads <= 0 || round < 0 || outputRounds < 0 || tuneCandidates <= 0) {
+            System.out.println("Error: Rounds and threads must be positive");
+            return;
+        }
+        if(storePath != null && simulateRounds == 0) {
+            System.out.println("Error: --store requires --simulate");
+            return;
+        }
+        if(ciWidth >= 0 && (simulateRounds == 0 || storePath != null)) {
+            System.out.println("Error: --ci-width requires --simulate and cannot be combined with --store");
+            return;
+        }
+        if(shardOutputPath != null && (simulateRounds == 0 || storePath != null || ciWidth >= 0)) {
+            System.out.println("Error: --shard-output requires --simulate and cannot be combined with --store or --ci-width");
+            return;
+        }
+        if(cacheMegabytes < 0 || cacheMegabytes > Integer.MAX_VALUE) {
+            System.out.println("Error: Invalid value for --cache-mb");
+            return;
+        }
+        if(cacheMegabytes > 0 && (simulateRounds == 0 || ciWidth >= 0 || shardOutputPath != null)) {
+            System.out.println("Error: --cache-mb requires --simulate and cannot be combined with --ci-width or --shard-output");
+            return;
+        }
+        if(shardCount > 1 && shardOutputPath == null) {
+            System.out.println("Error: --shard requires --shard-output");
+            return;
+        }
+        if((outputRounds > 0) != (outputPath != null)) {
+            System.out.println("Error: --rounds and --output must be given together");
+            return;
+        }
 
         // Load and parse the config file
         try {
+            if(compileSnapshotPath != null) {
+                ConfigSnapshot.write(Path.of(configFilePath), Path.of(compileSnapshotPath));
+                System.out.println("Snapshot written to " + compileSnapshotPath);
+                return;
+            }
+
             // Read the config file as a string
-            FileReader reader = new FileReader(configFilePath);
-            Gson gson = new Gson();
+            long loadStart = System.nanoTime();
+            GameEvents.ConfigLoad loadEvent = new GameEvents.ConfigLoad();
+            loadEvent.begin();
+            byte[] source = Files.readAllBytes(Path.of(configFilePath));
+            CompiledGame game = null;
+            if(snapshotPath != null) {
+                game = ConfigSnapshot.read(Path.of(snapshotPath), source);
+                if(game == null) {
+                    System.out.println("Note: Snapshot " + snapshotPath + " is missing or stale, loading the config file");
+                }
+            }
+            boolean fromSnapshot = game != null;
+            if(game == null) {
+                // Parse the JSON content
+                GameConfiguration config = new Gson().fromJson(new String(source, StandardCharsets.UTF_8), GameConfiguration.class);
+                game = CompiledGame.compile(config);
+            }
+            long loadNanos = System.nanoTime() - loadStart;
+            if(loadEvent.shouldCommit()) {
+                loadEvent.source = configFilePath;
+                loadEvent.snapshot = fromSnapshot;
+                loadEvent.sourceBytes = source.length;
+                loadEvent.version = 1;
+                loadEvent.describe(game);
+                loadEvent.commit();
+            }
+            if(verifyAuditLogPath != null) {
+                verifyAuditLog(game, Path.of(verifyAuditLogPath));
+                return;
+            }
+            if(!mergeShardPaths.isEmpty()) {
+                mergeShards(game, mergeShardPaths);
+                return;
+            }
+            if(serve) {
+                AuditLog auditLog = null;
+                if(auditLogPath != null) {
+                    auditLog = openAuditLog(game, Path.of(auditLogPath), AuditLog.DEFAULT_SEGMENT_RECORDS);
+                    if(auditLog == null) {
+                        return;
+                    }
+                    AuditLog log = auditLog;
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> closeAuditLog(log)));
+                }
+                GameMetrics metrics = new GameMetrics();
+                metrics.recordConfigLoad(loadNanos, 1);
+                PlayServer server;
+                if(watch) {
+                    ReloadableGame reloadable = new ReloadableGame(Path.of(configFilePath), game, new ReloadableGame.Listener() {
+                        @Override
+                        public void reloaded(ReloadableGame.Version version) {
+                            metrics.recordConfigLoad(version.getLoadNanos(), version.getNumber());
+                            System.out.println("Reloaded config version " + version.getNumber());
+                        }
 
-            // Parse the JSON content
-            GameConfiguration config = gson.fromJson(reader, GameConfiguration.class);
-            reader.close(); // Close the file reader
+                        @Override
+                        public void failed(Exception error) {
+                            System.out.println("Error: Reload failed, keeping the current config: " + error.getMessage());
+                        }
+                    });
+                    reloadable.watch();
+                    server = new PlayServer(reloadable, seed, auditLog, metrics);
+                } else {
+                    server = new PlayServer(game, seed, auditLog, metrics);
+                }
+                exposeMetrics(metrics, metricsFilePath);
+                server.start(new InetSocketAddress(servePort));
+                System.out.println("Serving POST /play on port " + server.getPort() + " (seed " + seed + ")");
+                return;
+            }
+            if(tuneRtp > 0) {
+                tune(game, new PaytableTuner.Target(tuneRtp / 100, tuneTolerance / 100, minHitFrequency / 100,
+                        maxHitFrequency / 100), tuneParams, tuneCandidates, betAmount, threads, seed,
+                        tuneOutputPath == null ? null : Path.of(tuneOutputPath));
+                return;
+            }
+            if(exact) {
+                calculateExact(game, betAmount);
+                return;
+            }
+            if(shardOutputPath != null) {
+                simulateShard(game, simulateRounds, shardCount, shardIndex, betAmount, threads, seed, Path.of(shardOutputPath));
+                return;
+            }
+            if(simulateRounds > 0 && ciWidth >= 0) {
+                simulateStratified(game, ciWidth / 100, simulateRounds, betAmount, threads, seed);
+                return;
+            }
+            if(simulateRounds > 0) {
+                if(cacheMegabytes > 0 && !EvaluationCache.supports(game)) {
+                    System.out.println("Error: Boards of " + game.getRows() + "x" + game.getColumns() + " with "
+                            + game.getSymbols().size() + " symbols cannot be cached");
+                    return;
+                }
+                simulate(game, simulateRounds, betAmount, threads, seed, cacheMegabytes << 20,
+                        storePath == null ? null : Path.of(storePath));
+                return;
+            }
+            if(outputRounds > 0) {
+                Path output = Path.of(outputPath);
+                writeRounds(game, output, outputFormat != null ? outputFormat : RoundWriter.Format.of(output),
+                        seed, round, outputRounds, betAmount);
+                return;
+            }
 
-            Matrix matrix = generateMatrix(config);
+            // Every round is drawn from the stream of (seed, round) so it can be replayed
+            System.out.println("Seed            : " + seed);
+            System.out.println("Round           : " + round);
+            Board board = game.generateBoard(new RoundRandom(seed, round), game.newBoard());
+            Matrix matrix = board.toMatrix(game.getSymbols());
             System.out.println(matrix);
 
-            Matrix.EvaluationResult result = matrix.evaluateRules(config, betAmount);
+            Outcome outcome = game.newOutcome();
+            game.evaluate(board, outcome);
+            if(auditLogPath != null) {
+                // A single round gets a segment of its own, recorded before the reward is shown
+                AuditLog auditLog = openAuditLog(game, Path.of(auditLogPath), 1);
+                if(auditLog == null) {
+                    return;
+                }
+                try {
+                    auditLog.append(game, seed, round, betAmount, board, outcome);
+                } catch(IOException e) {
+                    System.out.println("Error: Failed to write the audit log: " + e.getMessage());
+                    return;
+                } finally {
+                    closeAuditLog(auditLog);
+                }
+            }
+
+            Matrix.EvaluationResult result = outcome.toResult(betAmount);
             System.out.println("Reward : You win  => " + result.reward + " coins");
 
+        } catch(BindException e) {
+            System.out.println("Error: Failed to bind port " + servePort + ": " + e.getMessage());
         } catch(IOException e) {
             System.out.println("Error: Failed to read the config file.");
         } catch(JsonSyntaxException e) {
             System.out.println("Error: Invalid JSON syntax in the config file.");
         }
     }
-}
 
+    /**
+     * Registers the metrics of the server over JMX and, if a file is given, writes them to it
+     * periodically on a daemon thread. Errors are printed, as the server can run without metrics.
+     *
+     * @param metrics The metrics of the server
+     * @param metricsFilePath The file to write the metrics to, or null
+     */
+    private static void exposeMetrics(GameMetrics metrics, String metricsFilePath) {
+        try {
+            metrics.registerMBean();
+        } catch(IllegalStateException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+        if(metricsFilePath == null) {
+            return;
+        }
+        Path file = Path.of(metricsFilePath);
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleAtFixedRate(() -> {
+            try {
+                metrics.writePrometheus(file);
+            } catch(IOException e) {
+                System.out.println("Error: Failed to write the metrics: " + e.getMessage());
+            }
+        }, 0, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Opens an audit log, printing an error if it cannot be opened.
+     *
+     * @param game The compiled game whose rounds are logged
+     * @param directory The log directory
+     * @param segmentRecords The number of records per segment
+     * @return The opened log, or null on error
+     */
+    private static AuditLog openAuditLog(CompiledGame game, Path directory, int segmentRecords) {
+        try {
+            return AuditLog.open(directory, game, segmentRecords);
+        } catch(IOException | IllegalArgumentException e) {
+            System.out.println("Error: Failed to open the audit log: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Closes an audit log, printing an error if it cannot be closed.
+     *
+     * @param auditLog The log to close
+     */
+    private static void closeAuditLog(AuditLog auditLog) {
+        try {
+            auditLog.close();
+        } catch(IOException e) {
+            System.out.println("Error: Failed to close the audit log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Re-verifies every round of an audit log and prints the result.
+     *
+     * @param game The compiled game the rounds were played with
+     * @param directory The log directory
+     */
+    private static void verifyAuditLog(CompiledGame game, Path directory) {
+        AuditLogReader.Verification verification;
+        try {
+            verification = new AuditLogReader(directory).verify(game);
+        } catch(IOException | IllegalStateException e) {
+            System.out.println("Error: Failed to read the audit log: " + e.getMessage());
+            return;
+        }
+        verification.print(System.out);
+        System.out.println(verification.isValid() ? "Audit log verified" : "Error: Audit log verification failed");
+    }
+
+    /**
+     * Plays many rounds in parallel and prints the resulting statistics.
+     *
+     * @param game The compiled game
+     * @param rounds The number of rounds to play
+     * @param betAmount The amount bet in every round
+     * @param threads The number of worker threads
+     * @param seed The master seed
+     * @param cacheBytes The memory budget of the evaluation cache of every thread in bytes, or 0 for no cache
+     * @param storeDirectory The directory of the result store to record the rounds in, or null
+     */
+    private static void simulate(CompiledGame game, long rounds, int betAmount, int threads, long seed, long cacheBytes,
+                                 Path storeDirectory) {
+        long start = System.nanoTime();
+        Simulator simulator = new Simulator(game, threads, cacheBytes);
+        SimulationStats stats;
+        if(storeDirectory == null) {
+            stats = simulator.run(rounds, betAmount, seed);
+        } else {
+            try(ResultStore store = ResultStore.create(storeDirectory, game, seed, 0, rounds)) {
+                stats = simulator.run(rounds, betAmount, seed, store);
+                store.commit();
+            } catch(IOException | IllegalArgumentException e) {
+                System.out.println("Error: Failed to write the result store: " + e.getMessage());
+                return;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Seed            : " + seed);
+        System.out.println("Threads         : " + threads);
+        stats.print(System.out);
+        System.out.printf(Locale.ROOT, "Elapsed         : %.2f s (%.0f rounds/s)%n", seconds, rounds / seconds);
+        if(simulator.isCaching()) {
+            System.out.printf(Locale.ROOT, "Cache hit rate  : %.2f %% (%d of %d boards)%n", 100 * simulator.getCacheHitRate(),
+                    simulator.getCacheHits(), rounds);
+        }
+        if(storeDirectory != null) {
+            System.out.println("Result store    : " + storeDirectory);
+        }
+    }
+
+    /**
+     * Plays one shard of a simulation split across processes and writes its statistics.
+     *
+     * @param game The compiled game
+     * @param totalRounds The number of rounds of the whole simulation
+     * @param shardCount The number of shards of the simulation
+     * @param shardIndex The index of the shard to play
+     * @param betAmount The amount bet in every round
+     * @param threads The number of worker threads
+     * @param seed The master seed, the same for every shard
+     * @param output The shard file to write
+     */
+    private static void simulateShard(CompiledGame game, long totalRounds, int shardCount, int shardIndex, int betAmount,
+                                      int threads, long seed, Path output) {
+        long start = System.nanoTime();
+        SimulationShard shard = SimulationShard.play(game, threads, totalRounds, shardCount, shardIndex, betAmount, seed);
+        try {
+            shard.write(output);
+        } catch(IOException e) {
+            System.out.println("Error: Failed to write the shard file: " + e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long firstRound = SimulationShard.firstRoundOf(totalRounds, shardCount, shardIndex);
+        long rounds = shard.getStats().getRounds();
+        System.out.println("Seed            : " + seed);
+        System.out.println("Threads         : " + threads);
+        System.out.println("Shard           : " + shardIndex + " of " + shardCount + " (rounds " + firstRound + " to "
+                + (firstRound + rounds - 1) + " of " + totalRounds + ")");
+        shard.getStats().print(System.out);
+        System.out.printf(Locale.ROOT, "Elapsed         : %.2f s (%.0f rounds/s)%n", seconds, rounds / seconds);
+        System.out.println("Shard file      : " + output);
+    }
+
+    /**
+     * Searches the free parameters of a game for a paytable meeting a target, prints the outcome
+     * and writes or prints the tuned config.
+     *
+     * @param game The compiled game to tune
+     * @param target The target RTP and hit frequency band
+     * @param selectors The comma separated free parameter selectors
+     * @param maxCandidates The largest number of candidates to score
+     * @param betAmount The amount bet in every round
+     * @param threads The number of worker threads
+     * @param seed The seed of the search
+     * @param output The file the tuned config is written to, or null to print it
+     */
+    private static void tune(CompiledGame game, PaytableTuner.Target target, String selectors, long maxCandidates,
+                             int betAmount, int threads, long seed, Path output) {
+        PaytableTuner tuner;
+        try {
+            List<PaytableTuner.Parameter> parameters = PaytableTuner.parseParameters(game, List.of(selectors.split(",")));
+            tuner = new PaytableTuner(game, parameters, betAmount, threads, PaytableTuner.DEFAULT_SIMULATED_ROUNDS);
+            System.out.println("Tuning " + parameters.size() + " parameters on " + threads + " threads (seed " + seed + ")");
+        } catch(IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        PaytableTuner.Result result = tuner.tune(target, maxCandidates, seed);
+        result.print(System.out);
+        if(output == null) {
+            System.out.println(result.toJson());
+            return;
+        }
+        try {
+            Files.writeString(output, result.toJson());
+            System.out.println("Tuned config    : " + output);
+        } catch(IOException e) {
+            System.out.println("Error: Failed to write the tuned config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merges the shard files of a simulation and prints the statistics of all their rounds.
+     *
+     * @param game The compiled game the shards were played on
+     * @param paths The shard files, or directories whose .shard files are merged
+     */
+    private static void mergeShards(CompiledGame game, List<String> paths) {
+        List<SimulationShard> shards = new ArrayList<>();
+        try {
+            for(String path : paths) {
+                List<Path> files = new ArrayList<>();
+                if(Files.isDirectory(Path.of(path))) {
+                    try(Stream<Path> listed = Files.list(Path.of(path))) {
+                        listed.filter(file -> file.getFileName().toString().endsWith(".shard")).sorted().forEach(files::add);
+                    }
+                } else {
+                    files.add(Path.of(path));
+                }
+                for(Path file : files) {
+                    shards.add(SimulationShard.read(file, game));
+                }
+            }
+        } catch(IOException | IllegalStateException e) {
+            System.out.println("Error: Failed to read a shard file: " + e.getMessage());
+            return;
+        }
+        SimulationShard.Merge merge;
+        try {
+            merge = SimulationShard.merge(shards);
+        } catch(IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        merge.print(System.out);
+        if(!merge.isComplete()) {
+            System.out.println("Note: The report only covers the merged shards");
+        }
+    }
+
+    /**
+     * Runs a variance-reduced simulation until the RTP is known precisely enough and prints the
+     * estimates with their confidence intervals.
+     *
+     * @param game The compiled game
+     * @param targetWidth The requested width of the RTP confidence interval, as a fraction
+     * @param maxRounds The largest number of rounds to play
+     * @param betAmount The amount bet in every round
+     * @param threads The number of worker threads
+     * @param seed The master seed
+     */
+    private static void simulateStratified(CompiledGame game, double targetWidth, long maxRounds, int betAmount,
+                                           int threads, long seed) {
+        long start = System.nanoTime();
+        StratifiedSimulator.Result result = new StratifiedSimulator(game, threads).run(targetWidth, maxRounds, betAmount, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Seed            : " + seed);
+        System.out.println("Threads         : " + threads);
+        result.print(System.out);
+        System.out.printf(Locale.ROOT, "Elapsed         : %.2f s (%.0f rounds/s)%n", seconds, result.getRounds() / seconds);
+    }
+
+    /**
+     * Prints the aggregates of the rounds of a result store.
+     *
+     * @param directory The store directory
+     * @param betAmount The amount bet in every round
+     */
+    private static void queryStore(Path directory, int betAmount) {
+        long start = System.nanoTime();
+        try(ResultStoreReader reader = new ResultStoreReader(directory)) {
+            reader.summarize(betAmount).print(System.out);
+        } catch(IOException | IllegalStateException | ArithmeticException e) {
+            System.out.println("Error: Failed to query the result store: " + e.getMessage());
+            return;
+        }
+        System.out.printf(Locale.ROOT, "Elapsed         : %.2f s%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Plays consecutive rounds, writes them to a file and prints where they went.
+     *
+     * @param game The compiled game
+     * @param output The output file
+     * @param format The output format
+     * @param seed The master seed
+     * @param firstRound The index of the first round
+     * @param rounds The number of rounds to play
+     * @param betAmount The amount bet in every round
+     */
+    private static void writeRounds(CompiledGame game, Path output, RoundWriter.Format format, long seed,
+                                    long firstRound, long rounds, int betAmount) {
+        long start = System.nanoTime();
+        try(RoundWriter writer = RoundWriter.open(game, output, format)) {
+            writer.writeRounds(seed, firstRound, rounds, betAmount);
+        } catch(IOException e) {
+            System.out.println("Error: Failed to write the rounds: " + e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Seed            : " + seed);
+        System.out.println("Rounds          : " + firstRound + " to " + (firstRound + rounds - 1));
+        System.out.println("Output          : " + output + " (" + format.name().toLowerCase(Locale.ROOT) + ")");
+        System.out.printf(Locale.ROOT, "Elapsed         : %.2f s (%.0f rounds/s)%n", seconds, rounds / seconds);
+    }
+
+    /**
+     * Computes and prints the exact RTP figures of the game.
+     *
+     * @param game The compiled game
+     * @param betAmount The amount bet in every round
+     */
+    private static void calculateExact(CompiledGame game, int betAmount) {
+        long start = System.nanoTime();
+        ExactRtpCalculator.Result result;
+        try {
+            result = new ExactRtpCalculator(game).calculate(betAmount);
+        } catch(UnsupportedOperationException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        result.print(System.out);
+        System.out.printf(Locale.ROOT, "Elapsed         : %.3f s%n", (System.nanoTime() - start) / 1e9);
+    }
+}
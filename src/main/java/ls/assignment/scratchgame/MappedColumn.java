@@ -0,0 +1,171 @@
+package ls.assignment.scratchgame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedColumn class holding one column of a {@link ResultStore}: a file of fixed-width values,
+ * one per round, memory-mapped in chunks of a power-of-two number of values so that a column can
+ * outgrow the 2 GiB limit of a single mapping. Values are big-endian like the audit log.
+ * Writes are absolute puts, so threads writing the values of disjoint rounds need no lock.
+ * @author LOTHFY ( LS )
+ */
+final class MappedColumn implements Closeable {
+  /** Largest chunk size in bytes. */
+  private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+  private final FileChannel channel;
+  private final int width;
+  private final int chunkShift;
+  private final long chunkMask;
+  private final MappedByteBuffer[] chunks;
+
+  /**
+   * Private constructor used by {@link #create(Path, long, int)} and {@link #open(Path, long, int)}.
+   * @param channel The channel of the column file
+   * @param count The number of values
+   * @param width The width of a value in bytes
+   * @param mode The mapping mode
+   * @throws IOException if the file cannot be mapped
+   */
+  private MappedColumn(FileChannel channel, long count, int width, FileChannel.MapMode mode) throws IOException {
+    this.channel = channel;
+    this.width = width;
+    this.chunkShift = 63 - Long.numberOfLeadingZeros(Math.max(1, MAX_CHUNK_BYTES / width));
+    this.chunkMask = (1L << chunkShift) - 1;
+    long chunkCount = (count + chunkMask) >>> chunkShift;
+    this.chunks = new MappedByteBuffer[Math.toIntExact(chunkCount)];
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      long first = (long) chunk << chunkShift;
+      long values = Math.min(count - first, 1L << chunkShift);
+      chunks[chunk] = channel.map(mode, first * width, values * width);
+    }
+  }
+
+  /**
+   * Creates a zero-filled column file, replacing an existing one, and maps it for writing.
+   * @param path The column file
+   * @param count The number of values
+   * @param width The width of a value in bytes
+   * @return The mapped column
+   * @throws IOException if the file cannot be created or mapped
+   */
+  static MappedColumn create(Path path, long count, int width) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      return new MappedColumn(channel, count, width, FileChannel.MapMode.READ_WRITE);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Maps an existing column file for reading.
+   * @param path The column file
+   * @param count The number of values
+   * @param width The width of a value in bytes
+   * @return The mapped column
+   * @throws IOException if the file cannot be mapped
+   * @throws IllegalStateException if the file does not hold count values
+   */
+  static MappedColumn open(Path path, long count, int width) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      if (channel.size() != count * width) {
+        throw new IllegalStateException("Column " + path.getFileName() + " holds " + channel.size()
+                + " bytes, expected " + count * width);
+      }
+      return new MappedColumn(channel, count, width, FileChannel.MapMode.READ_ONLY);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the offset of a value in its chunk.
+   * @param index The index of the value
+   * @return The byte offset
+   */
+  private int offset(long index) {
+    return (int) (index & chunkMask) * width;
+  }
+
+  /**
+   * Gets a long value.
+   * @param index The index of the value
+   * @return The value
+   */
+  long getLong(long index) {
+    return chunks[(int) (index >>> chunkShift)].getLong(offset(index));
+  }
+
+  /**
+   * Sets a long value.
+   * @param index The index of the value
+   * @param value The value
+   */
+  void putLong(long index, long value) {
+    chunks[(int) (index >>> chunkShift)].putLong(offset(index), value);
+  }
+
+  /**
+   * Gets a byte value.
+   * @param index The index of the value
+   * @return The value
+   */
+  byte getByte(long index) {
+    return chunks[(int) (index >>> chunkShift)].get(offset(index));
+  }
+
+  /**
+   * Sets a byte value.
+   * @param index The index of the value
+   * @param value The value
+   */
+  void putByte(long index, byte value) {
+    chunks[(int) (index >>> chunkShift)].put(offset(index), value);
+  }
+
+  /**
+   * Copies a value of the column width into an array.
+   * @param index The index of the value
+   * @param value Receives the bytes of the value
+   */
+  void get(long index, byte[] value) {
+    chunks[(int) (index >>> chunkShift)].get(offset(index), value, 0, width);
+  }
+
+  /**
+   * Sets a value of the column width.
+   * @param index The index of the value
+   * @param value The bytes of the value
+   */
+  void put(long index, byte[] value) {
+    chunks[(int) (index >>> chunkShift)].put(offset(index), value, 0, width);
+  }
+
+  /**
+   * Forces the written values to the storage device.
+   */
+  void force() {
+    for (MappedByteBuffer chunk : chunks) {
+      chunk.force();
+    }
+  }
+
+  /**
+   * Closes the column file. The mappings stay valid until they are garbage collected.
+   * @throws IOException if the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
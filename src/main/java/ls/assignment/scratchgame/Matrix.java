@@ -1,6 +1,7 @@
 package ls.assignment.scratchgame;
 
 import java.util.*;
+import java.util.random.RandomGenerator;
 
 /**
  * Matrix class representing the game board for the Scratch Game.
@@ -29,81 +30,27 @@ public class Matrix {
   }
 
   /**
-   * Private constructor for creating an empty matrix.
-   * @param rows The number of rows in the matrix
-   * @param columns The number of columns in the matrix
-   */
-  private Matrix(int rows, int columns) {
-    this.rows = rows;
-    this.columns = columns;
-    this.matrix = new String[rows][columns];
-    this.appliedWinningCombinations = new HashMap<>();
-    this.appliedBonusSymbol = null;
-  }
-
-  /**
-   * Generates a new matrix based on the game configuration.
+   * Generates a new matrix based on the game configuration with a fresh
+   * {@link RoundRandom#DEFAULT_ALGORITHM} generator.
+   * The configuration is compiled on the first call and the compiled game is kept with it, so
+   * later calls only draw the cells.
    * @param config The game configuration containing probabilities and rules
    * @return A new Matrix instance populated with symbols according to the configuration
    */
   public static Matrix generateMatrix(GameConfiguration config) {
-    int rows = config.getRows();
-    int columns = config.getColumns();
-    Matrix matrix = new Matrix(rows, columns);
-
-    // Get probabilities from config
-    Probabilities probabilities = config.getProbabilities();
-    List<StandardSymbol> standardSymbols = probabilities.getStandardSymbols();
-    BonusSymbols bonusSymbols = probabilities.getBonusSymbols();
-
-    // Populate matrix
-    for (int row = 0; row < rows; row++) {
-      for (int col = 0; col < columns; col++) {
-        // Find probabilities for this cell
-        int finalRow = row;
-        int finalCol = col;
-        Optional<StandardSymbol> cellProb = standardSymbols.stream()
-                .filter(s -> s.getRow() == finalRow && s.getColumn() == finalCol)
-                .findFirst();
-
-        if (!cellProb.isPresent()) {
-          throw new IllegalStateException("No probabilities defined for cell (" + row + "," + col + ")");
-        }
-
-        Map<String, Integer> combinedProbs = new HashMap<>(cellProb.get().getSymbols());
-        if (bonusSymbols != null && !bonusSymbols.getSymbols().isEmpty()) {
-          combinedProbs.putAll(bonusSymbols.getSymbols());
-        }
-
-        matrix.matrix[row][col] = selectSymbol(combinedProbs);
-      }
-    }
-
-    return matrix;
+    return generateMatrix(config, RoundRandom.defaultGenerator());
   }
-  
+
   /**
-   * Selects a symbol based on the provided weights.
-   * @param symbolWeights A map of symbols to their probability weights
-   * @return The selected symbol
-   * @throws IllegalArgumentException if the total probability weight is zero
+   * Generates a new matrix based on the game configuration, drawing every cell from the given
+   * generator. Pass a {@link RoundRandom} to make the matrix reproducible from (seed, round).
+   * The configuration is compiled on the first call and the compiled game is kept with it.
+   * @param config The game configuration containing probabilities and rules
+   * @param random The random generator to draw the symbols from
+   * @return A new Matrix instance populated with symbols according to the configuration
    */
-  private static String selectSymbol(Map<String, Integer> symbolWeights) {
-    int totalWeight = symbolWeights.values().stream().mapToInt(Integer::intValue).sum();
-    if (totalWeight == 0) {
-      throw new IllegalArgumentException("Total probability weight is zero");
-    }
-    Random rand = new Random();
-    int randomValue = rand.nextInt(totalWeight);
-    int currentWeight = 0;
-
-    for (Map.Entry<String, Integer> entry : symbolWeights.entrySet()) {
-      currentWeight += entry.getValue();
-      if (randomValue < currentWeight) {
-        return entry.getKey();
-      }
-    }
-    return symbolWeights.keySet().iterator().next();
+  public static Matrix generateMatrix(GameConfiguration config, RandomGenerator random) {
+    return config.compiled().generateMatrix(random);
   }
 
   /**
@@ -135,6 +82,8 @@ public class Matrix {
    * @return An EvaluationResult containing the calculated reward and applied combinations
    */
   public EvaluationResult evaluateRules(GameConfiguration configuration, int bettingAmount) {
+    GameEvents.Evaluation event = new GameEvents.Evaluation();
+    event.begin();
     Map<String, List<String>> appliedCombinations = new HashMap<>();
     double totalReward = 0.0;
     String appliedBonus = null;
@@ -251,7 +200,86 @@ public class Matrix {
 
     this.appliedWinningCombinations.putAll(appliedCombinations);
     this.appliedBonusSymbol = appliedBonus;
-    return new EvaluationResult(totalReward, new HashMap<>(appliedCombinations), appliedBonus);
+    EvaluationResult result = new EvaluationResult(totalReward, new HashMap<>(appliedCombinations), appliedBonus);
+    if (event.shouldCommit()) {
+      event.engine = "reference";
+      event.rows = rows;
+      event.columns = columns;
+      event.combinationsChecked = configuration.getWinCombinations().size();
+      for (WinCombination combo : configuration.getWinCombinations().values()) {
+        if ("linear_symbols".equals(combo.getWhen()) && combo.getCoveredAreas() != null) {
+          event.areasChecked += combo.getCoveredAreas().size();
+        }
+      }
+      event.describe(bettingAmount, result);
+      event.commit();
+    }
+    return result;
+  }
+
+  /**
+   * Evaluates the matrix according to the rules of a compiled game into a caller-owned result,
+   * without allocating. The applied combinations and bonus symbol of this matrix are left as they
+   * are; read them from the result.
+   * @param game The compiled game
+   * @param bettingAmount The amount bet by the player
+   * @param result The result to overwrite, made for the game
+   * @throws IllegalArgumentException if the matrix contains an unknown symbol, does not have the
+   *         size of the game, or the result was made for another game
+   */
+  public void evaluateRules(CompiledGame game, int bettingAmount, MutableEvaluationResult result) {
+    result.checkGame(game);
+    checkSize(game);
+    SymbolTable symbols = game.getSymbols();
+    Board board = result.board();
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < columns; col++) {
+        int id = symbols.idOf(matrix[row][col]);
+        if (id < 0) {
+          throw new IllegalArgumentException("Unknown symbol " + matrix[row][col] + " at (" + row + "," + col + ")");
+        }
+        board.set(row * columns + col, id);
+      }
+    }
+    game.evaluate(board, bettingAmount, result);
+  }
+
+  /**
+   * Evaluates the matrix according to the rules of a compiled game.
+   * Gives the same result as {@link #evaluateRules(GameConfiguration, int)} for the configuration
+   * the game was compiled from, without per-cell symbol lookups by name.
+   * @param game The compiled game
+   * @param bettingAmount The amount bet by the player
+   * @return An EvaluationResult containing the calculated reward and applied combinations
+   * @throws IllegalArgumentException if the matrix contains an unknown symbol or does not have the
+   *         size of the game
+   */
+  public EvaluationResult evaluateRules(CompiledGame game, int bettingAmount) {
+    checkSize(game);
+    EvaluationResult result = game.evaluate(toBoard(game.getSymbols()), bettingAmount);
+    this.appliedWinningCombinations.putAll(result.appliedWinningCombinations);
+    this.appliedBonusSymbol = result.appliedBonusSymbol;
+    return new EvaluationResult(result.reward, new HashMap<>(result.appliedWinningCombinations), result.appliedBonusSymbol);
+  }
+
+  /**
+   * Checks that the matrix has the size of the boards of a compiled game.
+   * @param game The compiled game
+   * @throws IllegalArgumentException if the rows or columns differ
+   */
+  private void checkSize(CompiledGame game) {
+    if (rows != game.getRows() || columns != game.getColumns()) {
+      throw new IllegalArgumentException("Matrix is " + rows + "x" + columns + ", game is " + game.getRows() + "x" + game.getColumns());
+    }
+  }
+
+  /**
+   * Converts the matrix to a board of interned symbol ids.
+   * @param symbols The symbol table used to intern the symbols
+   * @return A new board with the same symbols
+   */
+  public Board toBoard(SymbolTable symbols) {
+    return Board.of(matrix, symbols);
   }
 
   /**
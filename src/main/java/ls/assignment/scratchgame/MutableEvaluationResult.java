@@ -0,0 +1,189 @@
+package ls.assignment.scratchgame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MutableEvaluationResult class receiving the evaluation of one board after another without
+ * allocating, for callers evaluating many boards. It holds the reward as a primitive, the applied
+ * combinations as a bitset of combination ids of {@link CompiledGame#getCombinations()} and the
+ * applied bonus symbol as an id of {@link CompiledGame#getSymbols()}, plus the evaluator's scratch
+ * space, all sized once for its game. Once the JIT has compiled the evaluation, filling a result
+ * with {@link CompiledGame#evaluate(Board, int, MutableEvaluationResult)} or
+ * {@link Matrix#evaluateRules(CompiledGame, int, MutableEvaluationResult)} allocates nothing.
+ * The name-based view of {@link Matrix.EvaluationResult} is only built when
+ * {@link #getAppliedWinningCombinations()} or {@link #toEvaluationResult()} asks for it.
+ * A MutableEvaluationResult is not thread-safe; use one per thread.
+ * @author LOTHFY ( LS )
+ */
+public final class MutableEvaluationResult {
+  private final SymbolTable symbols;
+  private final CompiledCombinations combinations;
+  private final Outcome outcome;
+  private final Board board;
+  /** Bit i of word i / 64 is set when combination id i is applied. */
+  private final long[] appliedCombinations;
+  private int bettingAmount;
+  private double reward;
+  private int bonusSymbol;
+  /** The name-based view of the applied combinations, or null until asked for. */
+  private Map<String, List<String>> appliedByName;
+
+  /**
+   * Constructs an empty result for a compiled game.
+   * @param game The compiled game whose boards the result receives
+   */
+  public MutableEvaluationResult(CompiledGame game) {
+    this.symbols = game.getSymbols();
+    this.combinations = game.getCombinations();
+    this.outcome = game.newOutcome();
+    this.board = game.newBoard();
+    this.appliedCombinations = new long[(combinations.size() + Long.SIZE - 1) / Long.SIZE];
+    this.bonusSymbol = -1;
+  }
+
+  /**
+   * Checks that the result was made for a game.
+   * @param game The game about to fill the result
+   * @throws IllegalArgumentException if the result was made for a game with other symbols or combinations
+   */
+  void checkGame(CompiledGame game) {
+    if (game.getSymbols() != symbols || game.getCombinations() != combinations) {
+      throw new IllegalArgumentException("Result belongs to another game");
+    }
+  }
+
+  /**
+   * Gets the outcome the evaluator fills.
+   * @return The outcome of the result
+   */
+  Outcome outcome() {
+    return outcome;
+  }
+
+  /**
+   * Gets the board the names of a matrix are interned into.
+   * @return The scratch board of the result
+   */
+  Board board() {
+    return board;
+  }
+
+  /**
+   * Derives the reward, the applied combinations and the applied bonus from the filled outcome,
+   * the same way {@link Outcome#toResult(int)} does.
+   * @param bettingAmount The amount bet by the player
+   */
+  void complete(int bettingAmount) {
+    this.bettingAmount = bettingAmount;
+    double baseReward = outcome.baseReward(bettingAmount);
+    reward = outcome.applyBonus(baseReward);
+    bonusSymbol = outcome.appliedBonusSymbol(baseReward);
+    Arrays.fill(appliedCombinations, 0L);
+    for (int symbol = 0; symbol < outcome.sameCombos.length; symbol++) {
+      int combo = outcome.sameCombos[symbol];
+      if (combo >= 0) {
+        appliedCombinations[combo >>> 6] |= 1L << combo;
+      }
+    }
+    for (int i = 0; i < outcome.matchedAreaCount; i++) {
+      int combo = combinations.areaCombo(outcome.matchedAreas[i]);
+      appliedCombinations[combo >>> 6] |= 1L << combo;
+    }
+    appliedByName = null;
+  }
+
+  /**
+   * Gets the amount bet in the evaluated round.
+   * @return The betting amount, 0 before the first evaluation
+   */
+  public int getBettingAmount() {
+    return bettingAmount;
+  }
+
+  /**
+   * Gets the reward of the evaluated board.
+   * @return The reward, equal to the reward of {@link CompiledGame#evaluate(Board, int)}
+   */
+  public double getReward() {
+    return reward;
+  }
+
+  /**
+   * Gets the bonus symbol applied to the reward.
+   * @return The symbol id, or -1 if no bonus symbol was applied
+   */
+  public int getBonusSymbol() {
+    return bonusSymbol;
+  }
+
+  /**
+   * Gets the name of the bonus symbol applied to the reward.
+   * @return The symbol name, or null if no bonus symbol was applied
+   */
+  public String getBonusSymbolName() {
+    return bonusSymbol >= 0 ? symbols.nameOf(bonusSymbol) : null;
+  }
+
+  /**
+   * Checks whether a combination was applied to at least one symbol.
+   * @param combo The combination id
+   * @return true if the combination was applied
+   */
+  public boolean isApplied(int combo) {
+    return (appliedCombinations[combo >>> 6] & (1L << combo)) != 0;
+  }
+
+  /**
+   * Finds the next applied combination, to iterate over the applied combinations without
+   * allocating: {@code for (int c = r.nextApplied(0); c >= 0; c = r.nextApplied(c + 1))}.
+   * @param from The first combination id to check
+   * @return The smallest applied combination id at or after from, or -1
+   */
+  public int nextApplied(int from) {
+    int word = from >>> 6;
+    if (word >= appliedCombinations.length) {
+      return -1;
+    }
+    long bits = appliedCombinations[word] & (-1L << from);
+    while (bits == 0) {
+      if (++word == appliedCombinations.length) {
+        return -1;
+      }
+      bits = appliedCombinations[word];
+    }
+    return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+  }
+
+  /**
+   * Checks whether a symbol won at least one combination.
+   * @param symbol The symbol id
+   * @return true if the symbol is winning
+   */
+  public boolean isWinning(int symbol) {
+    return outcome.isWinning(symbol);
+  }
+
+  /**
+   * Gets the combinations applied to every winning symbol by name. The map is built on the first
+   * call after an evaluation and kept until the next one.
+   * @return An unmodifiable map of winning symbol names to combination names
+   */
+  public Map<String, List<String>> getAppliedWinningCombinations() {
+    if (appliedByName == null) {
+      appliedByName = Collections.unmodifiableMap(outcome.appliedCombinationsByName());
+    }
+    return appliedByName;
+  }
+
+  /**
+   * Copies the result into a name-based result.
+   * @return A new EvaluationResult equal to the one of {@link CompiledGame#evaluate(Board, int)}
+   */
+  public Matrix.EvaluationResult toEvaluationResult() {
+    return new Matrix.EvaluationResult(reward, new HashMap<>(getAppliedWinningCombinations()), getBonusSymbolName());
+  }
+}
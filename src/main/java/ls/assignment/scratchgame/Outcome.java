@@ -0,0 +1,339 @@
+package ls.assignment.scratchgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome class holding the raw, bet-independent result of evaluating one board:
+ * the same_symbols combination of every symbol, the matched covered areas and the
+ * first bonus symbol. Evaluators fill an Outcome in place so that it can be reused
+ * between boards; {@link #toResult(int)} turns it into a {@link Matrix.EvaluationResult}.
+ * An Outcome is not thread-safe; use one per thread.
+ * @author LOTHFY ( LS )
+ */
+final class Outcome {
+  final SymbolTable symbols;
+  final CompiledCombinations combinations;
+
+  /** The same_symbols combination of every symbol, or -1. */
+  final int[] sameCombos;
+  /** The matched covered areas in ascending order; only the first matchedAreaCount are valid. */
+  final int[] matchedAreas;
+  /** The symbol of every matched area, parallel to matchedAreas. */
+  final int[] matchedAreaSymbols;
+  int matchedAreaCount;
+  /** The symbol of the first bonus cell in row-major order, or -1. */
+  int bonusSymbol;
+
+  /** Scratch space for evaluators: symbol counts. */
+  final int[] symbolCounts;
+  /** Scratch space for evaluators: one cell bitmask per symbol. */
+  final long[] symbolMasks;
+
+  /**
+   * Constructs an empty outcome for a compiled game.
+   * @param symbols The interned symbols of the game
+   * @param combinations The compiled winning combinations of the game
+   */
+  Outcome(SymbolTable symbols, CompiledCombinations combinations) {
+    this.symbols = symbols;
+    this.combinations = combinations;
+    this.sameCombos = new int[symbols.size()];
+    this.matchedAreas = new int[combinations.areaCount()];
+    this.matchedAreaSymbols = new int[combinations.areaCount()];
+    this.symbolCounts = new int[symbols.size()];
+    this.symbolMasks = new long[symbols.size()];
+    this.bonusSymbol = -1;
+  }
+
+  /**
+   * Checks whether a symbol won at least one combination.
+   * @param symbol The symbol id
+   * @return true if the symbol has a same_symbols combination or a matched area
+   */
+  boolean isWinning(int symbol) {
+    if (sameCombos[symbol] >= 0) {
+      return true;
+    }
+    for (int i = 0; i < matchedAreaCount; i++) {
+      if (matchedAreaSymbols[i] == symbol) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Computes the reward before any bonus symbol is applied.
+   * The multiplication order matches {@link Matrix#evaluateRules(GameConfiguration, int)}.
+   * @param bettingAmount The amount bet by the player
+   * @return The sum of the rewards of all winning symbols
+   */
+  double baseReward(int bettingAmount) {
+    double totalReward = 0.0;
+    for (int symbol = 0; symbol < sameCombos.length; symbol++) {
+      if (isWinning(symbol)) {
+        totalReward += symbolReward(symbol, bettingAmount);
+      }
+    }
+    return totalReward;
+  }
+
+  /**
+   * Writes the winning symbols and their combinations in the order {@link #baseReward(int)}
+   * multiplies them, so that the reward of any bet can be rebuilt with
+   * {@link #baseReward(SymbolTable, CompiledCombinations, byte[], int, int, int)}. Every winning
+   * symbol is written as its id with the high bit set, followed by the ids of its combinations.
+   * Only valid for games with fewer than 128 symbols and at most 128 combinations.
+   * @param terms The array to write to, with room for {@link #maxRewardTerms(int, int, int)} bytes
+   * @param offset The index of the first byte to write
+   * @return The number of bytes written
+   */
+  int writeRewardTerms(byte[] terms, int offset) {
+    int length = 0;
+    for (int symbol = 0; symbol < sameCombos.length; symbol++) {
+      if (!isWinning(symbol)) {
+        continue;
+      }
+      terms[offset + length++] = (byte) (0x80 | symbol);
+      if (sameCombos[symbol] >= 0) {
+        terms[offset + length++] = (byte) sameCombos[symbol];
+      }
+      for (int i = 0; i < matchedAreaCount; i++) {
+        if (matchedAreaSymbols[i] == symbol) {
+          terms[offset + length++] = (byte) combinations.areaCombo(matchedAreas[i]);
+        }
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Gets the largest number of bytes {@link #writeRewardTerms(byte[], int)} writes for a board.
+   * @param cells The number of cells of the board
+   * @param symbolCount The number of symbols
+   * @param areaCount The number of covered areas
+   * @return The bound: an id and a same_symbols combination per symbol on the board, plus every area
+   */
+  static int maxRewardTerms(int cells, int symbolCount, int areaCount) {
+    return 2 * Math.min(cells, symbolCount) + areaCount;
+  }
+
+  /**
+   * Computes the reward before any bonus symbol is applied from the terms written by
+   * {@link #writeRewardTerms(byte[], int)}, with the same floating-point operations in the same
+   * order as {@link #baseReward(int)}, so that both give the same reward to the last bit.
+   * @param symbols The interned symbols of the game
+   * @param combinations The compiled winning combinations of the game
+   * @param terms The terms
+   * @param offset The index of the first term
+   * @param length The number of terms
+   * @param bettingAmount The amount bet by the player
+   * @return The sum of the rewards of all winning symbols
+   */
+  static double baseReward(SymbolTable symbols, CompiledCombinations combinations, byte[] terms, int offset,
+                           int length, int bettingAmount) {
+    double totalReward = 0.0;
+    int i = offset;
+    int end = offset + length;
+    while (i < end) {
+      double symbolReward = bettingAmount * symbols.rewardMultiplierOf(terms[i++] & 0x7f);
+      while (i < end && terms[i] >= 0) {
+        symbolReward *= combinations.rewardMultiplierOf(terms[i++]);
+      }
+      totalReward += symbolReward;
+    }
+    return totalReward;
+  }
+
+  /**
+   * Computes the reward of one winning symbol.
+   * @param symbol The symbol id, which must be winning
+   * @param bettingAmount The amount bet by the player
+   * @return The bet times the symbol multiplier times the multipliers of all its combinations
+   */
+  double symbolReward(int symbol, int bettingAmount) {
+    double symbolReward = bettingAmount * symbols.rewardMultiplierOf(symbol);
+    if (sameCombos[symbol] >= 0) {
+      symbolReward *= combinations.rewardMultiplierOf(sameCombos[symbol]);
+    }
+    for (int i = 0; i < matchedAreaCount; i++) {
+      if (matchedAreaSymbols[i] == symbol) {
+        symbolReward *= combinations.rewardMultiplierOf(combinations.areaCombo(matchedAreas[i]));
+      }
+    }
+    return symbolReward;
+  }
+
+  /**
+   * Computes the bet-independent reward multiplier before any bonus symbol is applied, in fixed point.
+   * @return The sum of the multipliers of all winning symbols in thousandths, see {@link Payout}
+   */
+  long baseMultiplierMillis() {
+    long totalMillis = 0;
+    for (int symbol = 0; symbol < sameCombos.length; symbol++) {
+      if (isWinning(symbol)) {
+        totalMillis = Math.addExact(totalMillis, symbolMultiplierMillis(symbol));
+      }
+    }
+    return totalMillis;
+  }
+
+  /**
+   * Computes the reward multiplier of one winning symbol in fixed point.
+   * @param symbol The symbol id, which must be winning
+   * @return The symbol multiplier times the multipliers of all its combinations, in thousandths
+   */
+  long symbolMultiplierMillis(int symbol) {
+    long millis = symbols.rewardMultiplierMillisOf(symbol);
+    if (sameCombos[symbol] >= 0) {
+      millis = Payout.multiply(millis, combinations.rewardMultiplierMillisOf(sameCombos[symbol]));
+    }
+    for (int i = 0; i < matchedAreaCount; i++) {
+      if (matchedAreaSymbols[i] == symbol) {
+        millis = Payout.multiply(millis, combinations.rewardMultiplierMillisOf(combinations.areaCombo(matchedAreas[i])));
+      }
+    }
+    return millis;
+  }
+
+  /**
+   * Builds the bet-independent fixed-point payout, with the bonus symbol applied the way
+   * {@link #applyBonus(double)} applies it.
+   * @return The payout
+   */
+  Payout payout() {
+    long baseMillis = baseMultiplierMillis();
+    int appliedBonus = baseMillis > 0 ? bonusSymbol : -1;
+    return new Payout(applyBonusMillis(baseMillis), appliedBonus >= 0 ? extraOf(symbols, appliedBonus) : 0);
+  }
+
+  /**
+   * Applies a multiply_reward bonus symbol to a fixed-point multiplier. Bonus symbols only apply
+   * to a positive multiplier; an extra_bonus leaves the multiplier unchanged.
+   * @param baseMillis The multiplier before the bonus, in thousandths
+   * @return The multiplier after the bonus, in thousandths
+   */
+  long applyBonusMillis(long baseMillis) {
+    if (baseMillis > 0 && bonusSymbol >= 0 && symbols.impactOf(bonusSymbol) == SymbolTable.IMPACT_MULTIPLY_REWARD) {
+      return Payout.multiply(baseMillis, symbols.rewardMultiplierMillisOf(bonusSymbol));
+    }
+    return baseMillis;
+  }
+
+  /**
+   * Gets the fixed extra reward a bonus symbol adds to a winning reward.
+   * @param symbols The interned symbols of the game
+   * @param bonusSymbol The applied bonus symbol id
+   * @return The extra reward, 0 unless the symbol is an extra_bonus
+   */
+  static long extraOf(SymbolTable symbols, int bonusSymbol) {
+    return symbols.impactOf(bonusSymbol) == SymbolTable.IMPACT_EXTRA_BONUS ? symbols.extraOf(bonusSymbol) : 0;
+  }
+
+  /**
+   * Applies the bonus symbol to a reward. Bonus symbols only apply to a positive reward.
+   * @param reward The reward before the bonus
+   * @return The reward after the bonus
+   */
+  double applyBonus(double reward) {
+    return applyBonus(symbols, bonusSymbol, reward);
+  }
+
+  /**
+   * Applies a bonus symbol to a reward. Bonus symbols only apply to a positive reward.
+   * @param symbols The interned symbols of the game
+   * @param bonusSymbol The bonus symbol id, or -1
+   * @param reward The reward before the bonus
+   * @return The reward after the bonus
+   */
+  static double applyBonus(SymbolTable symbols, int bonusSymbol, double reward) {
+    if (reward <= 0 || bonusSymbol < 0) {
+      return reward;
+    }
+    byte impact = symbols.impactOf(bonusSymbol);
+    if (impact == SymbolTable.IMPACT_MULTIPLY_REWARD) {
+      return reward * symbols.rewardMultiplierOf(bonusSymbol);
+    } else if (impact == SymbolTable.IMPACT_EXTRA_BONUS) {
+      return reward + symbols.extraOf(bonusSymbol);
+    }
+    return reward;
+  }
+
+  /**
+   * Builds the set of applied combinations as a bitmask: bit i is set when combination id i
+   * is applied to at least one symbol. Only valid for games with at most 64 combinations.
+   * @return The applied combinations bitmask
+   */
+  long appliedCombinationMask() {
+    long mask = 0L;
+    for (int symbol = 0; symbol < sameCombos.length; symbol++) {
+      if (sameCombos[symbol] >= 0) {
+        mask |= 1L << sameCombos[symbol];
+      }
+    }
+    for (int i = 0; i < matchedAreaCount; i++) {
+      mask |= 1L << combinations.areaCombo(matchedAreas[i]);
+    }
+    return mask;
+  }
+
+  /**
+   * Gets the bonus symbol applied to a reward: bonus symbols only apply to a positive reward.
+   * @param baseReward The reward before the bonus
+   * @return The applied bonus symbol id, or -1
+   */
+  int appliedBonusSymbol(double baseReward) {
+    return baseReward > 0 ? bonusSymbol : -1;
+  }
+
+  /**
+   * Builds the name-based evaluation result for a bet.
+   * @param bettingAmount The amount bet by the player
+   * @return An EvaluationResult containing the calculated reward and applied combinations
+   */
+  Matrix.EvaluationResult toResult(int bettingAmount) {
+    Map<String, List<String>> appliedCombinations = appliedCombinationsByName();
+    double baseReward = baseReward(bettingAmount);
+    int appliedBonus = appliedBonusSymbol(baseReward);
+    String appliedBonusName = appliedBonus >= 0 ? symbols.nameOf(appliedBonus) : null;
+    return new Matrix.EvaluationResult(applyBonus(baseReward), appliedCombinations, appliedBonusName);
+  }
+
+  /**
+   * Builds the names of the combinations applied to every winning symbol, same_symbols first,
+   * then the matched areas in order, like {@link Matrix#evaluateRules(GameConfiguration, int)}.
+   * @return A new map of winning symbol names to combination names
+   */
+  Map<String, List<String>> appliedCombinationsByName() {
+    Map<String, List<String>> appliedCombinations = new HashMap<>();
+    for (int symbol = 0; symbol < sameCombos.length; symbol++) {
+      if (!isWinning(symbol)) {
+        continue;
+      }
+      List<String> combosForSymbol = new ArrayList<>();
+      if (sameCombos[symbol] >= 0) {
+        combosForSymbol.add(combinations.nameOf(sameCombos[symbol]));
+      }
+      for (int i = 0; i < matchedAreaCount; i++) {
+        if (matchedAreaSymbols[i] == symbol) {
+          combosForSymbol.add(combinations.nameOf(combinations.areaCombo(matchedAreas[i])));
+        }
+      }
+      appliedCombinations.put(symbols.nameOf(symbol), combosForSymbol);
+    }
+    return appliedCombinations;
+  }
+
+  /**
+   * Clears the outcome so that an evaluator can fill it again.
+   */
+  void reset() {
+    Arrays.fill(sameCombos, -1);
+    matchedAreaCount = 0;
+    bonusSymbol = -1;
+  }
+}
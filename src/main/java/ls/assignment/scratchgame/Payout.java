@@ -0,0 +1,98 @@
+package ls.assignment.scratchgame;
+
+/**
+ * Payout class holding the bet-independent payout of one board in fixed point: a reward
+ * multiplier in thousandths of the bet, with any multiply_reward bonus already applied, and a
+ * fixed extra_bonus added to a winning reward whatever the bet.
+ * Multipliers are converted to thousandths once, when the game is compiled, and combined with
+ * integer arithmetic, so the reward of a bet is exact instead of carrying the rounding of
+ * {@code double} products. A product of multipliers with more than three decimals is rounded
+ * half up to the nearest thousandth; the multipliers of the shipped config.json never are.
+ * @author LOTHFY ( LS )
+ */
+public final class Payout {
+  /** Fixed-point units per unit of multiplier. */
+  public static final long SCALE = 1000;
+
+  private final long multiplierMillis;
+  private final long extra;
+
+  /**
+   * Constructs a payout.
+   * @param multiplierMillis The reward multiplier in thousandths of the bet
+   * @param extra The fixed extra reward of a winning board
+   */
+  Payout(long multiplierMillis, long extra) {
+    this.multiplierMillis = multiplierMillis;
+    this.extra = extra;
+  }
+
+  /**
+   * Gets the reward multiplier, bonus included.
+   * @return The multiplier in thousandths of the bet, 0 for a losing board
+   */
+  public long getMultiplierMillis() {
+    return multiplierMillis;
+  }
+
+  /**
+   * Gets the fixed extra reward added by an extra_bonus symbol.
+   * @return The extra reward, 0 for a losing board or without such a bonus
+   */
+  public long getExtra() {
+    return extra;
+  }
+
+  /**
+   * Computes the exact reward of a bet in thousandths of the currency unit of the bet.
+   * @param bettingAmount The amount bet, in minor currency units
+   * @return The reward times {@link #SCALE}
+   * @throws ArithmeticException if the reward overflows a long
+   */
+  public long rewardMillis(long bettingAmount) {
+    return Math.addExact(Math.multiplyExact(bettingAmount, multiplierMillis), Math.multiplyExact(extra, SCALE));
+  }
+
+  /**
+   * Computes the reward of a bet as a double, the closest double to the exact reward.
+   * @param bettingAmount The amount bet, in minor currency units
+   * @return The reward
+   * @throws ArithmeticException if the reward overflows a long
+   */
+  public double reward(long bettingAmount) {
+    return rewardMillis(bettingAmount) / (double) SCALE;
+  }
+
+  /**
+   * Converts a multiplier to thousandths, rounding half up.
+   * @param multiplier The multiplier
+   * @return The multiplier times {@link #SCALE}
+   * @throws IllegalStateException if the multiplier is not finite or too large
+   */
+  static long toMillis(double multiplier) {
+    if (!Double.isFinite(multiplier) || Math.abs(multiplier * SCALE) >= Long.MAX_VALUE) {
+      throw new IllegalStateException("Invalid reward multiplier " + multiplier);
+    }
+    return Math.round(multiplier * SCALE);
+  }
+
+  /**
+   * Multiplies two fixed-point values, rounding half up to the nearest thousandth.
+   * @param millis The first value in thousandths
+   * @param multiplierMillis The second value in thousandths
+   * @return The product in thousandths
+   * @throws ArithmeticException if the product overflows a long
+   */
+  static long multiply(long millis, long multiplierMillis) {
+    return Math.floorDiv(Math.addExact(Math.multiplyExact(millis, multiplierMillis), SCALE / 2), SCALE);
+  }
+
+  /**
+   * Returns a string representation of the payout.
+   * @return The multiplier in thousandths and the extra reward
+   */
+  @Override
+  public String toString() {
+    return "Payout{multiplierMillis=" + multiplierMillis + ", extra=" + extra + "}";
+  }
+}
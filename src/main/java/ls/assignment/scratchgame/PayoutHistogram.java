@@ -0,0 +1,246 @@
+package ls.assignment.scratchgame;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * PayoutHistogram class counting per-round payout multipliers (reward divided by bet, in
+ * thousandths like {@link Payout}) in a high-dynamic-range histogram of fixed size.
+ * Values below {@value #SUB_BUCKETS} are counted exactly; every larger power of two is split into
+ * {@value #HALF_BUCKETS} equal buckets, so any value from a thousandth of the bet to the largest
+ * long is counted with a relative error under 1% in {@value #BUCKET_COUNT} counters.
+ * On top of the buckets, the rounds paying more than each of {@link #TAIL_MULTIPLES} times the bet
+ * and the largest value are counted exactly, since those are the figures tail exposure is judged on.
+ * A histogram is filled by one thread without synchronization; the histograms of several
+ * threads are combined with {@link #merge(PayoutHistogram)}, and the histograms of several processes
+ * through {@link #write(DataOutput)} and {@link #read(DataInput)}.
+ * @author LOTHFY ( LS )
+ */
+public final class PayoutHistogram {
+  static final int SUB_BITS = 8;
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+  static final int HALF_BUCKETS = SUB_BUCKETS >> 1;
+  static final int BUCKET_COUNT = SUB_BUCKETS + (Long.SIZE - SUB_BITS) * HALF_BUCKETS;
+
+  /** Multiples of the bet whose exceedance is counted exactly. */
+  static final long[] TAIL_MULTIPLES = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000, 10000};
+
+  private final long[] counts = new long[BUCKET_COUNT];
+  private final long[] tailCounts = new long[TAIL_MULTIPLES.length];
+  private long count;
+  private long maxMillis;
+  private long maxCount;
+
+  /**
+   * Records the payout of one round.
+   * @param multiplierMillis The reward divided by the bet, in thousandths; not negative
+   */
+  void record(long multiplierMillis) {
+    counts[bucketOf(multiplierMillis)]++;
+    count++;
+    for (int i = 0; i < TAIL_MULTIPLES.length && multiplierMillis > TAIL_MULTIPLES[i] * Payout.SCALE; i++) {
+      tailCounts[i]++;
+    }
+    if (multiplierMillis > maxMillis) {
+      maxMillis = multiplierMillis;
+      maxCount = 1;
+    } else if (multiplierMillis == maxMillis) {
+      maxCount++;
+    }
+  }
+
+  /**
+   * Adds the counts of another histogram to this one.
+   * @param other The histogram to add
+   */
+  public void merge(PayoutHistogram other) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    for (int i = 0; i < tailCounts.length; i++) {
+      tailCounts[i] += other.tailCounts[i];
+    }
+    count += other.count;
+    if (other.maxMillis > maxMillis) {
+      maxMillis = other.maxMillis;
+      maxCount = other.maxCount;
+    } else if (other.maxMillis == maxMillis) {
+      maxCount += other.maxCount;
+    }
+  }
+
+  /**
+   * Writes the histogram compactly: the totals, then only the buckets that counted a value.
+   * @param out The output to write to
+   * @throws IOException if the histogram cannot be written
+   */
+  void write(DataOutput out) throws IOException {
+    out.writeLong(count);
+    out.writeLong(maxMillis);
+    out.writeLong(maxCount);
+    out.writeInt(tailCounts.length);
+    for (long tailCount : tailCounts) {
+      out.writeLong(tailCount);
+    }
+    int used = 0;
+    for (long bucketCount : counts) {
+      if (bucketCount != 0) {
+        used++;
+      }
+    }
+    out.writeInt(used);
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      if (counts[bucket] != 0) {
+        out.writeShort(bucket);
+        out.writeLong(counts[bucket]);
+      }
+    }
+  }
+
+  /**
+   * Reads a histogram written by {@link #write(DataOutput)}.
+   * @param in The input to read from
+   * @return The histogram
+   * @throws IOException if the histogram cannot be read
+   * @throws IllegalStateException if the data is not a histogram of this layout
+   */
+  static PayoutHistogram read(DataInput in) throws IOException {
+    PayoutHistogram histogram = new PayoutHistogram();
+    histogram.count = in.readLong();
+    histogram.maxMillis = in.readLong();
+    histogram.maxCount = in.readLong();
+    if (in.readInt() != TAIL_MULTIPLES.length) {
+      throw new IllegalStateException("Payout histogram has another tail ladder");
+    }
+    for (int i = 0; i < TAIL_MULTIPLES.length; i++) {
+      histogram.tailCounts[i] = in.readLong();
+    }
+    int used = in.readInt();
+    if (used < 0 || used > BUCKET_COUNT) {
+      throw new IllegalStateException("Corrupt payout histogram");
+    }
+    for (int i = 0; i < used; i++) {
+      int bucket = in.readUnsignedShort();
+      if (bucket >= BUCKET_COUNT) {
+        throw new IllegalStateException("Corrupt payout histogram");
+      }
+      histogram.counts[bucket] = in.readLong();
+    }
+    return histogram;
+  }
+
+  /**
+   * Finds the bucket of a value.
+   * @param value The value, not negative
+   * @return The bucket index
+   */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    // The top SUB_BITS bits of the value select the bucket within its power of two
+    int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (int) (value >>> shift) - HALF_BUCKETS;
+  }
+
+  /**
+   * Gets the largest value counted in a bucket.
+   * @param bucket The bucket index
+   * @return The upper bound of the bucket, inclusive
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKETS) / HALF_BUCKETS + 1;
+    long sub = (bucket - SUB_BUCKETS) % HALF_BUCKETS + HALF_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Gets the number of recorded rounds.
+   * @return The number of rounds
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the largest recorded payout.
+   * @return The multiplier in thousandths of the bet
+   */
+  public long getMaxMillis() {
+    return maxMillis;
+  }
+
+  /**
+   * Gets the number of rounds paying the largest recorded payout.
+   * @return The number of rounds, 0 before the first round
+   */
+  public long getMaxCount() {
+    return count == 0 ? 0 : maxCount;
+  }
+
+  /**
+   * Estimates a quantile of the payouts as the upper bound of the bucket holding it, which is
+   * exact below {@value #SUB_BUCKETS} thousandths and less than 1% above the true value beyond.
+   * @param quantile The quantile between 0 and 1
+   * @return The multiplier in thousandths of the bet, 0 before the first round
+   */
+  public long quantileMillis(double quantile) {
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      seen += counts[bucket];
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(bucket), maxMillis);
+      }
+    }
+    return maxMillis;
+  }
+
+  /**
+   * Gets the share of rounds paying more than a multiple of the bet. The share is exact for the
+   * multiples of {@link #TAIL_MULTIPLES}; for any other multiple, the rounds in the bucket holding
+   * the threshold are not counted, which underestimates the share by less than that bucket.
+   * @param multiple The multiple of the bet
+   * @return The probability, 0 before the first round
+   */
+  public double exceedanceProbability(long multiple) {
+    if (count == 0) {
+      return 0.0;
+    }
+    int tail = Arrays.binarySearch(TAIL_MULTIPLES, multiple);
+    if (tail >= 0) {
+      return (double) tailCounts[tail] / count;
+    }
+    long above = 0;
+    for (int bucket = bucketOf(Math.multiplyExact(multiple, Payout.SCALE)) + 1; bucket < counts.length; bucket++) {
+      above += counts[bucket];
+    }
+    return (double) above / count;
+  }
+
+  /**
+   * Prints the payout percentiles and the exceedance probabilities of {@link #TAIL_MULTIPLES}.
+   * @param out The stream to print to
+   */
+  public void print(PrintStream out) {
+    double[] quantiles = {0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 0.9999, 0.99999};
+    String[] labels = {"P50", "P75", "P90", "P95", "P99", "P99.9", "P99.99", "P99.999"};
+    out.println("Payout percentiles (x bet, within 1%):");
+    for (int i = 0; i < quantiles.length; i++) {
+      out.println(String.format(Locale.ROOT, "  %-8s %14.3f", labels[i], quantileMillis(quantiles[i]) / (double) Payout.SCALE));
+    }
+    out.println("Payout above (probability, 1 in):");
+    for (long multiple : TAIL_MULTIPLES) {
+      double probability = exceedanceProbability(multiple);
+      out.println(String.format(Locale.ROOT, "  %-8s %14.8f %% %16s", multiple + "x", probability * 100,
+              probability == 0 ? "-" : String.format(Locale.ROOT, "%.0f", 1 / probability)));
+    }
+  }
+}
@@ -0,0 +1,606 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * PaytableTuner class searching the free parameters of a configuration (per-cell standard symbol
+ * weights, bonus symbol weights and win combination multipliers) for a paytable whose RTP hits a
+ * target and whose hit frequency lies in a band.
+ * <p>
+ * The search is a (1+&lambda;) evolution strategy in log space: every generation mutates the
+ * best paytable so far into {@value #GENERATION_SIZE} candidates, one of them with every free
+ * multiplier scaled by the target over the current RTP, scores them in parallel, keeps the best
+ * one if it improves, and widens or narrows the mutation step on success or failure. The
+ * candidates of a generation are drawn from the seed before scoring and compared in order, so a
+ * seed tunes the same paytable on any number of threads. Candidates are scored on a game derived from the compiled base game, which
+ * shares the samplers of unchanged cells, by {@link ExactRtpCalculator} when the game supports
+ * it and otherwise by a fixed-seed simulation (the same rounds for every candidate, so that
+ * candidates are compared without simulation noise between them). The score is the squared
+ * relative RTP error plus the squared distance of the hit frequency to the band, plus a small
+ * penalty on the distance to the base paytable so that equally good paytables close to the
+ * original design win. The search stops at the first paytable within the tolerance and the band.
+ * @author LOTHFY ( LS )
+ */
+public final class PaytableTuner {
+  /** Number of candidates scored per generation. */
+  static final int GENERATION_SIZE = 64;
+  /** Initial standard deviation of a mutation in log space. */
+  static final double INITIAL_STEP = 0.3;
+  /** Number of rounds a candidate is simulated for when the game cannot be scored exactly. */
+  public static final long DEFAULT_SIMULATED_ROUNDS = 200_000;
+  /** Weight of the mean squared log distance to the base paytable in the score. */
+  static final double DISTANCE_WEIGHT = 1e-6;
+
+  /** Parameter kind: the weight of a standard symbol in one cell. */
+  public static final byte KIND_CELL_WEIGHT = 0;
+  /** Parameter kind: the weight of a bonus symbol, shared by every cell. */
+  public static final byte KIND_BONUS_WEIGHT = 1;
+  /** Parameter kind: the reward multiplier of a win combination. */
+  public static final byte KIND_MULTIPLIER = 2;
+
+  private final CompiledGame game;
+  private final List<Parameter> parameters;
+  private final int bettingAmount;
+  private final int threads;
+  private final long simulatedRounds;
+  private final boolean exact;
+
+  /**
+   * Parameter class describing one free parameter of the paytable.
+   */
+  public static final class Parameter {
+    private final byte kind;
+    private final int cell;
+    private final int id;
+    private final String name;
+
+    /**
+     * Constructs a parameter.
+     * @param kind The parameter kind
+     * @param cell The cell of a cell weight, -1 otherwise
+     * @param id The symbol id of a weight or the combination id of a multiplier
+     * @param name The display name
+     */
+    Parameter(byte kind, int cell, int id, String name) {
+      this.kind = kind;
+      this.cell = cell;
+      this.id = id;
+      this.name = name;
+    }
+
+    /**
+     * Gets the kind of the parameter.
+     * @return One of the KIND constants
+     */
+    public byte getKind() {
+      return kind;
+    }
+
+    /**
+     * Gets the display name of the parameter.
+     * @return The name, such as "weight A at 1:2", "weight 10x" or "multiplier same_symbol_3_times"
+     */
+    public String getName() {
+      return name;
+    }
+  }
+
+  /**
+   * Target class describing the RTP and hit frequency a paytable must reach.
+   */
+  public static final class Target {
+    private final double rtp;
+    private final double tolerance;
+    private final double minHitFrequency;
+    private final double maxHitFrequency;
+
+    /**
+     * Constructs a target.
+     * @param rtp The target RTP, as a fraction
+     * @param tolerance The largest accepted absolute RTP error, as a fraction
+     * @param minHitFrequency The smallest accepted hit frequency
+     * @param maxHitFrequency The largest accepted hit frequency
+     * @throws IllegalArgumentException if the RTP or tolerance is not positive or the band is empty
+     */
+    public Target(double rtp, double tolerance, double minHitFrequency, double maxHitFrequency) {
+      if (!(rtp > 0) || !(tolerance > 0) || !(minHitFrequency <= maxHitFrequency)) {
+        throw new IllegalArgumentException("Invalid tuning target");
+      }
+      this.rtp = rtp;
+      this.tolerance = tolerance;
+      this.minHitFrequency = minHitFrequency;
+      this.maxHitFrequency = maxHitFrequency;
+    }
+
+    /**
+     * Checks whether a paytable meets the target.
+     * @param rtp The RTP of the paytable
+     * @param hitFrequency The hit frequency of the paytable
+     * @return true if the RTP is within the tolerance and the hit frequency within the band
+     */
+    boolean isMet(double rtp, double hitFrequency) {
+      return Math.abs(rtp - this.rtp) <= tolerance && hitFrequency >= minHitFrequency && hitFrequency <= maxHitFrequency;
+    }
+
+    /**
+     * Scores how far a paytable is from the target.
+     * @param rtp The RTP of the paytable
+     * @param hitFrequency The hit frequency of the paytable
+     * @return The squared relative RTP error plus the squared distance of the hit frequency to the band
+     */
+    double score(double rtp, double hitFrequency) {
+      double rtpError = (rtp - this.rtp) / this.rtp;
+      double hitError = Math.max(0.0, Math.max(minHitFrequency - hitFrequency, hitFrequency - maxHitFrequency));
+      return rtpError * rtpError + hitError * hitError;
+    }
+  }
+
+  /**
+   * Result class holding the best paytable found.
+   */
+  public static final class Result {
+    private final CompiledGame game;
+    private final List<Parameter> parameters;
+    private final double[] baseValues;
+    private final double[] values;
+    private final double rtp;
+    private final double hitFrequency;
+    private final boolean met;
+    private final boolean exact;
+    private final long candidates;
+    private final int generations;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a result.
+     * @param game The compiled base game
+     * @param parameters The free parameters
+     * @param baseValues The value of every parameter in the base game
+     * @param values The tuned value of every parameter
+     * @param rtp The RTP of the tuned paytable
+     * @param hitFrequency The hit frequency of the tuned paytable
+     * @param met Whether the tuned paytable meets the target
+     * @param exact Whether candidates were scored exactly rather than simulated
+     * @param candidates The number of scored candidates
+     * @param generations The number of generations
+     * @param elapsedNanos The duration of the search
+     */
+    Result(CompiledGame game, List<Parameter> parameters, double[] baseValues, double[] values, double rtp,
+           double hitFrequency, boolean met, boolean exact, long candidates, int generations, long elapsedNanos) {
+      this.game = game;
+      this.parameters = parameters;
+      this.baseValues = baseValues;
+      this.values = values;
+      this.rtp = rtp;
+      this.hitFrequency = hitFrequency;
+      this.met = met;
+      this.exact = exact;
+      this.candidates = candidates;
+      this.generations = generations;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the RTP of the tuned paytable.
+     * @return The RTP as a fraction, exact or simulated
+     */
+    public double getRtp() {
+      return rtp;
+    }
+
+    /**
+     * Gets the hit frequency of the tuned paytable.
+     * @return The hit frequency, exact or simulated
+     */
+    public double getHitFrequency() {
+      return hitFrequency;
+    }
+
+    /**
+     * Checks whether the tuned paytable meets the target.
+     * @return true if the RTP is within the tolerance and the hit frequency within the band
+     */
+    public boolean isMet() {
+      return met;
+    }
+
+    /**
+     * Gets the number of scored candidates.
+     * @return The number of candidates
+     */
+    public long getCandidates() {
+      return candidates;
+    }
+
+    /**
+     * Gets the tuned value of a parameter.
+     * @param parameter The index of the parameter
+     * @return The weight or multiplier
+     */
+    public double getValue(int parameter) {
+      return values[parameter];
+    }
+
+    /**
+     * Builds the configuration of the tuned paytable: a copy of the base configuration with the
+     * tuned weights and multipliers.
+     * @return The tuned configuration
+     * @throws IllegalStateException if the base game has no source configuration
+     */
+    public GameConfiguration toConfiguration() {
+      Gson gson = new Gson();
+      GameConfiguration config = gson.fromJson(gson.toJson(game.getConfiguration()), GameConfiguration.class);
+      CompiledCombinations combinations = game.getCombinations();
+      SymbolTable symbols = game.getSymbols();
+      for (int i = 0; i < parameters.size(); i++) {
+        Parameter parameter = parameters.get(i);
+        if (parameter.kind == KIND_CELL_WEIGHT) {
+          // The compiler reads the first probability entry of a cell
+          int row = parameter.cell / game.getColumns();
+          int column = parameter.cell % game.getColumns();
+          for (StandardSymbol entry : config.getProbabilities().getStandardSymbols()) {
+            if (entry.getRow() == row && entry.getColumn() == column) {
+              entry.getSymbols().put(symbols.nameOf(parameter.id), (int) values[i]);
+              break;
+            }
+          }
+        } else if (parameter.kind == KIND_BONUS_WEIGHT) {
+          config.getProbabilities().getBonusSymbols().getSymbols().put(symbols.nameOf(parameter.id), (int) values[i]);
+        } else {
+          config.getWinCombinations().get(combinations.nameOf(parameter.id)).setRewardMultiplier(values[i]);
+        }
+      }
+      return config;
+    }
+
+    /**
+     * Builds the JSON of the tuned configuration.
+     * @return The pretty-printed configuration JSON
+     */
+    public String toJson() {
+      return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(toConfiguration());
+    }
+
+    /**
+     * Prints the outcome of the search and the changed parameters.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+      double seconds = elapsedNanos / 1e9;
+      out.println(String.format(Locale.ROOT, "RTP             : %.4f %% (%s)", rtp * 100, exact ? "exact" : "simulated"));
+      out.println(String.format(Locale.ROOT, "Hit frequency   : %.4f %%", hitFrequency * 100));
+      out.println("Target          : " + (met ? "met" : "not met within the candidate limit"));
+      out.println(String.format(Locale.ROOT, "Candidates      : %d in %d generations (%.0f per minute)", candidates,
+              generations, seconds > 0 ? candidates * 60 / seconds : 0.0));
+      out.println("Changed parameters (base, tuned):");
+      for (int i = 0; i < parameters.size(); i++) {
+        if (values[i] != baseValues[i]) {
+          out.println(String.format(Locale.ROOT, "  %-50s %10s %10s", parameters.get(i).name, format(baseValues[i]),
+                  format(values[i])));
+        }
+      }
+    }
+
+    /**
+     * Formats a weight or multiplier without needless decimals.
+     * @param value The value
+     * @return The formatted value
+     */
+    private static String format(double value) {
+      return value == Math.rint(value) ? Long.toString((long) value) : String.format(Locale.ROOT, "%.2f", value);
+    }
+  }
+
+  /**
+   * Constructs a tuner.
+   * @param game The compiled base game, with its source configuration
+   * @param parameters The free parameters, see {@link #parseParameters(CompiledGame, List)}
+   * @param bettingAmount The amount bet in every round
+   * @param threads The number of worker threads
+   * @param simulatedRounds The number of rounds a candidate is simulated for when exact scoring is unsupported
+   * @throws IllegalArgumentException if there is no parameter, or threads or simulatedRounds is not positive
+   */
+  public PaytableTuner(CompiledGame game, List<Parameter> parameters, int bettingAmount, int threads, long simulatedRounds) {
+    if (parameters.isEmpty()) {
+      throw new IllegalArgumentException("No free parameter to tune");
+    }
+    if (threads <= 0 || simulatedRounds <= 0) {
+      throw new IllegalArgumentException("Number of threads and simulated rounds must be positive");
+    }
+    this.game = game;
+    this.parameters = List.copyOf(parameters);
+    this.bettingAmount = bettingAmount;
+    this.threads = threads;
+    this.simulatedRounds = simulatedRounds;
+    boolean supported = true;
+    try {
+      new ExactRtpCalculator(game);
+    } catch (UnsupportedOperationException e) {
+      supported = false;
+    }
+    this.exact = supported;
+  }
+
+  /**
+   * Parses free parameter selectors. Weights that are 0 in the base game stay 0.
+   * <ul>
+   *   <li>cell-weights: the weight of every standard symbol in every cell</li>
+   *   <li>cell-weights:&lt;symbol&gt;: the weight of one standard symbol in every cell</li>
+   *   <li>bonus-weights, bonus-weights:&lt;symbol&gt;: the weight of every or one bonus symbol</li>
+   *   <li>multipliers, multipliers:&lt;combination&gt;: the reward multiplier of every or one win combination</li>
+   * </ul>
+   * @param game The compiled base game
+   * @param selectors The selectors
+   * @return The parameters, without duplicates
+   * @throws IllegalArgumentException if a selector is unknown or names an unknown symbol or combination
+   */
+  public static List<Parameter> parseParameters(CompiledGame game, List<String> selectors) {
+    SymbolTable symbols = game.getSymbols();
+    CompiledCombinations combinations = game.getCombinations();
+    int cells = game.getRows() * game.getColumns();
+    List<Parameter> parameters = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (String selector : selectors) {
+      int colon = selector.indexOf(':');
+      String group = colon < 0 ? selector : selector.substring(0, colon);
+      String name = colon < 0 ? null : selector.substring(colon + 1);
+      List<Parameter> selected = new ArrayList<>();
+      if ("cell-weights".equals(group) || "bonus-weights".equals(group)) {
+        boolean bonus = "bonus-weights".equals(group);
+        if (name != null && (symbols.idOf(name) < 0 || symbols.isBonus(symbols.idOf(name)) != bonus)) {
+          throw new IllegalArgumentException("Unknown " + (bonus ? "bonus" : "standard") + " symbol " + name);
+        }
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+          boolean kindMatches = bonus ? symbols.isBonus(symbol) : symbols.isStandard(symbol);
+          if (!kindMatches || (name != null && !name.equals(symbols.nameOf(symbol)))) {
+            continue;
+          }
+          if (bonus) {
+            if (game.cellWeight(0, symbol) > 0) {
+              selected.add(new Parameter(KIND_BONUS_WEIGHT, -1, symbol, "weight " + symbols.nameOf(symbol)));
+            }
+            continue;
+          }
+          for (int cell = 0; cell < cells; cell++) {
+            if (game.cellWeight(cell, symbol) > 0) {
+              selected.add(new Parameter(KIND_CELL_WEIGHT, cell, symbol, "weight " + symbols.nameOf(symbol) + " at "
+                      + cell / game.getColumns() + ":" + cell % game.getColumns()));
+            }
+          }
+        }
+      } else if ("multipliers".equals(group)) {
+        boolean found = false;
+        for (int combo = 0; combo < combinations.size(); combo++) {
+          if (name == null || name.equals(combinations.nameOf(combo))) {
+            selected.add(new Parameter(KIND_MULTIPLIER, -1, combo, "multiplier " + combinations.nameOf(combo)));
+            found = true;
+          }
+        }
+        if (!found && name != null) {
+          throw new IllegalArgumentException("Unknown win combination " + name);
+        }
+      } else {
+        throw new IllegalArgumentException("Unknown parameter selector " + selector);
+      }
+      for (Parameter parameter : selected) {
+        if (!names.contains(parameter.name)) {
+          names.add(parameter.name);
+          parameters.add(parameter);
+        }
+      }
+    }
+    return parameters;
+  }
+
+  /**
+   * Searches for a paytable meeting the target.
+   * @param target The target RTP and hit frequency band
+   * @param maxCandidates The largest number of candidates to score
+   * @param seed The seed of the search and of the simulated rounds
+   * @return The best paytable found
+   * @throws IllegalStateException if a worker fails
+   */
+  public Result tune(Target target, long maxCandidates, long seed) {
+    long start = System.nanoTime();
+    int count = parameters.size();
+    double[] baseValues = new double[count];
+    for (int i = 0; i < count; i++) {
+      Parameter parameter = parameters.get(i);
+      baseValues[i] = parameter.kind == KIND_MULTIPLIER
+              ? game.getCombinations().rewardMultiplierOf(parameter.id)
+              : game.cellWeight(parameter.kind == KIND_CELL_WEIGHT ? parameter.cell : 0, parameter.id);
+    }
+
+    SplittableRandom random = new SplittableRandom(seed);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      double[] best = baseValues.clone();
+      double[] bestScore = score(best, target, baseValues, seed);
+      long candidates = 1;
+      int generations = 0;
+      double step = INITIAL_STEP;
+      while (!target.isMet(bestScore[1], bestScore[2]) && candidates < maxCandidates) {
+        generations++;
+        List<double[]> generation = new ArrayList<>();
+        if (bestScore[1] > 0) {
+          double[] rescaled = rescale(best, target.rtp / bestScore[1]);
+          if (!Arrays.equals(rescaled, best)) {
+            generation.add(rescaled);
+          }
+        }
+        for (int c = generation.size(); c < GENERATION_SIZE && candidates + generation.size() < maxCandidates; c++) {
+          generation.add(mutate(best, step, random, c % 4 == 0));
+        }
+        List<Future<double[]>> futures = new ArrayList<>();
+        for (double[] candidate : generation) {
+          futures.add(pool.submit(() -> score(candidate, target, baseValues, seed)));
+        }
+        candidates += generation.size();
+        int winner = -1;
+        double[] winnerScore = bestScore;
+        for (int c = 0; c < futures.size(); c++) {
+          double[] candidateScore = futures.get(c).get();
+          if (candidateScore[0] < winnerScore[0]) {
+            winner = c;
+            winnerScore = candidateScore;
+          }
+        }
+        if (winner >= 0) {
+          best = generation.get(winner);
+          bestScore = winnerScore;
+          step = Math.min(1.0, step * 1.5);
+        } else {
+          step = Math.max(0.005, step * 0.8);
+        }
+      }
+      return new Result(game, parameters, baseValues, best, bestScore[1], bestScore[2],
+              target.isMet(bestScore[1], bestScore[2]), exact, candidates, generations, System.nanoTime() - start);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Tuning interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Tuning failed", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Mutates a paytable: a few parameters, or with a global move all parameters of one kind by a
+   * common factor, are multiplied by a log-normal factor and rounded to whole weights or to
+   * hundredths of multipliers. At least one parameter changes.
+   * @param values The paytable to mutate
+   * @param step The standard deviation of a mutation in log space
+   * @param random The random generator of the search
+   * @param global Whether to scale every parameter of one kind by the same factor
+   * @return The mutated paytable
+   */
+  private double[] mutate(double[] values, double step, SplittableRandom random, boolean global) {
+    double[] mutated = values.clone();
+    int count = values.length;
+    if (global) {
+      byte kind = parameters.get(random.nextInt(count)).kind;
+      double factor = Math.exp(step * random.nextGaussian());
+      for (int i = 0; i < count; i++) {
+        if (parameters.get(i).kind == kind) {
+          mutated[i] = round(parameters.get(i), values[i] * factor);
+        }
+      }
+    } else {
+      double rate = Math.min(1.0, 2.0 / count);
+      for (int i = 0; i < count; i++) {
+        if (random.nextDouble() < rate) {
+          mutated[i] = round(parameters.get(i), values[i] * Math.exp(step * random.nextGaussian()));
+        }
+      }
+    }
+    if (Arrays.equals(mutated, values)) {
+      // Rounding undid the move, so take the smallest step on one parameter instead
+      int i = random.nextInt(count);
+      double unit = parameters.get(i).kind == KIND_MULTIPLIER ? 0.01 : 1;
+      mutated[i] = round(parameters.get(i), values[i] + (random.nextBoolean() || values[i] <= unit ? unit : -unit));
+    }
+    return mutated;
+  }
+
+  /**
+   * Scales every free multiplier of a paytable by the same factor. Since the combination part of
+   * the RTP is proportional to the multipliers, this moves the RTP towards the target while keeping
+   * the shape of the paytable.
+   * @param values The paytable to scale
+   * @param factor The factor, the target RTP over the current one
+   * @return The scaled paytable, equal to the given one if no multiplier is free
+   */
+  private double[] rescale(double[] values, double factor) {
+    double[] scaled = values.clone();
+    for (int i = 0; i < values.length; i++) {
+      if (parameters.get(i).kind == KIND_MULTIPLIER) {
+        scaled[i] = round(parameters.get(i), values[i] * factor);
+      }
+    }
+    return scaled;
+  }
+
+  /**
+   * Rounds a parameter value to a valid weight or multiplier.
+   * @param parameter The parameter
+   * @param value The value
+   * @return A positive whole weight, or a multiplier of at least 0.01 rounded to hundredths
+   */
+  private static double round(Parameter parameter, double value) {
+    if (parameter.kind == KIND_MULTIPLIER) {
+      return Math.max(0.01, Math.round(value * 100) / 100.0);
+    }
+    return Math.max(1, Math.min(Integer.MAX_VALUE / 1024, Math.round(value)));
+  }
+
+  /**
+   * Scores a paytable.
+   * @param values The value of every parameter
+   * @param target The target
+   * @param baseValues The value of every parameter in the base game
+   * @param seed The seed of the simulated rounds
+   * @return The score, the RTP and the hit frequency
+   */
+  private double[] score(double[] values, Target target, double[] baseValues, long seed) {
+    CompiledGame candidate = derive(values);
+    double rtp;
+    double hitFrequency;
+    if (exact) {
+      ExactRtpCalculator.Result result = new ExactRtpCalculator(candidate).calculate(bettingAmount);
+      rtp = result.rtp;
+      hitFrequency = result.hitFrequency;
+    } else {
+      SimulationStats stats = new Simulator(candidate, 1).play(seed, 0, simulatedRounds, bettingAmount, null);
+      rtp = stats.getRtp();
+      hitFrequency = stats.getHitFrequency();
+    }
+    double distance = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      double log = Math.log(values[i] / baseValues[i]);
+      distance += log * log;
+    }
+    return new double[] {target.score(rtp, hitFrequency) + DISTANCE_WEIGHT * distance / values.length, rtp, hitFrequency};
+  }
+
+  /**
+   * Derives the game of a paytable from the base game.
+   * @param values The value of every parameter
+   * @return The derived game
+   */
+  private CompiledGame derive(double[] values) {
+    int cells = game.getRows() * game.getColumns();
+    int[][] weights = new int[cells][];
+    for (int cell = 0; cell < cells; cell++) {
+      weights[cell] = game.cellWeights()[cell].clone();
+    }
+    double[] multipliers = new double[game.getCombinations().size()];
+    for (int combo = 0; combo < multipliers.length; combo++) {
+      multipliers[combo] = game.getCombinations().rewardMultiplierOf(combo);
+    }
+    for (int i = 0; i < values.length; i++) {
+      Parameter parameter = parameters.get(i);
+      if (parameter.kind == KIND_CELL_WEIGHT) {
+        weights[parameter.cell][parameter.id] = (int) values[i];
+      } else if (parameter.kind == KIND_BONUS_WEIGHT) {
+        for (int cell = 0; cell < cells; cell++) {
+          weights[cell][parameter.id] = (int) values[i];
+        }
+      } else {
+        multipliers[parameter.id] = values[i];
+      }
+    }
+    return game.derive(weights, multipliers);
+  }
+}
@@ -0,0 +1,253 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PlayServer class serving rounds of one compiled game over HTTP.
+ * The server answers {@code POST /play} with a body such as {@code {"betting_amount": 100}} and
+ * returns the played round as JSON (see {@link RoundJson}). Every request is handled on its own
+ * virtual thread; the compiled game is immutable and shared, and every round is drawn from the
+ * stream of (seed, round index) with the round index taken from a shared counter. When an
+ * {@link AuditLog} is given, every round is recorded in it before the response is sent.
+ * When the server plays a {@link ReloadableGame}, every request takes the current version once
+ * and plays the whole round on it, so a reload never changes a round in flight.
+ * Every round is counted and timed in the server's {@link GameMetrics}, served in the Prometheus
+ * text format by {@code GET /metrics}.
+ * @author LOTHFY ( LS )
+ */
+public final class PlayServer {
+  private static final int BACKLOG = 1024;
+
+  private final ReloadableGame reloadable;
+  private final ReloadableGame.Version fixed;
+  private final long seed;
+  private final AuditLog auditLog;
+  private final GameMetrics metrics;
+  private final AtomicLong nextRound = new AtomicLong();
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * Constructs a server for a compiled game.
+   * @param game The compiled game to play
+   * @param seed The seed of all rounds played by this server
+   */
+  public PlayServer(CompiledGame game, long seed) {
+    this(game, seed, null);
+  }
+
+  /**
+   * Constructs a server for a compiled game recording every round.
+   * @param game The compiled game to play
+   * @param seed The seed of all rounds played by this server
+   * @param auditLog The log to record the rounds in, or null
+   */
+  public PlayServer(CompiledGame game, long seed, AuditLog auditLog) {
+    this(game, seed, auditLog, new GameMetrics());
+  }
+
+  /**
+   * Constructs a server for a compiled game recording every round and its metrics.
+   * @param game The compiled game to play
+   * @param seed The seed of all rounds played by this server
+   * @param auditLog The log to record the rounds in, or null
+   * @param metrics The metrics to record the rounds in
+   */
+  public PlayServer(CompiledGame game, long seed, AuditLog auditLog, GameMetrics metrics) {
+    this.reloadable = null;
+    this.fixed = new ReloadableGame.Version(game, 1, 0);
+    this.seed = seed;
+    this.auditLog = auditLog;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Constructs a server for a reloadable game recording every round.
+   * @param game The reloadable game to play, whose current version plays every new round
+   * @param seed The seed of all rounds played by this server
+   * @param auditLog The log to record the rounds in, or null
+   * @param metrics The metrics to record the rounds in
+   */
+  public PlayServer(ReloadableGame game, long seed, AuditLog auditLog, GameMetrics metrics) {
+    this.reloadable = game;
+    this.fixed = null;
+    this.seed = seed;
+    this.auditLog = auditLog;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts listening.
+   * @param address The address to bind, with port 0 for any free port
+   * @throws IOException if the address cannot be bound
+   * @throws IllegalStateException if the server is already started
+   */
+  public synchronized void start(InetSocketAddress address) throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("Server already started");
+    }
+    server = HttpServer.create(address, BACKLOG);
+    executor = Executors.newVirtualThreadPerTaskExecutor();
+    server.setExecutor(executor);
+    server.createContext("/play", this::handlePlay);
+    server.createContext("/metrics", this::handleMetrics);
+    server.start();
+  }
+
+  /**
+   * Stops the server, waiting at most the given time for running exchanges to finish.
+   * @param delaySeconds The maximum time to wait in seconds
+   */
+  public synchronized void stop(int delaySeconds) {
+    if (server != null) {
+      server.stop(delaySeconds);
+      executor.shutdown();
+      server = null;
+    }
+  }
+
+  /**
+   * Gets the port the server listens on.
+   * @return The bound port
+   * @throws IllegalStateException if the server is not started
+   */
+  public synchronized int getPort() {
+    if (server == null) {
+      throw new IllegalStateException("Server not started");
+    }
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Gets the metrics of the rounds played by this server.
+   * @return The metrics
+   */
+  public GameMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Handles one request to /play.
+   * @param exchange The HTTP exchange
+   * @throws IOException if the response cannot be written
+   */
+  private void handlePlay(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        send(exchange, 405, error("Method not allowed"));
+        return;
+      }
+      int bettingAmount;
+      try (InputStream body = exchange.getRequestBody()) {
+        bettingAmount = parseBettingAmount(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+      }
+      if (bettingAmount <= 0) {
+        send(exchange, 400, error("Invalid or missing betting_amount"));
+        return;
+      }
+
+      ReloadableGame.Version version = reloadable != null ? reloadable.current() : fixed;
+      CompiledGame game = version.getGame();
+      long round = nextRound.getAndIncrement();
+      long start = System.nanoTime();
+      Board board = game.generateBoard(new RoundRandom(seed, round), game.newBoard());
+      long generated = System.nanoTime();
+      GameEvents.Evaluation event = new GameEvents.Evaluation();
+      event.begin();
+      Outcome outcome = game.newOutcome();
+      game.evaluate(board, outcome);
+      metrics.recordEvaluate(System.nanoTime() - generated);
+      metrics.recordGenerate(generated - start);
+      metrics.recordRound(game, outcome, bettingAmount);
+      if (auditLog != null) {
+        auditLog.append(game, seed, round, bettingAmount, board, outcome);
+      }
+      Matrix.EvaluationResult result = outcome.toResult(bettingAmount);
+      if (event.shouldCommit()) {
+        event.describe(game, bettingAmount, result);
+        event.commit();
+      }
+      send(exchange, 200, RoundJson.write(board.toMatrix(game.getSymbols()), result, seed, round,
+              version.getNumber(), game.getConfigurationHash()));
+    }
+  }
+
+  /**
+   * Handles one request to /metrics.
+   * @param exchange The HTTP exchange
+   * @throws IOException if the response cannot be written
+   */
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        send(exchange, 405, error("Method not allowed"));
+        return;
+      }
+      byte[] bytes = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+
+  /**
+   * Reads the betting amount from a request body.
+   * @param body The request body, a JSON object with a positive integer betting_amount
+   * @return The betting amount, or -1 if the body is not valid
+   */
+  static int parseBettingAmount(String body) {
+    try {
+      JsonElement bettingAmount = JsonParser.parseString(body).getAsJsonObject().get("betting_amount");
+      if (bettingAmount == null || !bettingAmount.isJsonPrimitive() || !bettingAmount.getAsJsonPrimitive().isNumber()) {
+        return -1;
+      }
+      return bettingAmount.getAsBigDecimal().intValueExact();
+    } catch (JsonParseException | IllegalStateException | ArithmeticException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Builds an error response body.
+   * @param message The error message
+   * @return The JSON text
+   */
+  private static String error(String message) {
+    StringBuilder json = new StringBuilder("{\"error\":");
+    RoundJson.appendString(json, message);
+    return json.append('}').toString();
+  }
+
+  /**
+   * Sends a JSON response.
+   * @param exchange The HTTP exchange
+   * @param status The HTTP status code
+   * @param json The response body
+   * @throws IOException if the response cannot be written
+   */
+  private static void send(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package ls.assignment.scratchgame;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * ReloadableGame class holding the current version of a game whose configuration file can change
+ * while the process runs.
+ * A reload reads, parses, compiles and validates the file away from the rounds being played, then
+ * publishes the new version with a single volatile write. Readers take the current version with a
+ * single volatile read and no lock; a round that took a version before a reload finishes on it,
+ * and rounds starting afterwards get the new one. A file that cannot be loaded leaves the current
+ * version in place. With {@link #watch()} the file is reloaded whenever it changes on disk.
+ * @author LOTHFY ( LS )
+ */
+public final class ReloadableGame implements Closeable {
+  /** Time to let a file settle after a change before reloading it. */
+  private static final long SETTLE_MILLIS = 100;
+
+  /**
+   * One published version of the game.
+   */
+  public static final class Version {
+    private final CompiledGame game;
+    private final long number;
+    private final long loadNanos;
+
+    /**
+     * Constructs a version.
+     * @param game The compiled game
+     * @param number The version number, starting at 1
+     * @param loadNanos The time taken to read, compile and validate the configuration, or 0 if unknown
+     */
+    Version(CompiledGame game, long number, long loadNanos) {
+      this.game = game;
+      this.number = number;
+      this.loadNanos = loadNanos;
+    }
+
+    /**
+     * Gets the compiled game of this version.
+     * @return The compiled game
+     */
+    public CompiledGame getGame() {
+      return game;
+    }
+
+    /**
+     * Gets the version number, incremented by every published reload.
+     * @return The version number
+     */
+    public long getNumber() {
+      return number;
+    }
+
+    /**
+     * Gets the time taken to load this version.
+     * @return The time to read, compile and validate the configuration in nanoseconds, or 0 for the first version
+     */
+    public long getLoadNanos() {
+      return loadNanos;
+    }
+  }
+
+  /**
+   * Listener notified of reloads, on the thread that performed them.
+   */
+  public interface Listener {
+    /**
+     * Called after a new version was published.
+     * @param version The new version
+     */
+    void reloaded(Version version);
+
+    /**
+     * Called when the configuration file could not be loaded; the current version is kept.
+     * @param error The error
+     */
+    void failed(Exception error);
+  }
+
+  private final Path config;
+  private final Listener listener;
+  private final ReentrantLock reloadLock = new ReentrantLock();
+  private volatile Version current;
+  private long sourceChecksum;
+  private WatchService watchService;
+  private Thread watcher;
+
+  /**
+   * Constructs a reloadable game from an already compiled first version.
+   * @param config The configuration file
+   * @param initial The game compiled from the current content of the file
+   * @param listener The listener notified of reloads
+   * @throws IOException if the configuration file cannot be read
+   */
+  public ReloadableGame(Path config, CompiledGame initial, Listener listener) throws IOException {
+    this.config = config.toAbsolutePath();
+    this.listener = listener;
+    this.sourceChecksum = checksum(Files.readAllBytes(this.config));
+    this.current = new Version(initial, 1, 0);
+  }
+
+  /**
+   * Gets the current version. Take it once per round and play the whole round on it.
+   * @return The current version
+   */
+  public Version current() {
+    return current;
+  }
+
+  /**
+   * Reloads the configuration file now. Nothing is published if the content did not change.
+   * @return true if a new version was published
+   */
+  public boolean reload() {
+    reloadLock.lock();
+    try {
+      long start = System.nanoTime();
+      GameEvents.ConfigLoad event = new GameEvents.ConfigLoad();
+      event.begin();
+      byte[] source = Files.readAllBytes(config);
+      long checksum = checksum(source);
+      if (checksum == sourceChecksum) {
+        return false;
+      }
+      GameConfiguration configuration = new Gson().fromJson(new String(source, StandardCharsets.UTF_8),
+              GameConfiguration.class);
+      if (configuration == null) {
+        throw new IllegalStateException("Empty configuration file");
+      }
+      CompiledGame game = compile(configuration);
+
+      Version version = new Version(game, current.number + 1, System.nanoTime() - start);
+      if (event.shouldCommit()) {
+        event.source = config.toString();
+        event.sourceBytes = source.length;
+        event.version = version.number;
+        event.describe(game);
+        event.commit();
+      }
+      current = version;
+      sourceChecksum = checksum;
+      listener.reloaded(version);
+      return true;
+    } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException e) {
+      listener.failed(e);
+      return false;
+    } finally {
+      reloadLock.unlock();
+    }
+  }
+
+  /**
+   * Starts watching the configuration file and reloading it on every change.
+   * @throws IOException if the directory of the file cannot be watched
+   * @throws IllegalStateException if the file is already watched
+   */
+  public synchronized void watch() throws IOException {
+    if (watcher != null) {
+      throw new IllegalStateException("Already watching " + config);
+    }
+    watchService = FileSystems.getDefault().newWatchService();
+    config.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+    watcher = new Thread(this::watchLoop, "config-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  /**
+   * Stops watching the configuration file.
+   * @throws IOException if the watch service cannot be closed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (watcher != null) {
+      watchService.close();
+      watcher.interrupt();
+      watcher = null;
+    }
+  }
+
+  /**
+   * Waits for changes of the configuration file and reloads it, until the watch service is closed.
+   */
+  private void watchLoop() {
+    try {
+      while (true) {
+        if (!isConfigChange(watchService.take())) {
+          continue;
+        }
+        // Editors often write a file in several steps; let it settle and drop the events it caused
+        Thread.sleep(SETTLE_MILLIS);
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+          key.pollEvents();
+          key.reset();
+        }
+        try {
+          reload();
+        } catch (RuntimeException e) {
+          // A failing listener must not stop the watcher
+          listener.failed(e);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Closed
+    }
+  }
+
+  /**
+   * Checks whether a watch key reports a change of the configuration file, and resets it.
+   * @param key The signalled key
+   * @return true if the configuration file may have changed
+   */
+  private boolean isConfigChange(WatchKey key) {
+    boolean change = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || config.getFileName().equals(event.context())) {
+        change = true;
+      }
+    }
+    key.reset();
+    return change;
+  }
+
+  /**
+   * Compiles a newly loaded configuration and validates it by playing one round on it before it
+   * is published. Any failure, including one caused by a missing section of the configuration,
+   * is reported as an IllegalStateException so that the current version keeps being served.
+   * @param configuration The parsed configuration
+   * @return The compiled game
+   * @throws IllegalStateException if the configuration cannot be compiled or the round cannot be played
+   */
+  private static CompiledGame compile(GameConfiguration configuration) {
+    try {
+      CompiledGame game = CompiledGame.compile(configuration);
+      Board board = game.generateBoard(new RoundRandom(), game.newBoard());
+      game.evaluate(board, game.newOutcome());
+      return game;
+    } catch (RuntimeException e) {
+      throw new IllegalStateException("Configuration cannot be played: " + e, e);
+    }
+  }
+
+  /**
+   * Computes the checksum identifying the content of the configuration file.
+   * @param source The file content
+   * @return The CRC-32C of the content
+   */
+  private static long checksum(byte[] source) {
+    CRC32C crc = new CRC32C();
+    crc.update(source);
+    return crc.getValue();
+  }
+}
@@ -0,0 +1,233 @@
+package ls.assignment.scratchgame;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * ResultStore class persisting the results of a simulation in a columnar on-disk format, so that
+ * billions of rounds can be queried afterwards without keeping them in Java objects or playing
+ * them again. A store is a directory holding one memory-mapped file per column, indexed by round:
+ * <ul>
+ *   <li>{@value #MULTIPLIERS}: the bet-independent reward multiplier of the round in thousandths
+ *       (long), multiply_reward bonus included, see {@link Payout}</li>
+ *   <li>{@value #COMBINATIONS}: the applied combinations bitmask, bit i for combination id i (long)</li>
+ *   <li>{@value #BONUS_SYMBOLS}: the applied bonus symbol id, or -1 (byte; games have at most
+ *       {@value SymbolTable#MAX_SYMBOLS} symbols)</li>
+ *   <li>{@value #BOARDS}: the board, one symbol id byte per cell in row-major order</li>
+ * </ul>
+ * The files are sized for every round up front and rounds are written with absolute puts, so
+ * the workers of a {@link Simulator} write their disjoint rounds concurrently without a lock.
+ * {@link #commit()} forces the columns and then writes {@value #META}: the dimensions, seed and
+ * round range, the configuration hash and the symbol and combination names a query needs. A
+ * store without it is incomplete and cannot be opened. See {@link ResultStoreReader} to query a store.
+ * @author LOTHFY ( LS )
+ */
+public final class ResultStore implements Closeable {
+  static final int MAGIC = 0x53475253;
+  static final int VERSION = 1;
+  static final String META = "store.meta";
+  static final String MULTIPLIERS = "multipliers.col";
+  static final String COMBINATIONS = "combinations.col";
+  static final String BONUS_SYMBOLS = "bonus.col";
+  static final String BOARDS = "boards.col";
+
+  private final Path directory;
+  private final CompiledGame game;
+  private final long seed;
+  private final long firstRound;
+  private final long rounds;
+  private final MappedColumn multipliers;
+  private final MappedColumn combinations;
+  private final MappedColumn bonusSymbols;
+  private final MappedColumn boards;
+  private boolean closed;
+
+  /**
+   * Private constructor used by {@link #create(Path, CompiledGame, long, long, long)}.
+   * @param directory The store directory
+   * @param game The compiled game the rounds are played on
+   * @param seed The master seed of the rounds
+   * @param firstRound The index of the first round
+   * @param rounds The number of rounds
+   * @param columns The multiplier, combination, bonus symbol and board columns
+   */
+  private ResultStore(Path directory, CompiledGame game, long seed, long firstRound, long rounds, MappedColumn[] columns) {
+    this.directory = directory;
+    this.game = game;
+    this.seed = seed;
+    this.firstRound = firstRound;
+    this.rounds = rounds;
+    this.multipliers = columns[0];
+    this.combinations = columns[1];
+    this.bonusSymbols = columns[2];
+    this.boards = columns[3];
+  }
+
+  /**
+   * Creates a store for a range of rounds, creating the directory if needed and replacing any
+   * store in it.
+   * @param directory The store directory
+   * @param game The compiled game the rounds are played on
+   * @param seed The master seed of the rounds
+   * @param firstRound The index of the first round
+   * @param rounds The number of rounds
+   * @return The store, to be committed once every round is recorded, and closed
+   * @throws IOException if a column file cannot be created
+   * @throws IllegalArgumentException if rounds is negative or the game has more than 64 win combinations
+   */
+  public static ResultStore create(Path directory, CompiledGame game, long seed, long firstRound, long rounds)
+          throws IOException {
+    if (rounds < 0) {
+      throw new IllegalArgumentException("Number of rounds must not be negative");
+    }
+    if (game.getCombinations().size() > Long.SIZE) {
+      throw new IllegalArgumentException("Result store supports at most " + Long.SIZE + " win combinations");
+    }
+    Files.createDirectories(directory);
+    // The store is incomplete until its metadata is written again
+    Files.deleteIfExists(directory.resolve(META));
+    MappedColumn[] columns = new MappedColumn[4];
+    try {
+      columns[0] = MappedColumn.create(directory.resolve(MULTIPLIERS), rounds, Long.BYTES);
+      columns[1] = MappedColumn.create(directory.resolve(COMBINATIONS), rounds, Long.BYTES);
+      columns[2] = MappedColumn.create(directory.resolve(BONUS_SYMBOLS), rounds, 1);
+      columns[3] = MappedColumn.create(directory.resolve(BOARDS), rounds, game.getRows() * game.getColumns());
+    } catch (IOException | RuntimeException e) {
+      for (MappedColumn column : columns) {
+        if (column != null) {
+          column.close();
+        }
+      }
+      throw e;
+    }
+    return new ResultStore(directory, game, seed, firstRound, rounds, columns);
+  }
+
+  /**
+   * Records one round. Rounds may be recorded in any order and from several threads, as long as
+   * every round is recorded by one thread only.
+   * @param round The index of the round
+   * @param board The played board
+   * @param multiplierMillis The reward multiplier in thousandths, bonus included
+   * @param appliedCombinations The applied combinations bitmask (bit i for combination id i)
+   * @param appliedBonusSymbol The applied bonus symbol id, or -1
+   * @throws IllegalArgumentException if the round is outside the range of the store or the board
+   *         does not have the dimensions of the game
+   */
+  public void record(long round, Board board, long multiplierMillis, long appliedCombinations, int appliedBonusSymbol) {
+    long index = round - firstRound;
+    if (index < 0 || index >= rounds) {
+      throw new IllegalArgumentException("Round " + round + " outside the store");
+    }
+    if (board.getRows() != game.getRows() || board.getColumns() != game.getColumns()) {
+      throw new IllegalArgumentException("Board dimensions do not match the game");
+    }
+    multipliers.putLong(index, multiplierMillis);
+    combinations.putLong(index, appliedCombinations);
+    bonusSymbols.putByte(index, (byte) appliedBonusSymbol);
+    boards.put(index, board.cells());
+  }
+
+  /**
+   * Records one round from its evaluated outcome.
+   * @param round The index of the round
+   * @param board The played board
+   * @param outcome The outcome of evaluating the board
+   */
+  void record(long round, Board board, Outcome outcome) {
+    long baseMillis = outcome.baseMultiplierMillis();
+    record(round, board, outcome.applyBonusMillis(baseMillis), outcome.appliedCombinationMask(),
+            baseMillis > 0 ? outcome.bonusSymbol : -1);
+  }
+
+  /**
+   * Gets the compiled game of the store.
+   * @return The compiled game
+   */
+  public CompiledGame getGame() {
+    return game;
+  }
+
+  /**
+   * Gets the directory of the store.
+   * @return The store directory
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Forces the columns to the storage device, closes them and writes the metadata, which makes
+   * the store readable. Call it once every round is recorded.
+   * @throws IOException if a column cannot be closed or the metadata cannot be written
+   * @throws IllegalStateException if the store is closed
+   */
+  public void commit() throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Result store closed");
+    }
+    for (MappedColumn column : new MappedColumn[] {multipliers, combinations, bonusSymbols, boards}) {
+      column.force();
+    }
+    close();
+    writeMeta();
+  }
+
+  /**
+   * Closes the columns. A store closed without {@link #commit()}, for instance after a failed
+   * simulation, stays incomplete. Closing twice has no effect.
+   * @throws IOException if a column cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      multipliers.close();
+      combinations.close();
+    } finally {
+      try {
+        bonusSymbols.close();
+      } finally {
+        boards.close();
+      }
+    }
+  }
+
+  /**
+   * Writes the metadata file atomically, through a temporary file.
+   * @throws IOException if the file cannot be written
+   */
+  private void writeMeta() throws IOException {
+    Path temporary = directory.resolve(META + ".tmp");
+    SymbolTable symbols = game.getSymbols();
+    CompiledCombinations combos = game.getCombinations();
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(game.getRows());
+      out.writeInt(game.getColumns());
+      out.writeLong(seed);
+      out.writeLong(firstRound);
+      out.writeLong(rounds);
+      out.writeLong(game.getConfigurationHash());
+      out.writeInt(symbols.size());
+      for (int id = 0; id < symbols.size(); id++) {
+        out.writeUTF(symbols.nameOf(id));
+        out.writeByte(symbols.typeOf(id));
+        out.writeLong(symbols.isBonus(id) ? Outcome.extraOf(symbols, id) : 0);
+      }
+      out.writeInt(combos.size());
+      for (int id = 0; id < combos.size(); id++) {
+        out.writeUTF(combos.nameOf(id));
+      }
+    }
+    Files.move(temporary, directory.resolve(META), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -0,0 +1,587 @@
+package ls.assignment.scratchgame;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * ResultStoreReader class mapping the columns of a {@link ResultStore} read-only and answering
+ * queries over its rounds: the result of any single round, and with {@link #summarize(int)} the
+ * aggregates of all of them in one sequential pass over the mapped columns.
+ * The reader needs no configuration: the store holds the names and extra rewards of its symbols.
+ * @author LOTHFY ( LS )
+ */
+public final class ResultStoreReader implements Closeable {
+  /** Longest win streak counted on its own; longer streaks share the last count. */
+  public static final int MAX_STREAK = 10;
+
+  private final int rows;
+  private final int columns;
+  private final long seed;
+  private final long firstRound;
+  private final long rounds;
+  private final long configurationHash;
+  private final String[] symbolNames;
+  private final boolean[] bonusSymbols;
+  private final long[] extras;
+  private final String[] combinationNames;
+  private final MappedColumn multipliers;
+  private final MappedColumn combinations;
+  private final MappedColumn appliedBonusSymbols;
+  private final MappedColumn boards;
+
+  /**
+   * Opens a store for reading.
+   * @param directory The store directory
+   * @throws IOException if a file cannot be read
+   * @throws IllegalStateException if the store is incomplete, of another format version or inconsistent
+   */
+  public ResultStoreReader(Path directory) throws IOException {
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(directory.resolve(ResultStore.META)))) {
+      if (in.readInt() != ResultStore.MAGIC || in.readInt() != ResultStore.VERSION) {
+        throw new IllegalStateException("Not a result store of version " + ResultStore.VERSION + ": " + directory);
+      }
+      rows = in.readInt();
+      columns = in.readInt();
+      seed = in.readLong();
+      firstRound = in.readLong();
+      rounds = in.readLong();
+      configurationHash = in.readLong();
+      int symbolCount = in.readInt();
+      symbolNames = new String[symbolCount];
+      bonusSymbols = new boolean[symbolCount];
+      extras = new long[symbolCount];
+      for (int id = 0; id < symbolCount; id++) {
+        symbolNames[id] = in.readUTF();
+        bonusSymbols[id] = in.readByte() == SymbolTable.TYPE_BONUS;
+        extras[id] = in.readLong();
+      }
+      combinationNames = new String[in.readInt()];
+      for (int id = 0; id < combinationNames.length; id++) {
+        combinationNames[id] = in.readUTF();
+      }
+    } catch (NoSuchFileException e) {
+      throw new IllegalStateException("Result store " + directory + " is missing or incomplete");
+    }
+    MappedColumn[] mapped = new MappedColumn[4];
+    try {
+      mapped[0] = MappedColumn.open(directory.resolve(ResultStore.MULTIPLIERS), rounds, Long.BYTES);
+      mapped[1] = MappedColumn.open(directory.resolve(ResultStore.COMBINATIONS), rounds, Long.BYTES);
+      mapped[2] = MappedColumn.open(directory.resolve(ResultStore.BONUS_SYMBOLS), rounds, 1);
+      mapped[3] = MappedColumn.open(directory.resolve(ResultStore.BOARDS), rounds, rows * columns);
+    } catch (IOException | RuntimeException e) {
+      for (MappedColumn column : mapped) {
+        if (column != null) {
+          column.close();
+        }
+      }
+      throw e;
+    }
+    multipliers = mapped[0];
+    combinations = mapped[1];
+    appliedBonusSymbols = mapped[2];
+    boards = mapped[3];
+  }
+
+  /**
+   * Gets the number of rounds in the store.
+   * @return The number of rounds
+   */
+  public long getRounds() {
+    return rounds;
+  }
+
+  /**
+   * Gets the index of the first round in the store.
+   * @return The first round index
+   */
+  public long getFirstRound() {
+    return firstRound;
+  }
+
+  /**
+   * Gets the master seed the rounds were drawn with.
+   * @return The seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Gets the hash of the configuration the rounds were played with.
+   * @return The configuration hash, see {@link CompiledGame#getConfigurationHash()}
+   */
+  public long getConfigurationHash() {
+    return configurationHash;
+  }
+
+  /**
+   * Gets the name of a symbol.
+   * @param id The symbol id
+   * @return The symbol name
+   */
+  public String getSymbolName(int id) {
+    return symbolNames[id];
+  }
+
+  /**
+   * Gets the name of a win combination.
+   * @param id The combination id
+   * @return The combination name
+   */
+  public String getCombinationName(int id) {
+    return combinationNames[id];
+  }
+
+  /**
+   * Converts a round index to an index into the columns.
+   * @param round The round index
+   * @return The column index
+   * @throws IllegalArgumentException if the round is not in the store
+   */
+  private long indexOf(long round) {
+    long index = round - firstRound;
+    if (index < 0 || index >= rounds) {
+      throw new IllegalArgumentException("Round " + round + " not in the store");
+    }
+    return index;
+  }
+
+  /**
+   * Gets the bet-independent reward multiplier of a round.
+   * @param round The round index
+   * @return The multiplier in thousandths, multiply_reward bonus included
+   */
+  public long getMultiplierMillis(long round) {
+    return multipliers.getLong(indexOf(round));
+  }
+
+  /**
+   * Gets the applied combinations of a round.
+   * @param round The round index
+   * @return The bitmask in which bit i stands for combination id i
+   */
+  public long getAppliedCombinations(long round) {
+    return combinations.getLong(indexOf(round));
+  }
+
+  /**
+   * Gets the applied bonus symbol of a round.
+   * @param round The round index
+   * @return The bonus symbol id, or -1
+   */
+  public int getAppliedBonusSymbol(long round) {
+    return appliedBonusSymbols.getByte(indexOf(round));
+  }
+
+  /**
+   * Gets the reward of a round for a bet, in thousandths like {@link Payout#rewardMillis(long)}.
+   * @param round The round index
+   * @param bettingAmount The amount bet
+   * @return The reward times {@link Payout#SCALE}
+   * @throws ArithmeticException if the reward overflows a long
+   */
+  public long getRewardMillis(long round, long bettingAmount) {
+    long index = indexOf(round);
+    return rewardMillis(multipliers.getLong(index), appliedBonusSymbols.getByte(index), bettingAmount);
+  }
+
+  /**
+   * Reads the board of a round.
+   * @param round The round index
+   * @param board The board to overwrite, with the dimensions of the store
+   * @return The board
+   * @throws IllegalArgumentException if the board does not have the dimensions of the store
+   */
+  public Board getBoard(long round, Board board) {
+    if (board.getRows() != rows || board.getColumns() != columns) {
+      throw new IllegalArgumentException("Board dimensions do not match the store");
+    }
+    boards.get(indexOf(round), board.cells());
+    return board;
+  }
+
+  /**
+   * Computes the reward of a round from its columns.
+   * @param multiplierMillis The reward multiplier in thousandths
+   * @param bonusSymbol The applied bonus symbol id, or -1
+   * @param bettingAmount The amount bet
+   * @return The reward in thousandths
+   */
+  private long rewardMillis(long multiplierMillis, int bonusSymbol, long bettingAmount) {
+    long extra = bonusSymbol >= 0 ? extras[bonusSymbol] : 0;
+    return Math.addExact(Math.multiplyExact(bettingAmount, multiplierMillis), Math.multiplyExact(extra, Payout.SCALE));
+  }
+
+  /**
+   * Computes the aggregates of all rounds for a bet in one pass: RTP and hit rate by combination
+   * and bonus symbol, the exact distribution of rewards, and the lengths of win and loss streaks
+   * in round order.
+   * @param bettingAmount The amount bet in every round
+   * @return The summary
+   * @throws IllegalArgumentException if the betting amount is not positive
+   * @throws ArithmeticException if a reward or a sum of rewards overflows a long
+   */
+  public Summary summarize(int bettingAmount) {
+    if (bettingAmount <= 0) {
+      throw new IllegalArgumentException("Betting amount must be positive");
+    }
+    Summary summary = new Summary(this, bettingAmount);
+    RewardCounts counts = new RewardCounts();
+    long winStreak = 0;
+    long lossStreak = 0;
+    for (long index = 0; index < rounds; index++) {
+      long multiplierMillis = multipliers.getLong(index);
+      if (multiplierMillis <= 0) {
+        lossStreak++;
+        if (winStreak > 0) {
+          summary.recordWinStreak(winStreak);
+          winStreak = 0;
+        }
+        continue;
+      }
+      winStreak++;
+      if (lossStreak > 0) {
+        summary.longestLossStreak = Math.max(summary.longestLossStreak, lossStreak);
+        lossStreak = 0;
+      }
+      int bonusSymbol = appliedBonusSymbols.getByte(index);
+      long rewardMillis = rewardMillis(multiplierMillis, bonusSymbol, bettingAmount);
+      summary.wins++;
+      summary.totalRewardMillis = Math.addExact(summary.totalRewardMillis, rewardMillis);
+      counts.add(rewardMillis);
+      for (long mask = combinations.getLong(index); mask != 0; mask &= mask - 1) {
+        int combo = Long.numberOfTrailingZeros(mask);
+        summary.comboRounds[combo]++;
+        summary.comboRewardMillis[combo] = Math.addExact(summary.comboRewardMillis[combo], rewardMillis);
+      }
+      if (bonusSymbol >= 0) {
+        summary.bonusRounds[bonusSymbol]++;
+      }
+    }
+    if (winStreak > 0) {
+      summary.recordWinStreak(winStreak);
+    }
+    summary.longestLossStreak = Math.max(summary.longestLossStreak, lossStreak);
+    summary.setRewards(counts, rounds - summary.wins);
+    return summary;
+  }
+
+  /**
+   * Closes the column files. The mappings stay valid until they are garbage collected.
+   * @throws IOException if a file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      multipliers.close();
+      combinations.close();
+    } finally {
+      try {
+        appliedBonusSymbols.close();
+      } finally {
+        boards.close();
+      }
+    }
+  }
+
+  /**
+   * Aggregates of the rounds of a store for one bet, see {@link #summarize(int)}.
+   */
+  public static final class Summary {
+    private final ResultStoreReader store;
+    private final int bettingAmount;
+    long wins;
+    long totalRewardMillis;
+    final long[] comboRounds;
+    final long[] comboRewardMillis;
+    final long[] bonusRounds;
+    /** The distinct rewards in thousandths in ascending order, 0 included. */
+    private long[] rewards;
+    /** The number of rounds paying every distinct reward. */
+    private long[] rewardRounds;
+    final long[] winStreaks = new long[MAX_STREAK + 1];
+    long longestWinStreak;
+    long longestLossStreak;
+
+    /**
+     * Constructs an empty summary.
+     * @param store The summarized store
+     * @param bettingAmount The amount bet in every round
+     */
+    private Summary(ResultStoreReader store, int bettingAmount) {
+      this.store = store;
+      this.bettingAmount = bettingAmount;
+      this.comboRounds = new long[store.combinationNames.length];
+      this.comboRewardMillis = new long[store.combinationNames.length];
+      this.bonusRounds = new long[store.symbolNames.length];
+    }
+
+    /**
+     * Records one complete win streak.
+     * @param length The number of winning rounds in a row
+     */
+    private void recordWinStreak(long length) {
+      winStreaks[(int) Math.min(length, MAX_STREAK)]++;
+      longestWinStreak = Math.max(longestWinStreak, length);
+    }
+
+    /**
+     * Sets the distribution of rewards.
+     * @param counts The counts of the positive rewards
+     * @param losses The number of rounds paying nothing
+     */
+    private void setRewards(RewardCounts counts, long losses) {
+      long[] sorted = counts.sortedRewards();
+      rewards = new long[sorted.length + 1];
+      rewardRounds = new long[sorted.length + 1];
+      rewardRounds[0] = losses;
+      for (int i = 0; i < sorted.length; i++) {
+        rewards[i + 1] = sorted[i];
+        rewardRounds[i + 1] = counts.countOf(sorted[i]);
+      }
+    }
+
+    /**
+     * Gets the number of summarized rounds.
+     * @return The number of rounds
+     */
+    public long getRounds() {
+      return store.rounds;
+    }
+
+    /**
+     * Gets the return to player: total reward divided by total bet.
+     * @return The RTP as a fraction
+     */
+    public double getRtp() {
+      return store.rounds == 0 ? 0.0 : totalRewardMillis / (double) Payout.SCALE / ((double) store.rounds * bettingAmount);
+    }
+
+    /**
+     * Gets the fraction of rounds with a positive reward.
+     * @return The hit frequency
+     */
+    public double getHitFrequency() {
+      return store.rounds == 0 ? 0.0 : (double) wins / store.rounds;
+    }
+
+    /**
+     * Gets the fraction of rounds in which a combination applied.
+     * @param combo The combination id
+     * @return The hit rate of the combination
+     */
+    public double getCombinationHitRate(int combo) {
+      return store.rounds == 0 ? 0.0 : (double) comboRounds[combo] / store.rounds;
+    }
+
+    /**
+     * Gets the RTP of the rounds in which a combination applied: their total reward, bonuses
+     * included, divided by the total bet of all rounds. Rounds with several combinations count
+     * for each of them, so the figures of all combinations add up to more than the RTP.
+     * @param combo The combination id
+     * @return The RTP as a fraction
+     */
+    public double getCombinationRtp(int combo) {
+      return store.rounds == 0 ? 0.0
+              : comboRewardMillis[combo] / (double) Payout.SCALE / ((double) store.rounds * bettingAmount);
+    }
+
+    /**
+     * Gets the number of rounds in which a bonus symbol applied.
+     * @param symbol The symbol id
+     * @return The number of rounds
+     */
+    public long getBonusRounds(int symbol) {
+      return bonusRounds[symbol];
+    }
+
+    /**
+     * Gets the exact reward at a quantile of the distribution of rewards.
+     * @param quantile The quantile between 0 and 1
+     * @return The smallest reward at least that share of rounds do not exceed, 0 without rounds
+     */
+    public double getRewardQuantile(double quantile) {
+      long rank = Math.max(1, (long) Math.ceil(quantile * store.rounds));
+      long seen = 0;
+      for (int i = 0; i < rewards.length; i++) {
+        seen += rewardRounds[i];
+        if (seen >= rank) {
+          return rewards[i] / (double) Payout.SCALE;
+        }
+      }
+      return rewards[rewards.length - 1] / (double) Payout.SCALE;
+    }
+
+    /**
+     * Gets the largest reward of any round.
+     * @return The max win
+     */
+    public double getMaxReward() {
+      return rewards[rewards.length - 1] / (double) Payout.SCALE;
+    }
+
+    /**
+     * Gets the number of distinct rewards paid, 0 included.
+     * @return The number of distinct rewards
+     */
+    public int getDistinctRewards() {
+      return rewards.length;
+    }
+
+    /**
+     * Gets the longest run of winning rounds in round order.
+     * @return The length of the streak
+     */
+    public long getLongestWinStreak() {
+      return longestWinStreak;
+    }
+
+    /**
+     * Gets the longest run of losing rounds in round order.
+     * @return The length of the streak
+     */
+    public long getLongestLossStreak() {
+      return longestLossStreak;
+    }
+
+    /**
+     * Gets the number of win streaks of a length.
+     * @param length The length, from 1 to {@value #MAX_STREAK}; the count of {@value #MAX_STREAK}
+     *               includes all longer streaks
+     * @return The number of streaks
+     */
+    public long getWinStreaks(int length) {
+      return winStreaks[Math.min(length, MAX_STREAK)];
+    }
+
+    /**
+     * Prints a report of the summary.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+      long streaks = 0;
+      for (long count : winStreaks) {
+        streaks += count;
+      }
+      out.println(String.format(Locale.ROOT, "Rounds          : %d (from %d, seed %d)", store.rounds, store.firstRound, store.seed));
+      out.println(String.format(Locale.ROOT, "Betting amount  : %d", bettingAmount));
+      out.println(String.format(Locale.ROOT, "RTP             : %.4f %%", getRtp() * 100));
+      out.println(String.format(Locale.ROOT, "Hit frequency   : %.4f %%", getHitFrequency() * 100));
+      out.println(String.format(Locale.ROOT, "Distinct rewards: %d", getDistinctRewards()));
+      out.println("Reward percentiles (coins, x bet):");
+      double[] quantiles = {0.5, 0.9, 0.99, 0.999, 0.9999, 1.0};
+      String[] labels = {"P50", "P90", "P99", "P99.9", "P99.99", "max"};
+      for (int i = 0; i < quantiles.length; i++) {
+        double reward = getRewardQuantile(quantiles[i]);
+        out.println(String.format(Locale.ROOT, "  %-8s %16.2f %12.2fx", labels[i], reward, reward / bettingAmount));
+      }
+      out.println(String.format(Locale.ROOT, "Win streaks     : longest %d, mean %.3f rounds", longestWinStreak,
+              streaks == 0 ? 0.0 : (double) wins / streaks));
+      out.println(String.format(Locale.ROOT, "Loss streaks    : longest %d", longestLossStreak));
+      out.println("Win streak lengths (streaks):");
+      for (int length = 1; length <= MAX_STREAK; length++) {
+        out.println(String.format(Locale.ROOT, "  %-8s %14d", length == MAX_STREAK ? length + "+" : length, winStreaks[length]));
+      }
+      out.println("Win combinations (rounds hit, RTP of the rounds they applied in):");
+      for (int combo = 0; combo < comboRounds.length; combo++) {
+        out.println(String.format(Locale.ROOT, "  %-40s %10.6f %% %10.4f %%", store.combinationNames[combo],
+                getCombinationHitRate(combo) * 100, getCombinationRtp(combo) * 100));
+      }
+      out.println("Bonus symbols (rounds applied):");
+      for (int symbol = 0; symbol < bonusRounds.length; symbol++) {
+        if (store.bonusSymbols[symbol]) {
+          out.println(String.format(Locale.ROOT, "  %-40s %14d", store.symbolNames[symbol], bonusRounds[symbol]));
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts of positive rewards in an open-addressing hash table of primitive longs, as a game
+   * pays a small number of distinct rewards over any number of rounds.
+   */
+  private static final class RewardCounts {
+    private long[] keys = new long[64];
+    private long[] counts = new long[64];
+    private int size;
+
+    /**
+     * Counts one reward.
+     * @param reward The positive reward
+     */
+    void add(long reward) {
+      int slot = slotOf(reward);
+      if (keys[slot] == 0) {
+        keys[slot] = reward;
+        if (++size * 2 > keys.length) {
+          grow();
+          slot = slotOf(reward);
+        }
+      }
+      counts[slot]++;
+    }
+
+    /**
+     * Gets the number of rounds paying a reward.
+     * @param reward The positive reward
+     * @return The count
+     */
+    long countOf(long reward) {
+      return counts[slotOf(reward)];
+    }
+
+    /**
+     * Lists the counted rewards.
+     * @return The rewards in ascending order
+     */
+    long[] sortedRewards() {
+      long[] sorted = new long[size];
+      int next = 0;
+      for (long key : keys) {
+        if (key != 0) {
+          sorted[next++] = key;
+        }
+      }
+      Arrays.sort(sorted);
+      return sorted;
+    }
+
+    /**
+     * Finds the slot of a reward, or the empty slot it would take.
+     * @param reward The positive reward
+     * @return The slot
+     */
+    private int slotOf(long reward) {
+      int mask = keys.length - 1;
+      int slot = (int) ((reward * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+      while (keys[slot] != 0 && keys[slot] != reward) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /**
+     * Doubles the table.
+     */
+    private void grow() {
+      long[] oldKeys = keys;
+      long[] oldCounts = counts;
+      keys = new long[oldKeys.length * 2];
+      counts = new long[oldCounts.length * 2];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0) {
+          int slot = slotOf(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          counts[slot] = oldCounts[i];
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package ls.assignment.scratchgame;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RoundJson class writing the result of one played round as a JSON object:
+ * matrix, reward, applied_winning_combinations and applied_bonus_symbol, followed by
+ * the seed and round index the board was drawn from, and the version and hash of the configuration
+ * the round was played on.
+ * The writer appends directly to a StringBuilder instead of going through Gson's reflection.
+ * @author LOTHFY ( LS )
+ */
+final class RoundJson {
+  private RoundJson() {
+  }
+
+  /**
+   * Writes one round as a JSON object.
+   * @param matrix The played matrix
+   * @param result The evaluation result of the matrix
+   * @param seed The seed of the round
+   * @param round The index of the round
+   * @param configVersion The version of the configuration, see {@link ReloadableGame.Version#getNumber()}
+   * @param configHash The hash of the configuration, see {@link CompiledGame#getConfigurationHash()}
+   * @return The JSON text
+   */
+  static String write(Matrix matrix, Matrix.EvaluationResult result, long seed, long round,
+                      long configVersion, long configHash) {
+    GameEvents.ResultSerialization event = new GameEvents.ResultSerialization();
+    event.begin();
+    StringBuilder json = new StringBuilder(256);
+    json.append("{\"matrix\":[");
+    String[][] cells = matrix.getMatrix();
+    for (int row = 0; row < cells.length; row++) {
+      json.append(row == 0 ? "[" : ",[");
+      for (int column = 0; column < cells[row].length; column++) {
+        if (column > 0) {
+          json.append(',');
+        }
+        appendString(json, cells[row][column]);
+      }
+      json.append(']');
+    }
+
+    json.append("],\"reward\":");
+    appendNumber(json, result.reward);
+
+    json.append(",\"applied_winning_combinations\":{");
+    boolean first = true;
+    for (Map.Entry<String, List<String>> entry : result.appliedWinningCombinations.entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+      first = false;
+      appendString(json, entry.getKey());
+      json.append(":[");
+      for (int i = 0; i < entry.getValue().size(); i++) {
+        if (i > 0) {
+          json.append(',');
+        }
+        appendString(json, entry.getValue().get(i));
+      }
+      json.append(']');
+    }
+
+    json.append("},\"applied_bonus_symbol\":");
+    if (result.appliedBonusSymbol == null) {
+      json.append("null");
+    } else {
+      appendString(json, result.appliedBonusSymbol);
+    }
+    json.append(",\"seed\":").append(seed).append(",\"round\":").append(round);
+    // The hash is a string: JSON readers commonly hold numbers as doubles and would round it
+    json.append(",\"config_version\":").append(configVersion)
+            .append(",\"config_hash\":\"").append(String.format("%016x", configHash)).append("\"}");
+    if (event.shouldCommit()) {
+      event.format = "json";
+      event.length = json.length();
+      event.commit();
+    }
+    return json.toString();
+  }
+
+  /**
+   * Appends a number, without a fraction when it is integral.
+   * @param json The builder to append to
+   * @param value The finite number
+   */
+  static void appendNumber(StringBuilder json, double value) {
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      json.append((long) value);
+    } else {
+      json.append(value);
+    }
+  }
+
+  /**
+   * Appends a quoted and escaped JSON string.
+   * @param json The builder to append to
+   * @param value The string
+   */
+  static void appendString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+}
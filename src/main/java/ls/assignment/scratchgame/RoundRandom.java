@@ -0,0 +1,127 @@
+package ls.assignment.scratchgame;
+
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * RoundRandom class providing the random stream of one round, derived from a master seed
+ * and the round index, so that any round can be replayed on its own from (seed, round).
+ * The generator uses the L64X128 mixing algorithm of the JDK's L64X128MixRandom: a 64-bit
+ * LCG added to a xoroshiro128 state and passed through a strong mixing function. Its state is
+ * reset in place for every round, so a worker thread plays any number of rounds with one
+ * instance and no allocation. A RoundRandom is not thread-safe; use one per thread.
+ * @author LOTHFY ( LS )
+ */
+public final class RoundRandom implements RandomGenerator {
+  /** Algorithm of the default generator used when no seed is given. */
+  public static final String DEFAULT_ALGORITHM = "L64X128MixRandom";
+
+  private static final long LCG_MULTIPLIER = 0xd1342543de82ef95L;
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private long seed;
+  private long round;
+  private long a;
+  private long s;
+  private long x0;
+  private long x1;
+
+  /**
+   * Constructs the generator of round 0 of seed 0.
+   */
+  public RoundRandom() {
+    reset(0, 0);
+  }
+
+  /**
+   * Constructs the generator of one round.
+   * @param seed The master seed
+   * @param round The round index
+   */
+  public RoundRandom(long seed, long round) {
+    reset(seed, round);
+  }
+
+  /**
+   * Creates a fast generator seeded from system entropy, for play that does not need replay.
+   * @return A new L64X128MixRandom generator
+   */
+  public static RandomGenerator defaultGenerator() {
+    return RandomGeneratorFactory.of(DEFAULT_ALGORITHM).create();
+  }
+
+  /**
+   * Resets the generator to the start of the stream of a round.
+   * @param seed The master seed
+   * @param round The round index
+   */
+  public void reset(long seed, long round) {
+    this.seed = seed;
+    this.round = round;
+    long key = mixStafford13(mixStafford13(seed) + round * GOLDEN_GAMMA);
+    a = mixStafford13(key += GOLDEN_GAMMA) | 1;
+    s = mixStafford13(key += GOLDEN_GAMMA);
+    x0 = mixStafford13(key += GOLDEN_GAMMA);
+    x1 = mixStafford13(key + GOLDEN_GAMMA);
+    if ((x0 | x1) == 0) {
+      // The xoroshiro state must not be all zero
+      x1 = GOLDEN_GAMMA;
+    }
+  }
+
+  /**
+   * Gets the master seed of the current round.
+   * @return The seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Gets the index of the current round.
+   * @return The round index
+   */
+  public long getRound() {
+    return round;
+  }
+
+  /**
+   * Returns the next value of the stream.
+   * @return A uniformly distributed long
+   */
+  @Override
+  public long nextLong() {
+    long result = mixLea64(s + x0);
+
+    s = LCG_MULTIPLIER * s + a;
+
+    long q0 = x0;
+    long q1 = x1 ^ q0;
+    x0 = Long.rotateLeft(q0, 24) ^ q1 ^ (q1 << 16);
+    x1 = Long.rotateLeft(q1, 37);
+
+    return result;
+  }
+
+  /**
+   * Mixing function of the LXM generators (Doug Lea's variant of the murmur finalizer).
+   * @param z The value to mix
+   * @return The mixed value
+   */
+  private static long mixLea64(long z) {
+    z = (z ^ (z >>> 32)) * 0xdaba0b6eb09322e3L;
+    z = (z ^ (z >>> 32)) * 0xdaba0b6eb09322e3L;
+    return z ^ (z >>> 32);
+  }
+
+  /**
+   * Mixing function used to expand a seed (Stafford's variant 13, as in SplittableRandom).
+   * @param z The value to mix
+   * @return The mixed value
+   */
+  private static long mixStafford13(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
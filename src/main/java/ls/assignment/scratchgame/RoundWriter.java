@@ -0,0 +1,473 @@
+package ls.assignment.scratchgame;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * RoundWriter class playing rounds of a compiled game and streaming them to a file, one line per
+ * round, as NDJSON or CSV in UTF-8. Every line holds the round index, the seed, the matrix, the
+ * reward, the applied winning combinations and the applied bonus symbol.
+ * Lines are serialized by hand straight from the reused board and outcome of the writer into a
+ * {@value #BUFFER_BYTES}-byte buffer: the quoted symbol and combination names are encoded once per
+ * game and numbers are written as ASCII, so writing a round builds no Matrix, no EvaluationResult
+ * and no String, and the output stream is only called when the buffer is full.
+ * In NDJSON, every line is an object with the field names of {@link RoundJson}. In CSV, the matrix
+ * is written row by row with cells separated by spaces and rows by slashes, and the applied
+ * combinations as {@code symbol:combination+combination} entries separated by semicolons; these
+ * fields are quoted as a whole when a name holds a comma, a double quote or a line break.
+ * A RoundWriter is not thread-safe.
+ * @author LOTHFY ( LS )
+ */
+public final class RoundWriter implements Closeable, Flushable {
+  /** Size of the output buffer in bytes. */
+  static final int BUFFER_BYTES = 1 << 20;
+
+  /**
+   * Output format of the rounds.
+   */
+  public enum Format {
+    /** One JSON object per line. */
+    NDJSON,
+    /** Comma-separated values with a header line. */
+    CSV;
+
+    /**
+     * Picks the format of a file from its extension: CSV for .csv, NDJSON otherwise.
+     * @param path The output file
+     * @return The format
+     */
+    public static Format of(Path path) {
+      return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ? CSV : NDJSON;
+    }
+  }
+
+  private static final byte[] CSV_HEADER =
+          ascii("round,seed,matrix,reward,applied_winning_combinations,applied_bonus_symbol\n");
+  private static final byte[] JSON_ROUND = ascii("{\"round\":");
+  private static final byte[] JSON_SEED = ascii(",\"seed\":");
+  private static final byte[] JSON_MATRIX = ascii(",\"matrix\":[");
+  private static final byte[] JSON_REWARD = ascii("],\"reward\":");
+  private static final byte[] JSON_COMBINATIONS = ascii(",\"applied_winning_combinations\":{");
+  private static final byte[] JSON_BONUS = ascii("},\"applied_bonus_symbol\":");
+  private static final byte[] JSON_NULL = ascii("null");
+  /** Marks nothing to write in place of a character. */
+  private static final int NONE = -1;
+
+  private final CompiledGame game;
+  private final OutputStream out;
+  private final Format format;
+  private final RoundRandom random;
+  private final Board board;
+  private final Outcome outcome;
+  /** The name of every symbol, quoted for the format and encoded. */
+  private final byte[][] symbolNames;
+  /** The name of every combination, quoted for the format and encoded. */
+  private final byte[][] combinationNames;
+  /** The quote around the CSV fields holding names, or NONE when no name needs one. */
+  private final int csvQuote;
+  private final byte[] buffer = new byte[BUFFER_BYTES];
+  private int position;
+  private final StringBuilder number = new StringBuilder(32);
+  private long rounds;
+  private long drainedBytes;
+
+  /**
+   * Constructs a writer and, for CSV, buffers the header line.
+   * @param game The compiled game to play
+   * @param out The stream to write to; it need not be buffered
+   * @param format The output format
+   */
+  public RoundWriter(CompiledGame game, OutputStream out, Format format) {
+    this.game = game;
+    this.out = out;
+    this.format = format;
+    this.random = new RoundRandom();
+    this.board = game.newBoard();
+    this.outcome = game.newOutcome();
+    SymbolTable symbols = game.getSymbols();
+    CompiledCombinations combinations = game.getCombinations();
+    boolean quoted = false;
+    for (int id = 0; id < symbols.size(); id++) {
+      quoted |= needsCsvQuotes(symbols.nameOf(id));
+    }
+    for (int id = 0; id < combinations.size(); id++) {
+      quoted |= needsCsvQuotes(combinations.nameOf(id));
+    }
+    this.csvQuote = quoted ? '"' : NONE;
+    this.symbolNames = new byte[symbols.size()][];
+    for (int id = 0; id < symbolNames.length; id++) {
+      symbolNames[id] = quote(symbols.nameOf(id));
+    }
+    this.combinationNames = new byte[combinations.size()][];
+    for (int id = 0; id < combinationNames.length; id++) {
+      combinationNames[id] = quote(combinations.nameOf(id));
+    }
+    if (format == Format.CSV) {
+      System.arraycopy(CSV_HEADER, 0, buffer, 0, CSV_HEADER.length);
+      position = CSV_HEADER.length;
+    }
+  }
+
+  /**
+   * Opens a file for writing rounds, replacing it.
+   * @param game The compiled game to play
+   * @param path The output file
+   * @param format The output format
+   * @return The writer, to be closed by the caller
+   * @throws IOException if the file cannot be created
+   */
+  public static RoundWriter open(CompiledGame game, Path path, Format format) throws IOException {
+    return new RoundWriter(game, Files.newOutputStream(path), format);
+  }
+
+  /**
+   * Plays and writes consecutive rounds.
+   * @param seed The master seed
+   * @param firstRound The index of the first round
+   * @param count The number of rounds
+   * @param bettingAmount The amount bet in every round
+   * @throws IOException if a round cannot be written
+   */
+  public void writeRounds(long seed, long firstRound, long count, int bettingAmount) throws IOException {
+    for (long i = 0; i < count; i++) {
+      writeRound(seed, firstRound + i, bettingAmount);
+    }
+  }
+
+  /**
+   * Plays and writes one round, drawn from the stream of (seed, round) like every played round.
+   * @param seed The master seed
+   * @param round The index of the round
+   * @param bettingAmount The amount bet
+   * @throws IOException if the round cannot be written
+   */
+  public void writeRound(long seed, long round, int bettingAmount) throws IOException {
+    random.reset(seed, round);
+    game.generateBoard(random, board);
+    game.evaluate(board, outcome);
+    write(seed, round, bettingAmount, board, outcome);
+  }
+
+  /**
+   * Writes one evaluated round.
+   * @param seed The master seed
+   * @param round The index of the round
+   * @param bettingAmount The amount bet
+   * @param board The played board
+   * @param outcome The outcome of the board
+   * @throws IOException if the round cannot be written
+   */
+  void write(long seed, long round, int bettingAmount, Board board, Outcome outcome) throws IOException {
+    GameEvents.ResultSerialization event = new GameEvents.ResultSerialization();
+    event.begin();
+    long start = getBytes();
+    double baseReward = outcome.baseReward(bettingAmount);
+    double reward = outcome.applyBonus(baseReward);
+    int bonusSymbol = outcome.appliedBonusSymbol(baseReward);
+    if (format == Format.CSV) {
+      writeCsv(seed, round, board, outcome, reward, bonusSymbol);
+    } else {
+      writeJson(seed, round, board, outcome, reward, bonusSymbol);
+    }
+    rounds++;
+    if (event.shouldCommit()) {
+      event.format = format.name().toLowerCase(Locale.ROOT);
+      event.length = (int) (getBytes() - start);
+      event.commit();
+    }
+  }
+
+  /**
+   * Writes one round as a JSON object line.
+   * @param seed The master seed
+   * @param round The index of the round
+   * @param board The played board
+   * @param outcome The outcome of the board
+   * @param reward The reward of the round
+   * @param bonusSymbol The applied bonus symbol id, or -1
+   * @throws IOException if the line cannot be written
+   */
+  private void writeJson(long seed, long round, Board board, Outcome outcome, double reward, int bonusSymbol)
+          throws IOException {
+    write(JSON_ROUND);
+    write(round);
+    write(JSON_SEED);
+    write(seed);
+    write(JSON_MATRIX);
+    int columns = board.getColumns();
+    for (int cell = 0; cell < board.size(); cell++) {
+      if (cell > 0) {
+        write(',');
+      }
+      if (cell % columns == 0) {
+        write('[');
+      }
+      write(symbolNames[board.get(cell)]);
+      if (cell % columns == columns - 1) {
+        write(']');
+      }
+    }
+    write(JSON_REWARD);
+    write(reward);
+    write(JSON_COMBINATIONS);
+    boolean first = true;
+    for (int symbol = 0; symbol < symbolNames.length; symbol++) {
+      if (!outcome.isWinning(symbol)) {
+        continue;
+      }
+      if (!first) {
+        write(',');
+      }
+      first = false;
+      write(symbolNames[symbol]);
+      write(':');
+      write('[');
+      writeCombinations(outcome, symbol, ',');
+      write(']');
+    }
+    write(JSON_BONUS);
+    write(bonusSymbol >= 0 ? symbolNames[bonusSymbol] : JSON_NULL);
+    write('}');
+    write('\n');
+  }
+
+  /**
+   * Writes one round as a CSV line.
+   * @param seed The master seed
+   * @param round The index of the round
+   * @param board The played board
+   * @param outcome The outcome of the board
+   * @param reward The reward of the round
+   * @param bonusSymbol The applied bonus symbol id, or -1
+   * @throws IOException if the line cannot be written
+   */
+  private void writeCsv(long seed, long round, Board board, Outcome outcome, double reward, int bonusSymbol)
+          throws IOException {
+    write(round);
+    write(',');
+    write(seed);
+    write(',');
+    write(csvQuote);
+    int columns = board.getColumns();
+    for (int cell = 0; cell < board.size(); cell++) {
+      if (cell > 0) {
+        write(cell % columns == 0 ? '/' : ' ');
+      }
+      write(symbolNames[board.get(cell)]);
+    }
+    write(csvQuote);
+    write(',');
+    write(reward);
+    write(',');
+    write(csvQuote);
+    boolean first = true;
+    for (int symbol = 0; symbol < symbolNames.length; symbol++) {
+      if (!outcome.isWinning(symbol)) {
+        continue;
+      }
+      if (!first) {
+        write(';');
+      }
+      first = false;
+      write(symbolNames[symbol]);
+      write(':');
+      writeCombinations(outcome, symbol, '+');
+    }
+    write(csvQuote);
+    write(',');
+    write(csvQuote);
+    if (bonusSymbol >= 0) {
+      write(symbolNames[bonusSymbol]);
+    }
+    write(csvQuote);
+    write('\n');
+  }
+
+  /**
+   * Writes the combinations applied to a winning symbol, in the order of {@link Outcome#toResult(int)}.
+   * @param outcome The outcome of the board
+   * @param symbol The winning symbol id
+   * @param separator The separator between two combinations
+   * @throws IOException if the combinations cannot be written
+   */
+  private void writeCombinations(Outcome outcome, int symbol, char separator) throws IOException {
+    CompiledCombinations combinations = outcome.combinations;
+    boolean first = true;
+    if (outcome.sameCombos[symbol] >= 0) {
+      write(combinationNames[outcome.sameCombos[symbol]]);
+      first = false;
+    }
+    for (int i = 0; i < outcome.matchedAreaCount; i++) {
+      if (outcome.matchedAreaSymbols[i] == symbol) {
+        if (!first) {
+          write(separator);
+        }
+        first = false;
+        write(combinationNames[combinations.areaCombo(outcome.matchedAreas[i])]);
+      }
+    }
+  }
+
+  /**
+   * Writes one ASCII character.
+   * @param c The character, or NONE to write nothing
+   * @throws IOException if the buffer cannot be drained
+   */
+  private void write(int c) throws IOException {
+    if (c == NONE) {
+      return;
+    }
+    if (position == buffer.length) {
+      drain();
+    }
+    buffer[position++] = (byte) c;
+  }
+
+  /**
+   * Writes encoded bytes.
+   * @param encoded The bytes
+   * @throws IOException if the buffer cannot be drained
+   */
+  private void write(byte[] encoded) throws IOException {
+    if (encoded.length > buffer.length - position) {
+      drain();
+      if (encoded.length > buffer.length) {
+        out.write(encoded);
+        drainedBytes += encoded.length;
+        return;
+      }
+    }
+    System.arraycopy(encoded, 0, buffer, position, encoded.length);
+    position += encoded.length;
+  }
+
+  /**
+   * Writes an integer in decimal.
+   * @param value The integer
+   * @throws IOException if the buffer cannot be drained
+   */
+  private void write(long value) throws IOException {
+    number.setLength(0);
+    number.append(value);
+    writeNumber();
+  }
+
+  /**
+   * Writes a reward, without a fraction when it is integral.
+   * @param value The finite reward
+   * @throws IOException if the buffer cannot be drained
+   */
+  private void write(double value) throws IOException {
+    number.setLength(0);
+    RoundJson.appendNumber(number, value);
+    writeNumber();
+  }
+
+  /**
+   * Copies the ASCII characters of the number builder to the buffer.
+   * @throws IOException if the buffer cannot be drained
+   */
+  private void writeNumber() throws IOException {
+    int length = number.length();
+    if (length > buffer.length - position) {
+      drain();
+    }
+    for (int i = 0; i < length; i++) {
+      buffer[position++] = (byte) number.charAt(i);
+    }
+  }
+
+  /**
+   * Writes the buffered bytes to the output stream.
+   * @throws IOException if the bytes cannot be written
+   */
+  private void drain() throws IOException {
+    out.write(buffer, 0, position);
+    drainedBytes += position;
+    position = 0;
+  }
+
+  /**
+   * Quotes a symbol or combination name for the format and encodes it in UTF-8: as a JSON string,
+   * or for CSV with its double quotes doubled, in fields quoted as a whole when any name needs it.
+   * @param name The name
+   * @return The encoded name
+   */
+  private byte[] quote(String name) {
+    if (format == Format.NDJSON) {
+      StringBuilder json = new StringBuilder(name.length() + 2);
+      RoundJson.appendString(json, name);
+      return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    return name.replace("\"", "\"\"").getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Checks whether a name would break a CSV line or its fields if written unquoted.
+   * @param name The name
+   * @return true if the name holds a comma, a double quote or a line break
+   */
+  private static boolean needsCsvQuotes(String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Encodes a constant.
+   * @param text The ASCII text
+   * @return The bytes
+   */
+  private static byte[] ascii(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Gets the number of rounds written.
+   * @return The number of rounds
+   */
+  public long getRounds() {
+    return rounds;
+  }
+
+  /**
+   * Gets the number of bytes written, buffered ones included.
+   * @return The number of bytes
+   */
+  public long getBytes() {
+    return drainedBytes + position;
+  }
+
+  /**
+   * Writes the buffered rounds to the output stream and flushes it.
+   * @throws IOException if the rounds cannot be written
+   */
+  @Override
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  /**
+   * Writes the buffered rounds and closes the output stream.
+   * @throws IOException if the rounds cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      drain();
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package ls.assignment.scratchgame;
+
+/**
+ * RuleEvaluator interface for the engines that apply the game rules to a {@link Board}.
+ * Every implementation must give the same results as
+ * {@link Matrix#evaluateRules(GameConfiguration, int)} for the configuration it was compiled from.
+ * @author LOTHFY ( LS )
+ */
+interface RuleEvaluator {
+  /**
+   * Evaluates a board into a reusable outcome.
+   * @param board The board to evaluate
+   * @param outcome The outcome to overwrite
+   */
+  void evaluate(Board board, Outcome outcome);
+
+  /**
+   * Evaluates a board according to the game rules.
+   * @param board The board to evaluate
+   * @param outcome Scratch space, overwritten by the evaluation
+   * @param bettingAmount The amount bet by the player
+   * @return An EvaluationResult containing the calculated reward and applied combinations
+   */
+  default Matrix.EvaluationResult evaluate(Board board, Outcome outcome, int bettingAmount) {
+    evaluate(board, outcome);
+    return outcome.toResult(bettingAmount);
+  }
+}
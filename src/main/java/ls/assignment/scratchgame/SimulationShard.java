@@ -0,0 +1,315 @@
+package ls.assignment.scratchgame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+/**
+ * SimulationShard class holding the statistics of one shard of a simulation split across
+ * processes or machines. A simulation of totalRounds rounds of one seed is split into shardCount
+ * disjoint, contiguous round ranges; every process plays one range with {@link #play} and writes
+ * a shard file, and {@link #merge(List)} combines the shard files into the statistics of the
+ * whole simulation. Since every round is drawn from the stream of (seed, round index), the merged
+ * statistics are those of playing every round in one process.
+ * <p>Layout (big-endian): magic, version, payload length and CRC-32C of the payload (ints), then
+ * the payload: configuration hash, seed, total rounds (longs), betting amount, shard count and
+ * shard index (ints), first round and rounds of the shard (longs) and the statistics written by
+ * {@link SimulationStats}, whose payout histogram only stores the buckets in use. A shard file
+ * takes a few kilobytes whatever the number of rounds.
+ * @author LOTHFY ( LS )
+ */
+public final class SimulationShard {
+  static final int MAGIC = 0x53475348;
+  static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+
+  private final CompiledGame game;
+  private final long seed;
+  private final long totalRounds;
+  private final int shardCount;
+  private final int shardIndex;
+  private final SimulationStats stats;
+
+  /**
+   * Merge class holding the statistics merged from the shard files of one simulation.
+   */
+  public static final class Merge {
+    private final SimulationStats stats;
+    private final long seed;
+    private final long totalRounds;
+    private final int shardCount;
+    private final List<Integer> missingShards;
+
+    /**
+     * Constructs a merge result.
+     * @param stats The merged statistics
+     * @param seed The master seed of the simulation
+     * @param totalRounds The number of rounds of the whole simulation
+     * @param shardCount The number of shards of the simulation
+     * @param missingShards The indexes of the shards that were not merged
+     */
+    Merge(SimulationStats stats, long seed, long totalRounds, int shardCount, List<Integer> missingShards) {
+      this.stats = stats;
+      this.seed = seed;
+      this.totalRounds = totalRounds;
+      this.shardCount = shardCount;
+      this.missingShards = missingShards;
+    }
+
+    /**
+     * Gets the merged statistics.
+     * @return The statistics of the rounds of every merged shard
+     */
+    public SimulationStats getStats() {
+      return stats;
+    }
+
+    /**
+     * Checks whether every shard of the simulation was merged.
+     * @return true if no shard is missing
+     */
+    public boolean isComplete() {
+      return missingShards.isEmpty();
+    }
+
+    /**
+     * Gets the shards that were not merged.
+     * @return The indexes of the missing shards in ascending order
+     */
+    public List<Integer> getMissingShards() {
+      return missingShards;
+    }
+
+    /**
+     * Prints the coverage of the merge and the merged statistics.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+      out.println("Seed            : " + seed);
+      out.println(String.format(Locale.ROOT, "Shards          : %d of %d (%d of %d rounds)", shardCount - missingShards.size(),
+              shardCount, stats.getRounds(), totalRounds));
+      if (!missingShards.isEmpty()) {
+        out.println("Missing shards  : " + missingShards);
+      }
+      stats.print(out);
+    }
+  }
+
+  /**
+   * Constructs a shard.
+   * @param game The compiled game the rounds were played on
+   * @param seed The master seed of the simulation
+   * @param totalRounds The number of rounds of the whole simulation
+   * @param shardCount The number of shards of the simulation
+   * @param shardIndex The index of this shard
+   * @param stats The statistics of the rounds of this shard
+   */
+  private SimulationShard(CompiledGame game, long seed, long totalRounds, int shardCount, int shardIndex,
+                          SimulationStats stats) {
+    this.game = game;
+    this.seed = seed;
+    this.totalRounds = totalRounds;
+    this.shardCount = shardCount;
+    this.shardIndex = shardIndex;
+    this.stats = stats;
+  }
+
+  /**
+   * Gets the index of the first round of a shard. The rounds are split like the rounds of the
+   * workers of a {@link Simulator}: the first totalRounds % shardCount shards get one more round.
+   * @param totalRounds The number of rounds of the whole simulation
+   * @param shardCount The number of shards
+   * @param shardIndex The index of the shard
+   * @return The index of the first round of the shard
+   */
+  public static long firstRoundOf(long totalRounds, int shardCount, int shardIndex) {
+    return shardIndex * (totalRounds / shardCount) + Math.min(shardIndex, totalRounds % shardCount);
+  }
+
+  /**
+   * Gets the number of rounds of a shard.
+   * @param totalRounds The number of rounds of the whole simulation
+   * @param shardCount The number of shards
+   * @param shardIndex The index of the shard
+   * @return The number of rounds of the shard
+   */
+  public static long roundsOf(long totalRounds, int shardCount, int shardIndex) {
+    return totalRounds / shardCount + (shardIndex < totalRounds % shardCount ? 1 : 0);
+  }
+
+  /**
+   * Plays the rounds of one shard.
+   * @param game The compiled game to play
+   * @param threads The number of worker threads
+   * @param totalRounds The number of rounds of the whole simulation
+   * @param shardCount The number of shards of the simulation
+   * @param shardIndex The index of the shard to play
+   * @param bettingAmount The amount bet in every round
+   * @param seed The master seed of the simulation
+   * @return The shard
+   * @throws IllegalArgumentException if totalRounds is negative or the shard index is not in [0, shardCount)
+   * @throws IllegalStateException if a worker fails
+   */
+  public static SimulationShard play(CompiledGame game, int threads, long totalRounds, int shardCount, int shardIndex,
+                                     int bettingAmount, long seed) {
+    if (totalRounds < 0 || shardCount <= 0 || shardIndex < 0 || shardIndex >= shardCount) {
+      throw new IllegalArgumentException("Invalid shard " + shardIndex + "/" + shardCount + " of " + totalRounds + " rounds");
+    }
+    SimulationStats stats = new Simulator(game, threads).run(firstRoundOf(totalRounds, shardCount, shardIndex),
+            roundsOf(totalRounds, shardCount, shardIndex), bettingAmount, seed, null);
+    return new SimulationShard(game, seed, totalRounds, shardCount, shardIndex, stats);
+  }
+
+  /**
+   * Gets the statistics of the rounds of this shard.
+   * @return The statistics
+   */
+  public SimulationStats getStats() {
+    return stats;
+  }
+
+  /**
+   * Gets the index of this shard.
+   * @return The shard index
+   */
+  public int getShardIndex() {
+    return shardIndex;
+  }
+
+  /**
+   * Gets the number of shards of the simulation.
+   * @return The shard count
+   */
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Writes the shard file. The file is replaced atomically, so a shard file is either complete
+   * or absent even if the process is killed.
+   * @param file The shard file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void write(Path file) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(game.getConfigurationHash());
+    out.writeLong(seed);
+    out.writeLong(totalRounds);
+    out.writeInt(stats.getBettingAmount());
+    out.writeInt(shardCount);
+    out.writeInt(shardIndex);
+    out.writeLong(firstRoundOf(totalRounds, shardCount, shardIndex));
+    out.writeLong(roundsOf(totalRounds, shardCount, shardIndex));
+    stats.write(out);
+    out.flush();
+
+    byte[] payload = bytes.toByteArray();
+    CRC32C crc = new CRC32C();
+    crc.update(payload);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putInt((int) crc.getValue());
+
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      header.flip();
+      ByteBuffer body = ByteBuffer.wrap(payload);
+      while (header.hasRemaining() || body.hasRemaining()) {
+        channel.write(new ByteBuffer[] {header, body});
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a shard file.
+   * @param file The shard file
+   * @param game The compiled game the rounds were played on
+   * @return The shard
+   * @throws IOException if the file cannot be read
+   * @throws IllegalStateException if the file is not a shard file of this version, is corrupt, or
+   *         was played on another configuration
+   */
+  public static SimulationShard read(Path file, CompiledGame game) throws IOException {
+    byte[] bytes = Files.readAllBytes(file);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (bytes.length < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IllegalStateException("Not a simulation shard of version " + VERSION + ": " + file);
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+    if (buffer.getInt(8) != bytes.length - HEADER_SIZE || buffer.getInt(12) != (int) crc.getValue()) {
+      throw new IllegalStateException("Corrupt simulation shard: " + file);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE));
+    if (in.readLong() != game.getConfigurationHash()) {
+      throw new IllegalStateException("Simulation shard was played on another configuration: " + file);
+    }
+    long seed = in.readLong();
+    long totalRounds = in.readLong();
+    int bettingAmount = in.readInt();
+    int shardCount = in.readInt();
+    int shardIndex = in.readInt();
+    long firstRound = in.readLong();
+    long rounds = in.readLong();
+    SimulationStats stats = SimulationStats.read(in, game, bettingAmount);
+    if (shardCount <= 0 || shardIndex < 0 || shardIndex >= shardCount || totalRounds < 0
+            || firstRound != firstRoundOf(totalRounds, shardCount, shardIndex)
+            || rounds != roundsOf(totalRounds, shardCount, shardIndex) || stats.getRounds() != rounds) {
+      throw new IllegalStateException("Inconsistent simulation shard: " + file);
+    }
+    return new SimulationShard(game, seed, totalRounds, shardCount, shardIndex, stats);
+  }
+
+  /**
+   * Merges the shards of one simulation. Shards may be missing, for instance while a cluster is
+   * still running; the merge lists them.
+   * @param shards The shards to merge, at least one
+   * @return The merged statistics and the missing shards
+   * @throws IllegalArgumentException if there is no shard, the shards belong to different
+   *         simulations, or a shard is given twice
+   */
+  public static Merge merge(List<SimulationShard> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("No simulation shard to merge");
+    }
+    SimulationShard first = shards.get(0);
+    boolean[] merged = new boolean[first.shardCount];
+    SimulationStats total = new SimulationStats(first.game, first.stats.getBettingAmount());
+    for (SimulationShard shard : shards) {
+      if (shard.game.getConfigurationHash() != first.game.getConfigurationHash() || shard.seed != first.seed
+              || shard.totalRounds != first.totalRounds || shard.shardCount != first.shardCount
+              || shard.stats.getBettingAmount() != first.stats.getBettingAmount()) {
+        throw new IllegalArgumentException("Shard " + shard.shardIndex + " belongs to another simulation than shard "
+                + first.shardIndex);
+      }
+      if (merged[shard.shardIndex]) {
+        throw new IllegalArgumentException("Shard " + shard.shardIndex + " given twice");
+      }
+      merged[shard.shardIndex] = true;
+      total.merge(shard.stats);
+    }
+    List<Integer> missing = new ArrayList<>();
+    for (int index = 0; index < merged.length; index++) {
+      if (!merged[index]) {
+        missing.add(index);
+      }
+    }
+    return new Merge(total, first.seed, first.totalRounds, first.shardCount, missing);
+  }
+}
@@ -0,0 +1,309 @@
+package ls.assignment.scratchgame;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * SimulationStats class accumulating the statistics of many played rounds.
+ * One instance is filled per worker thread without synchronization and the
+ * per-worker instances are combined with {@link #merge(SimulationStats)}. Statistics of other processes
+ * are carried in {@link SimulationShard} files. Besides the moments of
+ * the reward, the statistics hold a {@link PayoutHistogram} of the payout of every round.
+ * @author LOTHFY ( LS )
+ */
+public final class SimulationStats {
+  private final SymbolTable symbols;
+  private final CompiledCombinations combinations;
+  private final int bettingAmount;
+
+  private long rounds;
+  private long wins;
+  private double totalReward;
+  private double totalRewardSquares;
+  private double maxReward;
+  private long maxRewardCount;
+
+  private final long[] comboApplications;
+  private final long[] comboRounds;
+  private final double[] comboRewards;
+  private final long[] comboLastRound;
+  private final long[] bonusApplications;
+  private final double[] bonusRewards;
+  private final PayoutHistogram payouts = new PayoutHistogram();
+
+  /**
+   * Constructs empty statistics for a game and bet.
+   * @param game The compiled game the rounds are played on
+   * @param bettingAmount The amount bet in every round
+   */
+  public SimulationStats(CompiledGame game, int bettingAmount) {
+    this.symbols = game.getSymbols();
+    this.combinations = game.getCombinations();
+    this.bettingAmount = bettingAmount;
+    this.comboApplications = new long[combinations.size()];
+    this.comboRounds = new long[combinations.size()];
+    this.comboRewards = new double[combinations.size()];
+    this.comboLastRound = new long[combinations.size()];
+    this.bonusApplications = new long[symbols.size()];
+    this.bonusRewards = new double[symbols.size()];
+  }
+
+  /**
+   * Records one evaluated round.
+   * @param outcome The outcome of the round
+   */
+  void record(Outcome outcome) {
+    long round = ++rounds;
+    double baseReward = 0.0;
+    for (int symbol = 0; symbol < outcome.sameCombos.length; symbol++) {
+      if (!outcome.isWinning(symbol)) {
+        continue;
+      }
+      double symbolReward = outcome.symbolReward(symbol, bettingAmount);
+      baseReward += symbolReward;
+      if (outcome.sameCombos[symbol] >= 0) {
+        recordCombo(outcome.sameCombos[symbol], symbolReward, round);
+      }
+      for (int i = 0; i < outcome.matchedAreaCount; i++) {
+        if (outcome.matchedAreaSymbols[i] == symbol) {
+          recordCombo(combinations.areaCombo(outcome.matchedAreas[i]), symbolReward, round);
+        }
+      }
+    }
+
+    double reward = outcome.applyBonus(baseReward);
+    if (baseReward > 0 && outcome.bonusSymbol >= 0) {
+      bonusApplications[outcome.bonusSymbol]++;
+      bonusRewards[outcome.bonusSymbol] += reward - baseReward;
+    }
+    recordReward(reward);
+  }
+
+  /**
+   * Records one application of a combination.
+   * @param combo The combination id
+   * @param symbolReward The reward of the symbol win the combination is part of
+   * @param round The current round number, used to count each round once
+   */
+  private void recordCombo(int combo, double symbolReward, long round) {
+    comboApplications[combo]++;
+    comboRewards[combo] += symbolReward;
+    if (comboLastRound[combo] != round) {
+      comboLastRound[combo] = round;
+      comboRounds[combo]++;
+    }
+  }
+
+  /**
+   * Records the final reward of a round.
+   * @param reward The reward
+   */
+  private void recordReward(double reward) {
+    if (reward > 0) {
+      wins++;
+    }
+    totalReward += reward;
+    totalRewardSquares += reward * reward;
+    payouts.record(Math.round(reward * Payout.SCALE / bettingAmount));
+    if (reward > maxReward) {
+      maxReward = reward;
+      maxRewardCount = 1;
+    } else if (reward == maxReward && reward > 0) {
+      maxRewardCount++;
+    }
+  }
+
+  /**
+   * Adds the statistics of another instance for the same game and bet to this one.
+   * @param other The statistics to add
+   */
+  public void merge(SimulationStats other) {
+    rounds += other.rounds;
+    wins += other.wins;
+    totalReward += other.totalReward;
+    totalRewardSquares += other.totalRewardSquares;
+    if (other.maxReward > maxReward) {
+      maxReward = other.maxReward;
+      maxRewardCount = other.maxRewardCount;
+    } else if (other.maxReward == maxReward) {
+      maxRewardCount += other.maxRewardCount;
+    }
+    for (int combo = 0; combo < comboApplications.length; combo++) {
+      comboApplications[combo] += other.comboApplications[combo];
+      comboRounds[combo] += other.comboRounds[combo];
+      comboRewards[combo] += other.comboRewards[combo];
+    }
+    for (int symbol = 0; symbol < bonusApplications.length; symbol++) {
+      bonusApplications[symbol] += other.bonusApplications[symbol];
+      bonusRewards[symbol] += other.bonusRewards[symbol];
+    }
+    payouts.merge(other.payouts);
+  }
+
+  /**
+   * Writes the statistics: the counts and sums, the per-combination and per-bonus figures and
+   * the payout histogram. The bet and the game are not written.
+   * @param out The output to write to
+   * @throws IOException if the statistics cannot be written
+   */
+  void write(DataOutput out) throws IOException {
+    out.writeLong(rounds);
+    out.writeLong(wins);
+    out.writeDouble(totalReward);
+    out.writeDouble(totalRewardSquares);
+    out.writeDouble(maxReward);
+    out.writeLong(maxRewardCount);
+    out.writeInt(comboApplications.length);
+    for (int combo = 0; combo < comboApplications.length; combo++) {
+      out.writeLong(comboApplications[combo]);
+      out.writeLong(comboRounds[combo]);
+      out.writeDouble(comboRewards[combo]);
+    }
+    out.writeInt(bonusApplications.length);
+    for (int symbol = 0; symbol < bonusApplications.length; symbol++) {
+      out.writeLong(bonusApplications[symbol]);
+      out.writeDouble(bonusRewards[symbol]);
+    }
+    payouts.write(out);
+  }
+
+  /**
+   * Reads statistics written by {@link #write(DataOutput)}.
+   * @param in The input to read from
+   * @param game The compiled game the rounds were played on
+   * @param bettingAmount The amount bet in every round
+   * @return The statistics
+   * @throws IOException if the statistics cannot be read
+   * @throws IllegalStateException if the statistics do not match the combinations and symbols of the game
+   */
+  static SimulationStats read(DataInput in, CompiledGame game, int bettingAmount) throws IOException {
+    SimulationStats stats = new SimulationStats(game, bettingAmount);
+    stats.rounds = in.readLong();
+    stats.wins = in.readLong();
+    stats.totalReward = in.readDouble();
+    stats.totalRewardSquares = in.readDouble();
+    stats.maxReward = in.readDouble();
+    stats.maxRewardCount = in.readLong();
+    if (in.readInt() != stats.comboApplications.length) {
+      throw new IllegalStateException("Statistics have another number of win combinations");
+    }
+    for (int combo = 0; combo < stats.comboApplications.length; combo++) {
+      stats.comboApplications[combo] = in.readLong();
+      stats.comboRounds[combo] = in.readLong();
+      stats.comboRewards[combo] = in.readDouble();
+    }
+    if (in.readInt() != stats.bonusApplications.length) {
+      throw new IllegalStateException("Statistics have another number of symbols");
+    }
+    for (int symbol = 0; symbol < stats.bonusApplications.length; symbol++) {
+      stats.bonusApplications[symbol] = in.readLong();
+      stats.bonusRewards[symbol] = in.readDouble();
+    }
+    stats.payouts.merge(PayoutHistogram.read(in));
+    return stats;
+  }
+
+  /**
+   * Gets the number of recorded rounds.
+   * @return The number of rounds
+   */
+  public long getRounds() {
+    return rounds;
+  }
+
+  /**
+   * Gets the return to player: total reward divided by total bet.
+   * @return The RTP as a fraction
+   */
+  public double getRtp() {
+    return rounds == 0 ? 0.0 : totalReward / ((double) rounds * bettingAmount);
+  }
+
+  /**
+   * Gets the amount bet in every round.
+   * @return The betting amount
+   */
+  public int getBettingAmount() {
+    return bettingAmount;
+  }
+
+  /**
+   * Gets the fraction of rounds with a positive reward.
+   * @return The hit frequency
+   */
+  public double getHitFrequency() {
+    return rounds == 0 ? 0.0 : (double) wins / rounds;
+  }
+
+  /**
+   * Gets the fraction of rounds in which a combination applied.
+   * @param combo The combination id
+   * @return The hit rate of the combination
+   */
+  public double getCombinationHitRate(int combo) {
+    return rounds == 0 ? 0.0 : (double) comboRounds[combo] / rounds;
+  }
+
+  /**
+   * Gets the variance of the per-round reward, in units of the bet squared.
+   * @return The variance of reward / bet
+   */
+  public double getVariance() {
+    if (rounds == 0) {
+      return 0.0;
+    }
+    double mean = totalReward / rounds / bettingAmount;
+    double meanSquare = totalRewardSquares / rounds / ((double) bettingAmount * bettingAmount);
+    return Math.max(0.0, meanSquare - mean * mean);
+  }
+
+  /**
+   * Gets the largest reward of any round.
+   * @return The max win
+   */
+  public double getMaxReward() {
+    return maxReward;
+  }
+
+  /**
+   * Gets the distribution of the payout of every round.
+   * @return The payout histogram, in thousandths of the bet
+   */
+  public PayoutHistogram getPayoutHistogram() {
+    return payouts;
+  }
+
+  /**
+   * Prints a report of the statistics.
+   * Combination contributions overlap: a symbol win is counted for every combination it includes.
+   * @param out The stream to print to
+   */
+  public void print(PrintStream out) {
+    double totalBet = (double) rounds * bettingAmount;
+    out.println(String.format(Locale.ROOT, "Rounds          : %d", rounds));
+    out.println(String.format(Locale.ROOT, "Betting amount  : %d", bettingAmount));
+    out.println(String.format(Locale.ROOT, "RTP             : %.4f %%", getRtp() * 100));
+    out.println(String.format(Locale.ROOT, "Hit frequency   : %.4f %%", getHitFrequency() * 100));
+    out.println(String.format(Locale.ROOT, "Variance        : %.4f (std dev %.4f x bet)", getVariance(), Math.sqrt(getVariance())));
+    out.println(String.format(Locale.ROOT, "Max win         : %.2f coins (%.2fx bet), %d times (1 in %s rounds)", maxReward,
+            maxReward / bettingAmount, maxRewardCount,
+            maxRewardCount == 0 ? "-" : String.format(Locale.ROOT, "%.0f", (double) rounds / maxRewardCount)));
+    payouts.print(out);
+    out.println("Win combinations (applications, rounds hit, RTP of the symbol wins they are part of):");
+    for (int combo = 0; combo < comboApplications.length; combo++) {
+      out.println(String.format(Locale.ROOT, "  %-40s %14d %10.6f %% %10.4f %%", combinations.nameOf(combo),
+              comboApplications[combo], rounds == 0 ? 0.0 : 100.0 * comboRounds[combo] / rounds,
+              totalBet == 0 ? 0.0 : 100.0 * comboRewards[combo] / totalBet));
+    }
+    out.println("Bonus symbols (applications, RTP added):");
+    for (int symbol = 0; symbol < bonusApplications.length; symbol++) {
+      if (symbols.isBonus(symbol)) {
+        out.println(String.format(Locale.ROOT, "  %-40s %14d %10.4f %%", symbols.nameOf(symbol),
+                bonusApplications[symbol], totalBet == 0 ? 0.0 : 100.0 * bonusRewards[symbol] / totalBet));
+      }
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package ls.assignment.scratchgame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Simulator class playing a large number of rounds of one compiled game in parallel
+ * to measure its return to player.
+ * Every worker plays a contiguous range of round indexes with its own {@link RoundRandom},
+ * reusable board and outcome, and its own statistics, so the workers share nothing while
+ * running and throughput scales with the number of cores. The board of every round is drawn
+ * from the stream of (seed, round index), so any round can be replayed on its own and the
+ * results do not depend on the number of threads. Given a {@link ResultStore}, every worker also
+ * records the result of each of its rounds in the store. Given a cache budget and a game with
+ * small enough boards, every worker evaluates through its own {@link EvaluationCache}, which pays
+ * off when boards repeat, as on boards of few cells and symbols; cached outcomes equal evaluated
+ * ones, so the statistics do not depend on the cache.
+ * @author LOTHFY ( LS )
+ */
+public final class Simulator {
+  private final CompiledGame game;
+  private final int threads;
+  private final long cacheBytes;
+  private long cacheHits;
+  private long cacheMisses;
+
+  /**
+   * Constructs a simulator evaluating every board.
+   * @param game The compiled game to play
+   * @param threads The number of worker threads
+   * @throws IllegalArgumentException if threads is not positive
+   */
+  public Simulator(CompiledGame game, int threads) {
+    this(game, threads, 0);
+  }
+
+  /**
+   * Constructs a simulator evaluating through a cache of evaluated boards per worker, if the
+   * boards of the game can be cached (see {@link EvaluationCache#supports(CompiledGame)}).
+   * @param game The compiled game to play
+   * @param threads The number of worker threads
+   * @param cacheBytes The memory budget of the cache of every worker in bytes, or 0 for no cache
+   * @throws IllegalArgumentException if threads is not positive, cacheBytes is negative
+   *         or a non-zero cacheBytes does not hold one set of entries
+   */
+  public Simulator(CompiledGame game, int threads, long cacheBytes) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    boolean cacheable = EvaluationCache.supports(game);
+    if (cacheBytes < 0 || (cacheable && cacheBytes > 0 && cacheBytes / EvaluationCache.entryBytes(game) < EvaluationCache.WAYS)) {
+      throw new IllegalArgumentException("Cache budget too small: " + cacheBytes + " bytes");
+    }
+    this.game = game;
+    this.threads = threads;
+    this.cacheBytes = cacheable ? cacheBytes : 0;
+  }
+
+  /**
+   * Plays the given number of rounds.
+   * @param rounds The number of rounds to play
+   * @param bettingAmount The amount bet in every round
+   * @param seed The master seed; the same seed gives the same rounds with any number of threads
+   * @return The merged statistics of all rounds
+   * @throws IllegalStateException if a worker fails
+   */
+  public SimulationStats run(long rounds, int bettingAmount, long seed) {
+    return run(rounds, bettingAmount, seed, null);
+  }
+
+  /**
+   * Plays the given number of rounds, recording every round in a result store.
+   * @param rounds The number of rounds to play
+   * @param bettingAmount The amount bet in every round
+   * @param seed The master seed; the same seed gives the same rounds with any number of threads
+   * @param store The store of rounds 0 to rounds - 1 of the game, or null
+   * @return The merged statistics of all rounds
+   * @throws IllegalStateException if a worker fails
+   * @throws IllegalArgumentException if the store belongs to another game
+   */
+  public SimulationStats run(long rounds, int bettingAmount, long seed, ResultStore store) {
+    return run(0, rounds, bettingAmount, seed, store);
+  }
+
+  /**
+   * Plays a range of rounds, such as one shard of a simulation split across processes.
+   * @param firstRound The index of the first round to play
+   * @param rounds The number of rounds to play
+   * @param bettingAmount The amount bet in every round
+   * @param seed The master seed; the same seed gives the same rounds with any number of threads
+   * @param store The store of the played rounds of the game, or null
+   * @return The merged statistics of the played rounds
+   * @throws IllegalStateException if a worker fails
+   * @throws IllegalArgumentException if the store belongs to another game
+   */
+  public SimulationStats run(long firstRound, long rounds, int bettingAmount, long seed, ResultStore store) {
+    if (store != null && store.getGame() != game) {
+      throw new IllegalArgumentException("Result store belongs to another game");
+    }
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      List<Future<SimulationStats>> futures = new ArrayList<>();
+      List<EvaluationCache> caches = new ArrayList<>();
+      long nextRound = firstRound;
+      for (int worker = 0; worker < threads; worker++) {
+        long share = rounds / threads + (worker < rounds % threads ? 1 : 0);
+        long start = nextRound;
+        EvaluationCache cache = cacheBytes > 0 && share > 0 ? new EvaluationCache(game, cacheBytes) : null;
+        if (cache != null) {
+          caches.add(cache);
+        }
+        futures.add(pool.submit(() -> play(seed, start, start + share, bettingAmount, store, cache)));
+        nextRound += share;
+      }
+
+      SimulationStats total = new SimulationStats(game, bettingAmount);
+      for (Future<SimulationStats> future : futures) {
+        total.merge(future.get());
+      }
+      cacheHits = 0;
+      cacheMisses = 0;
+      for (EvaluationCache cache : caches) {
+        cacheHits += cache.getHits();
+        cacheMisses += cache.getMisses();
+      }
+      return total;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Simulation interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Simulation failed", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Plays a range of rounds on the current thread.
+   * @param seed The master seed
+   * @param firstRound The index of the first round to play
+   * @param endRound The index after the last round to play
+   * @param bettingAmount The amount bet in every round
+   * @param store The store to record the rounds in, or null
+   * @return The statistics of the played rounds
+   */
+  SimulationStats play(long seed, long firstRound, long endRound, int bettingAmount, ResultStore store) {
+    return play(seed, firstRound, endRound, bettingAmount, store, null);
+  }
+
+  /**
+   * Plays a range of rounds on the current thread, evaluating through a cache.
+   * @param seed The master seed
+   * @param firstRound The index of the first round to play
+   * @param endRound The index after the last round to play
+   * @param bettingAmount The amount bet in every round
+   * @param store The store to record the rounds in, or null
+   * @param cache The cache of evaluated boards of the game, or null to evaluate every board
+   * @return The statistics of the played rounds
+   */
+  private SimulationStats play(long seed, long firstRound, long endRound, int bettingAmount, ResultStore store,
+                               EvaluationCache cache) {
+    SimulationStats stats = new SimulationStats(game, bettingAmount);
+    RoundRandom random = new RoundRandom();
+    Board board = game.newBoard();
+    Outcome outcome = game.newOutcome();
+    for (long round = firstRound; round < endRound; round++) {
+      random.reset(seed, round);
+      game.generateBoard(random, board);
+      if (cache != null) {
+        cache.evaluate(board, outcome);
+      } else {
+        game.evaluate(board, outcome);
+      }
+      stats.record(outcome);
+      if (store != null) {
+        store.record(round, board, outcome);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Gets the number of boards of the last run found in the caches of the workers.
+   * @return The number of cache hits, 0 without a cache
+   */
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  /**
+   * Gets the share of the boards of the last run found in the caches of the workers.
+   * @return The cache hit rate between 0 and 1, or 0 without a cache
+   */
+  public double getCacheHitRate() {
+    long lookups = cacheHits + cacheMisses;
+    return lookups == 0 ? 0 : (double) cacheHits / lookups;
+  }
+
+  /**
+   * Checks whether the workers evaluate through caches, which needs a cache budget and a game
+   * whose boards can be cached.
+   * @return true if the workers use caches
+   */
+  public boolean isCaching() {
+    return cacheBytes > 0;
+  }
+}
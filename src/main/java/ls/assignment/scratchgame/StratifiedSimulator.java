@@ -0,0 +1,786 @@
+package ls.assignment.scratchgame;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * StratifiedSimulator class estimating the return to player with confidence intervals, using
+ * fewer rounds than the plain Monte Carlo of {@link Simulator} for the same precision.
+ * <ul>
+ *   <li>Stratification: the first bonus cell in row-major order decides the applied bonus symbol,
+ *   so the boards split into strata "no bonus cell" and "first bonus cell holds symbol j" whose
+ *   probabilities are known exactly from the cell weights (like {@link ExactRtpCalculator}).
+ *   Every stratum is sampled from its exact conditional distribution, and rounds are allocated
+ *   to the strata in proportion to their probability times the standard deviation of their
+ *   reward (Neyman allocation), so the rare strata of high bonus symbols get enough rounds.</li>
+ *   <li>Importance sampling: half of the rounds draw every free cell from a distribution tilted
+ *   towards one standard symbol, chosen uniformly, which makes boards full of one symbol (the
+ *   same_symbols and line wins with the largest payouts) far more frequent. Every round is
+ *   weighted by the ratio of its probability under the game to its probability under the mixture
+ *   of the plain and tilted distributions, which keeps the estimates unbiased; since the plain
+ *   distribution is part of the mixture, no weight exceeds 1 / {@value #PLAIN_SHARE}.</li>
+ * </ul>
+ * Rounds are played in batches until the {@value #CONFIDENCE_PERCENT}% confidence interval of the
+ * RTP is narrower than requested or a round limit is reached. Batches are split into fixed chunks
+ * of {@value #CHUNK_ROUNDS} rounds merged in order, and every round is drawn from the stream of
+ * (seed, round index), so the results do not depend on the number of threads.
+ * @author LOTHFY ( LS )
+ */
+public final class StratifiedSimulator {
+  /** Share of the rounds drawn from the game distribution itself. */
+  static final double PLAIN_SHARE = 0.5;
+  /** Probability that a tilted draw puts the tilt symbol into a free cell. */
+  static final double TILT = 0.3;
+  /** Number of rounds played by one task. */
+  static final int CHUNK_ROUNDS = 1 << 16;
+  /** Smallest share of a batch given to every stratum, so that its variance keeps being measured. */
+  static final double MIN_STRATUM_SHARE = 0.01;
+  static final int CONFIDENCE_PERCENT = 95;
+  /** Two-sided 95% quantile of the standard normal distribution. */
+  static final double Z = 1.959963984540054;
+
+  private final CompiledGame game;
+  private final int threads;
+  private final SymbolTable symbols;
+  private final CompiledCombinations combinations;
+  private final int cells;
+  private final int[] standardSymbols;
+  private final AliasSampler[] cellSamplers;
+  /** Sampler of every cell restricted to the standard symbols, or null if the cell always holds a bonus. */
+  private final AliasSampler[] standardSamplers;
+  /** Inverse probability of every symbol in every cell, 0 if the symbol cannot appear. */
+  private final double[][] inverseProbabilities;
+  /** Inverse probability of every standard symbol in every cell given that the cell holds no bonus. */
+  private final double[][] inverseStandardProbabilities;
+  /** Factor of a tilted probability ratio for every standard symbol in a free cell, 1 for other symbols. */
+  private final double[][] fullBoosts;
+  /** Factor of a tilted probability ratio for every standard symbol in a cell before the first bonus cell. */
+  private final double[][] standardBoosts;
+  /** (1 - TILT) to the number of free cells that may hold each symbol, per first bonus cell + 1. */
+  private final double[][] tiltBases;
+  /** The bonus symbol of every stratum, -1 for the stratum without a bonus cell. */
+  private final int[] stratumBonus;
+  private final double[] stratumProbabilities;
+  /** Cumulative probability of the first bonus cell position within every bonus stratum. */
+  private final double[][] positionCumulative;
+  /** The last cell that can be the first bonus cell of every bonus stratum. */
+  private final int[] lastPositions;
+
+  /**
+   * Result class holding the estimates of a run with their confidence intervals.
+   */
+  public static final class Result {
+    private final CompiledGame game;
+    private final int bettingAmount;
+    private final double targetWidth;
+    private final long rounds;
+    private final double[] estimates;
+    private final double[] halfWidths;
+    private final double plainVariance;
+    private final int[] stratumBonus;
+    private final double[] stratumProbabilities;
+    private final long[] stratumRounds;
+
+    /**
+     * Constructs a result.
+     * @param game The compiled game
+     * @param bettingAmount The betting amount
+     * @param targetWidth The requested width of the RTP confidence interval
+     * @param rounds The number of played rounds
+     * @param estimates The estimate of every measured quantity, see {@link StratifiedSimulator}
+     * @param halfWidths The half width of the confidence interval of every estimate
+     * @param plainVariance The estimated variance of reward / bet over single rounds
+     * @param stratumBonus The bonus symbol of every stratum, -1 for no bonus
+     * @param stratumProbabilities The probability of every stratum
+     * @param stratumRounds The number of rounds played in every stratum
+     */
+    Result(CompiledGame game, int bettingAmount, double targetWidth, long rounds, double[] estimates,
+           double[] halfWidths, double plainVariance, int[] stratumBonus, double[] stratumProbabilities,
+           long[] stratumRounds) {
+      this.game = game;
+      this.bettingAmount = bettingAmount;
+      this.targetWidth = targetWidth;
+      this.rounds = rounds;
+      this.estimates = estimates;
+      this.halfWidths = halfWidths;
+      this.plainVariance = plainVariance;
+      this.stratumBonus = stratumBonus;
+      this.stratumProbabilities = stratumProbabilities;
+      this.stratumRounds = stratumRounds;
+    }
+
+    /**
+     * Gets the number of played rounds.
+     * @return The number of rounds
+     */
+    public long getRounds() {
+      return rounds;
+    }
+
+    /**
+     * Checks whether the RTP confidence interval reached the requested width.
+     * @return true if the run stopped because it converged, false if it hit the round limit
+     */
+    public boolean isConverged() {
+      return 2 * halfWidths[RTP] <= targetWidth;
+    }
+
+    /**
+     * Gets the estimated return to player.
+     * @return The RTP as a fraction
+     */
+    public double getRtp() {
+      return estimates[RTP];
+    }
+
+    /**
+     * Gets the half width of the confidence interval of the RTP.
+     * @return The half width, as a fraction
+     */
+    public double getRtpHalfWidth() {
+      return halfWidths[RTP];
+    }
+
+    /**
+     * Gets the estimated fraction of rounds with a positive reward.
+     * @return The hit frequency
+     */
+    public double getHitFrequency() {
+      return estimates[HIT];
+    }
+
+    /**
+     * Gets the half width of the confidence interval of the hit frequency.
+     * @return The half width
+     */
+    public double getHitFrequencyHalfWidth() {
+      return halfWidths[HIT];
+    }
+
+    /**
+     * Gets the estimated number of applications of a combination per round.
+     * @param combo The combination id
+     * @return The expected applications per round
+     */
+    public double getComboApplications(int combo) {
+      return estimates[FIRST_COMBO + 2 * combo];
+    }
+
+    /**
+     * Gets the half width of the confidence interval of the applications of a combination.
+     * @param combo The combination id
+     * @return The half width
+     */
+    public double getComboApplicationsHalfWidth(int combo) {
+      return halfWidths[FIRST_COMBO + 2 * combo];
+    }
+
+    /**
+     * Gets the estimated RTP of the symbol wins a combination is part of.
+     * @param combo The combination id
+     * @return The RTP contribution as a fraction
+     */
+    public double getComboRtp(int combo) {
+      return estimates[FIRST_COMBO + 2 * combo + 1];
+    }
+
+    /**
+     * Gets the half width of the confidence interval of the RTP contribution of a combination.
+     * @param combo The combination id
+     * @return The half width
+     */
+    public double getComboRtpHalfWidth(int combo) {
+      return halfWidths[FIRST_COMBO + 2 * combo + 1];
+    }
+
+    /**
+     * Gets the estimated RTP added by a bonus symbol.
+     * @param symbol The symbol id
+     * @return The RTP added, 0 for other symbols
+     */
+    public double getBonusRtp(int symbol) {
+      return estimates[firstBonus(game) + symbol];
+    }
+
+    /**
+     * Gets the half width of the confidence interval of the RTP added by a bonus symbol.
+     * @param symbol The symbol id
+     * @return The half width
+     */
+    public double getBonusRtpHalfWidth(int symbol) {
+      return halfWidths[firstBonus(game) + symbol];
+    }
+
+    /**
+     * Gets how many times more rounds plain Monte Carlo would need for the same RTP precision.
+     * @return The ratio of the plain variance per round to the variance per round of this run
+     */
+    public double getVarianceReduction() {
+      double variance = halfWidths[RTP] / Z;
+      return variance == 0 ? 1.0 : plainVariance / (variance * variance * rounds);
+    }
+
+    /**
+     * Prints a report of the estimates with their confidence intervals.
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+      out.println(String.format(Locale.ROOT, "Rounds          : %d", rounds));
+      out.println(String.format(Locale.ROOT, "Betting amount  : %d", bettingAmount));
+      out.println(String.format(Locale.ROOT, "RTP             : %.4f %% +/- %.4f %% (%d%% confidence)",
+              getRtp() * 100, getRtpHalfWidth() * 100, CONFIDENCE_PERCENT));
+      out.println(String.format(Locale.ROOT, "Target width    : %.4f %%, %s", targetWidth * 100,
+              isConverged() ? "reached" : "not reached within the round limit"));
+      out.println(String.format(Locale.ROOT, "Hit frequency   : %.4f %% +/- %.4f %%",
+              getHitFrequency() * 100, getHitFrequencyHalfWidth() * 100));
+      out.println(String.format(Locale.ROOT, "Std dev         : %.4f x bet", Math.sqrt(plainVariance)));
+      out.println(String.format(Locale.ROOT, "Efficiency      : %.1fx the rounds of plain Monte Carlo", getVarianceReduction()));
+      out.println("Strata (probability, rounds):");
+      SymbolTable symbols = game.getSymbols();
+      for (int stratum = 0; stratum < stratumBonus.length; stratum++) {
+        String name = stratumBonus[stratum] < 0 ? "no bonus" : "first bonus " + symbols.nameOf(stratumBonus[stratum]);
+        out.println(String.format(Locale.ROOT, "  %-40s %12.8f %14d", name, stratumProbabilities[stratum],
+                stratumRounds[stratum]));
+      }
+      out.println("Win combinations (applications per round, RTP of the symbol wins they are part of):");
+      CompiledCombinations combinations = game.getCombinations();
+      for (int combo = 0; combo < combinations.size(); combo++) {
+        out.println(String.format(Locale.ROOT, "  %-40s %.10f +/- %.10f %10.4f %% +/- %.4f %%", combinations.nameOf(combo),
+                getComboApplications(combo), getComboApplicationsHalfWidth(combo),
+                getComboRtp(combo) * 100, getComboRtpHalfWidth(combo) * 100));
+      }
+      out.println("Bonus symbols (RTP added):");
+      for (int symbol = 0; symbol < symbols.size(); symbol++) {
+        if (symbols.isBonus(symbol)) {
+          out.println(String.format(Locale.ROOT, "  %-40s %10.4f %% +/- %.4f %%", symbols.nameOf(symbol),
+                  getBonusRtp(symbol) * 100, getBonusRtpHalfWidth(symbol) * 100));
+        }
+      }
+    }
+  }
+
+  // Layout of the quantities measured per round: RTP, hit, applications and RTP of every
+  // combination, then the RTP added by every symbol
+  private static final int RTP = 0;
+  private static final int HIT = 1;
+  private static final int FIRST_COMBO = 2;
+
+  /**
+   * Gets the index of the first bonus quantity.
+   * @param game The compiled game
+   * @return The index of the RTP added by symbol id 0
+   */
+  private static int firstBonus(CompiledGame game) {
+    return FIRST_COMBO + 2 * game.getCombinations().size();
+  }
+
+  /**
+   * StratumStats class accumulating the weighted quantities of the rounds of every stratum.
+   */
+  private static final class StratumStats {
+    final long[] rounds;
+    /** Sum of weight times quantity, per stratum and quantity. */
+    final double[][] sums;
+    /** Sum of the squares of weight times quantity, per stratum and quantity. */
+    final double[][] squares;
+    /** Sum of weight times reward / bet squared, per stratum, for the plain variance. */
+    final double[] rewardSquares;
+
+    /**
+     * Constructs empty statistics.
+     * @param strata The number of strata
+     * @param quantities The number of quantities measured per round
+     */
+    StratumStats(int strata, int quantities) {
+      this.rounds = new long[strata];
+      this.sums = new double[strata][quantities];
+      this.squares = new double[strata][quantities];
+      this.rewardSquares = new double[strata];
+    }
+
+    /**
+     * Adds the statistics of another instance to this one.
+     * @param other The statistics to add
+     */
+    void merge(StratumStats other) {
+      for (int stratum = 0; stratum < rounds.length; stratum++) {
+        rounds[stratum] += other.rounds[stratum];
+        rewardSquares[stratum] += other.rewardSquares[stratum];
+        for (int quantity = 0; quantity < sums[stratum].length; quantity++) {
+          sums[stratum][quantity] += other.sums[stratum][quantity];
+          squares[stratum][quantity] += other.squares[stratum][quantity];
+        }
+      }
+    }
+
+    /**
+     * Gets the sample variance of a weighted quantity within a stratum.
+     * @param stratum The stratum
+     * @param quantity The quantity
+     * @return The variance, 0 with less than two rounds
+     */
+    double variance(int stratum, int quantity) {
+      long n = rounds[stratum];
+      if (n < 2) {
+        return 0.0;
+      }
+      double sum = sums[stratum][quantity];
+      return Math.max(0.0, (squares[stratum][quantity] - sum * sum / n) / (n - 1));
+    }
+  }
+
+  /**
+   * Constructs a simulator.
+   * @param game The compiled game to play
+   * @param threads The number of worker threads
+   * @throws IllegalArgumentException if threads is not positive
+   */
+  public StratifiedSimulator(CompiledGame game, int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    this.game = game;
+    this.threads = threads;
+    this.symbols = game.getSymbols();
+    this.combinations = game.getCombinations();
+    this.cells = game.getRows() * game.getColumns();
+    this.cellSamplers = game.cellSamplers();
+
+    List<Integer> standard = new ArrayList<>();
+    List<Integer> bonus = new ArrayList<>();
+    for (int symbol = 0; symbol < symbols.size(); symbol++) {
+      if (symbols.isStandard(symbol)) {
+        standard.add(symbol);
+      } else if (symbols.isBonus(symbol)) {
+        bonus.add(symbol);
+      }
+    }
+    this.standardSymbols = standard.stream().mapToInt(Integer::intValue).toArray();
+
+    this.standardSamplers = new AliasSampler[cells];
+    this.inverseProbabilities = new double[cells][symbols.size()];
+    this.inverseStandardProbabilities = new double[cells][symbols.size()];
+    double[] noBonusProbabilities = new double[cells];
+    for (int cell = 0; cell < cells; cell++) {
+      int[] weights = new int[standardSymbols.length];
+      long standardWeight = 0;
+      for (int i = 0; i < standardSymbols.length; i++) {
+        weights[i] = game.cellWeight(cell, standardSymbols[i]);
+        standardWeight += weights[i];
+      }
+      if (standardWeight > 0) {
+        standardSamplers[cell] = new AliasSampler(standardSymbols, weights);
+      }
+      noBonusProbabilities[cell] = (double) standardWeight / cellSamplers[cell].getTotalWeight();
+      for (int symbol = 0; symbol < symbols.size(); symbol++) {
+        int weight = game.cellWeight(cell, symbol);
+        if (weight > 0) {
+          inverseProbabilities[cell][symbol] = (double) cellSamplers[cell].getTotalWeight() / weight;
+          if (symbols.isStandard(symbol)) {
+            inverseStandardProbabilities[cell][symbol] = (double) standardWeight / weight;
+          }
+        }
+      }
+    }
+
+    this.fullBoosts = boosts(inverseProbabilities);
+    this.standardBoosts = boosts(inverseStandardProbabilities);
+    this.tiltBases = new double[cells + 1][symbols.size()];
+    for (int bonusCell = -1; bonusCell < cells; bonusCell++) {
+      for (int tiltSymbol : standardSymbols) {
+        double base = 1.0;
+        for (int cell = 0; cell < cells; cell++) {
+          boolean standardOnly = bonusCell < 0 || cell < bonusCell;
+          double[] inverse = standardOnly ? inverseStandardProbabilities[cell] : inverseProbabilities[cell];
+          if (cell != bonusCell && inverse[tiltSymbol] > 0) {
+            base *= 1 - TILT;
+          }
+        }
+        tiltBases[bonusCell + 1][tiltSymbol] = base;
+      }
+    }
+
+    // Stratum 0 has no bonus cell; stratum 1 + j has bonus symbol j in its first bonus cell
+    int strata = 1 + bonus.size();
+    this.stratumBonus = new int[strata];
+    this.stratumProbabilities = new double[strata];
+    this.positionCumulative = new double[strata][];
+    this.lastPositions = new int[strata];
+    stratumBonus[0] = -1;
+    stratumProbabilities[0] = 1.0;
+    for (int cell = 0; cell < cells; cell++) {
+      stratumProbabilities[0] *= noBonusProbabilities[cell];
+    }
+    for (int j = 0; j < bonus.size(); j++) {
+      int stratum = 1 + j;
+      stratumBonus[stratum] = bonus.get(j);
+      positionCumulative[stratum] = new double[cells];
+      double noBonusBefore = 1.0;
+      double total = 0.0;
+      for (int cell = 0; cell < cells; cell++) {
+        double probability = noBonusBefore * game.cellProbability(cell, bonus.get(j));
+        if (probability > 0) {
+          lastPositions[stratum] = cell;
+        }
+        total += probability;
+        positionCumulative[stratum][cell] = total;
+        noBonusBefore *= noBonusProbabilities[cell];
+      }
+      stratumProbabilities[stratum] = total;
+      if (total > 0) {
+        for (int cell = 0; cell < cells; cell++) {
+          positionCumulative[stratum][cell] /= total;
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the boost of every symbol in every cell: the ratio of its tilted to its plain
+   * probability, divided by 1 - {@value #TILT}.
+   * @param inverseProbabilities The inverse probability of every symbol in every cell, 0 if it cannot appear
+   * @return The boosts, 1 for bonus symbols and symbols that cannot appear
+   */
+  private double[][] boosts(double[][] inverseProbabilities) {
+    double[][] boosts = new double[cells][symbols.size()];
+    for (int cell = 0; cell < cells; cell++) {
+      Arrays.fill(boosts[cell], 1.0);
+      for (int symbol : standardSymbols) {
+        if (inverseProbabilities[cell][symbol] > 0) {
+          boosts[cell][symbol] = 1 + TILT * inverseProbabilities[cell][symbol] / (1 - TILT);
+        }
+      }
+    }
+    return boosts;
+  }
+
+  /**
+   * Plays rounds until the confidence interval of the RTP is at most the target width, or until
+   * the round limit is reached.
+   * @param targetWidth The requested full width of the RTP confidence interval, as a fraction;
+   *                    0 to play exactly maxRounds
+   * @param maxRounds The largest number of rounds to play
+   * @param bettingAmount The amount bet in every round
+   * @param seed The master seed; the same seed gives the same results with any number of threads
+   * @return The estimates and their confidence intervals
+   * @throws IllegalArgumentException if the target width is negative or maxRounds is not positive
+   * @throws IllegalStateException if a worker fails
+   */
+  public Result run(double targetWidth, long maxRounds, int bettingAmount, long seed) {
+    if (!(targetWidth >= 0)) {
+      throw new IllegalArgumentException("Target width must not be negative");
+    }
+    if (maxRounds <= 0) {
+      throw new IllegalArgumentException("Number of rounds must be positive");
+    }
+    int quantities = firstBonus(game) + symbols.size();
+    int strata = stratumBonus.length;
+    StratumStats total = new StratumStats(strata, quantities);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      long nextRound = 0;
+      long[] allocation = new long[strata];
+      // The pilot batch gives every possible stratum one chunk to measure its variance
+      for (int stratum = 0; stratum < strata; stratum++) {
+        allocation[stratum] = stratumProbabilities[stratum] > 0 ? CHUNK_ROUNDS : 0;
+      }
+      scale(allocation, maxRounds);
+      while (true) {
+        nextRound = playBatch(pool, allocation, nextRound, bettingAmount, seed, total);
+        double halfWidth = Z * Math.sqrt(estimateVariance(total, RTP));
+        if (2 * halfWidth <= targetWidth || nextRound >= maxRounds) {
+          break;
+        }
+        // With Neyman allocation the variance is (sum of probability times std dev)^2 / rounds
+        double spread = 0.0;
+        for (int stratum = 0; stratum < strata; stratum++) {
+          spread += stratumProbabilities[stratum] * Math.sqrt(total.variance(stratum, RTP));
+        }
+        double needed = targetWidth > 0 ? Math.pow(2 * Z * spread / targetWidth, 2) : Double.MAX_VALUE;
+        long batch = (long) Math.min(Math.max(needed - nextRound, CHUNK_ROUNDS), Math.min(nextRound, maxRounds - nextRound));
+        allocate(total, batch, allocation);
+        scale(allocation, maxRounds - nextRound);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return result(total, targetWidth, bettingAmount);
+  }
+
+  /**
+   * Splits a batch between the strata in proportion to their probability times their standard
+   * deviation, with at least {@value #MIN_STRATUM_SHARE} of the batch for every possible stratum.
+   * @param total The statistics of the rounds played so far
+   * @param batch The number of rounds of the batch
+   * @param allocation Receives the number of rounds of every stratum
+   */
+  private void allocate(StratumStats total, long batch, long[] allocation) {
+    int strata = allocation.length;
+    double[] scores = new double[strata];
+    double scoreSum = 0.0;
+    int possible = 0;
+    for (int stratum = 0; stratum < strata; stratum++) {
+      if (stratumProbabilities[stratum] > 0) {
+        scores[stratum] = stratumProbabilities[stratum] * Math.sqrt(total.variance(stratum, RTP));
+        scoreSum += scores[stratum];
+        possible++;
+      }
+    }
+    for (int stratum = 0; stratum < strata; stratum++) {
+      if (stratumProbabilities[stratum] == 0) {
+        allocation[stratum] = 0;
+        continue;
+      }
+      double share = scoreSum > 0 ? scores[stratum] / scoreSum : 1.0 / possible;
+      allocation[stratum] = (long) Math.ceil(batch * Math.max(share, MIN_STRATUM_SHARE));
+    }
+  }
+
+  /**
+   * Scales an allocation down so that it stays within a number of rounds, keeping at least one
+   * round in every stratum that has rounds.
+   * @param allocation The number of rounds of every stratum, scaled in place
+   * @param limit The largest total number of rounds
+   */
+  private static void scale(long[] allocation, long limit) {
+    long sum = Arrays.stream(allocation).sum();
+    if (sum <= limit) {
+      return;
+    }
+    long left = limit;
+    for (int stratum = 0; stratum < allocation.length; stratum++) {
+      if (allocation[stratum] > 0) {
+        allocation[stratum] = Math.min(left, Math.max(1, (long) ((double) allocation[stratum] * limit / sum)));
+        left -= allocation[stratum];
+      }
+    }
+  }
+
+  /**
+   * Plays one batch in chunks on the pool and adds its statistics, merged in chunk order.
+   * @param pool The worker pool
+   * @param allocation The number of rounds of every stratum
+   * @param firstRound The index of the first round of the batch
+   * @param bettingAmount The amount bet in every round
+   * @param seed The master seed
+   * @param total The statistics to add the batch to
+   * @return The index after the last round of the batch
+   * @throws IllegalStateException if a worker fails
+   */
+  private long playBatch(ForkJoinPool pool, long[] allocation, long firstRound, int bettingAmount, long seed,
+                         StratumStats total) {
+    List<Future<StratumStats>> futures = new ArrayList<>();
+    long round = firstRound;
+    for (int stratum = 0; stratum < allocation.length; stratum++) {
+      for (long start = round; start < round + allocation[stratum]; start += CHUNK_ROUNDS) {
+        long chunkStart = start;
+        long chunkEnd = Math.min(start + CHUNK_ROUNDS, round + allocation[stratum]);
+        int chunkStratum = stratum;
+        futures.add(pool.submit(() -> play(seed, chunkStratum, chunkStart, chunkEnd, bettingAmount)));
+      }
+      round += allocation[stratum];
+    }
+    try {
+      for (Future<StratumStats> future : futures) {
+        total.merge(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Simulation interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Simulation failed", e.getCause());
+    }
+    return round;
+  }
+
+  /**
+   * Plays a range of rounds of one stratum on the current thread.
+   * @param seed The master seed
+   * @param stratum The stratum the rounds are drawn from
+   * @param firstRound The index of the first round to play
+   * @param endRound The index after the last round to play
+   * @param bettingAmount The amount bet in every round
+   * @return The statistics of the played rounds
+   */
+  private StratumStats play(long seed, int stratum, long firstRound, long endRound, int bettingAmount) {
+    int quantities = firstBonus(game) + symbols.size();
+    StratumStats stats = new StratumStats(stratumBonus.length, quantities);
+    double[] sums = stats.sums[stratum];
+    double[] squares = stats.squares[stratum];
+    double[] values = new double[quantities];
+    double[] boosts = new double[symbols.size()];
+    RoundRandom random = new RoundRandom();
+    Board board = game.newBoard();
+    byte[] boardCells = board.cells();
+    Outcome outcome = game.newOutcome();
+    for (long round = firstRound; round < endRound; round++) {
+      random.reset(seed, round);
+      int bonusCell = draw(random, stratum, boardCells);
+      double weight = weight(bonusCell, boardCells, boosts);
+      game.evaluate(board, outcome);
+      measure(outcome, bettingAmount, values);
+      for (int quantity = 0; quantity < quantities; quantity++) {
+        double value = weight * values[quantity];
+        sums[quantity] += value;
+        squares[quantity] += value * value;
+      }
+      stats.rewardSquares[stratum] += weight * values[RTP] * values[RTP];
+    }
+    stats.rounds[stratum] = endRound - firstRound;
+    return stats;
+  }
+
+  /**
+   * Draws a board of a stratum from the mixture of the plain and tilted distributions.
+   * @param random The random generator of the round
+   * @param stratum The stratum
+   * @param boardCells Receives the symbol id of every cell
+   * @return The first bonus cell, or -1 in the stratum without a bonus cell
+   */
+  private int draw(RoundRandom random, int stratum, byte[] boardCells) {
+    int tiltSymbol = random.nextDouble() < PLAIN_SHARE ? -1 : standardSymbols[random.nextInt(standardSymbols.length)];
+    int bonusCell = -1;
+    if (stratum > 0) {
+      double draw = random.nextDouble();
+      double[] cumulative = positionCumulative[stratum];
+      // The last possible position catches a draw above a cumulative total rounded below 1
+      bonusCell = lastPositions[stratum];
+      for (int cell = 0; cell < cells; cell++) {
+        if (draw < cumulative[cell]) {
+          bonusCell = cell;
+          break;
+        }
+      }
+    }
+    for (int cell = 0; cell < cells; cell++) {
+      if (cell == bonusCell) {
+        boardCells[cell] = (byte) stratumBonus[stratum];
+        continue;
+      }
+      boolean standardOnly = bonusCell < 0 || cell < bonusCell;
+      double[] inverse = standardOnly ? inverseStandardProbabilities[cell] : inverseProbabilities[cell];
+      if (tiltSymbol >= 0 && inverse[tiltSymbol] > 0 && random.nextDouble() < TILT) {
+        boardCells[cell] = (byte) tiltSymbol;
+      } else {
+        boardCells[cell] = (byte) (standardOnly ? standardSamplers[cell] : cellSamplers[cell]).sample(random);
+      }
+    }
+    return bonusCell;
+  }
+
+  /**
+   * Computes the importance weight of a board: its probability within the stratum divided by
+   * its probability under the sampling mixture. Only the free cells differ between the two: a
+   * free cell that may hold the tilt symbol scales the tilted probability by 1 - {@value #TILT},
+   * and by the boost of the cell if it does hold the tilt symbol.
+   * @param bonusCell The first bonus cell, or -1
+   * @param boardCells The symbol id of every cell
+   * @param boosts Scratch space of the size of the symbol table
+   * @return The weight
+   */
+  private double weight(int bonusCell, byte[] boardCells, double[] boosts) {
+    for (int tiltSymbol : standardSymbols) {
+      boosts[tiltSymbol] = 1.0;
+    }
+    for (int cell = 0; cell < cells; cell++) {
+      if (cell != bonusCell) {
+        int symbol = boardCells[cell];
+        boosts[symbol] *= (bonusCell < 0 || cell < bonusCell ? standardBoosts : fullBoosts)[cell][symbol];
+      }
+    }
+    double tiltedRatios = 0.0;
+    double[] bases = tiltBases[bonusCell + 1];
+    for (int tiltSymbol : standardSymbols) {
+      tiltedRatios += bases[tiltSymbol] * boosts[tiltSymbol];
+    }
+    return 1.0 / (PLAIN_SHARE + (1 - PLAIN_SHARE) * tiltedRatios / standardSymbols.length);
+  }
+
+  /**
+   * Computes the quantities measured for one round, in the order described by {@link Result}.
+   * @param outcome The outcome of the round
+   * @param bettingAmount The amount bet
+   * @param values Receives the quantities
+   */
+  private void measure(Outcome outcome, int bettingAmount, double[] values) {
+    Arrays.fill(values, 0.0);
+    double baseReward = 0.0;
+    for (int symbol = 0; symbol < outcome.sameCombos.length; symbol++) {
+      if (!outcome.isWinning(symbol)) {
+        continue;
+      }
+      double symbolRtp = outcome.symbolReward(symbol, bettingAmount) / bettingAmount;
+      baseReward += symbolRtp * bettingAmount;
+      if (outcome.sameCombos[symbol] >= 0) {
+        values[FIRST_COMBO + 2 * outcome.sameCombos[symbol]]++;
+        values[FIRST_COMBO + 2 * outcome.sameCombos[symbol] + 1] += symbolRtp;
+      }
+      for (int i = 0; i < outcome.matchedAreaCount; i++) {
+        if (outcome.matchedAreaSymbols[i] == symbol) {
+          int combo = combinations.areaCombo(outcome.matchedAreas[i]);
+          values[FIRST_COMBO + 2 * combo]++;
+          values[FIRST_COMBO + 2 * combo + 1] += symbolRtp;
+        }
+      }
+    }
+    double reward = outcome.applyBonus(baseReward);
+    if (baseReward > 0 && outcome.bonusSymbol >= 0) {
+      values[firstBonus(game) + outcome.bonusSymbol] = (reward - baseReward) / bettingAmount;
+    }
+    values[RTP] = reward / bettingAmount;
+    values[HIT] = reward > 0 ? 1.0 : 0.0;
+  }
+
+  /**
+   * Gets the variance of the stratified estimate of a quantity.
+   * @param total The statistics of all rounds
+   * @param quantity The quantity
+   * @return The sum over strata of probability squared times the variance of the stratum mean
+   */
+  private double estimateVariance(StratumStats total, int quantity) {
+    double variance = 0.0;
+    for (int stratum = 0; stratum < stratumBonus.length; stratum++) {
+      if (total.rounds[stratum] > 0) {
+        double probability = stratumProbabilities[stratum];
+        variance += probability * probability * total.variance(stratum, quantity) / total.rounds[stratum];
+      }
+    }
+    return variance;
+  }
+
+  /**
+   * Builds the result from the statistics of all rounds.
+   * @param total The statistics of all rounds
+   * @param targetWidth The requested width of the RTP confidence interval
+   * @param bettingAmount The amount bet in every round
+   * @return The result
+   */
+  private Result result(StratumStats total, double targetWidth, int bettingAmount) {
+    int quantities = total.sums[0].length;
+    double[] estimates = new double[quantities];
+    double[] halfWidths = new double[quantities];
+    double meanSquare = 0.0;
+    for (int stratum = 0; stratum < stratumBonus.length; stratum++) {
+      if (total.rounds[stratum] == 0) {
+        continue;
+      }
+      double probability = stratumProbabilities[stratum];
+      for (int quantity = 0; quantity < quantities; quantity++) {
+        estimates[quantity] += probability * total.sums[stratum][quantity] / total.rounds[stratum];
+      }
+      meanSquare += probability * total.rewardSquares[stratum] / total.rounds[stratum];
+    }
+    for (int quantity = 0; quantity < quantities; quantity++) {
+      halfWidths[quantity] = Z * Math.sqrt(estimateVariance(total, quantity));
+    }
+    double plainVariance = Math.max(0.0, meanSquare - estimates[RTP] * estimates[RTP]);
+    return new Result(game, bettingAmount, targetWidth, Arrays.stream(total.rounds).sum(), estimates, halfWidths,
+            plainVariance, stratumBonus.clone(), stratumProbabilities.clone(), total.rounds.clone());
+  }
+}
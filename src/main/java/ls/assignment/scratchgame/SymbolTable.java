@@ -0,0 +1,231 @@
+package ls.assignment.scratchgame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SymbolTable class interning every symbol of a {@link GameConfiguration} to a small id.
+ * Symbol properties are kept in parallel primitive arrays indexed by id, so evaluation
+ * code never needs a map lookup or a string comparison.
+ * @author LOTHFY ( LS )
+ */
+public final class SymbolTable {
+  /** Maximum number of symbols, so that every id fits into a positive byte. */
+  public static final int MAX_SYMBOLS = Byte.MAX_VALUE;
+
+  /** Symbol type "standard". */
+  public static final byte TYPE_STANDARD = 0;
+  /** Symbol type "bonus". */
+  public static final byte TYPE_BONUS = 1;
+  /** Any other symbol type. */
+  public static final byte TYPE_OTHER = 2;
+
+  /** No impact (standard symbols). */
+  public static final byte IMPACT_NONE = 0;
+  /** Impact "multiply_reward". */
+  public static final byte IMPACT_MULTIPLY_REWARD = 1;
+  /** Impact "extra_bonus". */
+  public static final byte IMPACT_EXTRA_BONUS = 2;
+  /** Impact "miss" or any other impact that leaves the reward untouched. */
+  public static final byte IMPACT_MISS = 3;
+
+  private final String[] names;
+  private final byte[] types;
+  private final byte[] impacts;
+  private final double[] rewardMultipliers;
+  private final long[] rewardMultiplierMillis;
+  private final int[] extras;
+  private final Map<String, Integer> ids;
+
+  /**
+   * Constructor used by {@link #of(GameConfiguration)} and {@link ConfigSnapshot}.
+   * @param names The symbol names in id order
+   * @param types The type of every symbol
+   * @param impacts The impact of every symbol
+   * @param rewardMultipliers The reward multiplier of every symbol (0 when absent)
+   * @param extras The extra value of every symbol (0 when absent)
+   * @throws IllegalStateException if a reward multiplier is not finite or too large
+   */
+  SymbolTable(String[] names, byte[] types, byte[] impacts, double[] rewardMultipliers, int[] extras) {
+    this.names = names;
+    this.types = types;
+    this.impacts = impacts;
+    this.rewardMultipliers = rewardMultipliers;
+    this.rewardMultiplierMillis = new long[rewardMultipliers.length];
+    for (int id = 0; id < rewardMultipliers.length; id++) {
+      rewardMultiplierMillis[id] = Payout.toMillis(rewardMultipliers[id]);
+    }
+    this.extras = extras;
+    this.ids = new HashMap<>();
+    for (int id = 0; id < names.length; id++) {
+      ids.put(names[id], id);
+    }
+  }
+
+  /**
+   * Builds the symbol table of a configuration. Ids follow the order of the configured symbols.
+   * @param config The game configuration
+   * @return The symbol table
+   * @throws IllegalStateException if there are too many symbols or a symbol lacks a value its type requires
+   */
+  public static SymbolTable of(GameConfiguration config) {
+    Map<String, Symbol> symbols = config.getSymbols();
+    if (symbols == null || symbols.isEmpty()) {
+      throw new IllegalStateException("No symbols defined");
+    }
+    if (symbols.size() > MAX_SYMBOLS) {
+      throw new IllegalStateException("Too many symbols: " + symbols.size() + " (max " + MAX_SYMBOLS + ")");
+    }
+
+    int count = symbols.size();
+    String[] names = new String[count];
+    byte[] types = new byte[count];
+    byte[] impacts = new byte[count];
+    double[] rewardMultipliers = new double[count];
+    int[] extras = new int[count];
+
+    int id = 0;
+    for (Map.Entry<String, Symbol> entry : symbols.entrySet()) {
+      String name = entry.getKey();
+      Symbol symbol = entry.getValue();
+      names[id] = name;
+      if ("standard".equals(symbol.getType())) {
+        types[id] = TYPE_STANDARD;
+        impacts[id] = IMPACT_NONE;
+        rewardMultipliers[id] = required(symbol.getRewardMultiplier(), name, "reward_multiplier");
+      } else if ("bonus".equals(symbol.getType())) {
+        types[id] = TYPE_BONUS;
+        if ("multiply_reward".equals(symbol.getImpact())) {
+          impacts[id] = IMPACT_MULTIPLY_REWARD;
+          rewardMultipliers[id] = required(symbol.getRewardMultiplier(), name, "reward_multiplier");
+        } else if ("extra_bonus".equals(symbol.getImpact())) {
+          impacts[id] = IMPACT_EXTRA_BONUS;
+          extras[id] = required(symbol.getExtra(), name, "extra");
+        } else {
+          impacts[id] = IMPACT_MISS;
+        }
+      } else {
+        types[id] = TYPE_OTHER;
+        impacts[id] = IMPACT_NONE;
+      }
+      id++;
+    }
+    return new SymbolTable(names, types, impacts, rewardMultipliers, extras);
+  }
+
+  /**
+   * Checks that a symbol property required by its type is present.
+   * @param value The property value
+   * @param symbol The symbol name
+   * @param property The property name
+   * @param <T> The property type
+   * @return The value
+   * @throws IllegalStateException if the value is missing
+   */
+  private static <T> T required(T value, String symbol, String property) {
+    if (value == null) {
+      throw new IllegalStateException("Symbol " + symbol + " has no " + property);
+    }
+    return value;
+  }
+
+  /**
+   * Gets the number of interned symbols.
+   * @return The number of symbols
+   */
+  public int size() {
+    return names.length;
+  }
+
+  /**
+   * Gets the id of a symbol.
+   * @param name The symbol name
+   * @return The symbol id, or -1 if the symbol is unknown
+   */
+  public int idOf(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Gets the name of a symbol.
+   * @param id The symbol id
+   * @return The symbol name
+   */
+  public String nameOf(int id) {
+    return names[id];
+  }
+
+  /**
+   * Checks whether a symbol is a standard symbol.
+   * @param id The symbol id
+   * @return true if the symbol type is "standard"
+   */
+  public boolean isStandard(int id) {
+    return types[id] == TYPE_STANDARD;
+  }
+
+  /**
+   * Checks whether a symbol is a bonus symbol.
+   * @param id The symbol id
+   * @return true if the symbol type is "bonus"
+   */
+  public boolean isBonus(int id) {
+    return types[id] == TYPE_BONUS;
+  }
+
+  /**
+   * Gets the type of a symbol.
+   * @param id The symbol id
+   * @return One of the TYPE_ constants
+   */
+  public byte typeOf(int id) {
+    return types[id];
+  }
+
+  /**
+   * Gets the impact of a symbol.
+   * @param id The symbol id
+   * @return One of the IMPACT_ constants
+   */
+  public byte impactOf(int id) {
+    return impacts[id];
+  }
+
+  /**
+   * Gets the reward multiplier of a symbol.
+   * @param id The symbol id
+   * @return The reward multiplier, or 0 if the symbol has none
+   */
+  public double rewardMultiplierOf(int id) {
+    return rewardMultipliers[id];
+  }
+
+  /**
+   * Gets the reward multiplier of a symbol in fixed point, see {@link Payout}.
+   * @param id The symbol id
+   * @return The reward multiplier in thousandths, or 0 if the symbol has none
+   */
+  public long rewardMultiplierMillisOf(int id) {
+    return rewardMultiplierMillis[id];
+  }
+
+  /**
+   * Gets the extra value of a symbol.
+   * @param id The symbol id
+   * @return The extra value, or 0 if the symbol has none
+   */
+  public int extraOf(int id) {
+    return extras[id];
+  }
+
+  /**
+   * Returns a string representation of the symbol table.
+   * @return A string listing the interned symbol names
+   */
+  @Override
+  public String toString() {
+    return "SymbolTable" + Arrays.toString(names);
+  }
+}
@@ -1,15 +1,73 @@
 package ls.assignment.scratchgame.test;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import ls.assignment.scratchgame.AuditLog;
+import ls.assignment.scratchgame.AuditLogReader;
+import ls.assignment.scratchgame.BatchPlayer;
+import ls.assignment.scratchgame.Board;
+import ls.assignment.scratchgame.CompiledCombinations;
+import ls.assignment.scratchgame.CompiledGame;
+import ls.assignment.scratchgame.ConfigSnapshot;
+import ls.assignment.scratchgame.EvaluationCache;
+import ls.assignment.scratchgame.ExactRtpCalculator;
 import ls.assignment.scratchgame.GameConfiguration;
+import ls.assignment.scratchgame.GameMetrics;
+import ls.assignment.scratchgame.IncrementalEvaluator;
+import ls.assignment.scratchgame.Main;
 import ls.assignment.scratchgame.Matrix;
-
+import ls.assignment.scratchgame.MutableEvaluationResult;
+import ls.assignment.scratchgame.PaytableTuner;
+import ls.assignment.scratchgame.Payout;
+import ls.assignment.scratchgame.PayoutHistogram;
+import ls.assignment.scratchgame.PlayServer;
+import ls.assignment.scratchgame.ReloadableGame;
+import ls.assignment.scratchgame.ResultStore;
+import ls.assignment.scratchgame.ResultStoreReader;
+import ls.assignment.scratchgame.RoundRandom;
+import ls.assignment.scratchgame.RoundWriter;
+import ls.assignment.scratchgame.SimulationShard;
+import ls.assignment.scratchgame.SimulationStats;
+import ls.assignment.scratchgame.Simulator;
+import ls.assignment.scratchgame.StratifiedSimulator;
+
+import java.io.ByteArrayOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 /**
  * EvaluationTest.java
@@ -25,8 +83,9 @@ public class EvaluationTest {
    * Loads the configuration from a JSON file and executes all test methods.
    * @param args Command line arguments (not used)
    * @throws IOException If there is an error reading the configuration file
+   * @throws InterruptedException If a request to the play server is interrupted
    */
-  public static void main(String[] args) throws IOException {
+  public static void main(String[] args) throws IOException, InterruptedException, JMException {
     // Load configuration from the JSON file
     FileReader reader = new FileReader("config.json");
     Gson gson = new Gson();
@@ -45,6 +104,31 @@ public class EvaluationTest {
     testSameSymbolsVertically();
     testSameSymbolsDiagonallyLeftToRight();
     testSameSymbolsDiagonallyRightToLeft();
+    testCompiledEvaluationMatchesReference();
+    testBitboardEvaluationMatchesReferenceOnFixedCases();
+    testLargeBoardEvaluationMatchesReference();
+    testCompiledCellWeights();
+    testCompiledCoveredAreas();
+    testExactRtpMatchesEnumeration();
+    testRoundReplay();
+    testSimulationStats();
+    testBatchPlayMatchesReference();
+    testEvaluationCache();
+    testFixedPointPayout();
+    testPlayServer();
+    testAuditLog();
+    testConfigSnapshot();
+    testReloadableGame();
+    testGameMetrics();
+    testFlightRecorderEvents();
+    testRoundWriter();
+    testResultStore();
+    testPayoutHistogram();
+    testStratifiedSimulation();
+    testSimulationShards();
+    testPaytableTuner();
+    testIncrementalEvaluation();
+    testMutableEvaluationResult();
   }
 
   /**
@@ -432,4 +516,1600 @@ public class EvaluationTest {
 
     System.out.println("Test passed for testSameSymbolsDiagonallyRightToLeft!");
   }
+
+  /**
+   * Tests that evaluating a board of a compiled game gives the same result as the
+   * reference evaluation on the configuration, for a large number of random boards.
+   */
+  public static void testCompiledEvaluationMatchesReference() {
+    System.out.println("Running test: testCompiledEvaluationMatchesReference");
+
+    CompiledGame game = CompiledGame.compile(config);
+    Random random = new Random(42);
+    int bettingAmount = 100;
+
+    for (int round = 0; round < 100_000; round++) {
+      String[][] matrix = game.generateMatrix(random).getMatrix();
+      Matrix.EvaluationResult expected = new Matrix(matrix, 3, 3).evaluateRules(config, bettingAmount);
+      Matrix.EvaluationResult actual = new Matrix(matrix, 3, 3).evaluateRules(game, bettingAmount);
+      assertSameResult(expected, actual, matrix);
+    }
+
+    String[][][] misfits = {
+            {{"A", "A", "A", "B"}, {"A", "A", "A", "B"}, {"A", "A", "A", "B"}},
+            {{"A", "A", "A"}, {"A", "A", "A"}, {"A", "A", "A"}, {"B", "B", "B"}}
+    };
+    for (String[][] matrix : misfits) {
+      try {
+        new Matrix(matrix, matrix.length, matrix[0].length).evaluateRules(game, bettingAmount);
+        assert false : "Test failed! A " + matrix.length + "x" + matrix[0].length + " matrix was evaluated as 3x3";
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+      try {
+        new Matrix(matrix, matrix.length, matrix[0].length).evaluateRules(game, bettingAmount, new MutableEvaluationResult(game));
+        assert false : "Test failed! A " + matrix.length + "x" + matrix[0].length + " matrix was evaluated as 3x3 into a result";
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+
+    System.out.println("Test passed for testCompiledEvaluationMatchesReference!");
+  }
+
+  /**
+   * Tests that the bitboard engine used for boards of up to 64 cells gives the same result as
+   * the reference evaluation for every matrix used by the tests above, with and without bonus symbols.
+   */
+  public static void testBitboardEvaluationMatchesReferenceOnFixedCases() {
+    System.out.println("Running test: testBitboardEvaluationMatchesReferenceOnFixedCases");
+
+    String[][][] matrices = {
+            {{"A", "A", "A"}, {"B", "C", "D"}, {"F", "E", "F"}},
+            {{"A", "A", "A"}, {"A", "C", "D"}, {"F", "E", "F"}},
+            {{"A", "A", "A"}, {"A", "A", "D"}, {"F", "E", "F"}},
+            {{"A", "A", "A"}, {"A", "A", "A"}, {"F", "E", "F"}},
+            {{"A", "A", "A"}, {"A", "A", "A"}, {"A", "F", "E"}},
+            {{"A", "A", "A"}, {"A", "A", "A"}, {"A", "A", "F"}},
+            {{"A", "A", "A"}, {"A", "A", "A"}, {"A", "A", "A"}},
+            {{"A", "A", "A"}, {"B", "B", "B"}, {"C", "C", "C"}},
+            {{"A", "B", "C"}, {"A", "B", "C"}, {"A", "B", "C"}},
+            {{"A", "B", "C"}, {"D", "A", "E"}, {"F", "E", "A"}},
+            {{"C", "B", "A"}, {"D", "A", "E"}, {"A", "E", "F"}},
+            {{"A", "A", "A"}, {"10x", "C", "+500"}, {"F", "E", "F"}},
+            {{"A", "A", "MISS"}, {"+1000", "A", "5x"}, {"F", "E", "A"}},
+            {{"10x", "B", "C"}, {"D", "E", "F"}, {"A", "B", "C"}}
+    };
+    CompiledGame game = CompiledGame.compile(config);
+    int bettingAmount = 100;
+
+    for (String[][] matrix : matrices) {
+      Matrix.EvaluationResult expected = new Matrix(matrix, 3, 3).evaluateRules(config, bettingAmount);
+      Matrix.EvaluationResult actual = new Matrix(matrix, 3, 3).evaluateRules(game, bettingAmount);
+      assertSameResult(expected, actual, matrix);
+    }
+
+    System.out.println("Test passed for testBitboardEvaluationMatchesReferenceOnFixedCases!");
+  }
+
+  /**
+   * Tests that boards of more than 64 cells, which use the array-based engine, give the same
+   * result as the reference evaluation. Uses a generated 9x9 configuration with one dominant symbol.
+   */
+  public static void testLargeBoardEvaluationMatchesReference() {
+    System.out.println("Running test: testLargeBoardEvaluationMatchesReference");
+
+    int size = 9;
+    StringBuilder json = new StringBuilder();
+    json.append("{\"columns\": ").append(size).append(", \"rows\": ").append(size).append(", \"symbols\": {")
+            .append("\"A\": {\"reward_multiplier\": 5, \"type\": \"standard\"},")
+            .append("\"B\": {\"reward_multiplier\": 1.5, \"type\": \"standard\"},")
+            .append("\"10x\": {\"reward_multiplier\": 10, \"type\": \"bonus\", \"impact\": \"multiply_reward\"},")
+            .append("\"+500\": {\"extra\": 500, \"type\": \"bonus\", \"impact\": \"extra_bonus\"},")
+            .append("\"MISS\": {\"type\": \"bonus\", \"impact\": \"miss\"}},")
+            .append("\"probabilities\": {\"standard_symbols\": [");
+    for (int row = 0; row < size; row++) {
+      for (int col = 0; col < size; col++) {
+        json.append(row + col == 0 ? "" : ",").append("{\"column\": ").append(col).append(", \"row\": ").append(row)
+                .append(", \"symbols\": {\"A\": 12, \"B\": 2}}");
+      }
+    }
+    json.append("], \"bonus_symbols\": {\"symbols\": {\"10x\": 1, \"+500\": 1, \"MISS\": 1}}},")
+            .append("\"win_combinations\": {")
+            .append("\"same_symbol_20_times\": {\"reward_multiplier\": 1, \"when\": \"same_symbols\", \"count\": 20},")
+            .append("\"same_symbol_60_times\": {\"reward_multiplier\": 3, \"when\": \"same_symbols\", \"count\": 60},")
+            .append("\"same_symbols_horizontally\": {\"reward_multiplier\": 2, \"when\": \"linear_symbols\", \"covered_areas\": [");
+    for (int row = 0; row < size; row++) {
+      json.append(row == 0 ? "[" : ",[");
+      for (int col = 0; col < size; col++) {
+        json.append(col == 0 ? "" : ",").append('"').append(row).append(':').append(col).append('"');
+      }
+      json.append(']');
+    }
+    json.append(",[\"0:0\",\"9:0\"]]}}}");
+    GameConfiguration largeConfig = new Gson().fromJson(json.toString(), GameConfiguration.class);
+
+    CompiledGame game = CompiledGame.compile(largeConfig);
+    Random random = new Random(7);
+    int bettingAmount = 10;
+
+    for (int round = 0; round < 20_000; round++) {
+      String[][] matrix = game.generateMatrix(random).getMatrix();
+      Matrix.EvaluationResult expected = new Matrix(matrix, size, size).evaluateRules(largeConfig, bettingAmount);
+      Matrix.EvaluationResult actual = new Matrix(matrix, size, size).evaluateRules(game, bettingAmount);
+      assertSameResult(expected, actual, matrix);
+    }
+
+    System.out.println("Test passed for testLargeBoardEvaluationMatchesReference!");
+  }
+
+  /**
+   * Tests that compiling the configuration gives every cell the symbols the reference generator
+   * draws from, with the standard weights of the cell and the bonus weights overriding them, and
+   * that the alias samplers draw every symbol with its configured probability over a fixed seed.
+   */
+  public static void testCompiledCellWeights() throws IOException {
+    System.out.println("Running test: testCompiledCellWeights");
+
+    CompiledGame game = CompiledGame.compile(config);
+    int columns = game.getColumns();
+    int cellCount = game.getRows() * columns;
+    int symbolCount = game.getSymbols().size();
+
+    // The reference generator combines the standard symbols of a cell with the bonus symbols
+    Gson gson = new Gson();
+    TypeToken<Map<String, Integer>> weightsType = new TypeToken<Map<String, Integer>>() { };
+    JsonObject probabilities = gson.fromJson(Files.readString(Path.of("config.json")), JsonObject.class)
+            .getAsJsonObject("probabilities");
+    Map<String, Integer> bonusWeights = gson.fromJson(
+            probabilities.getAsJsonObject("bonus_symbols").get("symbols"), weightsType);
+    List<Map<String, Integer>> cellWeights = new ArrayList<>(Collections.nCopies(cellCount, null));
+    for (JsonElement element : probabilities.getAsJsonArray("standard_symbols")) {
+      JsonObject cell = element.getAsJsonObject();
+      Map<String, Integer> weights = new HashMap<>(gson.fromJson(cell.get("symbols"), weightsType));
+      weights.putAll(bonusWeights);
+      cellWeights.set(cell.get("row").getAsInt() * columns + cell.get("column").getAsInt(), weights);
+    }
+
+    for (int cell = 0; cell < cellCount; cell++) {
+      Map<String, Integer> expected = cellWeights.get(cell);
+      assert expected != null : "Test failed! Cell " + cell + " has no probabilities in config.json";
+      Map<String, Integer> compiled = new HashMap<>();
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        if (game.cellWeight(cell, symbol) > 0) {
+          compiled.put(game.getSymbols().nameOf(symbol), game.cellWeight(cell, symbol));
+        }
+      }
+      expected.values().removeIf(weight -> weight == 0);
+      assert compiled.equals(expected) :
+              "Test failed! Cell " + cell + " compiled to " + compiled + ", reference draws from " + expected;
+    }
+
+    int boards = 200_000;
+    long[][] counts = new long[cellCount][symbolCount];
+    Random random = new Random(11);
+    Board board = game.newBoard();
+    for (int i = 0; i < boards; i++) {
+      game.generateBoard(random, board);
+      for (int cell = 0; cell < cellCount; cell++) {
+        counts[cell][board.get(cell)]++;
+      }
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      double bonusProbability = 0;
+      long bonusCount = 0;
+      for (int symbol = 0; symbol < symbolCount; symbol++) {
+        double probability = game.cellProbability(cell, symbol);
+        assertFrequency(counts[cell][symbol], boards, probability,
+                game.getSymbols().nameOf(symbol) + " in cell " + cell);
+        if (game.getSymbols().isBonus(symbol)) {
+          bonusProbability += probability;
+          bonusCount += counts[cell][symbol];
+        }
+      }
+      assertFrequency(bonusCount, boards, bonusProbability, "bonus symbols in cell " + cell);
+    }
+
+    System.out.println("Test passed for testCompiledCellWeights!");
+  }
+
+  /**
+   * Tests that compiling covered areas keeps the areas inside the board, drops the areas reaching
+   * outside it, and rejects malformed and negative coordinates with the name of the combination.
+   */
+  public static void testCompiledCoveredAreas() throws IOException {
+    System.out.println("Running test: testCompiledCoveredAreas");
+
+    Gson gson = new Gson();
+    String source = Files.readString(Path.of("config.json"));
+    int baseAreas = CompiledGame.compile(config).getCombinations().areaCount();
+
+    JsonObject json = gson.fromJson(source, JsonObject.class);
+    json.getAsJsonObject("win_combinations").add("same_symbols_corners", gson.fromJson(
+            "{\"reward_multiplier\": 4, \"when\": \"linear_symbols\", \"group\": \"corners\", \"covered_areas\": ["
+                    + "[\"0:0\", \"0:2\", \"2:0\", \"2:2\"], [\"0:0\", \"0:3\"], [\"3:0\", \"0:0\"], [\"2:2\", \"9:9\"]]}",
+            JsonObject.class));
+    CompiledGame game = CompiledGame.compile(gson.fromJson(json, GameConfiguration.class));
+    CompiledCombinations combinations = game.getCombinations();
+    int corners = combinations.idOf("same_symbols_corners");
+    assert combinations.areaCount() == baseAreas + 1 :
+            "Test failed! Expected " + (baseAreas + 1) + " areas, but got: " + combinations.areaCount();
+    int kept = -1;
+    for (int area = 0; area < combinations.areaCount(); area++) {
+      if (combinations.areaCombo(area) == corners) {
+        assert kept < 0 : "Test failed! An area reaching outside the board was kept";
+        kept = area;
+      }
+    }
+    long cornerCells = 1L << 0 | 1L << 2 | 1L << 6 | 1L << 8;
+    assert kept >= 0 && combinations.areaMask(kept) == cornerCells :
+            "Test failed! The corner area was not compiled to the corner cells";
+
+    String[][] invalidAreas = {{"0:0", "a:b"}, {"1", "0:0"}, {"0:0", null}, {"-1:0", "0:0"}, {"0:0", "0:-2"}};
+    for (String[] area : invalidAreas) {
+      JsonObject invalid = gson.fromJson(source, JsonObject.class);
+      JsonObject combo = invalid.getAsJsonObject("win_combinations").getAsJsonObject("same_symbols_horizontally");
+      combo.add("covered_areas", gson.toJsonTree(List.of(Arrays.asList(area))));
+      try {
+        CompiledGame.compile(gson.fromJson(invalid, GameConfiguration.class));
+        assert false : "Test failed! Covered area " + Arrays.toString(area) + " accepted";
+      } catch (IllegalStateException e) {
+        assert e.getMessage().contains("same_symbols_horizontally") :
+                "Test failed! Message does not name the combination: " + e.getMessage();
+      }
+    }
+
+    System.out.println("Test passed for testCompiledCoveredAreas!");
+  }
+
+  /**
+   * Asserts that an outcome drawn a number of times lies within five standard deviations of its
+   * expected count, and is never drawn when its probability is zero.
+   * @param count The number of draws of the outcome
+   * @param draws The number of draws
+   * @param probability The expected probability of the outcome
+   * @param what The outcome, for the failure message
+   */
+  private static void assertFrequency(long count, int draws, double probability, String what) {
+    double expected = draws * probability;
+    double sigma = Math.sqrt(draws * probability * (1 - probability));
+    assert Math.abs(count - expected) <= 5 * sigma :
+            "Test failed! Drew " + what + " " + count + " times, expected " + expected + " +/- " + sigma;
+  }
+
+  /**
+   * Tests the exact RTP calculation against a full enumeration of every board of a small
+   * 2x3 configuration with overlapping short areas, a multiplying and an extra bonus symbol.
+   */
+  public static void testExactRtpMatchesEnumeration() {
+    System.out.println("Running test: testExactRtpMatchesEnumeration");
+
+    String json = "{\"columns\": 3, \"rows\": 2, \"symbols\": {"
+            + "\"A\": {\"reward_multiplier\": 5, \"type\": \"standard\"},"
+            + "\"B\": {\"reward_multiplier\": 2, \"type\": \"standard\"},"
+            + "\"C\": {\"reward_multiplier\": 1.5, \"type\": \"standard\"},"
+            + "\"10x\": {\"reward_multiplier\": 10, \"type\": \"bonus\", \"impact\": \"multiply_reward\"},"
+            + "\"+50\": {\"extra\": 50, \"type\": \"bonus\", \"impact\": \"extra_bonus\"}},"
+            + "\"probabilities\": {\"standard_symbols\": ["
+            + "{\"column\": 0, \"row\": 0, \"symbols\": {\"A\": 1, \"B\": 2, \"C\": 3}},"
+            + "{\"column\": 1, \"row\": 0, \"symbols\": {\"A\": 3, \"B\": 2, \"C\": 1}},"
+            + "{\"column\": 2, \"row\": 0, \"symbols\": {\"A\": 2, \"B\": 1, \"C\": 1}},"
+            + "{\"column\": 0, \"row\": 1, \"symbols\": {\"A\": 2, \"B\": 2, \"C\": 2}},"
+            + "{\"column\": 1, \"row\": 1, \"symbols\": {\"A\": 1, \"B\": 1, \"C\": 4}},"
+            + "{\"column\": 2, \"row\": 1, \"symbols\": {\"A\": 3, \"B\": 3, \"C\": 1}}],"
+            + "\"bonus_symbols\": {\"symbols\": {\"10x\": 1, \"+50\": 2}}},"
+            + "\"win_combinations\": {"
+            + "\"same_symbol_4_times\": {\"reward_multiplier\": 1, \"when\": \"same_symbols\", \"count\": 4},"
+            + "\"same_symbol_6_times\": {\"reward_multiplier\": 4, \"when\": \"same_symbols\", \"count\": 6},"
+            + "\"same_symbols_horizontally\": {\"reward_multiplier\": 2, \"when\": \"linear_symbols\","
+            + " \"covered_areas\": [[\"0:0\", \"0:1\", \"0:2\"], [\"1:0\", \"1:1\", \"1:2\"]]},"
+            + "\"same_symbols_vertically\": {\"reward_multiplier\": 1.5, \"when\": \"linear_symbols\","
+            + " \"covered_areas\": [[\"0:0\", \"1:0\"], [\"0:1\", \"1:1\"], [\"0:2\", \"1:2\"]]}}}";
+    GameConfiguration smallConfig = new Gson().fromJson(json, GameConfiguration.class);
+    CompiledGame game = CompiledGame.compile(smallConfig);
+    int bettingAmount = 10;
+
+    int rows = game.getRows();
+    int columns = game.getColumns();
+    int cells = rows * columns;
+    int symbolCount = game.getSymbols().size();
+    int[] ids = new int[cells];
+    double expectedReward = 0.0;
+    double hitFrequency = 0.0;
+    double[] comboHitRates = new double[game.getCombinations().size()];
+    while (true) {
+      double probability = 1.0;
+      String[][] matrix = new String[rows][columns];
+      for (int cell = 0; cell < cells; cell++) {
+        probability *= game.cellProbability(cell, ids[cell]);
+        matrix[cell / columns][cell % columns] = game.getSymbols().nameOf(ids[cell]);
+      }
+      if (probability > 0) {
+        Matrix.EvaluationResult evaluated = new Matrix(matrix, rows, columns).evaluateRules(smallConfig, bettingAmount);
+        expectedReward += probability * evaluated.reward;
+        hitFrequency += evaluated.reward > 0 ? probability : 0.0;
+        Set<String> applied = new HashSet<>();
+        for (List<String> combinations : evaluated.appliedWinningCombinations.values()) {
+          applied.addAll(combinations);
+        }
+        for (String name : applied) {
+          comboHitRates[game.getCombinations().idOf(name)] += probability;
+        }
+      }
+      int cell = 0;
+      while (cell < cells && ++ids[cell] == symbolCount) {
+        ids[cell++] = 0;
+      }
+      if (cell == cells) {
+        break;
+      }
+    }
+
+    ExactRtpCalculator.Result result = new ExactRtpCalculator(game).calculate(bettingAmount);
+    System.out.println("Exact RTP: " + result.rtp + ", enumerated RTP: " + expectedReward / bettingAmount);
+    assert Math.abs(result.rtp - expectedReward / bettingAmount) < 1e-9 :
+            "Test failed! Expected RTP: " + expectedReward / bettingAmount + ", but got: " + result.rtp;
+    assert Math.abs(result.hitFrequency - hitFrequency) < 1e-9 :
+            "Test failed! Expected hit frequency: " + hitFrequency + ", but got: " + result.hitFrequency;
+
+    // Rows and columns can apply a combination more than once per round, so hit rates are checked on their own
+    int rounds = 400_000;
+    SimulationStats simulated = new Simulator(game, 2).run(rounds, bettingAmount, 5);
+    for (int combo = 0; combo < comboHitRates.length; combo++) {
+      String name = game.getCombinations().nameOf(combo);
+      assert Math.abs(result.comboHitRates[combo] - comboHitRates[combo]) < 1e-9 :
+              "Test failed! Expected hit rate of " + name + ": " + comboHitRates[combo] + ", but got: " + result.comboHitRates[combo];
+      double sigma = Math.sqrt(comboHitRates[combo] * (1 - comboHitRates[combo]) / rounds);
+      assert Math.abs(simulated.getCombinationHitRate(combo) - result.comboHitRates[combo]) <= 5 * sigma :
+              "Test failed! Simulated hit rate of " + name + ": " + simulated.getCombinationHitRate(combo)
+                      + ", exact: " + result.comboHitRates[combo];
+    }
+    assert result.comboApplications[game.getCombinations().idOf("same_symbols_vertically")]
+            > result.comboHitRates[game.getCombinations().idOf("same_symbols_vertically")] :
+            "Test failed! Hit rate of a combination with several areas not below its expected applications";
+
+    // On config.json several symbols can hit same_symbol_3_times in one round
+    CompiledGame configGame = CompiledGame.compile(config);
+    ExactRtpCalculator.Result configResult = new ExactRtpCalculator(configGame).calculate(bettingAmount);
+    SimulationStats configSimulated = new Simulator(configGame, 2).run(rounds, bettingAmount, 5);
+    for (int combo = 0; combo < configResult.comboHitRates.length; combo++) {
+      double exact = configResult.comboHitRates[combo];
+      double sigma = Math.sqrt(exact * (1 - exact) / rounds);
+      assert Math.abs(configSimulated.getCombinationHitRate(combo) - exact) <= 5 * sigma + 1e-12 :
+              "Test failed! Simulated hit rate of " + configGame.getCombinations().nameOf(combo) + ": "
+                      + configSimulated.getCombinationHitRate(combo) + ", exact: " + exact;
+    }
+
+    System.out.println("Test passed for testExactRtpMatchesEnumeration!");
+  }
+
+  /**
+   * Tests that every round can be replayed from its seed and index, and that the simulation
+   * plays the same rounds whatever the number of threads.
+   */
+  public static void testRoundReplay() {
+    System.out.println("Running test: testRoundReplay");
+
+    CompiledGame game = CompiledGame.compile(config);
+    long seed = 42;
+    RoundRandom random = new RoundRandom();
+    int distinct = 0;
+    String[][] previous = null;
+    for (long round = 0; round < 1_000; round++) {
+      random.reset(seed, round);
+      String[][] played = game.generateMatrix(random).getMatrix();
+      String[][] replayed = Matrix.generateMatrix(config, new RoundRandom(seed, round)).getMatrix();
+      assert Arrays.deepEquals(played, replayed) :
+              "Test failed! Round " + round + " replayed as " + Arrays.deepToString(replayed)
+                      + " instead of " + Arrays.deepToString(played);
+      distinct += previous == null || !Arrays.deepEquals(previous, played) ? 1 : 0;
+      previous = played;
+    }
+    assert distinct > 900 : "Test failed! Only " + distinct + " rounds differ from the previous one";
+
+    SimulationStats single = new Simulator(game, 1).run(100_000, 100, seed);
+    SimulationStats parallel = new Simulator(game, 3).run(100_000, 100, seed);
+    assert single.getHitFrequency() == parallel.getHitFrequency() && single.getMaxReward() == parallel.getMaxReward()
+            && Math.abs(single.getRtp() - parallel.getRtp()) <= 1e-12 * single.getRtp() :
+            "Test failed! Simulation with 1 thread gave RTP " + single.getRtp() + ", with 3 threads " + parallel.getRtp();
+
+    System.out.println("Test passed for testRoundReplay!");
+  }
+
+  /**
+   * Tests that a seeded simulation gives the same merged statistics with any number of threads
+   * and with or without an evaluation cache, and that the statistics of a small 1x2 configuration match its hand-computed values.
+   */
+  public static void testSimulationStats() {
+    System.out.println("Running test: testSimulationStats");
+
+    CompiledGame game = CompiledGame.compile(config);
+    long seed = 17;
+    SimulationStats single = new Simulator(game, 1).run(50_000, 100, seed);
+    String report = report(single);
+    for (int threads : new int[] {2, 3, 5, 8}) {
+      SimulationStats stats = new Simulator(game, threads).run(50_000, 100, seed);
+      assert stats.getRounds() == single.getRounds() && stats.getHitFrequency() == single.getHitFrequency()
+              && stats.getMaxReward() == single.getMaxReward()
+              && Math.abs(stats.getRtp() - single.getRtp()) <= 1e-12 * single.getRtp() :
+              "Test failed! Simulation with " + threads + " threads gave RTP " + stats.getRtp()
+                      + ", with 1 thread " + single.getRtp();
+      assert report(stats).equals(report) : "Test failed! Report with " + threads + " threads differs:\n" + report(stats);
+    }
+
+    // Outcomes restored from the evaluation cache give the same statistics as evaluated ones
+    Simulator cached = new Simulator(game, 3, 1 << 20);
+    SimulationStats cachedStats = cached.run(50_000, 100, seed);
+    assert cached.isCaching() : "Test failed! Simulator did not cache 3x3 boards";
+    assert report(cachedStats).equals(report) : "Test failed! Report with a cache differs:\n" + report(cachedStats);
+
+    // A pays 5x and B 1x the bet, doubled when both cells match: AA with probability 1/4 * 1/2
+    // pays 10x, BB with probability 3/4 * 1/2 pays 2x, so RTP = 10/8 + 6/8 = 2, hit frequency
+    // 1/2, max win 10x and variance (100/8 + 12/8) - 2^2 = 10
+    String json = "{\"columns\": 2, \"rows\": 1, \"symbols\": {"
+            + "\"A\": {\"reward_multiplier\": 5, \"type\": \"standard\"},"
+            + "\"B\": {\"reward_multiplier\": 1, \"type\": \"standard\"}},"
+            + "\"probabilities\": {\"standard_symbols\": ["
+            + "{\"column\": 0, \"row\": 0, \"symbols\": {\"A\": 1, \"B\": 3}},"
+            + "{\"column\": 1, \"row\": 0, \"symbols\": {\"A\": 1, \"B\": 1}}]},"
+            + "\"win_combinations\": {"
+            + "\"same_symbol_2_times\": {\"reward_multiplier\": 2, \"when\": \"same_symbols\", \"count\": 2}}}";
+    CompiledGame smallGame = CompiledGame.compile(new Gson().fromJson(json, GameConfiguration.class));
+    int rounds = 400_000;
+    SimulationStats stats = new Simulator(smallGame, 3).run(rounds, 100, seed);
+    // The 1x2 board has 4 variants, so every cache misses at most 4 times
+    Simulator smallCached = new Simulator(smallGame, 3, 1 << 20);
+    SimulationStats smallCachedStats = smallCached.run(rounds, 100, seed);
+    assert report(smallCachedStats).equals(report(stats)) :
+            "Test failed! Report with a cache differs:\n" + report(smallCachedStats);
+    assert smallCached.getCacheHits() >= rounds - 3 * 4 :
+            "Test failed! Expected at least " + (rounds - 3 * 4) + " cache hits, but got: " + smallCached.getCacheHits();
+    assert stats.getRounds() == rounds : "Test failed! Expected " + rounds + " rounds, but got: " + stats.getRounds();
+    assert stats.getMaxReward() == 1000.0 : "Test failed! Expected max win 1000, but got: " + stats.getMaxReward();
+    // Five standard deviations of the estimates: sqrt(10 / rounds) for the RTP, sqrt(1/4 / rounds) for hits
+    assert Math.abs(stats.getRtp() - 2.0) <= 5 * Math.sqrt(10.0 / rounds) :
+            "Test failed! Expected RTP 2.0, but got: " + stats.getRtp();
+    assert Math.abs(stats.getHitFrequency() - 0.5) <= 5 * Math.sqrt(0.25 / rounds) :
+            "Test failed! Expected hit frequency 0.5, but got: " + stats.getHitFrequency();
+    assert Math.abs(stats.getVariance() - 10.0) <= 0.2 :
+            "Test failed! Expected variance 10, but got: " + stats.getVariance();
+
+    System.out.println("Test passed for testSimulationStats!");
+  }
+
+  /**
+   * Prints the report of simulation statistics to a string.
+   * @param stats The statistics
+   * @return The printed report
+   */
+  private static String report(SimulationStats stats) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    stats.print(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Tests batch play against replaying every round and evaluating it with the reference implementation.
+   */
+  public static void testBatchPlayMatchesReference() {
+    System.out.println("Running test: testBatchPlayMatchesReference");
+
+    CompiledGame game = CompiledGame.compile(config);
+    long seed = 7;
+    long firstRound = 1_000;
+    int rounds = 20_000;
+    int[] bets = new int[rounds];
+    for (int i = 0; i < rounds; i++) {
+      bets[i] = 1 + i % 250;
+    }
+    double[] rewards = new double[rounds];
+    long[] combinations = new long[rounds];
+    int[] bonusSymbols = new int[rounds];
+    new BatchPlayer(game).play(seed, firstRound, bets, rewards, combinations, bonusSymbols);
+
+    for (int i = 0; i < rounds; i++) {
+      Matrix matrix = Matrix.generateMatrix(config, new RoundRandom(seed, firstRound + i));
+      Matrix.EvaluationResult expected = matrix.evaluateRules(config, bets[i]);
+
+      Set<String> expectedCombinations = new HashSet<>();
+      expected.appliedWinningCombinations.values().forEach(expectedCombinations::addAll);
+      Set<String> actualCombinations = new HashSet<>();
+      for (int combo = 0; combo < game.getCombinations().size(); combo++) {
+        if ((combinations[i] & (1L << combo)) != 0) {
+          actualCombinations.add(game.getCombinations().nameOf(combo));
+        }
+      }
+      String bonus = bonusSymbols[i] < 0 ? null : game.getSymbols().nameOf(bonusSymbols[i]);
+
+      assert Math.abs(expected.reward - rewards[i]) <= 1e-9 * Math.max(1.0, Math.abs(expected.reward)) :
+              "Test failed! Expected reward: " + expected.reward + ", but got: " + rewards[i] + " for " + matrix;
+      assert expectedCombinations.equals(actualCombinations) :
+              "Test failed! Expected combinations: " + expectedCombinations + ", but got: " + actualCombinations + " for " + matrix;
+      assert Objects.equals(expected.appliedBonusSymbol, bonus) :
+              "Test failed! Expected bonus: " + expected.appliedBonusSymbol + ", but got: " + bonus + " for " + matrix;
+    }
+
+    System.out.println("Test passed for testBatchPlayMatchesReference!");
+  }
+
+  /**
+   * Tests the evaluation cache: batches played through caches of several sizes, including a
+   * single set that evicts constantly, give the results of evaluating every board, and a board
+   * played again is answered from the cache.
+   */
+  public static void testEvaluationCache() {
+    System.out.println("Running test: testEvaluationCache");
+
+    CompiledGame game = CompiledGame.compile(config);
+    assert EvaluationCache.supports(game) : "Test failed! 3x3 boards cannot be cached";
+    long seed = 9;
+    int rounds = 20_000;
+    int[] bets = new int[rounds];
+    for (int i = 0; i < rounds; i++) {
+      bets[i] = 1 + i % 250;
+    }
+    double[] expectedRewards = new double[rounds];
+    long[] expectedCombinations = new long[rounds];
+    int[] expectedBonusSymbols = new int[rounds];
+    new BatchPlayer(game).play(seed, 0, bets, expectedRewards, expectedCombinations, expectedBonusSymbols);
+
+    int entryBytes = EvaluationCache.entryBytes(game);
+    for (long budget : new long[] {8L * entryBytes, 64 << 10, 16 << 20}) {
+      EvaluationCache cache = new EvaluationCache(game, budget);
+      BatchPlayer player = new BatchPlayer(game, cache);
+      double[] rewards = new double[rounds];
+      long[] combinations = new long[rounds];
+      int[] bonusSymbols = new int[rounds];
+      for (int pass = 0; pass < 2; pass++) {
+        player.play(seed, 0, bets, rewards, combinations, bonusSymbols);
+        for (int i = 0; i < rounds; i++) {
+          assert expectedRewards[i] == rewards[i] :
+                  "Test failed! Expected reward: " + expectedRewards[i] + ", but got: " + rewards[i] + " in round " + i;
+          assert expectedCombinations[i] == combinations[i] && expectedBonusSymbols[i] == bonusSymbols[i] :
+                  "Test failed! Cached combinations or bonus differ in round " + i;
+        }
+      }
+      assert cache.getHits() + cache.getMisses() == 2L * rounds : "Test failed! Lookups not counted";
+      assert cache.getCapacity() * (long) entryBytes <= budget :
+              "Test failed! Cache exceeds its budget of " + budget + " bytes";
+      if (budget == 8L * entryBytes) {
+        assert cache.getCapacity() == 8 && cache.getEvictions() > 0 : "Test failed! Single set did not evict";
+      } else if (cache.getCapacity() >= rounds) {
+        assert cache.getHits() >= rounds : "Test failed! Replayed boards not answered from the cache";
+      }
+    }
+
+    try {
+      new EvaluationCache(game, 100);
+      assert false : "Test failed! Budget below one set accepted";
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    System.out.println("Test passed for testEvaluationCache!");
+  }
+
+  /**
+   * Tests the fixed-point payout: the reward of any bet is the reference reward without its
+   * floating-point rounding, and a board paying 1.2 times the symbol pays exactly 7.2 on a bet of 3.
+   */
+  public static void testFixedPointPayout() {
+    System.out.println("Running test: testFixedPointPayout");
+
+    CompiledGame game = CompiledGame.compile(config);
+    String[][] matrix = {
+            {"E", "E", "E"},
+            {"A", "B", "C"},
+            {"D", "F", "A"}
+    };
+    Payout payout = game.payout(Board.of(matrix, game.getSymbols()));
+    // E (x1.2) with same_symbol_3_times (x1) and same_symbols_horizontally (x2)
+    assert payout.getMultiplierMillis() == 2_400 && payout.getExtra() == 0 : "Test failed! Unexpected payout " + payout;
+    assert payout.rewardMillis(3) == 7_200 && payout.reward(3) == 7.2 :
+            "Test failed! Expected reward 7.2, but got: " + payout.reward(3);
+
+    int[] bets = {1, 3, 7, 100, 12_345};
+    for (long round = 0; round < 20_000; round++) {
+      Board board = game.generateBoard(new RoundRandom(13, round), game.newBoard());
+      payout = game.payout(board);
+      Matrix reference = board.toMatrix(game.getSymbols());
+      for (int bet : bets) {
+        double expected = reference.evaluateRules(config, bet).reward;
+        assert Math.round(expected * Payout.SCALE) == payout.rewardMillis(bet)
+                && Math.abs(expected - payout.reward(bet)) <= 1e-9 * Math.max(1.0, Math.abs(expected)) :
+                "Test failed! Expected reward: " + expected + ", but got: " + payout.reward(bet) + " for " + reference;
+      }
+    }
+
+    System.out.println("Test passed for testFixedPointPayout!");
+  }
+
+  /**
+   * Tests the HTTP play server on localhost: every served round must be the replayed round of its
+   * seed and index, evaluated as the reference implementation does, and invalid requests are rejected.
+   * @throws IOException if the server cannot be started or a request fails
+   * @throws InterruptedException if a request is interrupted
+   */
+  public static void testPlayServer() throws IOException, InterruptedException {
+    System.out.println("Running test: testPlayServer");
+
+    long seed = 11;
+    PlayServer server = new PlayServer(CompiledGame.compile(config), seed);
+    server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      URI uri = URI.create("http://localhost:" + server.getPort() + "/play");
+      Gson gson = new Gson();
+      Set<Long> rounds = new HashSet<>();
+      for (int i = 0; i < 200; i++) {
+        int bettingAmount = 1 + i;
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"betting_amount\": " + bettingAmount + "}")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assert response.statusCode() == 200 : "Test failed! Status " + response.statusCode() + ": " + response.body();
+
+        JsonObject json = gson.fromJson(response.body(), JsonObject.class);
+        long round = json.get("round").getAsLong();
+        assert json.get("seed").getAsLong() == seed && rounds.add(round) : "Test failed! Unexpected round in " + response.body();
+        assert json.get("config_version").getAsLong() == 1 : "Test failed! Unexpected config version in " + response.body();
+        String[][] matrix = gson.fromJson(json.get("matrix"), String[][].class);
+        String[][] replayed = Matrix.generateMatrix(config, new RoundRandom(seed, round)).getMatrix();
+        assert Arrays.deepEquals(matrix, replayed) : "Test failed! Served matrix differs from replayed round " + round;
+
+        Matrix.EvaluationResult expected = new Matrix(matrix, matrix.length, matrix[0].length).evaluateRules(config, bettingAmount);
+        Map<String, List<String>> combinations = gson.fromJson(json.get("applied_winning_combinations"),
+                new TypeToken<Map<String, List<String>>>() { }.getType());
+        String bonus = json.get("applied_bonus_symbol").isJsonNull() ? null : json.get("applied_bonus_symbol").getAsString();
+        assertSameResult(expected, new Matrix.EvaluationResult(json.get("reward").getAsDouble(), combinations, bonus), matrix);
+      }
+
+      HttpResponse<String> invalid = client.send(HttpRequest.newBuilder(uri)
+              .POST(HttpRequest.BodyPublishers.ofString("{\"betting_amount\": -5}")).build(), HttpResponse.BodyHandlers.ofString());
+      assert invalid.statusCode() == 400 : "Test failed! Expected status 400, but got: " + invalid.statusCode();
+      HttpResponse<String> get = client.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+      assert get.statusCode() == 405 : "Test failed! Expected status 405, but got: " + get.statusCode();
+    } finally {
+      server.stop(0);
+    }
+
+    System.out.println("Test passed for testPlayServer!");
+  }
+
+  /**
+   * Tests the audit log: rounds written across several segments are scanned back in order and
+   * verified against the game, and a tampered record is detected.
+   * @throws IOException if the log cannot be written or read
+   */
+  public static void testAuditLog() throws IOException {
+    System.out.println("Running test: testAuditLog");
+
+    CompiledGame game = CompiledGame.compile(config);
+    Path directory = Files.createTempDirectory("audit-log-test");
+    try {
+      long seed = 3;
+      int rounds = 2_500;
+      int[] bets = new int[rounds];
+      Arrays.fill(bets, 100);
+      double[] rewards = new double[rounds];
+      long[] combinations = new long[rounds];
+      int[] bonusSymbols = new int[rounds];
+      new BatchPlayer(game).play(seed, 0, bets, rewards, combinations, bonusSymbols);
+
+      try (AuditLog auditLog = AuditLog.open(directory, game, 1_000)) {
+        for (int i = 0; i < rounds; i++) {
+          Board board = game.generateBoard(new RoundRandom(seed, i), game.newBoard());
+          auditLog.append(seed, i, bets[i], board, rewards[i], combinations[i], bonusSymbols[i]);
+        }
+      }
+      try (Stream<Path> files = Files.list(directory)) {
+        long segments = files.count();
+        assert segments == 3 : "Test failed! Expected 3 segments, but got: " + segments;
+      }
+
+      AuditLogReader reader = new AuditLogReader(directory);
+      long[] nextRound = {0};
+      long scanned = reader.scan(record -> {
+        assert record.getRound() == nextRound[0]++ && record.getReward() == rewards[(int) record.getRound()] :
+                "Test failed! Unexpected record for round " + record.getRound();
+      });
+      assert scanned == rounds : "Test failed! Expected " + rounds + " records, but got: " + scanned;
+      AuditLogReader.Verification verification = reader.verify(game);
+      assert verification.isValid() && verification.records == rounds && verification.otherConfiguration == 0 :
+              "Test failed! Verification of a valid log failed";
+
+      try (AuditLog auditLog = AuditLog.open(directory, game, 1_000)) {
+        Board board = game.generateBoard(new RoundRandom(seed, 0), game.newBoard());
+        auditLog.append(seed, 0, bets[0], board, rewards[0] + 1, combinations[0], bonusSymbols[0]);
+      }
+      verification = reader.verify(game);
+      assert !verification.isValid() && verification.resultMismatches == 1 && verification.firstMismatchRound == 0 :
+              "Test failed! Tampered record not detected";
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)) {
+        for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(path);
+        }
+      }
+    }
+
+    System.out.println("Test passed for testAuditLog!");
+  }
+
+  /**
+   * Tests the binary configuration snapshot: a restored game plays exactly like the game compiled
+   * from JSON, and a stale or corrupt snapshot is not used.
+   * @throws IOException if a file cannot be read or written
+   */
+  public static void testConfigSnapshot() throws IOException {
+    System.out.println("Running test: testConfigSnapshot");
+
+    Path snapshot = Files.createTempFile("config", ".snapshot");
+    try {
+      CompiledGame compiled = ConfigSnapshot.write(Path.of("config.json"), snapshot);
+      byte[] source = Files.readAllBytes(Path.of("config.json"));
+      CompiledGame restored = ConfigSnapshot.read(snapshot, source);
+      assert restored != null : "Test failed! Snapshot of the current config not used";
+      assert restored.getConfigurationHash() == compiled.getConfigurationHash() :
+              "Test failed! Configuration hash changed in the snapshot";
+
+      RoundRandom random = new RoundRandom();
+      for (long round = 0; round < 10_000; round++) {
+        random.reset(5, round);
+        Board expectedBoard = compiled.generateBoard(random, compiled.newBoard());
+        random.reset(5, round);
+        Board actualBoard = restored.generateBoard(random, restored.newBoard());
+        assert expectedBoard.equals(actualBoard) : "Test failed! Restored game drew another board in round " + round;
+        String[][] matrix = expectedBoard.toMatrix(compiled.getSymbols()).getMatrix();
+        assertSameResult(compiled.evaluate(expectedBoard, 100), restored.evaluate(actualBoard, 100), matrix);
+      }
+      assert restored.getConfiguration().getRows() == config.getRows() :
+              "Test failed! Configuration not restored from the snapshot";
+
+      byte[] changed = new String(source, StandardCharsets.UTF_8).replace("\"columns\": 3", "\"columns\":3")
+              .getBytes(StandardCharsets.UTF_8);
+      assert ConfigSnapshot.read(snapshot, changed) == null : "Test failed! Stale snapshot used";
+
+      byte[] bytes = Files.readAllBytes(snapshot);
+      bytes[bytes.length / 2] ^= 1;
+      Files.write(snapshot, bytes);
+      assert ConfigSnapshot.read(snapshot, source) == null : "Test failed! Corrupt snapshot used";
+      assert ConfigSnapshot.load(Path.of("config.json"), snapshot).getConfigurationHash() == compiled.getConfigurationHash() :
+              "Test failed! No fallback to the config file";
+    } finally {
+      Files.deleteIfExists(snapshot);
+    }
+
+    System.out.println("Test passed for testConfigSnapshot!");
+  }
+
+  /**
+   * Tests reloading the configuration: a changed file publishes a new version that plays the new
+   * paytable, an unchanged or invalid file keeps the current version, served rounds carry the
+   * version they were played on, and watching the file picks up a change without a call.
+   * @throws IOException if the configuration cannot be written or the server cannot be started
+   * @throws InterruptedException if a request or the wait for the watcher is interrupted
+   */
+  public static void testReloadableGame() throws IOException, InterruptedException {
+    System.out.println("Running test: testReloadableGame");
+
+    Path directory = Files.createTempDirectory("reload-test");
+    Path file = directory.resolve("config.json");
+    Files.copy(Path.of("config.json"), file);
+    AtomicInteger failures = new AtomicInteger();
+    CompiledGame initial = CompiledGame.compile(config);
+    ReloadableGame reloadable = new ReloadableGame(file, initial, new ReloadableGame.Listener() {
+      @Override
+      public void reloaded(ReloadableGame.Version version) {
+      }
+
+      @Override
+      public void failed(Exception error) {
+        failures.incrementAndGet();
+      }
+    });
+    PlayServer server = new PlayServer(reloadable, 13, null, new GameMetrics());
+    try {
+      ReloadableGame.Version first = reloadable.current();
+      assert first.getNumber() == 1 && first.getGame() == initial : "Test failed! Unexpected first version";
+      assert !reloadable.reload() && reloadable.current() == first : "Test failed! Unchanged file reloaded";
+
+      Gson gson = new Gson();
+      JsonObject changed = gson.fromJson(Files.readString(file), JsonObject.class);
+      changed.getAsJsonObject("symbols").getAsJsonObject("A").addProperty("reward_multiplier", 500);
+      Files.writeString(file, gson.toJson(changed));
+      assert reloadable.reload() : "Test failed! Changed file not reloaded";
+      ReloadableGame.Version second = reloadable.current();
+      assert second.getNumber() == 2 && second.getGame().getConfigurationHash() != initial.getConfigurationHash() :
+              "Test failed! Unexpected second version";
+      GameConfiguration changedConfig = second.getGame().getConfiguration();
+      String[][] matrix = {{"A", "A", "A"}, {"B", "C", "D"}, {"F", "E", "F"}};
+      assertSameResult(new Matrix(matrix, 3, 3).evaluateRules(changedConfig, 100),
+              second.getGame().evaluate(Board.of(matrix, second.getGame().getSymbols()), 100), matrix);
+
+      Files.writeString(file, "{\"rows\": 3, \"columns\":");
+      assert !reloadable.reload() && reloadable.current() == second && failures.get() == 1 :
+              "Test failed! Invalid file published";
+
+      // Missing sections are reported to the listener instead of escaping the reload
+      for (String section : new String[] {"probabilities", "symbols"}) {
+        JsonObject incomplete = gson.fromJson(Files.readString(Path.of("config.json")), JsonObject.class);
+        incomplete.remove(section);
+        Files.writeString(file, gson.toJson(incomplete));
+        int failuresBefore = failures.get();
+        assert !reloadable.reload() && reloadable.current() == second && failures.get() == failuresBefore + 1 :
+                "Test failed! Config without " + section + " published";
+      }
+      Files.writeString(file, gson.toJson(changed));
+      assert !reloadable.reload() && reloadable.current() == second : "Test failed! Content of the current version reloaded";
+
+      server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      HttpResponse<String> response = HttpClient.newHttpClient().send(
+              HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/play"))
+                      .POST(HttpRequest.BodyPublishers.ofString("{\"betting_amount\": 100}")).build(),
+              HttpResponse.BodyHandlers.ofString());
+      JsonObject json = gson.fromJson(response.body(), JsonObject.class);
+      assert json.get("config_version").getAsLong() == 2
+              && json.get("config_hash").getAsString().equals(String.format("%016x", second.getGame().getConfigurationHash())) :
+              "Test failed! Round does not carry its config version: " + response.body();
+
+      reloadable.watch();
+      // A failed reload must not stop the watcher
+      JsonObject incomplete = gson.fromJson(Files.readString(Path.of("config.json")), JsonObject.class);
+      incomplete.remove("probabilities");
+      int failuresBefore = failures.get();
+      Files.writeString(file, gson.toJson(incomplete));
+      long deadline = System.nanoTime() + 10_000_000_000L;
+      while (failures.get() == failuresBefore && System.nanoTime() < deadline) {
+        Thread.sleep(20);
+      }
+      assert failures.get() > failuresBefore && reloadable.current() == second : "Test failed! Watched invalid change not reported";
+      Files.copy(Path.of("config.json"), file, StandardCopyOption.REPLACE_EXISTING);
+      deadline = System.nanoTime() + 10_000_000_000L;
+      while (reloadable.current().getNumber() == 2 && System.nanoTime() < deadline) {
+        Thread.sleep(20);
+      }
+      ReloadableGame.Version third = reloadable.current();
+      assert third.getNumber() == 3 && third.getGame().getConfigurationHash() == initial.getConfigurationHash() :
+              "Test failed! Watched change not reloaded";
+    } finally {
+      server.stop(0);
+      reloadable.close();
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(directory);
+    }
+
+    System.out.println("Test passed for testReloadableGame!");
+  }
+
+  /**
+   * Tests the game metrics: the counters of rounds served over HTTP match the replayed rounds,
+   * the Prometheus text and the JMX attributes expose them, recording name-based results
+   * counts the same combinations, and the rounds of two games played in turn, like two versions
+   * of a reloaded configuration, are counted into the same names.
+   * @throws IOException if the server cannot be started or a request fails
+   * @throws InterruptedException if a request is interrupted
+   * @throws JMException if the metrics cannot be read over JMX
+   */
+  public static void testGameMetrics() throws IOException, InterruptedException, JMException {
+    System.out.println("Running test: testGameMetrics");
+
+    long seed = 17;
+    int rounds = 300;
+    GameMetrics metrics = new GameMetrics();
+    PlayServer server = new PlayServer(CompiledGame.compile(config), seed, null, metrics);
+    server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    String text;
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      URI play = URI.create("http://localhost:" + server.getPort() + "/play");
+      for (int i = 0; i < rounds; i++) {
+        client.send(HttpRequest.newBuilder(play).POST(HttpRequest.BodyPublishers.ofString("{\"betting_amount\": 100}")).build(),
+                HttpResponse.BodyHandlers.discarding());
+      }
+      HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/metrics"))
+              .GET().build(), HttpResponse.BodyHandlers.ofString());
+      assert response.statusCode() == 200 : "Test failed! Status " + response.statusCode();
+      text = response.body();
+    } finally {
+      server.stop(0);
+    }
+
+    GameMetrics reference = new GameMetrics();
+    long wins = 0;
+    Map<String, Long> combinationHits = new HashMap<>();
+    Map<String, Long> bonusApplications = new HashMap<>();
+    for (long round = 0; round < rounds; round++) {
+      Matrix.EvaluationResult result = Matrix.generateMatrix(config, new RoundRandom(seed, round)).evaluateRules(config, 100);
+      reference.recordRound(result, 100);
+      wins += result.reward > 0 ? 1 : 0;
+      result.appliedWinningCombinations.values().stream().flatMap(List::stream).distinct()
+              .forEach(name -> combinationHits.merge(name, 1L, Long::sum));
+      if (result.appliedBonusSymbol != null) {
+        bonusApplications.merge(result.appliedBonusSymbol, 1L, Long::sum);
+      }
+    }
+    Map<String, Long> served = new HashMap<>(metrics.getCombinationHits());
+    served.values().removeIf(count -> count == 0);
+    Map<String, Long> servedBonus = new HashMap<>(metrics.getBonusApplications());
+    servedBonus.values().removeIf(count -> count == 0);
+
+    assert metrics.getRounds() == rounds && metrics.getWins() == wins : "Test failed! Unexpected round or win count";
+    assert served.equals(combinationHits) : "Test failed! Expected combination hits: " + combinationHits + ", but got: " + served;
+    assert servedBonus.equals(bonusApplications) : "Test failed! Expected bonus applications: " + bonusApplications + ", but got: " + servedBonus;
+    assert reference.getCombinationHits().equals(combinationHits) && reference.getRounds() == rounds
+            && Math.abs(reference.getReturnToPlayer() - metrics.getReturnToPlayer()) < 1e-12 :
+            "Test failed! Name-based recording differs";
+    assert metrics.getGenerateP99Nanos() > 0 && metrics.getEvaluateMeanNanos() > 0 : "Test failed! Latencies not recorded";
+    assert text.contains("\nscratch_game_rounds_total " + rounds + "\n")
+            && text.contains("\nscratch_game_evaluate_seconds_count " + rounds + "\n")
+            && text.contains("scratch_game_evaluate_seconds_bucket{le=\"+Inf\"} " + rounds + "\n") :
+            "Test failed! Unexpected Prometheus text:\n" + text;
+
+    ObjectName name = metrics.registerMBean();
+    try {
+      Object attribute = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Rounds");
+      assert Long.valueOf(rounds).equals(attribute) : "Test failed! JMX attribute Rounds is " + attribute;
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    // Both servers play rounds 0 to rounds - 1 of the seed, so every count doubles
+    GameMetrics shared = new GameMetrics();
+    PlayServer first = new PlayServer(CompiledGame.compile(config), seed, null, shared);
+    PlayServer second = new PlayServer(CompiledGame.compile(config), seed, null, shared);
+    first.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    second.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>();
+      for (int i = 0; i < rounds; i++) {
+        for (PlayServer played : List.of(first, second)) {
+          responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + played.getPort() + "/play"))
+                  .POST(HttpRequest.BodyPublishers.ofString("{\"betting_amount\": 100}")).build(),
+                  HttpResponse.BodyHandlers.discarding()));
+        }
+      }
+      CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).join();
+    } finally {
+      first.stop(0);
+      second.stop(0);
+    }
+    Map<String, Long> doubled = new HashMap<>();
+    combinationHits.forEach((combination, count) -> doubled.put(combination, 2 * count));
+    Map<String, Long> sharedHits = new HashMap<>(shared.getCombinationHits());
+    sharedHits.values().removeIf(count -> count == 0);
+    assert shared.getRounds() == 2L * rounds && shared.getWins() == 2 * wins :
+            "Test failed! Unexpected round or win count with two games";
+    assert sharedHits.equals(doubled) : "Test failed! Expected combination hits: " + doubled + ", but got: " + sharedHits;
+
+    System.out.println("Test passed for testGameMetrics!");
+  }
+
+  /**
+   * Tests the flight recorder events: a recording enabling them sees one event per generated
+   * board, per evaluation of either engine and per reload, with the evaluated reward.
+   * @throws IOException if the recording or the configuration cannot be written
+   */
+  public static void testFlightRecorderEvents() throws IOException {
+    System.out.println("Running test: testFlightRecorderEvents");
+
+    CompiledGame game = CompiledGame.compile(config);
+    Path directory = Files.createTempDirectory("jfr-test");
+    Path file = directory.resolve("config.json");
+    Path dump = directory.resolve("events.jfr");
+    Files.copy(Path.of("config.json"), file);
+    ReloadableGame reloadable = new ReloadableGame(file, game, new ReloadableGame.Listener() {
+      @Override
+      public void reloaded(ReloadableGame.Version version) {
+      }
+
+      @Override
+      public void failed(Exception error) {
+      }
+    });
+    double[] rewards = new double[20];
+    try (Recording recording = new Recording()) {
+      for (String event : new String[] {"ConfigLoad", "BoardGeneration", "Evaluation", "ResultSerialization"}) {
+        recording.enable("ls.assignment.scratchgame." + event).withThreshold(Duration.ZERO);
+      }
+      recording.start();
+      for (int round = 0; round < 10; round++) {
+        Board board = game.generateBoard(new RoundRandom(19, round), game.newBoard());
+        rewards[round] = game.evaluate(board, 100).reward;
+        rewards[10 + round] = board.toMatrix(game.getSymbols()).evaluateRules(config, 100).reward;
+      }
+      Files.writeString(file, Files.readString(file).replace("\"reward_multiplier\": 5,", "\"reward_multiplier\": 6,"));
+      assert reloadable.reload() : "Test failed! Changed file not reloaded";
+      recording.stop();
+      recording.dump(dump);
+
+      Map<String, Integer> counts = new HashMap<>();
+      double compiledTotal = 0;
+      double referenceTotal = 0;
+      for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+        String name = event.getEventType().getName();
+        counts.merge(name, 1, Integer::sum);
+        if (name.endsWith(".Evaluation")) {
+          assert event.getInt("rows") == 3 && event.getInt("combinationsChecked") == game.getCombinations().size() :
+                  "Test failed! Unexpected evaluation event " + event;
+          if ("compiled".equals(event.getString("engine"))) {
+            compiledTotal += event.getDouble("reward");
+          } else {
+            referenceTotal += event.getDouble("reward");
+          }
+        } else if (name.endsWith(".ConfigLoad")) {
+          assert event.getLong("version") == 2 && event.getInt("columns") == 3 : "Test failed! Unexpected load event " + event;
+        }
+      }
+      double expectedTotal = 0;
+      for (int round = 0; round < 10; round++) {
+        expectedTotal += rewards[round];
+      }
+      assert counts.getOrDefault("ls.assignment.scratchgame.BoardGeneration", 0) >= 10
+              && counts.getOrDefault("ls.assignment.scratchgame.Evaluation", 0) == 20
+              && counts.getOrDefault("ls.assignment.scratchgame.ConfigLoad", 0) == 1 :
+              "Test failed! Unexpected event counts " + counts;
+      assert Math.abs(compiledTotal - expectedTotal) < 1e-6 && Math.abs(referenceTotal - expectedTotal) < 1e-6 :
+              "Test failed! Recorded rewards " + compiledTotal + " and " + referenceTotal + ", expected " + expectedTotal;
+    } finally {
+      reloadable.close();
+      Files.deleteIfExists(dump);
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(directory);
+    }
+
+    System.out.println("Test passed for testFlightRecorderEvents!");
+  }
+
+  /**
+   * Tests writing rounds as NDJSON and CSV: every line matches the round replayed from its seed
+   * and evaluated by the reference engine.
+   * @throws IOException if the rounds cannot be written
+   */
+  public static void testRoundWriter() throws IOException {
+    System.out.println("Running test: testRoundWriter");
+
+    CompiledGame game = CompiledGame.compile(config);
+    Gson gson = new Gson();
+    long seed = 23;
+    int bettingAmount = 100;
+    int rounds = 500;
+
+    ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+    try (RoundWriter writer = new RoundWriter(game, ndjson, RoundWriter.Format.NDJSON)) {
+      writer.writeRounds(seed, 1000, rounds, bettingAmount);
+      writer.flush();
+      assert writer.getRounds() == rounds && writer.getBytes() == ndjson.size() :
+              "Test failed! Counted " + writer.getRounds() + " rounds and " + writer.getBytes() + " bytes";
+    }
+    String[] lines = ndjson.toString(StandardCharsets.UTF_8).split("\n");
+    assert lines.length == rounds : "Test failed! Expected " + rounds + " lines, but got: " + lines.length;
+    for (int i = 0; i < rounds; i++) {
+      JsonObject json = gson.fromJson(lines[i], JsonObject.class);
+      assert json.get("round").getAsLong() == 1000 + i && json.get("seed").getAsLong() == seed :
+              "Test failed! Unexpected round in " + lines[i];
+      String[][] matrix = gson.fromJson(json.get("matrix"), String[][].class);
+      String[][] replayed = Matrix.generateMatrix(config, new RoundRandom(seed, 1000 + i)).getMatrix();
+      assert Arrays.deepEquals(matrix, replayed) : "Test failed! Written matrix differs from replayed round " + (1000 + i);
+
+      Matrix.EvaluationResult expected = new Matrix(matrix, matrix.length, matrix[0].length).evaluateRules(config, bettingAmount);
+      Map<String, List<String>> combinations = gson.fromJson(json.get("applied_winning_combinations"),
+              new TypeToken<Map<String, List<String>>>() { }.getType());
+      String bonus = json.get("applied_bonus_symbol").isJsonNull() ? null : json.get("applied_bonus_symbol").getAsString();
+      assertSameResult(expected, new Matrix.EvaluationResult(json.get("reward").getAsDouble(), combinations, bonus), matrix);
+    }
+
+    ByteArrayOutputStream csv = new ByteArrayOutputStream();
+    try (RoundWriter writer = new RoundWriter(game, csv, RoundWriter.Format.CSV)) {
+      writer.writeRounds(seed, 1000, rounds, bettingAmount);
+    }
+    lines = csv.toString(StandardCharsets.UTF_8).split("\n");
+    assert lines.length == rounds + 1 && lines[0].equals("round,seed,matrix,reward,applied_winning_combinations,applied_bonus_symbol") :
+            "Test failed! Unexpected CSV header or line count " + lines.length;
+    for (int i = 0; i < rounds; i++) {
+      String[] fields = lines[i + 1].split(",", -1);
+      assert fields.length == 6 && Long.parseLong(fields[0]) == 1000 + i : "Test failed! Unexpected CSV line " + lines[i + 1];
+      String[] rows = fields[2].split("/");
+      String[][] matrix = new String[rows.length][];
+      for (int row = 0; row < rows.length; row++) {
+        matrix[row] = rows[row].split(" ");
+      }
+      String[][] replayed = Matrix.generateMatrix(config, new RoundRandom(seed, 1000 + i)).getMatrix();
+      assert Arrays.deepEquals(matrix, replayed) : "Test failed! Written matrix differs from replayed round " + (1000 + i);
+
+      Matrix.EvaluationResult expected = new Matrix(matrix, matrix.length, matrix[0].length).evaluateRules(config, bettingAmount);
+      Map<String, List<String>> combinations = new HashMap<>();
+      for (String entry : fields[4].isEmpty() ? new String[0] : fields[4].split(";")) {
+        String[] symbolAndCombos = entry.split(":");
+        combinations.put(symbolAndCombos[0], Arrays.asList(symbolAndCombos[1].split("\\+")));
+      }
+      String bonus = fields[5].isEmpty() ? null : fields[5];
+      assertSameResult(expected, new Matrix.EvaluationResult(Double.parseDouble(fields[3]), combinations, bonus), matrix);
+    }
+
+    System.out.println("Test passed for testRoundWriter!");
+  }
+
+  /**
+   * Tests the columnar result store: every round recorded by a parallel simulation reads back
+   * like the round played again, the summary agrees with the simulation statistics and with
+   * aggregates computed directly, and a store that was never committed cannot be opened.
+   * @throws IOException if the store cannot be written or read
+   */
+  public static void testResultStore() throws IOException {
+    System.out.println("Running test: testResultStore");
+
+    CompiledGame game = CompiledGame.compile(config);
+    Path directory = Files.createTempDirectory("result-store-test");
+    try {
+      long seed = 31;
+      int rounds = 60_000;
+      SimulationStats stats;
+      try (ResultStore store = ResultStore.create(directory, game, seed, 0, rounds)) {
+        stats = new Simulator(game, 3).run(rounds, 100, seed, store);
+        store.commit();
+      }
+
+      int[] bets = new int[rounds];
+      Arrays.fill(bets, 100);
+      double[] rewards = new double[rounds];
+      long[] combinations = new long[rounds];
+      int[] bonusSymbols = new int[rounds];
+      new BatchPlayer(game).play(seed, 0, bets, rewards, combinations, bonusSymbols);
+
+      try (ResultStoreReader reader = new ResultStoreReader(directory)) {
+        assert reader.getRounds() == rounds && reader.getSeed() == seed
+                && reader.getConfigurationHash() == game.getConfigurationHash() : "Test failed! Unexpected store metadata";
+        Board stored = game.newBoard();
+        for (int i = 0; i < rounds; i++) {
+          Board played = game.generateBoard(new RoundRandom(seed, i), game.newBoard());
+          assert reader.getBoard(i, stored).equals(played) : "Test failed! Stored board differs for round " + i;
+          assert Math.abs(reader.getRewardMillis(i, 100) / 1000.0 - rewards[i]) < 1e-9
+                  && reader.getAppliedCombinations(i) == combinations[i] && reader.getAppliedBonusSymbol(i) == bonusSymbols[i] :
+                  "Test failed! Stored result differs for round " + i;
+        }
+
+        ResultStoreReader.Summary summary = reader.summarize(100);
+        assert Math.abs(summary.getRtp() - stats.getRtp()) <= 1e-12 * stats.getRtp()
+                && summary.getHitFrequency() == stats.getHitFrequency() && summary.getMaxReward() == stats.getMaxReward() :
+                "Test failed! Store summary RTP " + summary.getRtp() + " differs from simulated " + stats.getRtp();
+
+        double[] sorted = rewards.clone();
+        Arrays.sort(sorted);
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+          double expected = sorted[(int) Math.ceil(quantile * rounds) - 1];
+          assert Math.abs(summary.getRewardQuantile(quantile) - expected) < 1e-9 :
+                  "Test failed! Quantile " + quantile + " is " + summary.getRewardQuantile(quantile) + ", expected " + expected;
+        }
+
+        long longestWin = 0;
+        long longestLoss = 0;
+        long winStreaksOfTwo = 0;
+        long current = 0;
+        for (int i = 0; i < rounds; i++) {
+          boolean win = rewards[i] > 0;
+          current = i > 0 && win == rewards[i - 1] > 0 ? current + 1 : 1;
+          if (win) {
+            longestWin = Math.max(longestWin, current);
+          } else {
+            longestLoss = Math.max(longestLoss, current);
+          }
+          boolean streakEnds = i == rounds - 1 || (rewards[i + 1] > 0) != win;
+          if (win && streakEnds && current == 2) {
+            winStreaksOfTwo++;
+          }
+        }
+        assert summary.getLongestWinStreak() == longestWin && summary.getLongestLossStreak() == longestLoss
+                && summary.getWinStreaks(2) == winStreaksOfTwo :
+                "Test failed! Streaks " + summary.getLongestWinStreak() + "/" + summary.getLongestLossStreak()
+                        + ", expected " + longestWin + "/" + longestLoss;
+      }
+
+      ResultStore.create(directory, game, seed, 0, 10).close();
+      boolean rejected = false;
+      try {
+        new ResultStoreReader(directory).close();
+      } catch (IllegalStateException e) {
+        rejected = true;
+      }
+      assert rejected : "Test failed! Uncommitted store opened";
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)) {
+        for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(path);
+        }
+      }
+    }
+
+    System.out.println("Test passed for testResultStore!");
+  }
+
+  /**
+   * Tests the payout histogram of a parallel simulation against the sorted rewards of the same
+   * rounds: the exceedance of every multiple of the tail ladder and the max win frequency are
+   * exact, and percentiles are never below the true value and within 1% above it.
+   */
+  public static void testPayoutHistogram() {
+    System.out.println("Running test: testPayoutHistogram");
+
+    CompiledGame game = CompiledGame.compile(config);
+    long seed = 47;
+    int rounds = 200_000;
+    PayoutHistogram histogram = new Simulator(game, 3).run(rounds, 100, seed).getPayoutHistogram();
+
+    int[] bets = new int[rounds];
+    Arrays.fill(bets, 100);
+    double[] rewards = new double[rounds];
+    new BatchPlayer(game).play(seed, 0, bets, rewards, new long[rounds], new int[rounds]);
+    long[] sorted = new long[rounds];
+    for (int i = 0; i < rounds; i++) {
+      sorted[i] = Math.round(rewards[i] * Payout.SCALE / 100);
+    }
+    Arrays.sort(sorted);
+
+    long max = sorted[rounds - 1];
+    long maxCount = Arrays.stream(sorted).filter(value -> value == max).count();
+    assert histogram.getCount() == rounds && histogram.getMaxMillis() == max && histogram.getMaxCount() == maxCount :
+            "Test failed! Max win " + histogram.getMaxMillis() + " x" + histogram.getMaxCount() + ", expected " + max + " x" + maxCount;
+
+    for (long multiple : new long[] {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000}) {
+      long above = Arrays.stream(sorted).filter(value -> value > multiple * Payout.SCALE).count();
+      assert histogram.exceedanceProbability(multiple) == (double) above / rounds :
+              "Test failed! P(payout > " + multiple + "x) is " + histogram.exceedanceProbability(multiple)
+                      + ", expected " + (double) above / rounds;
+    }
+    long aboveThree = Arrays.stream(sorted).filter(value -> value > 3 * Payout.SCALE).count();
+    assert histogram.exceedanceProbability(3) <= (double) aboveThree / rounds :
+            "Test failed! Bucketed exceedance above the exact one";
+
+    for (double quantile : new double[] {0.5, 0.75, 0.9, 0.99, 0.999, 0.9999}) {
+      long expected = sorted[(int) Math.ceil(quantile * rounds) - 1];
+      long actual = histogram.quantileMillis(quantile);
+      assert actual >= expected && actual <= expected + expected / 100 :
+              "Test failed! Quantile " + quantile + " is " + actual + ", expected " + expected;
+    }
+
+    System.out.println("Test passed for testPayoutHistogram!");
+  }
+
+  /**
+   * Tests the variance-reduced simulation: its estimates agree with the exact figures within
+   * their confidence intervals, they do not depend on the number of threads, and a run stops
+   * once its confidence interval is as narrow as requested.
+   */
+  public static void testStratifiedSimulation() {
+    System.out.println("Running test: testStratifiedSimulation");
+
+    CompiledGame game = CompiledGame.compile(config);
+    ExactRtpCalculator.Result exact = new ExactRtpCalculator(game).calculate(100);
+    StratifiedSimulator.Result result = new StratifiedSimulator(game, 1).run(0, 2_000_000, 100, 59);
+    StratifiedSimulator.Result parallel = new StratifiedSimulator(game, 3).run(0, 2_000_000, 100, 59);
+    assert result.getRounds() == 2_000_000 && !result.isConverged() : "Test failed! Unexpected number of rounds";
+    assert parallel.getRtp() == result.getRtp() && parallel.getRtpHalfWidth() == result.getRtpHalfWidth() :
+            "Test failed! Estimates depend on the number of threads";
+
+    // About 6 standard errors, so that none of the ~30 estimates fails by chance
+    assertWithin("RTP", exact.rtp, result.getRtp(), result.getRtpHalfWidth());
+    assertWithin("hit frequency", exact.hitFrequency, result.getHitFrequency(), result.getHitFrequencyHalfWidth());
+    for (int combo = 0; combo < exact.comboApplications.length; combo++) {
+      assertWithin(game.getCombinations().nameOf(combo), exact.comboApplications[combo],
+              result.getComboApplications(combo), result.getComboApplicationsHalfWidth(combo));
+    }
+    for (int symbol = 0; symbol < exact.bonusRtp.length; symbol++) {
+      assertWithin(game.getSymbols().nameOf(symbol), exact.bonusRtp[symbol], result.getBonusRtp(symbol),
+              result.getBonusRtpHalfWidth(symbol));
+    }
+    assert result.getVarianceReduction() > 2 : "Test failed! Variance reduction only " + result.getVarianceReduction();
+
+    StratifiedSimulator.Result converged = new StratifiedSimulator(game, 2).run(0.02, 1_000_000_000L, 100, 59);
+    assert converged.isConverged() && converged.getRtpHalfWidth() * 2 <= 0.02 && converged.getRounds() < 10_000_000 :
+            "Test failed! Run did not stop at the target width: " + converged.getRounds() + " rounds, half width "
+                    + converged.getRtpHalfWidth();
+
+    System.out.println("Test passed for testStratifiedSimulation!");
+  }
+
+  /**
+   * Tests sharded simulation: shards played by separate JVM processes merge into the statistics
+   * of playing every round in one process, missing and duplicate shards are reported, and a
+   * corrupt shard file is rejected.
+   * @throws IOException if a shard file cannot be written or read
+   * @throws InterruptedException if interrupted while waiting for a shard process
+   */
+  public static void testSimulationShards() throws IOException, InterruptedException {
+    System.out.println("Running test: testSimulationShards");
+
+    CompiledGame game = CompiledGame.compile(config);
+    long seed = 67;
+    long rounds = 300_001;
+    int shardCount = 3;
+    Path directory = Files.createTempDirectory("simulation-shards-test");
+    try {
+      String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+      List<Process> processes = new ArrayList<>();
+      for (int shard = 0; shard < shardCount; shard++) {
+        processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                "--config", "config.json", "--betting-amount", "100", "--seed", Long.toString(seed),
+                "--simulate", Long.toString(rounds), "--threads", "1", "--shard", shard + "/" + shardCount,
+                "--shard-output", directory.resolve("part-" + shard + ".shard").toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectErrorStream(true).start());
+      }
+      for (Process process : processes) {
+        assert process.waitFor() == 0 : "Test failed! Shard process exited with " + process.exitValue();
+      }
+
+      List<SimulationShard> shards = new ArrayList<>();
+      for (int shard = 0; shard < shardCount; shard++) {
+        shards.add(SimulationShard.read(directory.resolve("part-" + shard + ".shard"), game));
+      }
+      SimulationShard.Merge merge = SimulationShard.merge(shards);
+      SimulationStats merged = merge.getStats();
+      SimulationStats expected = new Simulator(game, 2).run(rounds, 100, seed);
+      assert merge.isComplete() && merged.getRounds() == rounds && merged.getHitFrequency() == expected.getHitFrequency()
+              && merged.getMaxReward() == expected.getMaxReward() :
+              "Test failed! Merged shards differ from one simulation: " + merged.getRounds() + " rounds";
+      assert Math.abs(merged.getRtp() - expected.getRtp()) <= 1e-12 * expected.getRtp()
+              && Math.abs(merged.getVariance() - expected.getVariance()) <= 1e-9 * expected.getVariance() :
+              "Test failed! Merged RTP " + merged.getRtp() + ", expected " + expected.getRtp();
+      PayoutHistogram mergedPayouts = merged.getPayoutHistogram();
+      PayoutHistogram expectedPayouts = expected.getPayoutHistogram();
+      assert mergedPayouts.getMaxCount() == expectedPayouts.getMaxCount()
+              && mergedPayouts.quantileMillis(0.999) == expectedPayouts.quantileMillis(0.999)
+              && mergedPayouts.exceedanceProbability(3) == expectedPayouts.exceedanceProbability(3)
+              && mergedPayouts.exceedanceProbability(100) == expectedPayouts.exceedanceProbability(100) :
+              "Test failed! Merged payout histogram differs";
+
+      SimulationShard.Merge partial = SimulationShard.merge(List.of(shards.get(0), shards.get(2)));
+      assert !partial.isComplete() && partial.getMissingShards().equals(List.of(1))
+              && partial.getStats().getRounds() == rounds - SimulationShard.roundsOf(rounds, shardCount, 1) :
+              "Test failed! Missing shard not reported";
+      boolean rejected = false;
+      try {
+        SimulationShard.merge(List.of(shards.get(1), shards.get(1)));
+      } catch (IllegalArgumentException e) {
+        rejected = true;
+      }
+      assert rejected : "Test failed! Duplicate shard merged";
+
+      Path corrupt = directory.resolve("part-1.shard");
+      byte[] bytes = Files.readAllBytes(corrupt);
+      bytes[bytes.length / 2] ^= 1;
+      Files.write(corrupt, bytes);
+      rejected = false;
+      try {
+        SimulationShard.read(corrupt, game);
+      } catch (IllegalStateException e) {
+        rejected = true;
+      }
+      assert rejected : "Test failed! Corrupt shard file read";
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)) {
+        for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(path);
+        }
+      }
+    }
+
+    System.out.println("Test passed for testSimulationShards!");
+  }
+
+  /**
+   * Tests the paytable tuner: the config it emits compiles to the target RTP and hit frequency
+   * band, the search does not depend on the number of threads, the base config is left untouched
+   * and unknown parameters are rejected.
+   */
+  public static void testPaytableTuner() {
+    System.out.println("Running test: testPaytableTuner");
+
+    CompiledGame game = CompiledGame.compile(config);
+    double baseRtp = new ExactRtpCalculator(game).calculate(100).rtp;
+    List<PaytableTuner.Parameter> parameters =
+            PaytableTuner.parseParameters(game, List.of("multipliers", "bonus-weights", "cell-weights:F"));
+    PaytableTuner.Target target = new PaytableTuner.Target(0.95, 0.002, 0.29, 0.33);
+    PaytableTuner.Result result = new PaytableTuner(game, parameters, 100, 1, 1000).tune(target, 20000, 71);
+    assert result.isMet() : "Test failed! Target not met, RTP " + result.getRtp() + ", hit frequency " + result.getHitFrequency();
+
+    ExactRtpCalculator.Result tuned = new ExactRtpCalculator(CompiledGame.compile(result.toConfiguration())).calculate(100);
+    assert Math.abs(tuned.rtp - 0.95) <= 0.002 && tuned.hitFrequency >= 0.29 && tuned.hitFrequency <= 0.33 :
+            "Test failed! Tuned config has RTP " + tuned.rtp + " and hit frequency " + tuned.hitFrequency;
+    assert tuned.rtp == result.getRtp() : "Test failed! Tuned config differs from the scored candidate";
+    GameConfiguration reparsed = new Gson().fromJson(result.toJson(), GameConfiguration.class);
+    assert new ExactRtpCalculator(CompiledGame.compile(reparsed)).calculate(100).rtp == tuned.rtp :
+            "Test failed! Tuned config JSON differs from the tuned config";
+    assert new ExactRtpCalculator(CompiledGame.compile(config)).calculate(100).rtp == baseRtp :
+            "Test failed! Tuning changed the base config";
+
+    PaytableTuner.Result parallel = new PaytableTuner(game, parameters, 100, 3, 1000).tune(target, 20000, 71);
+    for (int i = 0; i < parameters.size(); i++) {
+      assert parallel.getValue(i) == result.getValue(i) : "Test failed! Search depends on the number of threads";
+    }
+
+    for (String selector : new String[] {"weights", "cell-weights:10x", "bonus-weights:A", "multipliers:none"}) {
+      try {
+        PaytableTuner.parseParameters(game, List.of(selector));
+        assert false : "Test failed! Selector " + selector + " was accepted";
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+
+    System.out.println("Test passed for testPaytableTuner!");
+  }
+
+  /**
+   * Tests that incremental re-evaluation gives the same result and payout as a fresh evaluation
+   * after every respin, on the default configuration and on a 8x10 board whose bonus cells span
+   * two bitset words and whose areas overlap and repeat a cell.
+   */
+  public static void testIncrementalEvaluation() {
+    System.out.println("Running test: testIncrementalEvaluation");
+
+    StringBuilder json = new StringBuilder();
+    json.append("{\"columns\": 10, \"rows\": 8, \"symbols\": {")
+            .append("\"A\": {\"reward_multiplier\": 5, \"type\": \"standard\"},")
+            .append("\"B\": {\"reward_multiplier\": 1.5, \"type\": \"standard\"},")
+            .append("\"10x\": {\"reward_multiplier\": 10, \"type\": \"bonus\", \"impact\": \"multiply_reward\"},")
+            .append("\"+500\": {\"extra\": 500, \"type\": \"bonus\", \"impact\": \"extra_bonus\"},")
+            .append("\"MISS\": {\"type\": \"bonus\", \"impact\": \"miss\"}},")
+            .append("\"probabilities\": {\"standard_symbols\": [");
+    for (int cell = 0; cell < 80; cell++) {
+      json.append(cell == 0 ? "" : ",").append("{\"column\": ").append(cell % 10).append(", \"row\": ").append(cell / 10)
+              .append(", \"symbols\": {\"A\": 30, \"B\": 3}}");
+    }
+    json.append("], \"bonus_symbols\": {\"symbols\": {\"10x\": 1, \"+500\": 1, \"MISS\": 1}}},")
+            .append("\"win_combinations\": {")
+            .append("\"same_symbol_40_times\": {\"reward_multiplier\": 1, \"when\": \"same_symbols\", \"count\": 40},")
+            .append("\"same_symbol_70_times\": {\"reward_multiplier\": 3, \"when\": \"same_symbols\", \"count\": 70},")
+            .append("\"rows\": {\"reward_multiplier\": 2, \"when\": \"linear_symbols\", \"covered_areas\": [");
+    for (int row = 0; row < 8; row++) {
+      json.append(row == 0 ? "[" : ",[");
+      for (int col = 0; col < 10; col++) {
+        json.append(col == 0 ? "" : ",").append('"').append(row).append(':').append(col).append('"');
+      }
+      json.append(']');
+    }
+    json.append("]}, \"corner\": {\"reward_multiplier\": 4, \"when\": \"linear_symbols\", \"covered_areas\": ")
+            .append("[[\"6:9\", \"6:9\", \"7:9\"], [\"0:0\", \"1:0\", \"1:1\"]]}}}");
+    GameConfiguration largeConfig = new Gson().fromJson(json.toString(), GameConfiguration.class);
+
+    int bettingAmount = 10;
+    for (GameConfiguration configuration : new GameConfiguration[] {config, largeConfig}) {
+      CompiledGame game = CompiledGame.compile(configuration);
+      IncrementalEvaluator evaluator = new IncrementalEvaluator(game);
+      Random random = new Random(73);
+      boolean[] held = new boolean[game.getRows() * game.getColumns()];
+      for (int spin = 0; spin < 50_000; spin++) {
+        if (spin % 5 == 0) {
+          // A new round starts from a freshly drawn board
+          evaluator.reset(game.generateBoard(random, game.newBoard()));
+        } else {
+          // Hold a random share of the cells, from none to all of them
+          double share = random.nextDouble();
+          for (int cell = 0; cell < held.length; cell++) {
+            held[cell] = random.nextDouble() < share;
+          }
+          evaluator.respin(random, held);
+        }
+        Board board = evaluator.getBoard();
+        Matrix.EvaluationResult expected = game.evaluate(board, bettingAmount);
+        Matrix.EvaluationResult actual = evaluator.evaluate(bettingAmount);
+        String[][] matrix = board.toMatrix(game.getSymbols()).getMatrix();
+        assertSameResult(expected, actual, matrix);
+        assert expected.reward == actual.reward : "Test failed! Reward differs in the last bit for " + Arrays.deepToString(matrix);
+        Payout expectedPayout = game.payout(board);
+        Payout actualPayout = evaluator.payout();
+        assert expectedPayout.getMultiplierMillis() == actualPayout.getMultiplierMillis()
+                && expectedPayout.getExtra() == actualPayout.getExtra() :
+                "Test failed! Expected payout " + expectedPayout + ", but got " + actualPayout;
+        if (spin % 50 == 0) {
+          Matrix.EvaluationResult reference = new Matrix(matrix, game.getRows(), game.getColumns())
+                  .evaluateRules(configuration, bettingAmount);
+          assertSameResult(reference, actual, matrix);
+        }
+      }
+    }
+
+    System.out.println("Test passed for testIncrementalEvaluation!");
+  }
+
+  /**
+   * Tests the reusable evaluation result: it holds the same reward, combinations and bonus as a
+   * name-based evaluation, its bitset agrees with the names, and filling it allocates nothing once
+   * the evaluation is compiled.
+   */
+  public static void testMutableEvaluationResult() {
+    System.out.println("Running test: testMutableEvaluationResult");
+
+    CompiledGame game = CompiledGame.compile(config);
+    MutableEvaluationResult result = new MutableEvaluationResult(game);
+    Random random = new Random(79);
+    int bettingAmount = 100;
+    Board board = game.newBoard();
+    for (int round = 0; round < 50_000; round++) {
+      game.generateBoard(random, board);
+      Matrix.EvaluationResult expected = game.evaluate(board, bettingAmount);
+      game.evaluate(board, bettingAmount, result);
+      String[][] matrix = board.toMatrix(game.getSymbols()).getMatrix();
+      assert result.getReward() == expected.reward && result.getBettingAmount() == bettingAmount :
+              "Test failed! Expected reward " + expected.reward + ", but got " + result.getReward();
+      assertSameResult(expected, result.toEvaluationResult(), matrix);
+
+      Set<String> applied = new HashSet<>();
+      for (List<String> combos : expected.appliedWinningCombinations.values()) {
+        applied.addAll(combos);
+      }
+      Set<String> fromBits = new HashSet<>();
+      for (int combo = result.nextApplied(0); combo >= 0; combo = result.nextApplied(combo + 1)) {
+        assert result.isApplied(combo) : "Test failed! nextApplied returned an unapplied combination";
+        fromBits.add(game.getCombinations().nameOf(combo));
+      }
+      assert fromBits.equals(applied) : "Test failed! Expected applied " + applied + ", but got " + fromBits;
+      for (int symbol = 0; symbol < game.getSymbols().size(); symbol++) {
+        assert result.isWinning(symbol) == expected.appliedWinningCombinations.containsKey(game.getSymbols().nameOf(symbol)) :
+                "Test failed! Winning symbols differ for " + Arrays.deepToString(matrix);
+      }
+
+      if (round % 100 == 0) {
+        new Matrix(matrix, 3, 3).evaluateRules(game, bettingAmount, result);
+        assertSameResult(new Matrix(matrix, 3, 3).evaluateRules(config, bettingAmount), result.toEvaluationResult(), matrix);
+      }
+    }
+
+    // Once compiled, neither entry point allocates
+    Matrix matrix = board.toMatrix(game.getSymbols());
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().threadId();
+    double rewards = 0;
+    long allocated = Long.MAX_VALUE;
+    for (int attempt = 0; attempt < 5 && allocated > 0; attempt++) {
+      long before = threads.getThreadAllocatedBytes(threadId);
+      for (int round = 0; round < 200_000; round++) {
+        game.evaluate(board, bettingAmount, result);
+        rewards += result.getReward();
+        matrix.evaluateRules(game, bettingAmount, result);
+        rewards += result.getReward();
+      }
+      allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    }
+    // Reading the counter may allocate a few bytes itself; an object per call would be megabytes
+    assert allocated < 4096 : "Test failed! 400000 evaluations allocated " + allocated + " bytes (" + rewards + ")";
+
+    try {
+      new Matrix(matrix.getMatrix(), 3, 3).evaluateRules(CompiledGame.compile(config), bettingAmount, result);
+      assert false : "Test failed! A result of another game was accepted";
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    System.out.println("Test passed for testMutableEvaluationResult!");
+  }
+
+  /**
+   * Asserts that an estimate lies within three half widths of its 95% confidence interval of
+   * the exact value.
+   * @param name The name of the estimated quantity, for the failure message
+   * @param expected The exact value
+   * @param actual The estimate
+   * @param halfWidth The half width of the confidence interval of the estimate
+   */
+  static void assertWithin(String name, double expected, double actual, double halfWidth) {
+    assert Math.abs(actual - expected) <= 3 * halfWidth + 1e-12 :
+            "Test failed! Estimated " + name + " " + actual + " +/- " + halfWidth + ", exact " + expected;
+  }
+
+  /**
+   * Asserts that two evaluation results are equal.
+   * @param expected The reference result
+   * @param actual The result to check
+   * @param matrix The evaluated matrix, for the failure message
+   */
+  static void assertSameResult(Matrix.EvaluationResult expected, Matrix.EvaluationResult actual, String[][] matrix) {
+    assert Math.abs(expected.reward - actual.reward) <= 1e-9 * Math.max(1, Math.abs(expected.reward)) :
+            "Test failed! Expected reward: " + expected.reward + ", but got: " + actual.reward + " for " + Arrays.deepToString(matrix);
+    assert expected.appliedWinningCombinations.equals(actual.appliedWinningCombinations) :
+            "Test failed! Expected combinations: " + expected.appliedWinningCombinations + ", but got: "
+                    + actual.appliedWinningCombinations + " for " + Arrays.deepToString(matrix);
+    assert Objects.equals(expected.appliedBonusSymbol, actual.appliedBonusSymbol) :
+            "Test failed! Expected bonus: " + expected.appliedBonusSymbol + ", but got: " + actual.appliedBonusSymbol;
+  }
 }